@@ -19,7 +19,7 @@ public class Main {
         LifeTrait monster2 = new Player("巨狼", "精英怪物", 1, 2, 0);
         AbstractPersistentEffect fire = null;
         try {
-            fire = (AbstractPersistentEffect) BinarySecureSaveUtil.get("95db9a0b-dd75-4d6d-beb8-5af5f95031bc",savePath);
+            fire = (AbstractPersistentEffect) BinarySecureSaveUtil.get("95db9a0b-dd75-4d6d-beb8-5af5f95031bc", savePath, true);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
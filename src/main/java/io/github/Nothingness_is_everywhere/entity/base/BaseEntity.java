@@ -1,5 +1,9 @@
 package io.github.Nothingness_is_everywhere.entity.base;
 
+import io.github.Nothingness_is_everywhere.util.CompactBinaryCodec;
+import io.github.Nothingness_is_everywhere.util.CompactSerializable;
+
+import java.io.IOException;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.UUID;
@@ -10,7 +14,7 @@ import java.util.UUID;
  * 负责管理实体的核心属性（唯一标识、名称、描述）、空间坐标（x, y, z）以及生命周期（状态管理）。
  * 提供坐标移动、销毁标记等基础操作，供所有游戏实体继承扩展。
  */
-public abstract class BaseEntity implements Serializable {
+public abstract class BaseEntity implements Serializable, CompactSerializable {
     /**
      * 实体状态枚举
      * ACTIVE：活跃状态
@@ -31,6 +35,8 @@ public abstract class BaseEntity implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L; // 序列化版本号
     private ElementType elementType;    // 元素属性
+    private static final int STATE_VERSION = 1; // 紧凑编码结构版本
+    private transient int modCount;     // 状态修改次数（不参与序列化，创建和解码时为0）
 
     /**
      * 构造器：初始化实体的基础属性和空间坐标(一般应用于构造普通实体)
@@ -87,6 +93,23 @@ public abstract class BaseEntity implements Serializable {
         this.state = EntityState.ACTIVE;    // 初始为活跃状态
         this.elementType = elementType; // 设置元素属性
     }
+
+    /**
+     * 解码构造器：读取writeState写入的实体状态（见CompactSerializable）
+     * @param in 输入
+     */
+    protected BaseEntity(CompactBinaryCodec.Input in) throws IOException {
+        in.readVersion(STATE_VERSION, BaseEntity.class);
+        this.id = in.readId();
+        this.name = in.readString();
+        this.description = in.readString();
+        this.x = in.readVarInt();
+        this.y = in.readVarInt();
+        this.z = in.readVarInt();
+        this.state = in.readEnum(EntityState.class);
+        this.elementType = in.readEnum(ElementType.class);
+    }
+
     /**
      * 坐标移动
      * @param moveX X方向移动量
@@ -98,6 +121,7 @@ public abstract class BaseEntity implements Serializable {
             this.x += moveX;
             this.y += moveY;
             this.z += moveZ;
+            markModified();
             System.out.printf("%s移动到了坐标(%d, %d, %d)%n", getName(), this.x, this.y, this.z);
         }
     }
@@ -108,6 +132,7 @@ public abstract class BaseEntity implements Serializable {
     public void destroy() {
         if (state != EntityState.DESTROYED) {
             state = EntityState.DESTROYED;
+            markModified();
         }
     }
 
@@ -129,7 +154,10 @@ public abstract class BaseEntity implements Serializable {
      * 设置实体名称
      * @param name 实体名称
      */
-    public void setName(String name) { this.name = name; }
+    public void setName(String name) {
+        this.name = name;
+        markModified();
+    }
 
     /**
      * 获取实体描述
@@ -141,7 +169,10 @@ public abstract class BaseEntity implements Serializable {
      * 设置实体描述
      * @param description 实体描述
      */
-    public void setDescription(String description) { this.description = description; }
+    public void setDescription(String description) {
+        this.description = description;
+        markModified();
+    }
 
     /**
      * 获取X坐标
@@ -177,7 +208,10 @@ public abstract class BaseEntity implements Serializable {
      * 设置实体状态
      * @param state 实体状态
      */
-    public void setState(EntityState state) { this.state = state; }
+    public void setState(EntityState state) {
+        this.state = state;
+        markModified();
+    }
 
     /**
      * 获取元素属性
@@ -189,7 +223,41 @@ public abstract class BaseEntity implements Serializable {
      * 设置元素属性
      * @param elementType 元素属性
      */
-    public void setElementType(ElementType elementType) { this.elementType = elementType; }
+    public void setElementType(ElementType elementType) {
+        this.elementType = elementType;
+        markModified();
+    }
+
+    /**
+     * 自创建或解码以来是否改变过会写入编码的状态
+     * <p>
+     * 如由队伍模板解码出的成员未被改变时，可直接使用模板的编码数据作为其状态（见TeamTemplate）。
+     * 子类包含可单独改变的对象（如效果、物品）时需重写本方法一并检查。
+     * @return 是否改变过
+     */
+    public boolean isModified() { return modCount != 0; }
+
+    /**
+     * 标记状态已改变：改变会写入编码的字段后调用（子类直接修改自身字段时同样需要调用）
+     */
+    protected final void markModified() { modCount++; }
+
+    /**
+     * 写入实体状态（紧凑编码）
+     * @param out 输出
+     */
+    @Override
+    public void writeState(CompactBinaryCodec.Output out) throws IOException {
+        out.writeVersion(STATE_VERSION);
+        out.writeId(id);
+        out.writeString(name);
+        out.writeString(description);
+        out.writeVarInt(x);
+        out.writeVarInt(y);
+        out.writeVarInt(z);
+        out.writeEnum(state);
+        out.writeEnum(elementType);
+    }
 
     /**
      * 抽象方法：展示实体信息
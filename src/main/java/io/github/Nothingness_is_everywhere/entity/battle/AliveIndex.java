@@ -0,0 +1,66 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+/**
+ * 队伍存活索引
+ * <p>
+ * 按队伍内的位置记录成员是否存活（树状数组），成员死亡或复活时O(log n)更新；
+ * 按位置顺序取第k个存活成员同样为O(log n)，结果与先筛选出存活成员再取第k个相同。
+ */
+final class AliveIndex {
+    private final int[] tree;       // 树状数组（下标从1开始）
+    private final boolean[] alive;  // 各位置是否存活
+    private final int highestBit;   // 不超过队伍人数的最大2的幂
+    private int count;              // 存活人数
+
+    AliveIndex(int size) {
+        this.tree = new int[size + 1];
+        this.alive = new boolean[size];
+        this.highestBit = Integer.highestOneBit(Math.max(1, size));
+    }
+
+    /**
+     * 存活人数
+     */
+    int count() {
+        return count;
+    }
+
+    boolean isAlive(int index) {
+        return alive[index];
+    }
+
+    /**
+     * 更新成员是否存活（状态未变时不做任何事）
+     * @param index 队伍内的位置
+     * @param isAlive 是否存活
+     */
+    void set(int index, boolean isAlive) {
+        if (alive[index] == isAlive) {
+            return;
+        }
+        alive[index] = isAlive;
+        int delta = isAlive ? 1 : -1;
+        count += delta;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * 按位置顺序取第k个存活成员
+     * @param k 序号（从0开始，小于存活人数）
+     * @return 队伍内的位置
+     */
+    int select(int k) {
+        int position = 0;
+        int remaining = k + 1;
+        for (int bit = highestBit; bit > 0; bit >>= 1) {
+            int next = position + bit;
+            if (next < tree.length && tree[next] < remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return position;
+    }
+}
@@ -0,0 +1,205 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 异步文件接收器
+ * <p>
+ * 发布线程只把事件放入固定容量的环形缓冲区，后台线程成批取出后渲染为与控制台相同的文字并写入文件，
+ * 缓冲区取空或写到flush等待的位置时才刷新文件，战斗线程不做格式化和I/O。
+ * <p>
+ * 缓冲区已满时发布方等待后台线程腾出空间（不丢弃事件）。写入失败后继续取出并丢弃事件，
+ * 发布方不会因此阻塞，异常在flush或close时抛出。必须调用close，否则缓冲区中剩余的事件不会写入文件。
+ */
+public final class AsyncFileBattleSink implements BattleEventSink, Flushable, Closeable {
+    private static final int BATCH = 256; // 后台线程每次取出的最大事件数
+
+    private final BattleEvent[] ring;
+    private final int mask;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushedUp = lock.newCondition();
+    private final Writer writer;
+    private final Thread thread;
+    private long head;            // 下一个取出的位置
+    private long tail;            // 下一个放入的位置
+    private long flushTarget;     // flush等待写入并刷新到的位置
+    private long flushed;         // 已写入并刷新到文件的位置
+    private boolean closed;
+    private volatile long written; // 已写入的事件数
+    private IOException failure;   // 后台线程遇到的第一个写入异常
+
+    /**
+     * 创建接收器（覆盖已有文件）
+     * @param path 文件路径
+     * @param capacity 缓冲区容量（向上取整为2的幂）
+     */
+    public AsyncFileBattleSink(String path, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new BattleEvent[size];
+        this.mask = size - 1;
+        this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                StandardCharsets.UTF_8), 64 * 1024);
+        this.thread = new Thread(this::drain, "battle-event-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void publish(BattleEvent event) {
+        lock.lock();
+        try {
+            while (tail - head == ring.length && !closed) {
+                notFull.awaitUninterruptibly();
+            }
+            if (closed) {
+                throw new IllegalStateException("事件接收器已关闭");
+            }
+            ring[(int) (tail & mask)] = event;
+            if (tail++ == head) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取已写入文件的事件数
+     */
+    public long written() {
+        return written;
+    }
+
+    /**
+     * 等待调用前发布的全部事件写入并刷新到文件（不关闭接收器）
+     * @throws IOException 后台写入失败
+     */
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            long target = tail;
+            if (flushTarget < target) {
+                flushTarget = target;
+            }
+            while (flushed < target) {
+                flushedUp.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 写完缓冲区中的全部事件后关闭文件
+     * @throws IOException 后台写入或关闭文件失败
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void drain() {
+        BattleEvent[] batch = new BattleEvent[Math.min(BATCH, ring.length)];
+        while (true) {
+            int count;
+            long end;
+            boolean flush;
+            lock.lock();
+            try {
+                while (tail == head && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (tail == head) {
+                    return; // 已关闭且全部取出
+                }
+                count = (int) Math.min(tail - head, batch.length);
+                for (int i = 0; i < count; i++) {
+                    int slot = (int) ((head + i) & mask);
+                    batch[i] = ring[slot];
+                    ring[slot] = null;
+                }
+                head += count;
+                end = head;
+                flush = tail == head || end >= flushTarget && flushed < flushTarget;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (failure == null) {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        writer.write(ConsoleBattleRenderer.render(batch[i]));
+                    }
+                    written += count;
+                    if (flush) {
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (flush) {
+                lock.lock();
+                try {
+                    flushed = end;
+                    flushedUp.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                batch[i] = null;
+            }
+        }
+    }
+}
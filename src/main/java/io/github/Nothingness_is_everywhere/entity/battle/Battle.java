@@ -3,54 +3,155 @@ package io.github.Nothingness_is_everywhere.entity.battle;
 import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
 import io.github.Nothingness_is_everywhere.util.ProbabilityUtils;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 战斗管理器类
  * 处理多对多战斗流程，支持偷袭回合（第0回合）和速度优先的回合制战斗
+ * <p>
+ * 战斗信息以事件形式发布给事件接收器（默认渲染到控制台，见BattleEvent、BattleEventSink），
+ * 关闭战斗信息后不格式化、不输出任何内容，结束后可通过getOutcome、getCurrentRound、getDamageDealt读取结果（见BattleSimulator）。
+ * <p>
+ * 暴击判定、选择目标和效果触发都使用由战斗种子拆分出的随机数流（见BattleRandom），
+ * 相同种子和相同初始状态的成员得到相同的战斗过程。
+ * <p>
+ * 每个成员按位置记录所属队伍，双方的存活成员由存活索引维护（攻击造成死亡时立即更新，每回合开始和持续效果触发后再与实际状态同步），
+ * 出手顺序只在有成员速度改变时重新排序，一回合的耗时与参战人数成正比（乘以log n），可进行每方数千人的大规模战斗。
  */
 public class Battle {
+    /**
+     * 战斗结果
+     * TEAM_A：队伍A获胜
+     * TEAM_B：队伍B获胜
+     * DRAW：达到最大回合数时双方都有存活成员
+     */
+    public enum Outcome {
+        TEAM_A,
+        TEAM_B,
+        DRAW
+    }
+
     private final List<LifeTrait> teamA; // 队伍A
     private final List<LifeTrait> teamB; // 队伍B
+    private final BattleRandom random; // 本场战斗使用的随机数（暴击、选择目标、效果触发）
+    private final LifeTrait[] members; // 按位置排列的成员（队伍A在前，队伍B在后，与构造时的顺序一致）
+    private final int teamASize; // 队伍A的成员数（位置小于该值的属于队伍A）
+    private final AliveIndex aliveA; // 队伍A的存活成员
+    private final AliveIndex aliveB; // 队伍B的存活成员
+    private final int[] speeds; // 上次排序出手顺序时各成员的速度
+    private int[] turnOrder; // 按速度从高到低排列的成员位置（速度相同时位置靠前的先出手）
+    private final int[] damageDealt; // 各成员攻击造成的实际伤害
     private int currentRound; // 当前回合数
+    private int maxRounds; // 最大回合数（0=不限）
     private boolean isBattleEnded; // 战斗是否结束
+    private BattleEventSink eventSink = ConsoleBattleRenderer.STDOUT; // 战斗事件接收器
+    private Outcome outcome; // 战斗结果（未结束时为null）
+    private boolean isStarted; // 战斗是否已开始
+    private BattleRecorder recorder; // 回放记录器（null表示不记录）
 
+    /**
+     * 构造器：随机生成战斗种子
+     * @param teamA 队伍A
+     * @param teamB 队伍B
+     * @throws IllegalArgumentException 同一成员在队伍中出现多次或同时属于两支队伍
+     */
     public Battle(List<LifeTrait> teamA, List<LifeTrait> teamB) {
+        this(teamA, teamB, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * 构造器：使用指定的战斗种子（可通过getSeed取得后复现同一场战斗）
+     * @param teamA 队伍A
+     * @param teamB 队伍B
+     * @param seed 战斗种子
+     * @throws IllegalArgumentException 同一成员在队伍中出现多次或同时属于两支队伍
+     */
+    public Battle(List<LifeTrait> teamA, List<LifeTrait> teamB, long seed) {
         this.teamA = new ArrayList<>(teamA);
         this.teamB = new ArrayList<>(teamB);
+        this.random = new BattleRandom(seed);
+        this.teamASize = this.teamA.size();
+        this.members = new LifeTrait[teamASize + this.teamB.size()];
+        Set<LifeTrait> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        int slot = 0;
+        for (List<LifeTrait> team : List.of(this.teamA, this.teamB)) {
+            for (LifeTrait entity : team) {
+                if (!seen.add(entity)) {
+                    throw new IllegalArgumentException("成员在战斗中出现多次：" + ConsoleBattleRenderer.nameOf(entity));
+                }
+                members[slot++] = entity;
+            }
+        }
+        this.aliveA = new AliveIndex(teamASize);
+        this.aliveB = new AliveIndex(members.length - teamASize);
+        this.speeds = new int[members.length];
+        this.damageDealt = new int[members.length];
         this.currentRound = 0;
         this.isBattleEnded = false;
     }
 
     /**
-     * 开始战斗流程
+     * 开始战斗流程（效果中通过ProbabilityUtils的判定使用本场战斗的效果随机数）
      */
     public void startBattle() {
-        System.out.println("===== 战斗开始 =====");
+        playUntil(Integer.MAX_VALUE);
+    }
+
+    /**
+     * 进行到指定回合结束后暂停，可再次调用继续；首次调用时开始战斗
+     * @param round 回合数
+     * @return 战斗是否仍未结束
+     */
+    public boolean playUntil(int round) {
+        return ProbabilityUtils.callWith(random.effects(), () -> {
+            if (!isStarted) {
+                isStarted = true;
+                begin();
+            }
+            // 普通回合战斗循环
+            while (!isBattleEnded && currentRound < round) {
+                nextRound();
+            }
+            return !isBattleEnded;
+        });
+    }
+
+    private void begin() {
+        if (recorder != null) {
+            recorder.begin(this);
+        }
         // 显示参战双方
-        System.out.println("队伍A参战成员：" + getTeamNames(teamA));
-        System.out.println("队伍B参战成员：" + getTeamNames(teamB));
+        eventSink.publish(new BattleEvent.BattleStart(List.copyOf(teamA), List.copyOf(teamB)));
 
         // 第0回合：偷袭回合（仅特殊非实体效果触发）
         processAmbushRound();
         if (isBattleEnded) {
             endBattle();
-            return;
         }
+    }
 
-        // 普通回合战斗循环
-        while (!isBattleEnded) {
-            currentRound++;
-            System.out.printf("%n===== 第%d回合 =====", currentRound);
-            processNormalRound();
-            if (checkBattleEnd()) {
-                endBattle();
-                break;
-            }
+    private void nextRound() {
+        if (maxRounds > 0 && currentRound >= maxRounds) {
+            isBattleEnded = true;
+            endBattle();
+            return;
+        }
+        currentRound++;
+        eventSink.publish(new BattleEvent.RoundStart(currentRound));
+        processNormalRound();
+        if (recorder != null) {
+            recorder.endRound();
+        }
+        if (checkBattleEnd()) {
+            endBattle();
         }
     }
 
@@ -59,7 +160,7 @@ public class Battle {
      * 仅触发带有偷袭标签的非实体效果（如伏击、先手buff等）
      */
     private void processAmbushRound() {
-        System.out.println("\n===== 第0回合（偷袭） =====");
+        eventSink.publish(new BattleEvent.RoundStart(0));
         // 触发所有实体的偷袭效果（假设效果名称含"偷袭"关键词，实际可通过接口标记）
         List<LifeTrait> allEntities = new ArrayList<>();
         allEntities.addAll(teamA);
@@ -82,82 +183,137 @@ public class Battle {
      * 按速度排序所有存活实体，依次执行行动
      */
     private void processNormalRound() {
-        // 触发所有持续效果（每回合结束时结算）
+        // 同步回合之间（如暂停时）发生的状态变化，再触发所有持续效果（每回合结束时结算）
+        syncAlive();
         triggerPersistentEffects();
-        // 筛选存活实体并按速度排序（速度高的先出手）
-        List<LifeTrait> aliveEntities = getAllAliveEntities()
-                .stream()
-                .sorted(Comparator.comparingInt(LifeTrait::getSpeed).reversed())
-                .collect(Collectors.toList());
+        syncAlive();
+        // 存活实体按速度排序（速度高的先出手）
+        updateTurnOrder();
+        int[] actors = new int[aliveA.count() + aliveB.count()];
+        int count = 0;
+        for (int slot : turnOrder) {
+            if (isTrackedAlive(slot)) {
+                actors[count++] = slot;
+            }
+        }
 
-        // 输出回合出手顺序
-        System.out.println("\n出手顺序：" + getEntityNames(aliveEntities));
+        // 发布回合出手顺序（位置数组的只读视图，不复制成员列表）
+        eventSink.publish(new BattleEvent.TurnOrder(new SlotList(members, actors)));
 
         // 每个实体依次执行行动
-        for (LifeTrait attacker : aliveEntities) {
-            if (!attacker.isAlive()) continue; // 防止中途死亡的实体行动
+        for (int i = 0; i < count; i++) {
+            int attacker = actors[i];
+            if (!members[attacker].isAlive()) continue; // 防止中途死亡的实体行动
 
             // 确定攻击目标（对方队伍的存活实体）
-            List<LifeTrait> enemies = getEnemies(attacker);
-            if (enemies.isEmpty()) continue;
-
-            LifeTrait target = selectTarget(enemies);
-            if (target == null) continue;
+            AliveIndex enemies = attacker < teamASize ? aliveB : aliveA;
+            if (enemies.count() == 0) continue;
 
             // 执行基础攻击
-            executeAttack(attacker, target);
+            executeAttack(attacker, selectTarget(enemies));
         }
     }
 
     /**
      * 执行攻击逻辑
+     * @param attackerSlot 攻击者位置
+     * @param targetSlot 目标位置
      */
-    private void executeAttack(LifeTrait attacker, LifeTrait target) {
-        String attackerName = ((io.github.Nothingness_is_everywhere.entity.base.BaseEntity) attacker).getName();
-        String targetName = ((io.github.Nothingness_is_everywhere.entity.base.BaseEntity) target).getName();
-
+    private void executeAttack(int attackerSlot, int targetSlot) {
+        LifeTrait attacker = members[attackerSlot];
+        LifeTrait target = members[targetSlot];
         // 基础伤害计算（力量影响物攻）
         int baseDamage = attacker.getStrength() * 2;
         // 防御减免（物抗抵消部分伤害）
         int finalDamage = Math.max(1, baseDamage - target.getPhysicalDefense() / 2);
 
         // 暴击判定（使用概率工具类）
-        boolean isCrit = ProbabilityUtils.isTriggered(attacker.getCritRate());
+        boolean isCrit = ProbabilityUtils.isTriggered(random.critical(), attacker.getCritRate());
         if (isCrit) {
             finalDamage = (int) (finalDamage * 1.5); // 暴击伤害1.5倍
-            System.out.print("[暴击！] ");
+            eventSink.publish(new BattleEvent.Critical(attacker, target));
         }
 
-        // 造成伤害
+        // 造成伤害（按实际损失的生命值统计）
+        int healthBefore = target.getHealth();
         target.damage(finalDamage);
-        System.out.printf("%s攻击了%s，造成%d点伤害！%n", attackerName, targetName, finalDamage);
+        int damageTaken = healthBefore - target.getHealth();
+        damageDealt[attackerSlot] += damageTaken;
+        if (recorder != null) {
+            recorder.attack(attackerSlot, targetSlot, isCrit, damageTaken);
+        }
+        // 死亡的成员立即移出存活索引，之后的攻击者不会再选中
+        trackAlive(targetSlot);
+        trackAlive(attackerSlot);
+        eventSink.publish(new BattleEvent.Attack(attacker, target, finalDamage, isCrit));
     }
 
     /**
      * 触发所有存活实体的持续效果
      */
     private void triggerPersistentEffects() {
-        System.out.println("\n\n===== 持续效果触发 =====");
-        getAllAliveEntities().forEach(entity -> {
-            ((io.github.Nothingness_is_everywhere.entity.life.AbstractLife) entity).activateAllEffects();
-        });
+        for (int slot = 0; slot < members.length; slot++) {
+            if (isTrackedAlive(slot)) {
+                ((io.github.Nothingness_is_everywhere.entity.life.AbstractLife) members[slot]).activateAllEffects();
+            }
+        }
     }
 
     /**
-     * 选择攻击目标（随机选择敌方存活实体）
+     * 选择攻击目标（随机选择敌方存活实体，按队伍顺序计数）
+     * @return 目标位置
      */
-    private LifeTrait selectTarget(List<LifeTrait> enemies) {
-        return enemies.get(new Random().nextInt(enemies.size()));
+    private int selectTarget(AliveIndex enemies) {
+        int index = enemies.select(random.targeting().nextInt(enemies.count()));
+        return enemies == aliveB ? teamASize + index : index;
     }
 
     /**
-     * 获取指定实体的敌方队伍
+     * 按速度从高到低排列出手顺序，只在有成员速度改变时重新排序
      */
-    private List<LifeTrait> getEnemies(LifeTrait entity) {
-        if (teamA.contains(entity)) {
-            return teamB.stream().filter(LifeTrait::isAlive).collect(Collectors.toList());
+    private void updateTurnOrder() {
+        boolean isChanged = turnOrder == null;
+        for (int slot = 0; slot < members.length; slot++) {
+            int speed = members[slot].getSpeed();
+            if (speed != speeds[slot]) {
+                speeds[slot] = speed;
+                isChanged = true;
+            }
+        }
+        if (!isChanged) {
+            return;
+        }
+        // 高32位为速度取反（速度高的在前），低32位为位置（速度相同时位置靠前的在前）
+        long[] keys = new long[members.length];
+        for (int slot = 0; slot < members.length; slot++) {
+            keys[slot] = (long) ~speeds[slot] << 32 | slot;
+        }
+        Arrays.sort(keys);
+        turnOrder = new int[members.length];
+        for (int i = 0; i < keys.length; i++) {
+            turnOrder[i] = (int) keys[i];
+        }
+    }
+
+    // 存活索引中记录的是否存活
+    private boolean isTrackedAlive(int slot) {
+        return slot < teamASize ? aliveA.isAlive(slot) : aliveB.isAlive(slot - teamASize);
+    }
+
+    // 按成员的实际状态更新存活索引
+    private void trackAlive(int slot) {
+        boolean isAlive = members[slot].isAlive();
+        if (slot < teamASize) {
+            aliveA.set(slot, isAlive);
         } else {
-            return teamA.stream().filter(LifeTrait::isAlive).collect(Collectors.toList());
+            aliveB.set(slot - teamASize, isAlive);
+        }
+    }
+
+    // 存活索引与全部成员的实际状态同步
+    private void syncAlive() {
+        for (int slot = 0; slot < members.length; slot++) {
+            trackAlive(slot);
         }
     }
 
@@ -165,9 +321,7 @@ public class Battle {
      * 检查战斗是否结束（某一方全灭）
      */
     private boolean checkBattleEnd() {
-        boolean teamAAlive = teamA.stream().anyMatch(LifeTrait::isAlive);
-        boolean teamBAlive = teamB.stream().anyMatch(LifeTrait::isAlive);
-        isBattleEnded = !teamAAlive || !teamBAlive;
+        isBattleEnded = aliveA.count() == 0 || aliveB.count() == 0;
         return isBattleEnded;
     }
 
@@ -175,33 +329,121 @@ public class Battle {
      * 结束战斗并输出结果
      */
     private void endBattle() {
-        System.out.println("\n===== 战斗结束 =====");
-        boolean teamAWin = teamA.stream().anyMatch(LifeTrait::isAlive);
-        System.out.println(teamAWin ? "队伍A获胜！" : "队伍B获胜！");
-        System.out.println("存活成员：");
-        System.out.println("队伍A：" + getTeamNames(teamA.stream().filter(LifeTrait::isAlive).collect(Collectors.toList())));
-        System.out.println("队伍B：" + getTeamNames(teamB.stream().filter(LifeTrait::isAlive).collect(Collectors.toList())));
+        boolean teamAAlive = teamA.stream().anyMatch(LifeTrait::isAlive);
+        boolean teamBAlive = teamB.stream().anyMatch(LifeTrait::isAlive);
+        outcome = teamAAlive && teamBAlive ? Outcome.DRAW : teamAAlive ? Outcome.TEAM_A : Outcome.TEAM_B;
+        if (recorder != null) {
+            recorder.end(this);
+        }
+        eventSink.publish(new BattleEvent.BattleEnd(outcome,
+                teamA.stream().filter(LifeTrait::isAlive).toList(),
+                teamB.stream().filter(LifeTrait::isAlive).toList()));
     }
 
-    // 工具方法：获取队伍成员名称
-    private String getTeamNames(List<LifeTrait> team) {
-        return team.stream()
-                .map(e -> ((io.github.Nothingness_is_everywhere.entity.base.BaseEntity) e).getName())
-                .collect(Collectors.joining("、", "[", "]"));
+    // Getter/Setter
+
+    /**
+     * 获取战斗结果
+     * @return 战斗结果（未结束时为null）
+     */
+    public Outcome getOutcome() { return outcome; }
+
+    /**
+     * 获取战斗种子
+     * @return 战斗种子
+     */
+    public long getSeed() { return random.seed(); }
+
+    /**
+     * 获取最大回合数
+     * @return 最大回合数（0=不限）
+     */
+    public int getMaxRounds() { return maxRounds; }
+
+    /**
+     * 获取队伍A成员
+     * @return 只读列表
+     */
+    public List<LifeTrait> getTeamA() { return Collections.unmodifiableList(teamA); }
+
+    /**
+     * 获取队伍B成员
+     * @return 只读列表
+     */
+    public List<LifeTrait> getTeamB() { return Collections.unmodifiableList(teamB); }
+
+    /**
+     * 获取当前回合数（结束后即战斗进行的回合数）
+     * @return 回合数
+     */
+    public int getCurrentRound() { return currentRound; }
+
+    /**
+     * 获取各成员攻击造成的实际伤害（不含持续效果造成的伤害）
+     * @return 伤害数组（队伍A成员在前，队伍B成员在后，与构造时的顺序一致）
+     */
+    public int[] getDamageDealt() { return damageDealt.clone(); }
+
+    // 按位置排列的成员（供回放记录器读取，不可修改）
+    LifeTrait[] members() { return members; }
+
+    // 队伍A的成员数
+    int teamASize() { return teamASize; }
+
+    /**
+     * 设置最大回合数，达到后以平局结束
+     * @param maxRounds 最大回合数（0=不限）
+     */
+    public void setMaxRounds(int maxRounds) { this.maxRounds = Math.max(0, maxRounds); }
+
+    /**
+     * 设置是否输出战斗信息（不影响成员自身的输出，见AbstractLife.setIsInformation）
+     * @param information 是否输出到控制台
+     */
+    public void setIsInformation(boolean information) {
+        this.eventSink = information ? ConsoleBattleRenderer.STDOUT : BattleEventSink.NONE;
+    }
+
+    /**
+     * 设置回放记录器（需在战斗开始前设置），战斗开始时记录成员的初始状态
+     * @param recorder 记录器（null表示不记录）
+     */
+    public void setRecorder(BattleRecorder recorder) {
+        if (isStarted) {
+            throw new IllegalStateException("战斗已开始，无法设置回放记录器");
+        }
+        this.recorder = recorder;
     }
 
-    // 工具方法：获取实体名称列表
-    private String getEntityNames(List<LifeTrait> entities) {
-        return entities.stream()
-                .map(e -> ((io.github.Nothingness_is_everywhere.entity.base.BaseEntity) e).getName())
-                .collect(Collectors.joining(" -> "));
+    /**
+     * 设置事件接收器，同时设为全部成员的事件接收器，战斗和成员的事件按发生顺序进入同一个接收器
+     * @param sink 事件接收器
+     */
+    public void setEventSink(BattleEventSink sink) {
+        this.eventSink = sink;
+        for (LifeTrait entity : members) {
+            entity.setEventSink(sink);
+        }
     }
 
-    // 工具方法：获取所有存活实体
-    private List<LifeTrait> getAllAliveEntities() {
-        List<LifeTrait> alive = new ArrayList<>();
-        alive.addAll(teamA.stream().filter(LifeTrait::isAlive).toList());
-        alive.addAll(teamB.stream().filter(LifeTrait::isAlive).toList());
-        return alive;
+    // 按位置数组排列的成员只读视图（位置数组在发布后不再修改）
+    private static final class SlotList extends AbstractList<LifeTrait> implements RandomAccess {
+        private final LifeTrait[] members;
+        private final int[] slots;
+
+        SlotList(LifeTrait[] members, int[] slots) {
+            this.members = members;
+            this.slots = slots;
+        }
+
+        @Override
+        public LifeTrait get(int index) {
+            return members[slots[index]];
+        }
+
+        @Override
+        public int size() {
+            return slots.length;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,134 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+
+import java.util.List;
+
+/**
+ * 战斗事件
+ * <p>
+ * 战斗和生命实体只发布事件，不格式化文字，由事件接收器（BattleEventSink）决定渲染到控制台、写入文件还是丢弃。
+ * 事件只保存发生时的数值（伤害、剩余生命值、层数等），成员对象仅用于取名称和区分成员。
+ */
+public sealed interface BattleEvent {
+    /**
+     * 战斗开始
+     * @param teamA 队伍A成员
+     * @param teamB 队伍B成员
+     */
+    record BattleStart(List<LifeTrait> teamA, List<LifeTrait> teamB) implements BattleEvent {
+    }
+
+    /**
+     * 回合开始（第0回合为偷袭回合，其余回合开始后先结算持续效果）
+     * @param round 回合数
+     */
+    record RoundStart(int round) implements BattleEvent {
+    }
+
+    /**
+     * 本回合的出手顺序
+     * @param order 按出手先后排列的存活成员
+     */
+    record TurnOrder(List<LifeTrait> order) implements BattleEvent {
+    }
+
+    /**
+     * 暴击（在随后的伤害和攻击事件之前发布）
+     * @param attacker 攻击者
+     * @param target 目标
+     */
+    record Critical(LifeTrait attacker, LifeTrait target) implements BattleEvent {
+    }
+
+    /**
+     * 攻击（目标受到伤害之后发布）
+     * @param attacker 攻击者
+     * @param target 目标
+     * @param damage 计算出的伤害（含暴击）
+     * @param critical 是否暴击
+     */
+    record Attack(LifeTrait attacker, LifeTrait target, int damage, boolean critical) implements BattleEvent {
+    }
+
+    /**
+     * 受到伤害
+     * @param target 受伤者
+     * @param amount 伤害量
+     * @param health 剩余生命值
+     */
+    record Damage(LifeTrait target, int amount, int health) implements BattleEvent {
+    }
+
+    /**
+     * 恢复生命值
+     * @param target 恢复者
+     * @param amount 恢复量
+     * @param health 当前生命值
+     * @param source 来源物品名称（null表示效果等其他来源）
+     */
+    record Heal(LifeTrait target, int amount, int health, String source) implements BattleEvent {
+    }
+
+    /**
+     * 获得效果
+     * @param target 获得者
+     * @param effect 效果名称
+     * @param level 效果等级
+     */
+    record EffectApplied(LifeTrait target, String effect, int level) implements BattleEvent {
+    }
+
+    /**
+     * 已有效果叠加一层
+     * @param target 获得者
+     * @param effect 效果名称
+     * @param stackCount 叠加后的层数
+     * @param duration 叠加后的持续时间
+     */
+    record EffectStacked(LifeTrait target, String effect, int stackCount, int duration) implements BattleEvent {
+    }
+
+    /**
+     * 未能获得效果
+     * @param target 目标
+     * @param effect 效果名称
+     * @param level 效果等级
+     */
+    record EffectResisted(LifeTrait target, String effect, int level) implements BattleEvent {
+    }
+
+    /**
+     * 失去效果（持续时间结束或死亡时清除）
+     * @param target 失去者
+     * @param effect 效果名称
+     * @param level 效果等级
+     */
+    record EffectExpired(LifeTrait target, String effect, int level) implements BattleEvent {
+    }
+
+    /**
+     * 死亡
+     * @param target 死亡者
+     */
+    record Death(LifeTrait target) implements BattleEvent {
+    }
+
+    /**
+     * 已死亡，无法使用物品
+     * @param user 使用者
+     * @param item 物品名称
+     */
+    record ItemFailed(LifeTrait user, String item) implements BattleEvent {
+    }
+
+    /**
+     * 战斗结束
+     * @param outcome 战斗结果
+     * @param survivorsA 队伍A存活成员
+     * @param survivorsB 队伍B存活成员
+     */
+    record BattleEnd(Battle.Outcome outcome, List<LifeTrait> survivorsA, List<LifeTrait> survivorsB)
+            implements BattleEvent {
+    }
+}
@@ -0,0 +1,22 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+/**
+ * 战斗事件接收器
+ * <p>
+ * 由发布事件的线程直接调用，实现需尽快返回；耗时的渲染和I/O交给后台线程（见AsyncFileBattleSink）。
+ * 并行模拟时同一个接收器可能被多个线程同时调用。
+ */
+@FunctionalInterface
+public interface BattleEventSink {
+    /**
+     * 丢弃全部事件（不格式化、不输出）
+     */
+    BattleEventSink NONE = event -> {
+    };
+
+    /**
+     * 接收事件
+     * @param event 事件
+     */
+    void publish(BattleEvent event);
+}
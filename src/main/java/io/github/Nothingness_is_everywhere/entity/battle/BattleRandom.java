@@ -0,0 +1,41 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * 单场战斗的随机数
+ * <p>
+ * 由战斗种子拆分出三条互相独立的随机数流：暴击判定、选择目标、效果触发（战斗期间绑定到ProbabilityUtils）。
+ * 同一种子得到同一场战斗；某一类判定的次数变化（如新增会掷骰的效果）不影响其他类判定的结果。
+ */
+final class BattleRandom {
+    private final long seed;
+    private final RandomGenerator critical;
+    private final RandomGenerator targeting;
+    private final RandomGenerator effects;
+
+    BattleRandom(long seed) {
+        this.seed = seed;
+        SplittableRandom root = new SplittableRandom(seed);
+        this.critical = root.split();
+        this.targeting = root.split();
+        this.effects = root.split();
+    }
+
+    long seed() {
+        return seed;
+    }
+
+    RandomGenerator critical() {
+        return critical;
+    }
+
+    RandomGenerator targeting() {
+        return targeting;
+    }
+
+    RandomGenerator effects() {
+        return effects;
+    }
+}
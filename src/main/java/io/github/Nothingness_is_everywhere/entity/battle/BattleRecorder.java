@@ -0,0 +1,257 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+import io.github.Nothingness_is_everywhere.util.CompactBinaryCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 战斗回放记录器
+ * <p>
+ * 战斗开始时记录种子、最大回合数和全部成员的初始状态（紧凑编码），之后每次攻击只记录决策和随机结果：
+ * 攻击者、目标、是否暴击和实际伤害；结束时记录结果和成员的最终生命值。
+ * 同一种子和初始状态的战斗过程是确定的，回放时据此重新进行并逐项比对（见BattleReplay）。
+ * <p>
+ * 格式：[格式版本(1字节)] [种子(8字节)] [最大回合数] [队伍A人数] [队伍B人数] [成员初始状态]×人数
+ * <br>[回合]×回合数：[攻击者位置] [目标位置×2+暴击] [实际伤害] ……，以-1结束
+ * <br>[-2] [结果序号] [回合数] [成员最终生命值]×人数
+ * <br>除种子外的整数都使用变长编码。
+ * <p>
+ * 战斗进行时攻击与标记直接以变长整数写入记录数组，成员初始状态只保存引用，
+ * 调用toByteArray时才拼接出回放数据，战斗过程中不复制成员初始状态。
+ * 编码全部成员的初始状态是记录的主要开销：成员由队伍模板新创建时（见TeamTemplate），
+ * 可用BattleRecorder(TeamTemplate, TeamTemplate)创建记录器，战斗开始时未被改变的成员直接引用模板的编码数据，
+ * 回放数据与重新编码时相同；不是由模板创建或已被改变（isModified）的成员仍在战斗开始时编码。
+ * <p>
+ * 一个记录器只记录一场战斗。
+ */
+public final class BattleRecorder {
+    static final int FORMAT_VERSION = 1;
+    static final int ROUND_END = -1;  // 回合结束标记
+    static final int BATTLE_END = -2; // 战斗结束标记
+    static final CompactBinaryCodec CODEC = new CompactBinaryCodec();
+
+    private static final int INITIAL_CAPACITY = 256; // 记录数组的初始长度（字节，3v3战斗通常不需扩容）
+
+    private final TeamTemplate templateA; // 队伍A的模板（null表示战斗开始时编码成员）
+    private final TeamTemplate templateB; // 队伍B的模板
+    private long seed;
+    private int maxRounds;
+    private int teamASize;
+    private int memberCount;
+    private byte[][] states;  // 不能使用模板数据的成员在战斗开始时的编码数据（null表示全部使用模板数据）
+    private byte[] records;   // 成员初始状态之后的全部数据（攻击、回合结束、战斗结束）
+    private int size;
+    private boolean isStarted;
+    private boolean isFinished;
+
+    /**
+     * 创建记录器，战斗开始时编码全部成员的初始状态
+     */
+    public BattleRecorder() {
+        this.templateA = null;
+        this.templateB = null;
+    }
+
+    /**
+     * 创建记录器，未被改变的成员的初始状态直接使用队伍模板的编码数据
+     * <p>
+     * 战斗的成员按模板中的顺序与模板成员对应：ID相同且自解码以来未被改变（isModified）的成员使用模板的编码数据，
+     * 其余成员（人数与模板不同、不是由模板创建或战斗开始前被治疗、改变属性、获得效果或物品等）在战斗开始时重新编码。
+     * @param teamA 队伍A的模板
+     * @param teamB 队伍B的模板
+     */
+    public BattleRecorder(TeamTemplate teamA, TeamTemplate teamB) {
+        this.templateA = Objects.requireNonNull(teamA);
+        this.templateB = Objects.requireNonNull(teamB);
+    }
+
+    void begin(Battle battle) {
+        if (isStarted) {
+            throw new IllegalStateException("回放记录器只能记录一场战斗");
+        }
+        isStarted = true;
+        records = new byte[INITIAL_CAPACITY];
+        seed = battle.getSeed();
+        maxRounds = battle.getMaxRounds();
+        teamASize = battle.teamASize();
+        LifeTrait[] members = battle.members();
+        memberCount = members.length;
+        boolean isSameSizeA = templateA != null && templateA.size() == teamASize;
+        boolean isSameSizeB = templateB != null && templateB.size() == memberCount - teamASize;
+        for (int slot = 0; slot < memberCount; slot++) {
+            boolean isTemplate = slot < teamASize
+                    ? isSameSizeA && templateA.matches(slot, members[slot])
+                    : isSameSizeB && templateB.matches(slot - teamASize, members[slot]);
+            if (!isTemplate) {
+                encodeState(slot, members[slot]);
+            }
+        }
+    }
+
+    // 立即编码不能使用模板数据的成员的初始状态
+    private void encodeState(int slot, LifeTrait member) {
+        if (states == null) {
+            states = new byte[memberCount][];
+        }
+        try {
+            CompactBinaryCodec.Output out = CODEC.newOutput();
+            out.writeObject(member);
+            states[slot] = out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法记录成员初始状态", e);
+        }
+    }
+
+    // 成员的初始状态（编码数据）
+    private byte[] state(int slot) {
+        if (states != null && states[slot] != null) {
+            return states[slot];
+        }
+        return slot < teamASize ? templateA.encoded(slot) : templateB.encoded(slot - teamASize);
+    }
+
+    void attack(int attacker, int target, boolean critical, int damage) {
+        int targetAndCritical = target << 1 | (critical ? 1 : 0);
+        int position = size;
+        byte[] data = records;
+        if ((attacker | targetAndCritical | damage) >>> 6 != 0 || position + 3 > data.length) {
+            writeAttack(attacker, targetAndCritical, damage);
+            return;
+        }
+        // 常见情况：三个整数都在0~63之间，ZigZag编码后各占1字节
+        data[position] = (byte) (attacker << 1);
+        data[position + 1] = (byte) (targetAndCritical << 1);
+        data[position + 2] = (byte) (damage << 1);
+        size = position + 3;
+    }
+
+    // 写入任意大小的攻击记录（与常见情况分开，使attack足够短小，可内联到战斗的攻击逻辑中）
+    private void writeAttack(int attacker, int targetAndCritical, int damage) {
+        if (size + 15 > records.length) {
+            grow(15);
+        }
+        writeVarInt(attacker);
+        writeVarInt(targetAndCritical);
+        writeVarInt(damage);
+    }
+
+    void endRound() {
+        if (size + 1 > records.length) {
+            grow(1);
+        }
+        records[size++] = (byte) (ROUND_END << 1 ^ ROUND_END >> 31); // ZigZag编码后为1字节
+    }
+
+    void end(Battle battle) {
+        if (size + 5 * (3 + memberCount) > records.length) {
+            grow(5 * (3 + memberCount));
+        }
+        writeVarInt(BATTLE_END);
+        writeVarInt(battle.getOutcome().ordinal());
+        writeVarInt(battle.getCurrentRound());
+        for (LifeTrait entity : battle.members()) {
+            writeVarInt(entity.getHealth());
+        }
+        isFinished = true;
+    }
+
+    // 拼接回放数据：头部、成员初始状态和记录数组中的数据（每次得到新的数组）
+    private byte[] assemble() {
+        int teamBSize = memberCount - teamASize;
+        int length = 1 + 8 + varIntLength(maxRounds) + varIntLength(teamASize) + varIntLength(teamBSize) + size;
+        if (states == null && templateA != null) {
+            length += templateA.encodedTeam().length + templateB.encodedTeam().length;
+        } else {
+            for (int slot = 0; slot < memberCount; slot++) {
+                length += state(slot).length;
+            }
+        }
+        byte[] result = new byte[length];
+        result[0] = FORMAT_VERSION;
+        for (int i = 0; i < 8; i++) {
+            result[1 + i] = (byte) (seed >>> (56 - 8 * i)); // 与CompactBinaryCodec.Output.writeLong相同（高位在前）
+        }
+        int position = writeVarInt(result, 9, maxRounds);
+        position = writeVarInt(result, position, teamASize);
+        position = writeVarInt(result, position, teamBSize);
+        if (states == null && templateA != null) {
+            // 全部成员都使用模板数据：两支队伍的成员初始状态各自连续复制
+            position = copy(templateA.encodedTeam(), result, position);
+            position = copy(templateB.encodedTeam(), result, position);
+        } else {
+            for (int slot = 0; slot < memberCount; slot++) {
+                position = copy(state(slot), result, position);
+            }
+        }
+        System.arraycopy(records, 0, result, position, size);
+        return result;
+    }
+
+    // 复制到target的position处，返回复制后的位置
+    private static int copy(byte[] source, byte[] target, int position) {
+        System.arraycopy(source, 0, target, position, source.length);
+        return position + source.length;
+    }
+
+    // 写入ZigZag变长整数（调用前需确保剩余空间不少于5字节）
+    private void writeVarInt(int value) {
+        size = writeVarInt(records, size, value);
+    }
+
+    // 写入ZigZag变长整数（与CompactBinaryCodec.Output.writeVarInt的编码相同），返回写入后的位置
+    private static int writeVarInt(byte[] data, int position, int value) {
+        int zigZag = (value << 1) ^ (value >> 31);
+        while ((zigZag & ~0x7F) != 0) {
+            data[position++] = (byte) (zigZag & 0x7F | 0x80);
+            zigZag >>>= 7;
+        }
+        data[position++] = (byte) zigZag;
+        return position;
+    }
+
+    // ZigZag变长整数的字节数
+    private static int varIntLength(int value) {
+        int zigZag = (value << 1) ^ (value >> 31);
+        return (31 - Integer.numberOfLeadingZeros(zigZag | 1)) / 7 + 1;
+    }
+
+    private void grow(int extra) {
+        records = Arrays.copyOf(records, Math.max(records.length << 1, size + extra));
+    }
+
+    /**
+     * 战斗是否已结束（记录完整）
+     */
+    public boolean isFinished() {
+        return isFinished;
+    }
+
+    /**
+     * 获取回放数据
+     * @return 回放数据（每次调用得到的数组互不影响）
+     * @throws IllegalStateException 战斗尚未结束
+     */
+    public byte[] toByteArray() {
+        if (!isFinished) {
+            throw new IllegalStateException("战斗尚未结束，回放不完整");
+        }
+        return assemble();
+    }
+
+    /**
+     * 获取回放
+     * @return 回放
+     * @throws IllegalStateException 战斗尚未结束
+     */
+    public BattleReplay toReplay() {
+        try {
+            return BattleReplay.of(toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+import io.github.Nothingness_is_everywhere.util.BinarySecureSaveUtil;
+import io.github.Nothingness_is_everywhere.util.CompactBinaryCodec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.BufferUnderflowException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 战斗回放
+ * <p>
+ * 解析BattleRecorder写入的回放数据，可按回合查看记录的攻击决策。由初始状态和种子重新进行战斗：
+ * play全速进行且不输出，stepTo进行到指定回合后暂停以便查看当时的成员状态（可设置事件接收器后继续），
+ * verify重新进行并与原记录逐回合比对，找出有争议的战斗从哪一回合开始与记录不符（如规则或效果代码已改变）。
+ * <p>
+ * 回放数据可通过save存入加密存档，load读回。
+ */
+public final class BattleReplay {
+    /**
+     * 一次攻击
+     * @param attacker 攻击者位置（队伍A在前，队伍B在后）
+     * @param target 目标位置
+     * @param critical 是否暴击
+     * @param damage 实际伤害
+     */
+    public record Action(int attacker, int target, boolean critical, int damage) {
+    }
+
+    private final byte[] data;
+    private final long seed;
+    private final int maxRounds;
+    private final int teamASize;
+    private final List<String> combatants;
+    private final int[] actions;     // 每次攻击占3个整数：攻击者、目标位置×2+暴击、实际伤害
+    private final int[] roundStarts; // 第i回合（从1开始）的攻击从actions的roundStarts[i-1]开始，最后一项为总长度
+    private final Battle.Outcome outcome;
+    private final int rounds;
+    private final int[] finalHealth;
+
+    private BattleReplay(byte[] data, long seed, int maxRounds, int teamASize, List<String> combatants,
+                         int[] actions, int[] roundStarts, Battle.Outcome outcome, int rounds, int[] finalHealth) {
+        this.data = data;
+        this.seed = seed;
+        this.maxRounds = maxRounds;
+        this.teamASize = teamASize;
+        this.combatants = combatants;
+        this.actions = actions;
+        this.roundStarts = roundStarts;
+        this.outcome = outcome;
+        this.rounds = rounds;
+        this.finalHealth = finalHealth;
+    }
+
+    /**
+     * 解析回放数据
+     * @param data 回放数据
+     * @return 回放
+     * @throws IOException 数据不完整或格式错误
+     */
+    public static BattleReplay of(byte[] data) throws IOException {
+        CompactBinaryCodec.Input in = BattleRecorder.CODEC.newInput(data);
+        try {
+            Header header = readHeader(in);
+            List<String> combatants = new ArrayList<>(header.members.size());
+            for (LifeTrait member : header.members) {
+                combatants.add(ConsoleBattleRenderer.nameOf(member));
+            }
+            int[] actions = new int[64];
+            int size = 0;
+            int[] roundStarts = new int[16];
+            int roundCount = 0;
+            roundStarts[0] = 0;
+            int count = header.members.size();
+            while (true) {
+                int token = in.readVarInt();
+                if (token == BattleRecorder.ROUND_END) {
+                    if (++roundCount == roundStarts.length) {
+                        roundStarts = Arrays.copyOf(roundStarts, roundStarts.length << 1);
+                    }
+                    roundStarts[roundCount] = size;
+                } else if (token == BattleRecorder.BATTLE_END) {
+                    break;
+                } else {
+                    int target = in.readVarInt();
+                    if (token < 0 || token >= count || target >>> 1 >= count) {
+                        throw new InvalidObjectException("回放中的成员位置超出范围");
+                    }
+                    if (size + 3 > actions.length) {
+                        actions = Arrays.copyOf(actions, actions.length << 1);
+                    }
+                    actions[size++] = token;
+                    actions[size++] = target;
+                    actions[size++] = in.readVarInt();
+                }
+            }
+            int ordinal = in.readVarInt();
+            Battle.Outcome[] outcomes = Battle.Outcome.values();
+            if (ordinal < 0 || ordinal >= outcomes.length) {
+                throw new InvalidObjectException("回放中的战斗结果无效：" + ordinal);
+            }
+            int rounds = in.readVarInt();
+            int[] finalHealth = new int[count];
+            for (int i = 0; i < count; i++) {
+                finalHealth[i] = in.readVarInt();
+            }
+            return new BattleReplay(data, header.seed, header.maxRounds, header.teamASize, List.copyOf(combatants),
+                    Arrays.copyOf(actions, size), Arrays.copyOf(roundStarts, roundCount + 1), outcomes[ordinal],
+                    rounds, finalHealth);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("回放数据不完整");
+        }
+    }
+
+    /**
+     * 从存档读取回放
+     * @param id 回放数据的唯一标识
+     * @param basePath 基础路径
+     * @return 回放
+     */
+    public static BattleReplay load(String id, String basePath) throws Exception {
+        Object stored = BinarySecureSaveUtil.get(id, basePath);
+        if (!(stored instanceof byte[] bytes)) {
+            throw new InvalidObjectException("存档中的对象不是战斗回放：" + id);
+        }
+        return of(bytes);
+    }
+
+    /**
+     * 存入存档
+     * @param basePath 基础路径
+     * @return 生成的唯一ID
+     */
+    public String save(String basePath) throws Exception {
+        return BinarySecureSaveUtil.add(data, basePath);
+    }
+
+    /**
+     * 获取回放数据
+     * @return 回放数据的副本
+     */
+    public byte[] toByteArray() {
+        return data.clone();
+    }
+
+    /**
+     * 获取战斗种子
+     */
+    public long getSeed() { return seed; }
+
+    /**
+     * 获取最大回合数（0=不限）
+     */
+    public int getMaxRounds() { return maxRounds; }
+
+    /**
+     * 获取成员名称
+     * @return 成员名称（队伍A在前，队伍B在后）
+     */
+    public List<String> getCombatants() { return combatants; }
+
+    /**
+     * 获取队伍A人数（成员位置小于该值的属于队伍A）
+     */
+    public int getTeamASize() { return teamASize; }
+
+    /**
+     * 获取记录的战斗结果
+     */
+    public Battle.Outcome getOutcome() { return outcome; }
+
+    /**
+     * 获取战斗进行的回合数
+     */
+    public int getRounds() { return rounds; }
+
+    /**
+     * 获取成员的最终生命值
+     * @return 最终生命值（与成员名称对应）
+     */
+    public int[] getFinalHealth() { return finalHealth.clone(); }
+
+    /**
+     * 获取指定回合记录的攻击
+     * @param round 回合数（从1开始）
+     * @return 按发生顺序排列的攻击
+     */
+    public List<Action> getActions(int round) {
+        if (round < 1 || round >= roundStarts.length) {
+            throw new IllegalArgumentException("回合数超出范围：" + round);
+        }
+        List<Action> result = new ArrayList<>();
+        for (int i = roundStarts[round - 1]; i < roundStarts[round]; i += 3) {
+            result.add(new Action(actions[i], actions[i + 1] >>> 1, (actions[i + 1] & 1) != 0, actions[i + 2]));
+        }
+        return result;
+    }
+
+    /**
+     * 由初始状态和种子创建一场尚未开始的战斗（成员为新解码的对象，不输出任何内容）
+     * @return 战斗
+     */
+    public Battle newBattle() throws IOException {
+        Header header;
+        try {
+            header = readHeader(BattleRecorder.CODEC.newInput(data));
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("回放数据不完整");
+        }
+        List<LifeTrait> members = header.members;
+        Battle battle = new Battle(members.subList(0, header.teamASize),
+                members.subList(header.teamASize, members.size()), header.seed);
+        battle.setMaxRounds(header.maxRounds);
+        battle.setEventSink(BattleEventSink.NONE);
+        return battle;
+    }
+
+    /**
+     * 全速重新进行整场战斗（不输出）
+     * @return 已结束的战斗
+     */
+    public Battle play() throws IOException {
+        Battle battle = newBattle();
+        battle.startBattle();
+        return battle;
+    }
+
+    /**
+     * 重新进行到指定回合结束后暂停
+     * @param round 回合数（0表示只进行偷袭回合）
+     * @return 暂停的战斗，可调用playUntil继续
+     */
+    public Battle stepTo(int round) throws IOException {
+        Battle battle = newBattle();
+        battle.playUntil(round);
+        return battle;
+    }
+
+    /**
+     * 重新进行整场战斗并与记录逐回合比对
+     * @return 第一个与记录不符的回合（-1表示完全一致；结果或最终生命值不符时为最后一回合之后）
+     */
+    public int verify() throws IOException {
+        Battle battle = newBattle();
+        BattleRecorder recorder = new BattleRecorder();
+        battle.setRecorder(recorder);
+        battle.startBattle();
+        byte[] replayed = recorder.toByteArray();
+        if (Arrays.equals(replayed, data)) {
+            return -1;
+        }
+        BattleReplay other = of(replayed);
+        int common = Math.min(roundStarts.length, other.roundStarts.length) - 1;
+        for (int round = 1; round <= common; round++) {
+            if (!Arrays.equals(actions, roundStarts[round - 1], roundStarts[round],
+                    other.actions, other.roundStarts[round - 1], other.roundStarts[round])) {
+                return round;
+            }
+        }
+        return common + 1;
+    }
+
+    // 回放数据头部：种子、最大回合数和新解码的成员
+    private record Header(long seed, int maxRounds, int teamASize, List<LifeTrait> members) {
+    }
+
+    private static Header readHeader(CompactBinaryCodec.Input in) throws IOException {
+        int version = in.readByte();
+        if (version < 1 || version > BattleRecorder.FORMAT_VERSION) {
+            throw new InvalidObjectException("不支持的回放格式版本：" + version);
+        }
+        long seed = in.readLong();
+        int maxRounds = in.readVarInt();
+        int teamASize = in.readVarInt();
+        int teamBSize = in.readVarInt();
+        if (teamASize < 0 || teamBSize < 0) {
+            throw new InvalidObjectException("回放中的队伍人数无效");
+        }
+        List<LifeTrait> members = new ArrayList<>(teamASize + teamBSize);
+        for (int i = 0; i < teamASize + teamBSize; i++) {
+            Object member = in.readObject();
+            if (!(member instanceof LifeTrait)) {
+                throw new InvalidObjectException("回放中的成员不是生命实体");
+            }
+            members.add((LifeTrait) member);
+        }
+        return new Header(seed, maxRounds, teamASize, members);
+    }
+}
@@ -0,0 +1,238 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * 无界面战斗模拟（用于数值平衡测试）
+ * <p>
+ * 在ForkJoin线程池上并行进行大量战斗：每场战斗由队伍模板创建新的成员，战斗和成员的事件都交给丢弃全部事件的接收器；
+ * 每个工作任务使用从根随机数拆分出的独立随机数（SplittableRandom）为每场战斗生成战斗种子，线程之间不竞争共享种子，
+ * 同一根种子得到相同的报告（与线程数无关）。
+ * <p>
+ * 报告双方胜率、回合数分布、各成员攻击造成的平均伤害和每秒战斗场数。
+ */
+public final class BattleSimulator {
+    private static final int LEAF_BATTLES = 1024; // 工作任务不再拆分的战斗场数
+
+    private BattleSimulator() {
+    }
+
+    /**
+     * 模拟报告
+     * @param battles 战斗场数
+     * @param teamAWins 队伍A获胜场数
+     * @param teamBWins 队伍B获胜场数
+     * @param draws 平局场数（达到最大回合数）
+     * @param rounds 回合数分布（下标为回合数，值为场数）
+     * @param combatants 成员名称（队伍A在前，队伍B在后）
+     * @param damageDealt 各成员攻击造成的伤害合计（与成员名称对应）
+     * @param nanos 耗时（纳秒）
+     */
+    public record Report(long battles, long teamAWins, long teamBWins, long draws, long[] rounds,
+                         List<String> combatants, long[] damageDealt, long nanos) {
+        /**
+         * 队伍A胜率
+         */
+        public double teamAWinRate() {
+            return battles == 0 ? 0 : (double) teamAWins / battles;
+        }
+
+        /**
+         * 队伍B胜率
+         */
+        public double teamBWinRate() {
+            return battles == 0 ? 0 : (double) teamBWins / battles;
+        }
+
+        /**
+         * 平局率
+         */
+        public double drawRate() {
+            return battles == 0 ? 0 : (double) draws / battles;
+        }
+
+        /**
+         * 平均回合数
+         */
+        public double averageRounds() {
+            long total = 0;
+            for (int round = 0; round < rounds.length; round++) {
+                total += round * rounds[round];
+            }
+            return battles == 0 ? 0 : (double) total / battles;
+        }
+
+        /**
+         * 回合数分位数
+         * @param quantile 分位（0-1，如0.5为中位数）
+         * @return 至少该比例的战斗在此回合数内结束
+         */
+        public int roundQuantile(double quantile) {
+            long threshold = (long) Math.ceil(quantile * battles);
+            long cumulative = 0;
+            for (int round = 0; round < rounds.length; round++) {
+                cumulative += rounds[round];
+                if (cumulative >= threshold && cumulative > 0) {
+                    return round;
+                }
+            }
+            return rounds.length - 1;
+        }
+
+        /**
+         * 成员平均每场攻击造成的伤害
+         * @param combatant 成员位置（与成员名称对应）
+         */
+        public double averageDamage(int combatant) {
+            return battles == 0 ? 0 : (double) damageDealt[combatant] / battles;
+        }
+
+        /**
+         * 每秒战斗场数
+         */
+        public double battlesPerSecond() {
+            return nanos == 0 ? 0 : battles / (nanos / 1e9);
+        }
+    }
+
+    /**
+     * 并行模拟
+     * @param teamA 队伍A的模板（每次调用返回一组新成员，会被多个工作线程同时调用）
+     * @param teamB 队伍B的模板
+     * @param battles 战斗场数
+     * @param maxRounds 每场的最大回合数，达到后记为平局
+     * @param seed 根随机数种子
+     * @param pool 工作线程池
+     * @return 模拟报告
+     */
+    public static Report simulate(Supplier<? extends List<? extends LifeTrait>> teamA,
+                                  Supplier<? extends List<? extends LifeTrait>> teamB,
+                                  long battles, int maxRounds, long seed, ForkJoinPool pool) {
+        if (battles < 0) {
+            throw new IllegalArgumentException("战斗场数不能为负数：" + battles);
+        }
+        if (maxRounds <= 0) {
+            throw new IllegalArgumentException("最大回合数必须为正数：" + maxRounds);
+        }
+        List<String> combatants = new ArrayList<>();
+        teamA.get().forEach(entity -> combatants.add(ConsoleBattleRenderer.nameOf(entity)));
+        teamB.get().forEach(entity -> combatants.add(ConsoleBattleRenderer.nameOf(entity)));
+        long start = System.nanoTime();
+        Partial result = pool.invoke(new Simulation(teamA, teamB, 0, battles, maxRounds, combatants.size(),
+                new SplittableRandom(seed)));
+        long nanos = System.nanoTime() - start;
+        return new Report(battles, result.teamAWins, result.teamBWins, result.draws, result.rounds,
+                List.copyOf(combatants), result.damageDealt, nanos);
+    }
+
+    /**
+     * 由模板对象创建队伍模板：模板先用紧凑编码写入一次，每次调用解码出一组新成员（成员ID与模板相同）
+     * @param templates 模板成员（未注册的类型以内嵌Java序列化数据复制，需可序列化）
+     * @return 队伍模板（见TeamTemplate）
+     */
+    public static TeamTemplate copies(List<? extends LifeTrait> templates) {
+        return TeamTemplate.of(templates);
+    }
+
+    // 工作任务的统计结果
+    private static final class Partial {
+        private long teamAWins;
+        private long teamBWins;
+        private long draws;
+        private final long[] rounds;
+        private final long[] damageDealt;
+
+        Partial(int maxRounds, int combatants) {
+            this.rounds = new long[maxRounds + 1];
+            this.damageDealt = new long[combatants];
+        }
+
+        void add(Battle battle) {
+            switch (battle.getOutcome()) {
+                case TEAM_A -> teamAWins++;
+                case TEAM_B -> teamBWins++;
+                case DRAW -> draws++;
+            }
+            rounds[battle.getCurrentRound()]++;
+            int[] damage = battle.getDamageDealt();
+            if (damage.length != damageDealt.length) {
+                throw new IllegalStateException("队伍模板返回的成员数不一致");
+            }
+            for (int i = 0; i < damage.length; i++) {
+                damageDealt[i] += damage[i];
+            }
+        }
+
+        Partial append(Partial other) {
+            teamAWins += other.teamAWins;
+            teamBWins += other.teamBWins;
+            draws += other.draws;
+            for (int i = 0; i < rounds.length; i++) {
+                rounds[i] += other.rounds[i];
+            }
+            for (int i = 0; i < damageDealt.length; i++) {
+                damageDealt[i] += other.damageDealt[i];
+            }
+            return this;
+        }
+    }
+
+    private static final class Simulation extends RecursiveTask<Partial> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final Supplier<? extends List<? extends LifeTrait>> teamA;
+        private final Supplier<? extends List<? extends LifeTrait>> teamB;
+        private final long from;
+        private final long to;
+        private final int maxRounds;
+        private final int combatants;
+        private final SplittableRandom random;
+
+        Simulation(Supplier<? extends List<? extends LifeTrait>> teamA,
+                   Supplier<? extends List<? extends LifeTrait>> teamB,
+                   long from, long to, int maxRounds, int combatants, SplittableRandom random) {
+            this.teamA = teamA;
+            this.teamB = teamB;
+            this.from = from;
+            this.to = to;
+            this.maxRounds = maxRounds;
+            this.combatants = combatants;
+            this.random = random;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= LEAF_BATTLES) {
+                Partial result = new Partial(maxRounds, combatants);
+                for (long i = from; i < to; i++) {
+                    result.add(run());
+                }
+                return result;
+            }
+            long middle = (from + to) >>> 1;
+            // 拆分在fork之前完成，同一种子得到的随机数划分与线程调度无关
+            Simulation left = new Simulation(teamA, teamB, from, middle, maxRounds, combatants, random.split());
+            left.fork();
+            Partial right = new Simulation(teamA, teamB, middle, to, maxRounds, combatants, random).compute();
+            return left.join().append(right);
+        }
+
+        private Battle run() {
+            Battle battle = new Battle(new ArrayList<>(teamA.get()), new ArrayList<>(teamB.get()),
+                    random.nextLong());
+            battle.setEventSink(BattleEventSink.NONE);
+            battle.setMaxRounds(maxRounds);
+            battle.startBattle();
+            return battle;
+        }
+    }
+}
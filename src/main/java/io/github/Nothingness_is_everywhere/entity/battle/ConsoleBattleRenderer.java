@@ -0,0 +1,113 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.base.BaseEntity;
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 控制台渲染器
+ * <p>
+ * 把战斗事件渲染为原先直接输出的战斗信息文字，事件到达时在发布线程上同步输出。
+ */
+public final class ConsoleBattleRenderer implements BattleEventSink {
+    /**
+     * 输出到System.out（每次输出时取当前的System.out）
+     */
+    public static final ConsoleBattleRenderer STDOUT = new ConsoleBattleRenderer(null);
+
+    private final PrintStream out;
+
+    /**
+     * @param out 输出流（null表示System.out）
+     */
+    public ConsoleBattleRenderer(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void publish(BattleEvent event) {
+        (out != null ? out : System.out).print(render(event));
+    }
+
+    /**
+     * 渲染事件（与控制台输出的文字相同，含换行）
+     * @param event 事件
+     * @return 文字
+     */
+    public static String render(BattleEvent event) {
+        if (event instanceof BattleEvent.Attack e) {
+            return String.format("%s攻击了%s，造成%d点伤害！%n", nameOf(e.attacker()), nameOf(e.target()), e.damage());
+        }
+        if (event instanceof BattleEvent.Damage e) {
+            return String.format("%s受到%d点伤害，剩余生命值：%d%n", nameOf(e.target()), e.amount(), e.health());
+        }
+        if (event instanceof BattleEvent.Critical) {
+            return "[暴击！] ";
+        }
+        if (event instanceof BattleEvent.Heal e) {
+            return e.source() == null
+                    ? String.format("%s恢复了%d点生命值，当前生命值：%d%n", nameOf(e.target()), e.amount(), e.health())
+                    : String.format("%s通过使用了%s恢复了%d点生命值，剩余生命值：%d%n", nameOf(e.target()), e.source(),
+                    e.amount(), e.health());
+        }
+        if (event instanceof BattleEvent.Death e) {
+            return String.format("%s已死亡%n", nameOf(e.target()));
+        }
+        if (event instanceof BattleEvent.EffectApplied e) {
+            return String.format("%s获得了效果：Lv%d【%s】%n", nameOf(e.target()), e.level(), e.effect());
+        }
+        if (event instanceof BattleEvent.EffectStacked e) {
+            return String.format("%s的效果【%s】叠加一层，当前层数：%d，持续时间：%d%n", nameOf(e.target()), e.effect(),
+                    e.stackCount(), e.duration());
+        }
+        if (event instanceof BattleEvent.EffectResisted e) {
+            return String.format("%s未能成功获得效果：Lv%d【%s】%n", nameOf(e.target()), e.level(), e.effect());
+        }
+        if (event instanceof BattleEvent.EffectExpired e) {
+            return String.format("%s失去了效果：Lv%d【%s】%n", nameOf(e.target()), e.level(), e.effect());
+        }
+        if (event instanceof BattleEvent.ItemFailed e) {
+            return String.format("%s已死亡，无法使用%s%n", nameOf(e.user()), e.item());
+        }
+        if (event instanceof BattleEvent.TurnOrder e) {
+            return String.format("\n出手顺序：%s%n", names(e.order(), " -> ", "", ""));
+        }
+        if (event instanceof BattleEvent.RoundStart e) {
+            return e.round() == 0
+                    ? String.format("\n===== 第0回合（偷袭） =====%n")
+                    : String.format("%n===== 第%d回合 =====\n\n===== 持续效果触发 =====%n", e.round());
+        }
+        if (event instanceof BattleEvent.BattleStart e) {
+            return String.format("===== 战斗开始 =====%n队伍A参战成员：%s%n队伍B参战成员：%s%n",
+                    names(e.teamA(), "、", "[", "]"), names(e.teamB(), "、", "[", "]"));
+        }
+        if (event instanceof BattleEvent.BattleEnd e) {
+            String result = switch (e.outcome()) {
+                case TEAM_A -> "队伍A获胜！";
+                case TEAM_B -> "队伍B获胜！";
+                case DRAW -> "达到最大回合数，平局！";
+            };
+            return String.format("\n===== 战斗结束 =====%n%s%n存活成员：%n队伍A：%s%n队伍B：%s%n", result,
+                    names(e.survivorsA(), "、", "[", "]"), names(e.survivorsB(), "、", "[", "]"));
+        }
+        return event + System.lineSeparator();
+    }
+
+    /**
+     * 获取成员名称
+     * @param entity 成员
+     * @return 名称
+     */
+    public static String nameOf(LifeTrait entity) {
+        return entity instanceof BaseEntity base ? base.getName() : String.valueOf(entity);
+    }
+
+    private static String names(List<LifeTrait> entities, String delimiter, String prefix, String suffix) {
+        return entities.stream()
+                .map(ConsoleBattleRenderer::nameOf)
+                .collect(Collectors.joining(delimiter, prefix, suffix));
+    }
+}
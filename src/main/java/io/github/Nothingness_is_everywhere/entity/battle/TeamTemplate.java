@@ -0,0 +1,102 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.base.BaseEntity;
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+import io.github.Nothingness_is_everywhere.util.CompactBinaryCodec;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 队伍模板
+ * <p>
+ * 模板成员用紧凑编码写入一次，每次调用get解码出一组新成员（成员ID与模板相同）。
+ * 由模板新创建、尚未改变的成员进行战斗时，回放记录器直接引用模板的编码数据作为成员的初始状态，
+ * 不必在每场战斗开始时重新编码（见BattleRecorder(TeamTemplate, TeamTemplate)）；
+ * 成员是否改变由BaseEntity.isModified判断。
+ */
+public final class TeamTemplate implements Supplier<List<LifeTrait>> {
+    private final List<byte[]> encoded; // 各成员的编码数据（与回放中的成员初始状态格式相同）
+    private final String[] ids;         // 各成员的ID（不是BaseEntity的成员为null）
+    private final byte[] encodedTeam;   // 全部成员的编码数据依次拼接（即回放中这支队伍的成员初始状态）
+
+    private TeamTemplate(List<byte[]> encoded, String[] ids) {
+        this.encoded = encoded;
+        this.ids = ids;
+        this.encodedTeam = new byte[encoded.stream().mapToInt(data -> data.length).sum()];
+        int position = 0;
+        for (byte[] data : encoded) {
+            System.arraycopy(data, 0, encodedTeam, position, data.length);
+            position += data.length;
+        }
+    }
+
+    /**
+     * 由模板对象创建队伍模板
+     * @param templates 模板成员（未注册的类型以内嵌Java序列化数据复制，需可序列化）
+     * @return 队伍模板
+     */
+    public static TeamTemplate of(List<? extends LifeTrait> templates) {
+        List<byte[]> encoded = new ArrayList<>(templates.size());
+        String[] ids = new String[templates.size()];
+        try {
+            for (LifeTrait template : templates) {
+                CompactBinaryCodec.Output out = BattleRecorder.CODEC.newOutput();
+                out.writeObject(template);
+                encoded.add(out.toByteArray());
+                ids[encoded.size() - 1] = template instanceof BaseEntity base ? base.getId() : null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new TeamTemplate(List.copyOf(encoded), ids);
+    }
+
+    /**
+     * 解码出一组新成员（可被多个线程同时调用）
+     * @return 新成员列表
+     */
+    @Override
+    public List<LifeTrait> get() {
+        List<LifeTrait> team = new ArrayList<>(encoded.size());
+        try {
+            for (byte[] data : encoded) {
+                Object member = BattleRecorder.CODEC.newInput(data).readObject();
+                if (!(member instanceof LifeTrait)) {
+                    throw new InvalidObjectException("队伍模板中的成员不是生命实体");
+                }
+                team.add((LifeTrait) member);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法复制队伍模板", e);
+        }
+        return team;
+    }
+
+    /**
+     * 成员数
+     */
+    public int size() {
+        return encoded.size();
+    }
+
+    // 第index个成员的编码数据（不可修改）
+    byte[] encoded(int index) {
+        return encoded.get(index);
+    }
+
+    // 全部成员的编码数据依次拼接（不可修改）
+    byte[] encodedTeam() {
+        return encodedTeam;
+    }
+
+    // 成员是否由第index个模板成员创建且未被改变（按ID和isModified判断，不是BaseEntity时无法判断）
+    boolean matches(int index, LifeTrait member) {
+        String id = ids[index];
+        return id != null && member instanceof BaseEntity base && !base.isModified() && id.equals(base.getId());
+    }
+}
@@ -1,36 +1,46 @@
 package io.github.Nothingness_is_everywhere.entity.item.consumable;
 
 import io.github.Nothingness_is_everywhere.entity.base.BaseEntity;
+import io.github.Nothingness_is_everywhere.entity.battle.BattleEvent;
 import io.github.Nothingness_is_everywhere.entity.item.ItemTrait;
 import io.github.Nothingness_is_everywhere.entity.item.ItemType;
 import io.github.Nothingness_is_everywhere.entity.life.AbstractLife;
+import io.github.Nothingness_is_everywhere.util.CompactBinaryCodec;
+
+import java.io.IOException;
+import java.io.Serial;
 
 /**
  * 治疗药水（消耗品类物品）
  */
 public class HealingPotion extends BaseEntity implements ItemTrait {
     private int healAmount; // 基础治疗量
+    @Serial
+    private static final long serialVersionUID = 8790504658723919904L; // 与早期存档的默认序列化版本号保持一致
+    private static final int STATE_VERSION = 1; // 紧凑编码结构版本
 
     public HealingPotion(int healAmount) {
         super("治疗药水", "恢复生命值的红色药剂", 0, 0, 0);
         this.healAmount = Math.max(1, healAmount); // 确保治疗量为正数
     }
 
-    // 使用效果：立即恢复生命值 + 附加持续恢复buff
+    /**
+     * 解码构造器：读取writeState写入的药水状态（由CompactBinaryCodec调用）
+     * @param in 输入
+     */
+    public HealingPotion(CompactBinaryCodec.Input in) throws IOException {
+        super(in);
+        in.readVersion(STATE_VERSION, HealingPotion.class);
+        this.healAmount = in.readVarInt();
+    }
+
+    // 使用效果：立即恢复生命值（事件中带有药水名称）
     @Override
     public void use(AbstractLife target) {
         if (target.isAlive()) {
-            // 立即治疗
-            target.setIsInformation(false);
-            target.heal(healAmount);
-            System.out.printf("%s通过使用了治疗药水恢复了%d点生命值，剩余生命值：%d%n",
-                    target.getName(), healAmount, target.getHealth());
-            target.setIsInformation(true);
-            // 附加持续恢复buff（3回合，每回合恢复5点）
-            System.out.printf("%s使用了%s，额外获得3回合持续恢复效果%n", target.getName(), getName());
-
+            target.heal(healAmount, getName());
         } else {
-            System.out.println("目标已死亡，无法使用治疗药水");
+            target.getEventSink().publish(new BattleEvent.ItemFailed(target, getName()));
         }
     }
 
@@ -49,6 +59,13 @@ public class HealingPotion extends BaseEntity implements ItemTrait {
         return ItemType.CONSUMABLE;
     }
 
+    @Override
+    public void writeState(CompactBinaryCodec.Output out) throws IOException {
+        super.writeState(out);
+        out.writeVersion(STATE_VERSION);
+        out.writeVarInt(healAmount);
+    }
+
     @Override
     public String showInfo() {
         return String.format("【%s】：%s，恢复%d点生命，重量%dg",
@@ -1,15 +1,25 @@
 package io.github.Nothingness_is_everywhere.entity.life;
 
 import io.github.Nothingness_is_everywhere.entity.base.BaseEntity;
+import io.github.Nothingness_is_everywhere.entity.battle.BattleEvent;
+import io.github.Nothingness_is_everywhere.entity.battle.BattleEventSink;
+import io.github.Nothingness_is_everywhere.entity.battle.ConsoleBattleRenderer;
 import io.github.Nothingness_is_everywhere.entity.item.ItemTrait;
 import io.github.Nothingness_is_everywhere.entity.nonEntities.persistent.AbstractPersistentEffect;
+import io.github.Nothingness_is_everywhere.util.CompactBinaryCodec;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serial;
 import java.util.List;
 import java.util.Map;
 
 /**
  * 生命实体基础类
  * 实现LifeTrait接口，封装生命实体的通用属性和行为
+ * <p>
+ * 受伤、恢复、获得和失去效果等战斗信息以事件形式发布（见BattleEvent），
+ * 未指定事件接收器时按isInformation渲染到控制台或丢弃。
  */
 public abstract class AbstractLife extends BaseEntity implements LifeTrait {
     protected int health;             // 当前生命值
@@ -22,7 +32,11 @@ public abstract class AbstractLife extends BaseEntity implements LifeTrait {
     protected double critRate;        // 暴击率（默认5%）
     protected double antiCritRate;    // 防爆率（默认5%）
     private List<AbstractPersistentEffect> activeEffects; // 当前激活的效果列表
-    private boolean isInformation = true; // 控制是否输出战斗信息
+    private boolean isInformation = true; // 控制是否输出战斗信息（未指定事件接收器时生效）
+    private transient BattleEventSink eventSink; // 事件接收器（null表示按isInformation决定）
+    @Serial
+    private static final long serialVersionUID = 5916128447598005337L; // 与早期存档的默认序列化版本号保持一致
+    private static final int STATE_VERSION = 1; // 紧凑编码结构版本
 
     public AbstractLife(String name, String description, int x, int y, int z,
                         int constitution, int strength, int intelligence) {
@@ -40,6 +54,34 @@ public abstract class AbstractLife extends BaseEntity implements LifeTrait {
         this.isInformation = true;
     }
 
+    /**
+     * 解码构造器：读取writeState写入的生命体状态（见CompactSerializable）
+     * @param in 输入
+     */
+    protected AbstractLife(CompactBinaryCodec.Input in) throws IOException {
+        super(in);
+        in.readVersion(STATE_VERSION, AbstractLife.class);
+        this.health = in.readVarInt();
+        this.constitution = in.readVarInt();
+        this.strength = in.readVarInt();
+        this.intelligence = in.readVarInt();
+        this.speed = in.readVarInt();
+        this.physicalDefense = in.readVarInt();
+        this.magicDefense = in.readVarInt();
+        this.critRate = in.readDouble();
+        this.antiCritRate = in.readDouble();
+        this.isInformation = in.readBoolean();
+        int effectCount = in.readVarInt();
+        this.activeEffects = new java.util.ArrayList<>(effectCount);
+        for (int i = 0; i < effectCount; i++) {
+            Object effect = in.readObject();
+            if (!(effect instanceof AbstractPersistentEffect)) {
+                throw new InvalidObjectException("效果列表中存在非效果对象");
+            }
+            activeEffects.add((AbstractPersistentEffect) effect);
+        }
+    }
+
     // 生命值操作实现
     @Override
     public int getHealth() { return health; }
@@ -47,17 +89,17 @@ public abstract class AbstractLife extends BaseEntity implements LifeTrait {
     @Override
     public void setHealth(int health) {
         this.health = Math.max(0, Math.min(health, constitution * 10));
+        markModified();
     }
 
     @Override
     public void damage(int amount) {
         if (isAlive()) {
+            BattleEventSink sink = getEventSink();
             setHealth(health - amount);
-            if (isInformation) {
-                System.out.printf("%s受到%d点伤害，剩余生命值：%d%n", getName(), amount, health);
-            }
+            sink.publish(new BattleEvent.Damage(this, amount, health));
             if (!isAlive()) {
-                System.out.printf("%s已死亡%n", getName());
+                sink.publish(new BattleEvent.Death(this));
                 clearEffects(); // 死亡时清除所有效果
             }
         }
@@ -65,11 +107,18 @@ public abstract class AbstractLife extends BaseEntity implements LifeTrait {
 
     @Override
     public void heal(int amount) {
+        heal(amount, null);
+    }
+
+    /**
+     * 恢复生命值
+     * @param amount 恢复量
+     * @param source 来源物品名称（null表示效果等其他来源）
+     */
+    public void heal(int amount, String source) {
         if (isAlive()) {
             setHealth(health + amount);
-            if (isInformation) {
-                System.out.printf("%s恢复了%d点生命值，当前生命值：%d%n", getName(), amount, health);
-            }
+            getEventSink().publish(new BattleEvent.Heal(this, amount, health, source));
         }
     }
 
@@ -81,25 +130,28 @@ public abstract class AbstractLife extends BaseEntity implements LifeTrait {
     @Override
     public void addEffect(AbstractPersistentEffect effect) {
         if (!effect.isAddedSuccessfully(this)) {
-            System.out.printf("%s未能成功获得效果：Lv%d【%s】%n", getName(), effect.getLevel(), effect.getName());
+            getEventSink().publish(new BattleEvent.EffectResisted(this, effect.getName(), effect.getLevel()));
             return;
         }
         if (activeEffects.contains(effect)) {
             AbstractPersistentEffect existingEffect = activeEffects.get(activeEffects.indexOf(effect));
             existingEffect.stack(5);
             existingEffect.setDuration(Math.max(existingEffect.getDuration(), effect.getDuration()));
-            System.out.printf("%s的效果【%s】叠加一层，当前层数：%d，持续时间：%d%n", getName(), effect.getName(),
-                    existingEffect.getStackCount(), existingEffect.getDuration());
+            markModified();
+            getEventSink().publish(new BattleEvent.EffectStacked(this, effect.getName(),
+                    existingEffect.getStackCount(), existingEffect.getDuration()));
             return;
         }
         activeEffects.add(effect);
-        System.out.printf("%s获得了效果：Lv%d【%s】%n", getName(), effect.getLevel(), effect.getName());
+        markModified();
+        getEventSink().publish(new BattleEvent.EffectApplied(this, effect.getName(), effect.getLevel()));
     }
 
     @Override
     public void removeEffect(AbstractPersistentEffect effect) {
         if (activeEffects.remove(effect)) {
-            System.out.printf("%s失去了效果：Lv%d【%s】%n", getName(), effect.getLevel(), effect.getName());
+            markModified();
+            getEventSink().publish(new BattleEvent.EffectExpired(this, effect.getName(), effect.getLevel()));
         }
     }
 
@@ -160,7 +212,7 @@ public abstract class AbstractLife extends BaseEntity implements LifeTrait {
         if (isAlive()) {
             item.use(this);
         } else {
-            System.out.println("无法使用物品：实体已死亡");
+            getEventSink().publish(new BattleEvent.ItemFailed(this, item.getName()));
         }
     }
 
@@ -173,13 +225,90 @@ public abstract class AbstractLife extends BaseEntity implements LifeTrait {
         });
     }
 
+    @Override
+    public void writeState(CompactBinaryCodec.Output out) throws IOException {
+        super.writeState(out);
+        out.writeVersion(STATE_VERSION);
+        out.writeVarInt(health);
+        out.writeVarInt(constitution);
+        out.writeVarInt(strength);
+        out.writeVarInt(intelligence);
+        out.writeVarInt(speed);
+        out.writeVarInt(physicalDefense);
+        out.writeVarInt(magicDefense);
+        out.writeDouble(critRate);
+        out.writeDouble(antiCritRate);
+        out.writeBoolean(isInformation);
+        out.writeVarInt(activeEffects.size());
+        for (AbstractPersistentEffect effect : activeEffects) {
+            out.writeObject(effect);
+        }
+    }
+
+    /**
+     * 自创建或解码以来是否改变过会写入编码的状态（包括效果自身的状态）
+     * @return 是否改变过
+     */
+    @Override
+    public boolean isModified() {
+        if (super.isModified()) {
+            return true;
+        }
+        for (AbstractPersistentEffect effect : activeEffects) {
+            if (effect.isModified()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // 设置属性（提供修改途径）
-    public void setStrength(int strength) { this.strength = Math.max(1, strength); }
-    public void setIntelligence(int intelligence) { this.intelligence = Math.max(1, intelligence); }
-    public void setSpeed(int speed) { this.speed = Math.max(1, speed); }
-    public void setPhysicalDefense(int physicalDefense) { this.physicalDefense = Math.max(0, physicalDefense); }
-    public void setMagicDefense(int magicDefense) { this.magicDefense = Math.max(0, magicDefense); }
-    public void setCritRate(double critRate) { this.critRate = Math.max(0, Math.min(100, critRate)); }
-    public void setAntiCritRate(double antiCritRate) { this.antiCritRate = Math.max(0, Math.min(100, antiCritRate)); }
-    public void setIsInformation(boolean information) { this.isInformation = information; }
+    public void setStrength(int strength) {
+        this.strength = Math.max(1, strength);
+        markModified();
+    }
+    public void setIntelligence(int intelligence) {
+        this.intelligence = Math.max(1, intelligence);
+        markModified();
+    }
+    public void setSpeed(int speed) {
+        this.speed = Math.max(1, speed);
+        markModified();
+    }
+    public void setPhysicalDefense(int physicalDefense) {
+        this.physicalDefense = Math.max(0, physicalDefense);
+        markModified();
+    }
+    public void setMagicDefense(int magicDefense) {
+        this.magicDefense = Math.max(0, magicDefense);
+        markModified();
+    }
+    public void setCritRate(double critRate) {
+        this.critRate = Math.max(0, Math.min(100, critRate));
+        markModified();
+    }
+    public void setAntiCritRate(double antiCritRate) {
+        this.antiCritRate = Math.max(0, Math.min(100, antiCritRate));
+        markModified();
+    }
+    public void setIsInformation(boolean information) {
+        this.isInformation = information;
+        this.eventSink = null;
+        markModified();
+    }
+
+    /**
+     * 获取事件接收器
+     * @return 指定的接收器；未指定时按isInformation返回控制台渲染器或丢弃全部事件的接收器
+     */
+    public BattleEventSink getEventSink() {
+        BattleEventSink sink = eventSink;
+        if (sink != null) {
+            return sink;
+        }
+        return isInformation ? ConsoleBattleRenderer.STDOUT : BattleEventSink.NONE;
+    }
+
+    @Override
+    public void setEventSink(BattleEventSink sink) { this.eventSink = sink; }
 }
\ No newline at end of file
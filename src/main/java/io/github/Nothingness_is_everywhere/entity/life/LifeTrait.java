@@ -1,5 +1,6 @@
 package io.github.Nothingness_is_everywhere.entity.life;
 
+import io.github.Nothingness_is_everywhere.entity.battle.BattleEventSink;
 import io.github.Nothingness_is_everywhere.entity.item.ItemTrait;
 import io.github.Nothingness_is_everywhere.entity.nonEntities.persistent.AbstractPersistentEffect;
 
@@ -35,4 +36,5 @@ public interface LifeTrait {
     void addEffect(AbstractPersistentEffect effect);
     void removeEffect(AbstractPersistentEffect effect);
     void setIsInformation(boolean information);
+    void setEventSink(BattleEventSink sink); // 指定战斗事件接收器（null表示按isInformation输出到控制台或丢弃）
 }
\ No newline at end of file
@@ -1,6 +1,12 @@
 package io.github.Nothingness_is_everywhere.entity.life;
 
+import io.github.Nothingness_is_everywhere.entity.base.BaseEntity;
 import io.github.Nothingness_is_everywhere.entity.item.ItemTrait;
+import io.github.Nothingness_is_everywhere.util.CompactBinaryCodec;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serial;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,6 +17,9 @@ import java.util.Map;
 public class Player extends AbstractLife {
     private double luck;                 // 幸运值（影响掉落、暴击等概率）
     private final Map<ItemTrait, Integer> inventory; // 物品栏（物品 -> 数量）
+    @Serial
+    private static final long serialVersionUID = -7803887988699503976L; // 与早期存档的默认序列化版本号保持一致
+    private static final int STATE_VERSION = 1;      // 紧凑编码结构版本
 
 
     /**
@@ -28,6 +37,25 @@ public class Player extends AbstractLife {
         this.inventory = new HashMap<>();
     }
 
+    /**
+     * 解码构造器：读取writeState写入的玩家状态（由CompactBinaryCodec调用）
+     * @param in 输入
+     */
+    public Player(CompactBinaryCodec.Input in) throws IOException {
+        super(in);
+        in.readVersion(STATE_VERSION, Player.class);
+        this.luck = in.readDouble();
+        int itemCount = in.readVarInt();
+        this.inventory = new HashMap<>();
+        for (int i = 0; i < itemCount; i++) {
+            Object item = in.readObject();
+            if (!(item instanceof ItemTrait)) {
+                throw new InvalidObjectException("物品栏中存在非物品对象");
+            }
+            inventory.put((ItemTrait) item, in.readVarInt());
+        }
+    }
+
     // 玩家独有：幸运值
     public double getLuck() {
         return luck;
@@ -35,12 +63,14 @@ public class Player extends AbstractLife {
 
     public void setLuck(double luck) {
         this.luck = Math.max(0, Math.min(100, luck)); // 幸运值范围0-100
+        markModified();
     }
 
     // 物品栏操作：添加物品
     public void addToInventory(ItemTrait item, int count) {
         if (count <= 0) return;
         inventory.put(item, inventory.getOrDefault(item, 0) + count);
+        markModified();
         System.out.printf("获得【%s】x%d，当前数量：%d%n",
                 item.getName(), count, inventory.get(item));
     }
@@ -56,16 +86,49 @@ public class Player extends AbstractLife {
         } else {
             inventory.put(item, newCount);
         }
+        markModified();
         System.out.printf("消耗【%s】x%d，剩余数量：%d%n",
                 item.getName(), count, newCount);
         return true;
     }
 
+    /**
+     * 自创建或解码以来是否改变过会写入编码的状态（包括物品栏中物品自身的状态）
+     * @return 是否改变过
+     */
+    @Override
+    public boolean isModified() {
+        if (super.isModified()) {
+            return true;
+        }
+        if (inventory.isEmpty()) {
+            return false;
+        }
+        for (ItemTrait item : inventory.keySet()) {
+            if (item instanceof BaseEntity entity && entity.isModified()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // 物品栏操作：获取物品数量
     public int getInventoryCount(ItemTrait item) {
         return inventory.getOrDefault(item, 0);
     }
 
+    @Override
+    public void writeState(CompactBinaryCodec.Output out) throws IOException {
+        super.writeState(out);
+        out.writeVersion(STATE_VERSION);
+        out.writeDouble(luck);
+        out.writeVarInt(inventory.size());
+        for (Map.Entry<ItemTrait, Integer> entry : inventory.entrySet()) {
+            out.writeObject(entry.getKey());
+            out.writeVarInt(entry.getValue());
+        }
+    }
+
     // 展示玩家信息
     @Override
     public String showInfo() {
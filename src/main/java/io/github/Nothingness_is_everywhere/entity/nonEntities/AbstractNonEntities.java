@@ -2,7 +2,10 @@ package io.github.Nothingness_is_everywhere.entity.nonEntities;
 
 import io.github.Nothingness_is_everywhere.entity.base.BaseEntity;
 import io.github.Nothingness_is_everywhere.entity.base.ElementType;
+import io.github.Nothingness_is_everywhere.util.CompactBinaryCodec;
+import io.github.Nothingness_is_everywhere.util.CompactSerializable;
 
+import java.io.IOException;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.UUID;
@@ -11,7 +14,7 @@ import java.util.UUID;
  * 抽象非实体类，表示游戏中非实体对象的基础属性和行为
  * 包含唯一标识、名称、描述等通用字段
  */
-public abstract class AbstractNonEntities implements Serializable {
+public abstract class AbstractNonEntities implements Serializable, CompactSerializable {
     private final String id;              // 唯一标识
     private String name;                  // 名称
     private final String description;     // 描述
@@ -19,6 +22,8 @@ public abstract class AbstractNonEntities implements Serializable {
     private int level;                    // 等级
     @Serial
     private static final long serialVersionUID = 1L;
+    private static final int STATE_VERSION = 1; // 紧凑编码结构版本
+    private transient int modCount;             // 状态修改次数（不参与序列化，创建和解码时为0）
 
     /**
      * 构造器：初始化非实体对象的基础属性(一般应用于构造普通物理技能、天赋和效果)
@@ -47,6 +52,19 @@ public abstract class AbstractNonEntities implements Serializable {
         this.level = 1;
     }
 
+    /**
+     * 解码构造器：读取writeState写入的状态（见CompactSerializable）
+     * @param in 输入
+     */
+    protected AbstractNonEntities(CompactBinaryCodec.Input in) throws IOException {
+        in.readVersion(STATE_VERSION, AbstractNonEntities.class);
+        this.id = in.readId();
+        this.name = in.readString();
+        this.description = in.readString();
+        this.elementType = in.readEnum(ElementType.class);
+        this.level = in.readVarInt();
+    }
+
     // 等级相关方法
     /**
      * 获取等级
@@ -63,11 +81,13 @@ public abstract class AbstractNonEntities implements Serializable {
             if (level > this.level) {
                 for (int i = this.level; i < level; i++) {
                     this.level++;
+                    markModified();
                     increaseLevel();
                 }
             } else {
                 for (int i = this.level; i > level; i--) {
                     this.level--;
+                    markModified();
                     decreaseLevel();
                 }
             }
@@ -112,7 +132,38 @@ public abstract class AbstractNonEntities implements Serializable {
      * 设置元素类型
      * @param elementType 元素类型
      */
-    public void setElementType(ElementType elementType) { this.elementType = elementType; }
+    public void setElementType(ElementType elementType) {
+        this.elementType = elementType;
+        markModified();
+    }
+
+    /**
+     * 自创建或解码以来是否改变过会写入编码的状态（见BaseEntity.isModified）
+     * @return 是否改变过
+     */
+    public boolean isModified() { return modCount != 0; }
+
+    /**
+     * 标记状态已改变：改变会写入编码的字段后调用（子类直接修改自身字段时同样需要调用）
+     */
+    protected final void markModified() { modCount++; }
+
+    /**
+     * 写入非实体状态（紧凑编码）
+     * <p>
+     * 等级直接写入数值，读取时不会重复触发increaseLevel/decreaseLevel，
+     * 子类自身的字段需重写本方法追加写入。
+     * @param out 输出
+     */
+    @Override
+    public void writeState(CompactBinaryCodec.Output out) throws IOException {
+        out.writeVersion(STATE_VERSION);
+        out.writeId(id);
+        out.writeString(name);
+        out.writeString(description);
+        out.writeEnum(elementType);
+        out.writeVarInt(level);
+    }
 
     /**
      * 展示效果信息（抽象方法，需子类实现）
@@ -2,6 +2,10 @@ package io.github.Nothingness_is_everywhere.entity.nonEntities.persistent;
 
 import io.github.Nothingness_is_everywhere.entity.base.ElementType;
 import io.github.Nothingness_is_everywhere.entity.nonEntities.AbstractNonEntities;
+import io.github.Nothingness_is_everywhere.util.CompactBinaryCodec;
+
+import java.io.IOException;
+import java.io.Serial;
 
 /**
  * 持续型非实体效果抽象类
@@ -14,6 +18,9 @@ public abstract class AbstractPersistentEffect extends AbstractNonEntities imple
     private int duration;              // 持续时间（-1=永久，0=即时失效）
     private int stackCount;            // 叠加层数
     private int cooldown;              // 冷却时间（每步递减）
+    @Serial
+    private static final long serialVersionUID = 8362284116041335942L; // 与早期存档的默认序列化版本号保持一致
+    private static final int STATE_VERSION = 1; // 紧凑编码结构版本
 
     /**
      * 构造器：初始化持续效果的基础属性
@@ -71,6 +78,18 @@ public abstract class AbstractPersistentEffect extends AbstractNonEntities imple
         this.cooldown = cooldown;
     }
 
+    /**
+     * 解码构造器：读取writeState写入的效果状态（见CompactSerializable）
+     * @param in 输入
+     */
+    protected AbstractPersistentEffect(CompactBinaryCodec.Input in) throws IOException {
+        super(in);
+        in.readVersion(STATE_VERSION, AbstractPersistentEffect.class);
+        this.duration = in.readVarInt();
+        this.stackCount = in.readVarInt();
+        this.cooldown = in.readVarInt();
+    }
+
     /**
      * 每步更新（处理持续时间和冷却，返回是否有效）
      * @return 是否仍有效
@@ -78,10 +97,12 @@ public abstract class AbstractPersistentEffect extends AbstractNonEntities imple
     public boolean isActive() {
         if (cooldown > 0) {
             cooldown--;
+            markModified();
             return false; // 冷却中不生效
         }
         if (duration >= 0) {
             duration--;
+            markModified();
             return duration >= 0; // 持续时间递减，0时失效
         }
         return true; // 仍有效
@@ -95,6 +116,7 @@ public abstract class AbstractPersistentEffect extends AbstractNonEntities imple
     public boolean stack(int maxStack) {
         if (stackCount < maxStack) {
             stackCount++;
+            markModified();
             return true;
         }
         return false;
@@ -107,9 +129,11 @@ public abstract class AbstractPersistentEffect extends AbstractNonEntities imple
     public boolean decreaseStack() {
         if (stackCount > 1) {
             stackCount--;
+            markModified();
             return true;
         } else if (stackCount == 1) {
             stackCount--;
+            markModified();
             return false; // 层数为0时失效
         }
         return false;
@@ -127,7 +151,10 @@ public abstract class AbstractPersistentEffect extends AbstractNonEntities imple
      * 设置持续时间
      * @param duration 持续时间
      */
-    public void setDuration(int duration) { this.duration = duration; }
+    public void setDuration(int duration) {
+        this.duration = duration;
+        markModified();
+    }
 
     /**
      * 获取叠加层数
@@ -145,7 +172,19 @@ public abstract class AbstractPersistentEffect extends AbstractNonEntities imple
      * 设置冷却时间
      * @param cooldown 冷却时间
      */
-    public void setCooldown(int cooldown) { this.cooldown = cooldown; }
+    public void setCooldown(int cooldown) {
+        this.cooldown = cooldown;
+        markModified();
+    }
+
+    @Override
+    public void writeState(CompactBinaryCodec.Output out) throws IOException {
+        super.writeState(out);
+        out.writeVersion(STATE_VERSION);
+        out.writeVarInt(duration);
+        out.writeVarInt(stackCount);
+        out.writeVarInt(cooldown);
+    }
 
     /**
      * 显示效果的详细信息，包括名称、描述、剩余时间、层数、冷却和属性等
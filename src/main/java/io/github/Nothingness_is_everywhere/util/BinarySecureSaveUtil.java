@@ -6,37 +6,509 @@ import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
 import io.github.Nothingness_is_everywhere.entity.nonEntities.AbstractNonEntities;
 import io.github.Nothingness_is_everywhere.entity.nonEntities.persistent.AbstractPersistentEffect;
 
-import javax.crypto.Cipher;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.lang.reflect.Method;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 二进制加密存档工具类（优化版）
  * 采用索引+数据双文件结构，支持高效CRUD操作，避免全量加载
+ * <p>
+ * 每个basePath对应一个独立的存档（含独立的锁和内存索引），不同存档之间互不阻塞。
+ * <p>
+ * 查询结果经过LRU对象缓存，默认返回共享实例；需要修改返回对象时请使用复制读取（copy = true），
+ * 避免缓存中的模板被游戏过程改动。
+ * <p>
+ * xxxAsync方法把磁盘操作交给专用I/O线程，游戏线程提交后立即返回CompletableFuture。
+ * <p>
+ * 大存档可用streamIdDescriptions流式遍历，findByDescriptionXxx通过描述二级索引查询。
+ * <p>
+ * 每条记录末尾预留少量填充，update的新记录放得下时原地覆盖，反复保存同一对象时数据文件不再增长。
+ * <p>
+ * openSnapshot打开快照，固定当时的版本后不经过存档锁读取，读取延迟不受写入和整理影响。
+ * <p>
+ * 开启去重（setDeduplication）后，内容相同的对象在数据文件中只保存一份，多个ID共享同一条记录。
+ * <p>
+ * scrub在快照上并行校验全部记录，不停服即可检查存档完整性。
  */
 public class BinarySecureSaveUtil {
-    // AES密钥（16字节=128位）
-    private static final byte[] SECRET_KEY_BYTES = "GameSaveKey12345".getBytes(StandardCharsets.UTF_8);
-    private static final String ALGORITHM = "AES";
-    private static final String HASH_ALGORITHM = "SHA-256";
-    private static final String INDEX_EXTENSION = ".index";
-    private static final String DATA_EXTENSION = ".data";
-    // 索引条目固定长度：UUID(16字节) + 偏移量(8字节) + 数据长度(4字节) = 28字节
-    private static final int DESC_LENGTH = 20; // 描述字符数
-    private static final int DESC_BYTE_LENGTH = DESC_LENGTH * 3; // UTF-8最多3字节/汉字
-    private static final int INDEX_ENTRY_LENGTH = 16 + DESC_BYTE_LENGTH + 8 + 4; // 88字节
-    // 读写锁保证线程安全
-    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 存档注册表（按规范化后的basePath注册，每个存档只从文件加载一次索引）
+    private static final Map<String, SaveStore> stores = new ConcurrentHashMap<>();
+    // 内存映射模式：开启后索引加载与数据读取直接访问映射内存
+    private static volatile boolean memoryMapped = false;
+    // 编解码器（按标识注册，读取时按记录头选择）
+    private static final SaveCodec JAVA_CODEC = new JavaSerializationCodec();
+    private static final Map<Integer, SaveCodec> codecs = new ConcurrentHashMap<>();
+    private static volatile SaveCodec codec = new CompactBinaryCodec();
+    // 对象缓存（按(存档, ID)缓存解码结果，增删改与整理时失效）
+    private static final int DEFAULT_CACHE_CAPACITY = 1024;
+    private static final SaveObjectCache cache = new SaveObjectCache(DEFAULT_CACHE_CAPACITY);
+    // 压缩：开启后明文在加密前压缩，字典按存档（规范化后的basePath）保存，首次访问存档时加载
+    private static volatile boolean compression = false;
+    private static final int MAX_DICTIONARY_SAMPLES = 4096;
+    private static final Map<String, byte[]> compressionDictionaries = new ConcurrentHashMap<>();
+    // 预写日志：开启后写入先追加到.wal，持久化级别决定是否以及如何刷盘
+    private static volatile boolean writeAheadLog = false;
+    private static volatile SaveDurability durability = SaveDurability.BATCH;
+    // 自动整理：死空间比例达到阈值时在后台线程中在线整理
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+    private static volatile double compactionThreshold = 0.5;
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "save-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Set<SaveStore> compactionScheduled = ConcurrentHashMap.newKeySet();
+    // 后台整理失败的存档（按规范化后的basePath记录最近一次的异常），显式整理成功前不再自动整理
+    private static final Map<String, Exception> compactionFailures = new ConcurrentHashMap<>();
+    // 分片布局（按规范化后的basePath缓存，未分片的存档为UNSHARDED）与分片并行执行的线程池
+    private static final Map<String, SaveShards.Layout> layouts = new ConcurrentHashMap<>();
+    private static final ExecutorService shardExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "save-shard");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 异步I/O队列（按ID分通道，有界；已满时立即失败，不阻塞调用方）
+    private static final int DEFAULT_ASYNC_CAPACITY = 4096;
+    private static final int ASYNC_LANES = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private static volatile SaveAsyncQueue asyncQueue = new SaveAsyncQueue(ASYNC_LANES, DEFAULT_ASYNC_CAPACITY);
+    // 原地更新：写入时按明文长度的比例预留填充，更新后的记录放得下时覆盖原记录
+    private static final int MAX_UPDATE_SLACK = 4096;
+    private static volatile boolean inPlaceUpdate = true;
+    private static volatile double updateSlack = 0.25;
+    // 去重：开启后按内容哈希共享内容相同的记录
+    private static volatile boolean deduplication = false;
+
+    static {
+        codecs.put(JAVA_CODEC.id(), JAVA_CODEC);
+        codecs.put(codec.id(), codec);
+    }
+
+    /**
+     * 设置写入时使用的编解码器（默认为紧凑二进制编解码器）
+     * <p>
+     * 编解码器按标识注册，已有记录仍按各自记录头中的标识解码；
+     * 编解码器不支持的对象（如未注册的匿名效果类）回退到Java序列化。
+     * @param saveCodec 编解码器
+     */
+    public static void setCodec(SaveCodec saveCodec) {
+        int id = saveCodec.id();
+        if (id < 0 || id > SaveRecords.CODEC_MASK) {
+            throw new IllegalArgumentException("编解码器标识超出范围：" + id);
+        }
+        codecs.put(id, saveCodec);
+        codec = saveCodec;
+    }
+
+    /**
+     * 获取写入时使用的编解码器
+     * @return 编解码器
+     */
+    public static SaveCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * 设置是否启用内存映射模式
+     * <p>
+     * 启用后.index在加载时整体映射读取，.data保持只读映射，读取记录时直接从映射区域复制，
+     * 适合启动时批量加载等读多写少的场景。文件增长后会自动重新映射。
+     * @param enabled 是否启用
+     */
+    public static void setMemoryMapped(boolean enabled) {
+        memoryMapped = enabled;
+    }
+
+    /**
+     * 是否启用了内存映射模式
+     * @return 是否启用
+     */
+    public static boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * 设置是否压缩新写入的记录（默认关闭）
+     * <p>
+     * 压缩在序列化之后、加密之前进行，压缩标志写在记录头中，压缩与未压缩的记录可混合存在。
+     * 存档训练过字典（见trainCompressionDictionary）时使用预置字典压缩。
+     * @param enabled 是否启用
+     */
+    public static void setCompression(boolean enabled) {
+        compression = enabled;
+    }
+
+    /**
+     * 是否启用了压缩
+     * @return 是否启用
+     */
+    public static boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * 从存档已有记录中训练压缩字典，之后写入该存档的记录使用新字典压缩
+     * <p>
+     * 最多抽取4096条记录作为样本。旧字典保留在字典文件中，用旧字典压缩的记录仍可读取。
+     * @param basePath 基础路径
+     * @return 字典长度（字节）
+     */
+    public static int trainCompressionDictionary(String basePath) throws Exception {
+        List<byte[]> samples = new ArrayList<>();
+        SaveShards.Layout layout = layout(basePath);
+        for (String path : SaveShards.allPaths(basePath, layout)) {
+            if (!Files.exists(Paths.get(path + SaveStore.INDEX_EXTENSION))) {
+                continue;
+            }
+            List<byte[]> records = new ArrayList<>();
+            SaveStore store = acquire(path);
+            try {
+                store.forEachRecord((id, description, record) -> {
+                    if (samples.size() + records.size() < MAX_DICTIONARY_SAMPLES) {
+                        records.add(record);
+                    }
+                });
+            } finally {
+                store.lock.readLock().unlock();
+            }
+            for (byte[] record : records) {
+                samples.add(plainOf(SaveRecords.decode(ByteBuffer.wrap(record))));
+            }
+        }
+        byte[] dictionary = SaveCompression.train(samples);
+        if (dictionary.length == 0) {
+            throw new IllegalStateException("样本中没有重复片段，无法训练字典：" + basePath);
+        }
+        SaveCompression.saveDictionary(basePath, dictionary);
+        compressionDictionaries.put(storeKey(basePath), dictionary);
+        return dictionary.length;
+    }
+
+    /**
+     * 获取压缩统计（压缩比、压缩与解压吞吐量）
+     * @return 统计快照
+     */
+    public static SaveCompression.Stats getCompressionStats() {
+        return SaveCompression.stats();
+    }
+
+    /**
+     * 清零压缩统计
+     */
+    public static void resetCompressionStats() {
+        SaveCompression.resetStats();
+    }
+
+    /**
+     * 设置是否启用预写日志
+     * <p>
+     * 启用后每次写入先追加到.wal，再写.data/.index；崩溃后下次打开存档时重放日志恢复一致的索引。
+     * 并发写入按组提交，每组只追加一次、刷盘一次（见setDurability）。
+     * 无论是否启用，打开存档时都会重放残留的日志。
+     * @param enabled 是否启用
+     */
+    public static void setWriteAheadLog(boolean enabled) {
+        writeAheadLog = enabled;
+    }
+
+    /**
+     * 是否启用了预写日志
+     * @return 是否启用
+     */
+    public static boolean isWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+    /**
+     * 设置预写日志的持久化级别（默认按批刷盘）
+     * @param saveDurability 持久化级别
+     */
+    public static void setDurability(SaveDurability saveDurability) {
+        if (saveDurability == null) {
+            throw new IllegalArgumentException("持久化级别不能为空");
+        }
+        durability = saveDurability;
+    }
+
+    /**
+     * 获取预写日志的持久化级别
+     * @return 持久化级别
+     */
+    public static SaveDurability getDurability() {
+        return durability;
+    }
+
+    /**
+     * 设置组提交等待窗口（默认0，即只合并已在等待的写入）
+     * <p>
+     * 窗口大于0时，提交方在追加前等待该时长，让更多并发写入并入同一次刷盘，
+     * 以单次写入延迟换取更少的force次数。
+     * @param micros 等待窗口（微秒）
+     */
+    public static void setGroupCommitWindow(long micros) {
+        if (micros < 0) {
+            throw new IllegalArgumentException("等待窗口不能为负数：" + micros);
+        }
+        SaveWal.commitWindowNanos = micros * 1000;
+    }
+
+    /**
+     * 设置布隆过滤器的目标误判率（默认0.01）
+     * <p>
+     * 每个存档在加载索引时按ID构建布隆过滤器，查询不存在的ID时绝大多数直接返回null。
+     * 误判率越低占用内存越多（0.01约为每个ID 10位）。新的误判率对之后打开、整理或扩容重建的存档生效。
+     * @param fpp 0-1之间（不含）的误判率
+     */
+    public static void setBloomFalsePositiveRate(double fpp) {
+        if (!(fpp > 0 && fpp < 1)) {
+            throw new IllegalArgumentException("误判率应在0到1之间：" + fpp);
+        }
+        SaveStore.bloomFpp = fpp;
+    }
+
+    /**
+     * 获取布隆过滤器的目标误判率
+     * @return 误判率
+     */
+    public static double getBloomFalsePositiveRate() {
+        return SaveStore.bloomFpp;
+    }
+
+    /**
+     * 获取存档的布隆过滤器统计（估算误判率、实际误判次数等，分片存档汇总各分片）
+     * @param basePath 基础路径
+     * @return 统计快照
+     */
+    public static SaveBloomFilter.Stats getBloomStats(String basePath) throws IOException {
+        List<SaveBloomFilter.Stats> parts = new ArrayList<>();
+        for (String path : SaveShards.allPaths(basePath, layout(basePath))) {
+            SaveStore store = acquire(path);
+            try {
+                parts.add(store.bloomStats());
+            } finally {
+                store.lock.readLock().unlock();
+            }
+        }
+        return SaveBloomFilter.Stats.combine(parts);
+    }
+
+    /**
+     * 设置对象缓存容量（默认1024条）
+     * @param capacity 最多缓存的对象数，0表示禁用缓存
+     */
+    public static void setCacheCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("缓存容量不能为负数：" + capacity);
+        }
+        cache.setCapacity(capacity);
+    }
+
+    /**
+     * 获取对象缓存容量
+     * @return 容量上限
+     */
+    public static int getCacheCapacity() {
+        return cache.capacity();
+    }
+
+    /**
+     * 获取对象缓存的命中/未命中统计
+     * @return 统计快照
+     */
+    public static SaveObjectCache.Stats getCacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * 清零对象缓存的统计计数
+     */
+    public static void resetCacheStats() {
+        cache.resetStats();
+    }
+
+    /**
+     * 设置是否允许原地更新（默认允许）
+     * <p>
+     * 允许时，update的新记录（去掉填充后）不超过原记录占用的空间则直接覆盖原记录，否则追加新副本。
+     * 覆盖不是原子的：未启用预写日志时，覆盖过程中崩溃可能使该记录新旧版本都无法读取。
+     * @param enabled 是否允许
+     */
+    public static void setInPlaceUpdate(boolean enabled) {
+        inPlaceUpdate = enabled;
+    }
+
+    /**
+     * 是否允许原地更新
+     * @return 是否允许
+     */
+    public static boolean isInPlaceUpdate() {
+        return inPlaceUpdate;
+    }
+
+    /**
+     * 设置写入记录时预留的填充比例（默认0.25，即明文长度的25%，单条最多4096字节）
+     * <p>
+     * 填充越多，更新后变长的记录越可能原地覆盖，但数据文件也越大；只对之后写入的记录生效。
+     * @param ratio 0-1之间的比例，0表示不预留（长度不变的更新仍可原地覆盖）
+     */
+    public static void setUpdateSlack(double ratio) {
+        if (!(ratio >= 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("填充比例须在0到1之间：" + ratio);
+        }
+        updateSlack = ratio;
+    }
+
+    /**
+     * 获取写入记录时预留的填充比例
+     * @return 比例
+     */
+    public static double getUpdateSlack() {
+        return updateSlack;
+    }
+
+    /**
+     * 获取更新统计（原地覆盖与追加的次数、原地覆盖节省的数据文件增长）
+     * @return 统计快照
+     */
+    public static SaveStore.UpdateStats getUpdateStats() {
+        return SaveStore.updateStats();
+    }
+
+    /**
+     * 清零更新统计
+     */
+    public static void resetUpdateStats() {
+        SaveStore.resetUpdateStats();
+    }
+
+    /**
+     * 设置是否按内容去重（默认关闭）
+     * <p>
+     * 开启后，写入的对象序列化结果与存档中已有的记录相同时（例如同一个效果模板保存在多个ID下），
+     * 不再写入新的记录，索引条目直接指向已有的记录，数据文件中只追加几十字节的引用记录。
+     * 共享的记录按引用计数回收：删除或更新其中一个ID不影响其他ID，全部ID都不再指向它后才由整理回收；
+     * 被共享的记录不会原地覆盖。存档的去重信息保存在.dedup文件中，应与存档文件放在一起。
+     * @param enabled 是否启用
+     */
+    public static void setDeduplication(boolean enabled) {
+        deduplication = enabled;
+    }
+
+    /**
+     * 是否启用了去重
+     * @return 是否启用
+     */
+    public static boolean isDeduplication() {
+        return deduplication;
+    }
+
+    /**
+     * 获取存档的去重统计（共享的记录数、引用它们的ID数、节省的字节数，分片存档汇总各分片）
+     * @param basePath 基础路径
+     * @return 统计快照
+     */
+    public static SaveDedup.Stats getDedupStats(String basePath) throws IOException {
+        List<SaveDedup.Stats> parts = new ArrayList<>();
+        for (String path : SaveShards.allPaths(basePath, layout(basePath))) {
+            SaveStore store = acquire(path);
+            try {
+                parts.add(store.dedupStats());
+            } finally {
+                store.lock.readLock().unlock();
+            }
+        }
+        return SaveDedup.Stats.combine(parts);
+    }
+
+    /**
+     * 设置异步操作队列的容量（默认4096个排队任务）
+     * <p>
+     * 旧队列中已提交的任务继续执行完；应在提交异步操作之前设置，否则切换瞬间同一ID的新旧任务可能乱序。
+     * @param capacity 排队任务数上限
+     */
+    public static synchronized void setAsyncQueueCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("异步队列容量至少为1：" + capacity);
+        }
+        SaveAsyncQueue old = asyncQueue;
+        asyncQueue = new SaveAsyncQueue(ASYNC_LANES, capacity);
+        old.shutdown();
+    }
+
+    /**
+     * 获取异步操作队列的容量
+     * @return 排队任务数上限
+     */
+    public static int getAsyncQueueCapacity() {
+        return asyncQueue.capacity();
+    }
+
+    /**
+     * 获取尚未完成的异步操作数（排队中和执行中），可用于在队列接近满时降低自动存档频率
+     * @return 未完成的异步操作数
+     */
+    public static int getAsyncPendingCount() {
+        return asyncQueue.pending();
+    }
+
+    /**
+     * 创建分片存档
+     * <p>
+     * 记录按UUID哈希分布到多个子存档，每个子存档拥有独立的文件和锁，不同分片上的操作可并行执行，
+     * 原有增删改查接口保持不变。已有的未分片存档请使用SaveShardTool迁移。
+     * @param basePath 基础路径
+     * @param shardCount 分片数
+     */
+    public static void createSharded(String basePath, int shardCount) throws IOException {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("分片数至少为1：" + shardCount);
+        }
+        synchronized (layouts) {
+            if (layout(basePath).isSharded()) {
+                throw new IllegalStateException("已是分片存档：" + basePath);
+            }
+            if (Files.exists(Paths.get(basePath + SaveStore.INDEX_EXTENSION))) {
+                throw new IllegalStateException("已存在未分片的存档，请使用SaveShardTool迁移：" + basePath);
+            }
+            SaveShards.Layout layout = new SaveShards.Layout(shardCount, 0);
+            SaveShards.writeManifest(basePath, layout);
+            layouts.put(storeKey(basePath), layout);
+        }
+    }
+
+    /**
+     * 获取存档的分片数
+     * @param basePath 基础路径
+     * @return 分片数，未分片的存档返回1
+     */
+    public static int getShardCount(String basePath) throws IOException {
+        return Math.max(1, layout(basePath).count());
+    }
 
     /**
      * 添加对象到存档（自动生成ID）
@@ -60,101 +532,129 @@ public class BinarySecureSaveUtil {
      * @param basePath 基础路径
      */
     public static void addWithId(String id, Object obj, String basePath) throws Exception {
-        lock.writeLock().lock();
-        try {
-            // 1. 序列化并加密对象
-            byte[] objBytes = serialize(obj);
-            byte[] hashBytes = calculateHashBytes(objBytes);
-            byte[] encryptedBytes = encrypt(objBytes);
-
-            // 2. 写入数据文件
-            String dataPath = basePath + DATA_EXTENSION;
-            try (RandomAccessFile dataFile = new RandomAccessFile(dataPath, "rw")) {
-                long dataOffset = dataFile.length(); // 新数据写在文件末尾
-                dataFile.seek(dataOffset);
-
-                // 数据格式：[哈希长度(int)] [哈希字节] [加密数据]
-                dataFile.writeInt(hashBytes.length);
-                dataFile.write(hashBytes);
-                dataFile.writeInt(encryptedBytes.length);
-                dataFile.write(encryptedBytes);
-                String description = "无"; // 默认值设为"无"
-                try {
-                    // 获取类对象
-                    Class<?> clazz = obj.getClass();
-                    // 尝试获取无参数的getDescription()方法
-                    Method method = clazz.getMethod("getDescription");
-                    // 如果方法存在，调用并获取结果
-                    Object result = method.invoke(obj);
-                    // 确保结果不为null再转换为String
-                    if (result != null) {
-                        description = result.toString();
-                    }
-                } catch (NoSuchMethodException e) {
-                    // 方法不存在，保持默认值"无"
-                } catch (Exception e) {
-                    // 处理其他可能的异常（如调用失败等）
-                    description = "获取失败";
-                }
-                // 3. 写入索引文件
-                String indexPath = basePath + INDEX_EXTENSION;
-                try (RandomAccessFile indexFile = new RandomAccessFile(indexPath, "rw")) {
-                    indexFile.seek(indexFile.length());
-                    writeIndexEntry(indexFile, id, dataOffset,
-                            4 + hashBytes.length + 4 + encryptedBytes.length, description);
-                }
-            }
-        } finally {
-            lock.writeLock().unlock();
+        UUID uuid = UUID.fromString(id);
+        String description = readDescription(obj);
+        EncodedRecord encoded = encodeRecord(obj, basePath, uuid, description);
+        appendToStore(routePath(basePath, uuid), new UUID[]{uuid}, new byte[][]{encoded.record()},
+                hashesOf(encoded), new String[]{description});
+    }
+
+    /**
+     * 批量添加对象
+     * <p>
+     * 序列化与加密在锁外完成；整批在每个（子）存档的数据文件和索引文件中各只追加一次，
+     * 分片存档的各分片并行写入。
+     * @param objects ID -> 可序列化对象
+     * @param basePath 基础路径
+     */
+    public static void addAll(Map<String, ?> objects, String basePath) throws Exception {
+        if (objects.isEmpty()) {
+            return;
+        }
+        // 1. 校验ID，序列化并加密全部对象，按子存档分组
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        int count = objects.size();
+        UUID[] uuids = new UUID[count];
+        byte[][] records = new byte[count][];
+        byte[][] hashes = new byte[count][];
+        String[] descriptions = new String[count];
+        int i = 0;
+        for (Map.Entry<String, ?> entry : objects.entrySet()) {
+            uuids[i] = UUID.fromString(entry.getKey());
+            descriptions[i] = readDescription(entry.getValue());
+            EncodedRecord encoded = encodeRecord(entry.getValue(), basePath, uuids[i], descriptions[i]);
+            records[i] = encoded.record();
+            hashes[i] = encoded.contentHash();
+            groups.computeIfAbsent(routePath(basePath, uuids[i]), path -> new ArrayList<>()).add(i);
+            i++;
         }
+
+        // 2. 每个子存档一次性追加
+        runOnShards(new ArrayList<>(groups.keySet()), path -> {
+            List<Integer> members = groups.get(path);
+            UUID[] groupIds = new UUID[members.size()];
+            byte[][] groupRecords = new byte[members.size()][];
+            byte[][] groupHashes = new byte[members.size()][];
+            String[] groupDescriptions = new String[members.size()];
+            for (int j = 0; j < members.size(); j++) {
+                groupIds[j] = uuids[members.get(j)];
+                groupRecords[j] = records[members.get(j)];
+                groupHashes[j] = hashes[members.get(j)];
+                groupDescriptions[j] = descriptions[members.get(j)];
+            }
+            appendToStore(path, groupIds, groupRecords, groupHashes, groupDescriptions);
+            return null;
+        });
     }
 
     /**
-     * 根据ID查询对象
+     * 根据ID查询对象（返回缓存中的共享实例，不应修改）
      * @param id 唯一标识
      * @param basePath 基础路径
      * @return 解密并校验后的对象
      */
     public static Object get(String id, String basePath) throws Exception {
-        lock.readLock().lock();
-        try {
-            String indexPath = basePath + INDEX_EXTENSION;
-            if (!Files.exists(Paths.get(indexPath))) {
-                return null;
-            }
-
-            // 1. 查找索引
-            IndexEntry entry = findIndexEntry(id, indexPath);
-            if (entry == null) {
-                return null;
-            }
-
-            // 2. 读取数据文件对应位置
-            String dataPath = basePath + DATA_EXTENSION;
-            try (RandomAccessFile dataFile = new RandomAccessFile(dataPath, "r")) {
-                dataFile.seek(entry.dataOffset);
-
-                // 读取哈希
-                int hashLen = dataFile.readInt();
-                byte[] storedHash = new byte[hashLen];
-                dataFile.readFully(storedHash);
+        return get(id, basePath, false);
+    }
 
-                // 读取加密数据
-                int dataLen = dataFile.readInt();
-                byte[] encryptedData = new byte[dataLen];
-                dataFile.readFully(encryptedData);
+    /**
+     * 根据ID查询对象
+     * @param id 唯一标识
+     * @param basePath 基础路径
+     * @param copy 是否返回独立副本（副本可随意修改，不影响缓存）
+     * @return 解密并校验后的对象
+     */
+    public static Object get(String id, String basePath, boolean copy) throws Exception {
+        UUID uuid = parseId(id);
+        if (uuid == null) {
+            return null;
+        }
+        return getFromStore(routePath(basePath, uuid), uuid, copy);
+    }
 
-                // 3. 解密并校验
-                byte[] decryptedData = decrypt(encryptedData);
-                if (!MessageDigest.isEqual(storedHash, calculateHashBytes(decryptedData))) {
-                    throw new SecurityException("数据校验失败，可能被篡改");
-                }
+    /**
+     * 批量查询对象（返回缓存中的共享实例，不应修改）
+     * @param ids 唯一标识集合
+     * @param basePath 基础路径
+     * @return ID -> 对象（保持传入顺序，不存在的ID不包含在结果中）
+     */
+    public static Map<String, Object> getAll(Collection<String> ids, String basePath) throws Exception {
+        return getAll(ids, basePath, false);
+    }
 
-                return deserialize(decryptedData);
+    /**
+     * 批量查询对象
+     * <p>
+     * 未命中缓存的记录按数据偏移量排序后顺序读取，磁盘读取始终向前推进；分片存档的各分片并行读取。
+     * @param ids 唯一标识集合
+     * @param basePath 基础路径
+     * @param copy 是否返回独立副本
+     * @return ID -> 对象（保持传入顺序，不存在的ID不包含在结果中）
+     */
+    public static Map<String, Object> getAll(Collection<String> ids, String basePath, boolean copy) throws Exception {
+        if (!layout(basePath).isSharded()) {
+            return getAllFromStore(basePath, ids, copy);
+        }
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (String id : ids) {
+            UUID uuid = parseId(id);
+            if (uuid != null) {
+                groups.computeIfAbsent(routePath(basePath, uuid), path -> new ArrayList<>()).add(id);
             }
-        } finally {
-            lock.readLock().unlock();
         }
+        Map<String, Object> found = new HashMap<>();
+        for (Map<String, Object> part : runOnShards(new ArrayList<>(groups.keySet()),
+                path -> getAllFromStore(path, groups.get(path), copy))) {
+            found.putAll(part);
+        }
+        // 按传入顺序整理结果
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (String id : ids) {
+            if (found.containsKey(id)) {
+                result.put(id, found.get(id));
+            }
+        }
+        return result;
     }
 
     /**
@@ -165,19 +665,13 @@ public class BinarySecureSaveUtil {
      * @return 是否更新成功
      */
     public static boolean update(String id, Object obj, String basePath) throws Exception {
-        lock.writeLock().lock();
-        try {
-            // 1. 先删除旧数据（逻辑删除，仅删除索引）
-            boolean deleted = delete(id, basePath);
-            if (!deleted) {
-                return false;
-            }
-            // 2. 添加新数据
-            addWithId(id, obj, basePath);
-            return true;
-        } finally {
-            lock.writeLock().unlock();
+        UUID uuid = parseId(id);
+        if (uuid == null) {
+            return false;
         }
+        String description = readDescription(obj);
+        return updateInStore(routePath(basePath, uuid), uuid, encodeRecord(obj, basePath, uuid, description),
+                description);
     }
 
     /**
@@ -187,230 +681,829 @@ public class BinarySecureSaveUtil {
      * @return 是否删除成功
      */
     public static boolean delete(String id, String basePath) throws Exception {
-        lock.writeLock().lock();
-        try {
-            String indexPath = basePath + INDEX_EXTENSION;
-            if (!Files.exists(Paths.get(indexPath))) {
-                return false;
+        UUID uuid = parseId(id);
+        if (uuid == null) {
+            return false;
+        }
+        return deleteFromStore(routePath(basePath, uuid), new UUID[]{uuid}) > 0;
+    }
+
+    /**
+     * 批量删除对象（逻辑删除）
+     * @param ids 唯一标识集合
+     * @param basePath 基础路径
+     * @return 实际删除的数量
+     */
+    public static int deleteAll(Collection<String> ids, String basePath) throws Exception {
+        Map<String, List<UUID>> groups = new LinkedHashMap<>();
+        for (String id : ids) {
+            UUID uuid = parseId(id);
+            if (uuid != null) {
+                groups.computeIfAbsent(routePath(basePath, uuid), path -> new ArrayList<>()).add(uuid);
             }
+        }
+        int deleted = 0;
+        for (int count : runOnShards(new ArrayList<>(groups.keySet()),
+                path -> deleteFromStore(path, groups.get(path).toArray(new UUID[0])))) {
+            deleted += count;
+        }
+        return deleted;
+    }
 
-            // 1. 查找索引位置
-            try (RandomAccessFile indexFile = new RandomAccessFile(indexPath, "rw")) {
-                long fileLength = indexFile.length();
-                long pos = 0;
+    /**
+     * 异步添加对象到存档（自动生成ID）
+     * <p>
+     * 序列化与加密在调用线程完成（保存的是调用时刻的对象快照，之后修改对象不影响存档），
+     * 磁盘写入在I/O线程执行；同一ID的异步操作按提交顺序执行。
+     * 队列已满时不阻塞，返回的Future以RejectedExecutionException失败。
+     * Future在I/O线程上完成，耗时的后续处理应使用thenXxxAsync转到其他线程。
+     * @param obj 可序列化对象
+     * @param basePath 基础路径
+     * @return 生成的唯一ID
+     */
+    public static CompletableFuture<String> addAsync(Object obj, String basePath) {
+        if (!(obj instanceof Serializable)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("对象未实现Serializable接口"));
+        }
+        UUID uuid = UUID.randomUUID();
+        EncodedRecord encoded;
+        String description;
+        try {
+            description = readDescription(obj);
+            encoded = encodeRecord(obj, basePath, uuid, description);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return asyncQueue.submit(uuid, () -> {
+            appendToStore(routePath(basePath, uuid), new UUID[]{uuid}, new byte[][]{encoded.record()},
+                    hashesOf(encoded), new String[]{description});
+            return uuid.toString();
+        });
+    }
+
+    /**
+     * 异步更新指定ID的对象（对象快照在调用线程生成，见addAsync）
+     * @param id 唯一标识
+     * @param obj 新对象
+     * @param basePath 基础路径
+     * @return 是否更新成功
+     */
+    public static CompletableFuture<Boolean> updateAsync(String id, Object obj, String basePath) {
+        UUID uuid = parseId(id);
+        if (uuid == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        EncodedRecord encoded;
+        String description;
+        try {
+            description = readDescription(obj);
+            encoded = encodeRecord(obj, basePath, uuid, description);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return asyncQueue.submit(uuid, () -> updateInStore(routePath(basePath, uuid), uuid, encoded, description));
+    }
 
-                while (pos + INDEX_ENTRY_LENGTH <= fileLength) {
-                    indexFile.seek(pos);
-                    String entryId = readIdFromIndex(indexFile);
+    /**
+     * 异步查询对象（返回缓存中的共享实例，不应修改）
+     * @param id 唯一标识
+     * @param basePath 基础路径
+     * @return 解密并校验后的对象，不存在时为null
+     */
+    public static CompletableFuture<Object> getAsync(String id, String basePath) {
+        return getAsync(id, basePath, false);
+    }
 
-                    if (entryId.equals(id)) {
-                        // 2. 标记删除（写入空ID）
-                        indexFile.seek(pos);
-                        indexFile.write(new byte[16]); // 用空字节覆盖UUID
-                        return true;
-                    }
-                    pos += INDEX_ENTRY_LENGTH;
+    /**
+     * 异步查询对象（在之前提交的同一ID的异步写入之后执行）
+     * @param id 唯一标识
+     * @param basePath 基础路径
+     * @param copy 是否返回独立副本
+     * @return 解密并校验后的对象，不存在时为null
+     */
+    public static CompletableFuture<Object> getAsync(String id, String basePath, boolean copy) {
+        UUID uuid = parseId(id);
+        if (uuid == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return asyncQueue.submit(uuid, () -> get(id, basePath, copy));
+    }
+
+    /**
+     * 异步删除指定ID的对象
+     * @param id 唯一标识
+     * @param basePath 基础路径
+     * @return 是否删除成功
+     */
+    public static CompletableFuture<Boolean> deleteAsync(String id, String basePath) {
+        UUID uuid = parseId(id);
+        if (uuid == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return asyncQueue.submit(uuid, () -> deleteFromStore(routePath(basePath, uuid), new UUID[]{uuid}) > 0);
+    }
+
+    /**
+     * 打开存档快照，之后通过快照读到的始终是此刻的内容（见SaveSnapshot）
+     * <p>
+     * 只在固定版本时短暂持有存档锁，之后的读取不持有存档锁，不被写入和整理阻塞。
+     * @param basePath 基础路径
+     * @return 快照，用完须关闭
+     */
+    public static SaveSnapshot openSnapshot(String basePath) throws IOException {
+        SaveShards.Layout layout = layout(basePath);
+        Map<String, SaveStore.Snapshot> parts = new LinkedHashMap<>();
+        try {
+            for (String path : SaveShards.allPaths(basePath, layout)) {
+                SaveStore store = acquire(path);
+                try {
+                    parts.put(path, store.openSnapshot());
+                } finally {
+                    store.lock.readLock().unlock();
                 }
             }
-            return false;
-        } finally {
-            lock.writeLock().unlock();
+        } catch (IOException | RuntimeException e) {
+            for (SaveStore.Snapshot part : parts.values()) {
+                part.close();
+            }
+            throw e;
         }
+        return new SaveSnapshot(basePath, layout, parts);
     }
 
     /**
-     * 整理数据文件（清除已删除数据，减少碎片）
+     * 检查存档完整性：在快照上用ForkJoin线程池并行解密校验全部有效记录，报告损坏、悬空和孤立的条目（见SaveScrub）
+     * <p>
+     * 检查期间读写和整理照常进行，适合定期在正式存档上运行。
      * @param basePath 基础路径
+     * @param threads 工作线程数
+     * @return 检查报告（分片存档为各分片合计）
      */
+    public static SaveScrub.Report scrub(String basePath, int threads) throws IOException {
+        List<SaveScrub.Report> parts = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (String path : SaveShards.allPaths(basePath, layout(basePath))) {
+                SaveStore store = acquire(path);
+                SaveStore.Snapshot snapshot;
+                try {
+                    snapshot = store.openSnapshot();
+                } finally {
+                    store.lock.readLock().unlock();
+                }
+                try (snapshot) {
+                    parts.add(SaveScrub.scrubStore(store, snapshot, pool));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return SaveScrub.Report.combine(parts);
+    }
 
+    /**
+     * 整理数据文件（清除已删除和被覆盖的数据，减少碎片）
+     * <p>
+     * 在线整理：分段复制期间读写照常进行，只在最后切换文件时短暂独占该存档。
+     * 分片存档的各分片并行整理。
+     * @param basePath 基础路径
+     */
     public static void defrag(String basePath) throws Exception {
-        lock.writeLock().lock();
+        runOnShards(SaveShards.allPaths(basePath, layout(basePath)), path -> {
+            while (true) {
+                SaveStore store = openStore(path);
+                if (store.compact()) {
+                    cache.invalidateStore(storeKey(path));
+                    compactionFailures.remove(storeKey(path));
+                    return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置自动整理阈值（默认0.5）
+     * <p>
+     * 写入、更新、删除后，若死空间比例（已删除和被覆盖的记录占数据文件的比例）达到阈值，
+     * 且数据文件不小于1MB，则在后台线程中在线整理该存档。失败时记录原因并停止自动整理该存档，见getCompactionFailure。
+     * @param threshold 0-1之间的比例，0表示关闭自动整理
+     */
+    public static void setAutoCompactionThreshold(double threshold) {
+        if (threshold < 0 || threshold > 1) {
+            throw new IllegalArgumentException("整理阈值应在0到1之间：" + threshold);
+        }
+        compactionThreshold = threshold;
+    }
+
+    /**
+     * 获取自动整理阈值
+     * @return 阈值，0表示已关闭
+     */
+    public static double getAutoCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    /**
+     * 获取后台自动整理失败的原因
+     * <p>
+     * 后台整理失败后不再自动整理该存档（避免每次写入后反复失败），直到调用defrag成功整理为止。
+     * @param basePath 基础路径
+     * @return 最近一次失败的异常（分片存档返回任一失败分片的），没有失败时返回null
+     */
+    public static Exception getCompactionFailure(String basePath) throws IOException {
+        for (String path : SaveShards.allPaths(basePath, layout(basePath))) {
+            Exception failure = compactionFailures.get(storeKey(path));
+            if (failure != null) {
+                return failure;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取存档的死空间比例（分片存档按各分片数据文件大小加权）
+     * @param basePath 基础路径
+     * @return 0-1之间的比例
+     */
+    public static double getDeadSpaceRatio(String basePath) throws IOException {
+        double deadBytes = 0;
+        long totalBytes = 0;
+        for (String path : SaveShards.allPaths(basePath, layout(basePath))) {
+            SaveStore store = acquire(path);
+            try {
+                long size = store.dataFileSize();
+                deadBytes += store.deadSpaceRatio() * size;
+                totalBytes += size;
+            } finally {
+                store.lock.readLock().unlock();
+            }
+        }
+        return totalBytes == 0 ? 0 : deadBytes / totalBytes;
+    }
+
+    /**
+     * 获取存档打开时自动恢复的报告
+     * <p>
+     * 打开存档时，索引文件缺失或损坏则从数据文件重建，数据文件末尾有索引中没有的记录则补回索引，
+     * 恢复过程不输出任何内容，由调用方按需查询此报告。存档尚未打开时先打开。
+     * @param basePath 基础路径
+     * @return 报告（分片存档为各分片合计）
+     */
+    public static SaveRecovery.OpenReport getRecoveryReport(String basePath) throws IOException {
+        List<SaveRecovery.OpenReport> parts = new ArrayList<>();
+        for (String path : SaveShards.allPaths(basePath, layout(basePath))) {
+            parts.add(openStore(path).recoveryReport());
+        }
+        return SaveRecovery.OpenReport.combine(parts);
+    }
+
+    /**
+     * 关闭存档，释放文件通道与内存索引（下次访问时重新加载）
+     * @param basePath 基础路径
+     */
+    public static void close(String basePath) throws IOException {
+        for (String path : SaveShards.allPaths(basePath, layout(basePath))) {
+            closeStore(path);
+        }
+        layouts.remove(storeKey(basePath));
+    }
+
+    // 关闭单个（子）存档
+    static void closeStore(String path) throws IOException {
+        String key = storeKey(path);
+        SaveStore store = stores.get(key);
+        if (store == null) {
+            return;
+        }
+        store.lock.writeLock().lock();
         try {
-            String oldDataPath = basePath + DATA_EXTENSION;
-            String oldIndexPath = basePath + INDEX_EXTENSION;
-            String newDataPath = basePath + ".defrag" + DATA_EXTENSION;
-            String newIndexPath = basePath + ".defrag" + INDEX_EXTENSION;
-
-            try (RandomAccessFile oldIndexFile = new RandomAccessFile(oldIndexPath, "r");
-                 RandomAccessFile oldDataFile = new RandomAccessFile(oldDataPath, "r");
-                 RandomAccessFile newDataFile = new RandomAccessFile(newDataPath, "rw");
-                 RandomAccessFile newIndexFile = new RandomAccessFile(newIndexPath, "rw")) {
-
-                long fileLength = oldIndexFile.length();
-                long pos = 0;
-                while (pos + INDEX_ENTRY_LENGTH <= fileLength) {
-                    oldIndexFile.seek(pos);
-                    long mostSigBits = oldIndexFile.readLong();
-                    long leastSigBits = oldIndexFile.readLong();
-                    boolean isDeleted = (mostSigBits == 0 && leastSigBits == 0);
-
-                    byte[] descBytes = new byte[DESC_BYTE_LENGTH];
-                    oldIndexFile.readFully(descBytes);
-                    String description = new String(descBytes, StandardCharsets.UTF_8).replace("\0", "").trim();
-
-                    long offset = oldIndexFile.readLong();
-                    int length = oldIndexFile.readInt();
-
-                    if (!isDeleted) {
-                        oldDataFile.seek(offset);
-                        byte[] data = new byte[length];
-                        oldDataFile.readFully(data);
-                        long newOffset = newDataFile.length();
-                        newDataFile.seek(newOffset);
-                        newDataFile.write(data);
-                        // 写入新索引
-                        newIndexFile.writeLong(mostSigBits);
-                        newIndexFile.writeLong(leastSigBits);
-                        newIndexFile.write(descBytes);
-                        newIndexFile.writeLong(newOffset);
-                        newIndexFile.writeInt(length);
-                    }
-                    pos += INDEX_ENTRY_LENGTH;
+            stores.remove(key, store);
+            store.close();
+            cache.invalidateStore(key);
+        } finally {
+            store.lock.writeLock().unlock();
+        }
+    }
+
+    // 追加到单个（子）存档（hashes为null时不去重）
+    private static void appendToStore(String path, UUID[] uuids, byte[][] records, byte[][] hashes,
+                                      String[] descriptions) throws IOException {
+        SaveStore store = acquire(path);
+        try {
+            store.append(uuids, records, descriptions, hashes, walDurability());
+            String key = storeKey(path);
+            for (UUID uuid : uuids) {
+                cache.invalidate(new SaveObjectCache.Key(key, uuid));
+            }
+        } finally {
+            store.lock.readLock().unlock();
+        }
+        afterWrite(store);
+    }
+
+    // 从单个（子）存档查询
+    private static Object getFromStore(String path, UUID uuid, boolean copy) throws Exception {
+        // 1. 查询对象缓存
+        SaveObjectCache.Key cacheKey = new SaveObjectCache.Key(storeKey(path), uuid);
+        SaveObjectCache.Entry cached = cache.get(cacheKey);
+        if (cached != null) {
+            return copy ? decodePlain(cached.codecId(), cached.data()) : cached.value();
+        }
+        while (true) {
+            long cacheVersion = cache.version();
+            long overwriteMark;
+            ByteBuffer record;
+            SaveStore store = acquire(path);
+            try {
+                overwriteMark = store.overwriteMark();
+                // 2. 查找内存索引
+                SaveIndex.Location entry = store.find(uuid);
+                if (entry == null) {
+                    return null;
                 }
+                // 3. 读取数据文件对应位置
+                record = store.read(entry, memoryMapped);
+            } finally {
+                store.lock.readLock().unlock();
             }
-            // 替换旧文件
-            Path oldDatepath = Paths.get(oldDataPath);
-            Files.delete(oldDatepath);
-            Path oldIndexpath = Paths.get(oldIndexPath);
-            Files.delete(oldIndexpath);
-            Files.move(Paths.get(newDataPath), oldDatepath);
-            Files.move(Paths.get(newIndexPath), oldIndexpath);
+            // 4. 解密并校验（不占用存档锁），放入缓存
+            try {
+                return decodeAndCache(cacheKey, record, cacheVersion, copy);
+            } catch (RuntimeException e) {
+                // 读取期间有原地覆盖，可能读到写了一半的记录（校验失败或长度字段错乱），重新读取；
+                // 否则确实是数据损坏
+                if (!store.overwrittenSince(overwriteMark)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // 更新单个（子）存档中已存在的记录
+    private static boolean updateInStore(String path, UUID uuid, EncodedRecord encoded, String description)
+            throws IOException {
+        SaveStore store = acquire(path);
+        boolean[] stripes = store.lockStripes(uuid);
+        try {
+            // 放得下时原地覆盖，否则追加新数据（旧索引条目在发布时标记删除，读取方始终能看到新旧之一）
+            if (!store.update(uuid, encoded.record(), description, encoded.contentHash(), inPlaceUpdate,
+                    walDurability())) {
+                return false;
+            }
+            cache.invalidate(new SaveObjectCache.Key(storeKey(path), uuid));
         } finally {
-            lock.writeLock().unlock();
+            store.unlockStripes(stripes);
+            store.lock.readLock().unlock();
         }
+        afterWrite(store);
+        return true;
     }
 
-    // 查找索引条目
-    private static IndexEntry findIndexEntry(String id, String indexPath) throws Exception {
-        try (RandomAccessFile indexFile = new RandomAccessFile(indexPath, "r")) {
-            long fileLength = indexFile.length();
-            long pos = 0;
+    // 从单个（子）存档批量查询
+    private static Map<String, Object> getAllFromStore(String path, Collection<String> ids, boolean copy)
+            throws Exception {
+        Map<String, Object> result = new LinkedHashMap<>();
+        String key = storeKey(path);
+        List<String> missedIds = new ArrayList<>(ids.size());
+        List<UUID> missed = new ArrayList<>(ids.size());
+        // 1. 查询对象缓存（先占位，保持传入顺序）
+        for (String id : ids) {
+            UUID uuid = parseId(id);
+            if (uuid == null || result.containsKey(id)) {
+                continue;
+            }
+            SaveObjectCache.Entry cached = cache.get(new SaveObjectCache.Key(key, uuid));
+            result.put(id, cached == null ? null
+                    : copy ? decodePlain(cached.codecId(), cached.data()) : cached.value());
+            if (cached == null) {
+                missedIds.add(id);
+                missed.add(uuid);
+            }
+        }
+        if (missed.isEmpty()) {
+            return result;
+        }
 
-            while (pos + INDEX_ENTRY_LENGTH <= fileLength) {
-                indexFile.seek(pos);
-                String entryId = readIdFromIndex(indexFile);
+        long cacheVersion = cache.version();
+        long overwriteMark;
+        List<String> foundIds = new ArrayList<>(missed.size());
+        List<UUID> foundUuids = new ArrayList<>(missed.size());
+        List<SaveIndex.Location> found = new ArrayList<>(missed.size());
+        ByteBuffer[] records;
+        SaveStore store = acquire(path);
+        try {
+            overwriteMark = store.overwriteMark();
+            // 2. 查找内存索引
+            for (int i = 0; i < missed.size(); i++) {
+                SaveIndex.Location entry = store.find(missed.get(i));
+                if (entry != null) {
+                    foundIds.add(missedIds.get(i));
+                    foundUuids.add(missed.get(i));
+                    found.add(entry);
+                } else {
+                    result.remove(missedIds.get(i));
+                }
+            }
+            if (found.isEmpty()) {
+                return result;
+            }
 
-                byte[] descBytes = new byte[DESC_BYTE_LENGTH];
-                indexFile.readFully(descBytes);
-                String description = new String(descBytes, StandardCharsets.UTF_8).replace("\0", "").trim();
+            // 3. 按数据偏移量顺序读取
+            Integer[] order = new Integer[found.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> found.get(i).dataOffset()));
+            records = new ByteBuffer[found.size()];
+            for (int i : order) {
+                records[i] = store.read(found.get(i), memoryMapped);
+            }
+        } finally {
+            store.lock.readLock().unlock();
+        }
 
-                long offset = indexFile.readLong();
-                int length = indexFile.readInt();
+        // 4. 解码、放入缓存并填回占位（读取期间有原地覆盖而校验失败的单独重新读取）
+        for (int i = 0; i < records.length; i++) {
+            SaveObjectCache.Key cacheKey = new SaveObjectCache.Key(key, foundUuids.get(i));
+            Object value;
+            try {
+                value = decodeAndCache(cacheKey, records[i], cacheVersion, copy);
+            } catch (RuntimeException e) {
+                if (!store.overwrittenSince(overwriteMark)) {
+                    throw e;
+                }
+                value = getFromStore(path, foundUuids.get(i), copy);
+            }
+            if (value == null) {
+                result.remove(foundIds.get(i));
+            } else {
+                result.put(foundIds.get(i), value);
+            }
+        }
+        return result;
+    }
 
-                if (entryId.equals(id)) {
-                    return new IndexEntry(entryId, offset, length, description);
+    // 从单个（子）存档删除
+    private static int deleteFromStore(String path, UUID[] uuids) throws IOException {
+        int deleted = 0;
+        SaveStore store = acquire(path);
+        boolean[] stripes = store.lockStripes(uuids);
+        try {
+            for (SaveIndex.Location removed : store.remove(uuids, walDurability())) {
+                if (removed != null) {
+                    deleted++;
                 }
-                pos += INDEX_ENTRY_LENGTH;
             }
+            String key = storeKey(path);
+            for (UUID uuid : uuids) {
+                cache.invalidate(new SaveObjectCache.Key(key, uuid));
+            }
+        } finally {
+            store.unlockStripes(stripes);
+            store.lock.readLock().unlock();
         }
-        return null;
+        afterWrite(store);
+        return deleted;
     }
 
+    // 分片任务
+    @FunctionalInterface
+    private interface ShardTask<T> {
+        T run(String path) throws Exception;
+    }
 
-    // 从索引中读取ID
-    private static String readIdFromIndex(RandomAccessFile indexFile) throws IOException {
-        long mostSigBits = indexFile.readLong();
-        long leastSigBits = indexFile.readLong();
-        return new UUID(mostSigBits, leastSigBits).toString();
+    // 在各（子）存档上执行任务：只有一个时在当前线程执行，否则并行执行并按顺序返回结果
+    private static <T> List<T> runOnShards(List<String> paths, ShardTask<T> task) throws Exception {
+        List<T> results = new ArrayList<>(paths.size());
+        if (paths.size() == 1) {
+            results.add(task.run(paths.get(0)));
+            return results;
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.run(path);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, shardExecutor));
+        }
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return results;
     }
 
-    // 写入索引条目
-    private static void writeIndexEntry(RandomAccessFile indexFile, String id, long offset, int length, String description) throws IOException {
-        // 写入UUID
-        UUID uuid = UUID.fromString(id);
-        indexFile.writeLong(uuid.getMostSignificantBits());
-        indexFile.writeLong(uuid.getLeastSignificantBits());
-        // 处理描述：定长20字，UTF-8编码，补零
-        byte[] descBytes = description.getBytes(StandardCharsets.UTF_8);
-        byte[] descFixed = new byte[DESC_BYTE_LENGTH];
-        int copyLen = Math.min(descBytes.length, DESC_BYTE_LENGTH);
-        System.arraycopy(descBytes, 0, descFixed, 0, copyLen);
-        indexFile.write(descFixed);
-        // 写入偏移量和长度
-        indexFile.writeLong(offset);
-        indexFile.writeInt(length);
+    // 获取存档的分片布局（首次访问时读取清单）
+    static SaveShards.Layout layout(String basePath) throws IOException {
+        String key = storeKey(basePath);
+        SaveShards.Layout layout = layouts.get(key);
+        if (layout == null) {
+            // 字典先于布局发布，能路由到该存档的读取方一定能找到解压所需的字典
+            byte[] dictionary = SaveCompression.loadDictionaries(basePath);
+            if (dictionary != null) {
+                compressionDictionaries.put(key, dictionary);
+            }
+            layout = SaveShards.readManifest(basePath);
+            SaveShards.Layout existing = layouts.putIfAbsent(key, layout);
+            if (existing != null) {
+                layout = existing;
+            }
+        }
+        return layout;
     }
 
+    // ID所在（子）存档的基础路径
+    private static String routePath(String basePath, UUID uuid) throws IOException {
+        SaveShards.Layout layout = layout(basePath);
+        if (!layout.isSharded()) {
+            return basePath;
+        }
+        return SaveShards.shardPath(basePath, layout, SaveShards.shardOf(uuid, layout.count()));
+    }
 
-    // 序列化
-    private static byte[] serialize(Object obj) throws IOException {
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-            oos.writeObject(obj);
-            return bos.toByteArray();
+    // 解析ID（非法ID视为不存在）
+    static UUID parseId(String id) {
+        if (id == null) {
+            return null;
         }
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // 当前写入使用的预写日志持久化级别（未启用预写日志时为null）
+    private static SaveDurability walDurability() {
+        return writeAheadLog ? durability : null;
     }
 
-    // 反序列化
-    private static Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
-        try (ByteArrayInputStream bis = new ByteArrayInputStream(data);
-             ObjectInputStream ois = new ObjectInputStream(bis)) {
-            return ois.readObject();
+    // 写入后的维护（须在释放读锁之后调用）：日志超过阈值时执行检查点，索引尾部过长时合并索引，
+    // 死空间过多时提交后台整理
+    private static void afterWrite(SaveStore store) throws IOException {
+        if (store.needsCheckpoint() || store.needsIndexMerge()) {
+            store.lock.writeLock().lock();
+            try {
+                if (!store.isClosed() && store.needsCheckpoint()) {
+                    store.checkpoint();
+                }
+                if (!store.isClosed() && store.needsIndexMerge()) {
+                    store.mergeIndex();
+                }
+            } finally {
+                store.lock.writeLock().unlock();
+            }
+        }
+        if (needsCompaction(store) && compactionScheduled.add(store)) {
+            compactor.execute(() -> {
+                try {
+                    if (needsCompaction(store) && store.compact()) {
+                        cache.invalidateStore(storeKey(store.basePath));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    compactionFailures.put(storeKey(store.basePath), e);
+                } finally {
+                    compactionScheduled.remove(store);
+                }
+            });
         }
     }
 
-    // AES加密
-    private static byte[] encrypt(byte[] data) throws Exception {
-        SecretKeySpec key = new SecretKeySpec(SECRET_KEY_BYTES, ALGORITHM);
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.ENCRYPT_MODE, key);
-        return cipher.doFinal(data);
+    private static boolean needsCompaction(SaveStore store) throws IOException {
+        double threshold = compactionThreshold;
+        return threshold > 0 && !store.isClosed() && !store.isCompacting()
+                && store.dataFileSize() >= MIN_COMPACTION_BYTES && store.deadSpaceRatio() >= threshold
+                && !compactionFailures.containsKey(storeKey(store.basePath));
     }
 
-    // AES解密
-    private static byte[] decrypt(byte[] encryptedData) throws Exception {
-        SecretKeySpec key = new SecretKeySpec(SECRET_KEY_BYTES, ALGORITHM);
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.DECRYPT_MODE, key);
-        return cipher.doFinal(encryptedData);
+    // 获取存档并持有其读锁（存档已被关闭时重新打开）
+    private static SaveStore acquire(String basePath) throws IOException {
+        while (true) {
+            SaveStore store = openStore(basePath);
+            store.lock.readLock().lock();
+            if (!store.isClosed()) {
+                return store;
+            }
+            store.lock.readLock().unlock();
+        }
     }
 
-    // 计算哈希
-    private static byte[] calculateHashBytes(byte[] data) throws Exception {
-        MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
-        return digest.digest(data);
+    // 获取存档，首次访问时从索引文件加载内存索引
+    private static SaveStore openStore(String basePath) throws IOException {
+        try {
+            return stores.computeIfAbsent(storeKey(basePath), key -> {
+                try {
+                    return SaveStore.open(basePath, memoryMapped);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
+    // 存档在注册表中的键（规范化路径，避免同一文件对应多份索引）
+    private static String storeKey(String basePath) {
+        return Paths.get(basePath).toAbsolutePath().normalize().toString();
+    }
+
+    // 通过反射读取对象描述（用于索引展示）
+    private static String readDescription(Object obj) {
+        String description = "无"; // 默认值设为"无"
+        if (obj == null) {
+            return description;
+        }
+        try {
+            // 获取类对象
+            Class<?> clazz = obj.getClass();
+            // 尝试获取无参数的getDescription()方法
+            Method method = clazz.getMethod("getDescription");
+            // 如果方法存在，调用并获取结果
+            Object result = method.invoke(obj);
+            // 确保结果不为null再转换为String
+            if (result != null) {
+                description = result.toString();
+            }
+        } catch (NoSuchMethodException e) {
+            // 方法不存在，保持默认值"无"
+        } catch (Exception e) {
+            // 处理其他可能的异常（如调用失败等）
+            description = "获取失败";
+        }
+        return description;
+    }
+
+    // 编码结果：完整记录与内容哈希（未开启去重时为null）
+    private record EncodedRecord(byte[] record, byte[] contentHash) {
+    }
+
+    // 编码记录：按当前编解码器编码后加密（格式见SaveRecords），编解码器不支持的对象回退到Java序列化；
+    // 末尾按明文长度预留填充，供之后原地更新；开启去重时同时计算内容哈希
+    private static EncodedRecord encodeRecord(Object obj, String basePath, UUID id, String description)
+            throws Exception {
+        SaveCodec current = codec.supports(obj) ? codec : JAVA_CODEC;
+        byte[] plain = current.encode(obj);
+        byte[] hash = deduplication ? SaveDedup.contentHash(current.id(), plain) : null;
+        int slack = (int) Math.min(MAX_UPDATE_SLACK, Math.ceil(plain.length * updateSlack));
+        if (compression) {
+            layout(basePath);
+            byte[] packed = SaveCompression.compress(plain, compressionDictionaries.get(storeKey(basePath)));
+            if (packed != null) {
+                return new EncodedRecord(SaveRecords.encode(packed, current.id() | SaveCompression.COMPRESSED_FLAG,
+                        id, description, slack), hash);
+            }
+        }
+        return new EncodedRecord(SaveRecords.encode(plain, current.id(), id, description, slack), hash);
+    }
+
+    // 单条记录的内容哈希数组（未开启去重时为null）
+    private static byte[][] hashesOf(EncodedRecord encoded) {
+        return encoded.contentHash() == null ? null : new byte[][]{encoded.contentHash()};
+    }
+
+    // 解密并解码一条记录（不经过缓存，返回独立的对象）
+    static Object decodeRecord(ByteBuffer record) throws Exception {
+        SaveRecords.Payload payload = SaveRecords.decode(record);
+        return decodePlain(payload.codecId(), plainOf(payload));
+    }
+
+    // 取出解密后的明文（已压缩的先解压）
+    private static byte[] plainOf(SaveRecords.Payload payload) throws IOException {
+        if ((payload.flags() & SaveCompression.COMPRESSED_FLAG) != 0) {
+            return SaveCompression.decompress(payload.data());
+        }
+        return payload.data();
+    }
+
+    // 解码记录并放入缓存：解密并校验后，按记录头中的编解码器标识解码
+    private static Object decodeAndCache(SaveObjectCache.Key cacheKey, ByteBuffer record,
+                                         long cacheVersion, boolean copy) throws Exception {
+        SaveRecords.Payload payload = SaveRecords.decode(record);
+        byte[] plain = plainOf(payload);
+        Object value = decodePlain(payload.codecId(), plain);
+        cache.put(cacheKey, new SaveObjectCache.Entry(value, payload.codecId(), plain), cacheVersion);
+        // 缓存持有的实例不能交给调用方修改，需要副本时重新解码一份
+        return copy && cache.capacity() > 0 ? decodePlain(payload.codecId(), plain) : value;
+    }
+
+    // 按编解码器标识解码明文
+    private static Object decodePlain(int codecId, byte[] data) throws Exception {
+        SaveCodec recordCodec = codecs.get(codecId);
+        if (recordCodec == null) {
+            throw new InvalidObjectException("未注册的编解码器：" + codecId);
+        }
+        return recordCodec.decode(data);
+    }
+
+    /**
+     * 列出存档中的全部ID与描述（一次性读入，大存档请使用streamIdDescriptions）
+     * @param basePath 基础路径
+     * @return 索引条目
+     */
     public static List<IndexEntry> listAllIdDescriptions(String basePath) throws IOException {
-        List<IndexEntry> result = new ArrayList<>();
-        String indexPath = basePath + INDEX_EXTENSION;
-        try (RandomAccessFile indexFile = new RandomAccessFile(indexPath, "r")) {
-            long fileLength = indexFile.length();
-            long pos = 0;
-            while (pos + INDEX_ENTRY_LENGTH <= fileLength) {
-                indexFile.seek(pos);
-                long mostSigBits = indexFile.readLong();
-                long leastSigBits = indexFile.readLong();
-                boolean isDeleted = (mostSigBits == 0 && leastSigBits == 0);
-                byte[] descBytes = new byte[DESC_BYTE_LENGTH];
-                indexFile.readFully(descBytes);
-                String description = new String(descBytes, StandardCharsets.UTF_8).replace("\0", "").trim();
-                long offset = indexFile.readLong();
-                int length = indexFile.readInt();
-                if (!isDeleted) {
-                    String id = new UUID(mostSigBits, leastSigBits).toString();
-                    result.add(new IndexEntry(id, offset, length, description));
-                }
-                pos += INDEX_ENTRY_LENGTH;
+        try (Stream<IndexEntry> entries = streamIdDescriptions(basePath)) {
+            return entries.toList();
+        }
+    }
+
+    /**
+     * 流式遍历存档中的全部ID与描述
+     * <p>
+     * 惰性读取：索引文件按大块分批读入，各分片依次打开，内存占用与存档大小无关。
+     * 返回的流持有打开的文件，使用完毕须关闭（try-with-resources）；读取失败时抛出UncheckedIOException。
+     * @param basePath 基础路径
+     * @return 索引条目流（未分片存档按索引文件顺序，分片存档按分片依次拼接）
+     */
+    public static Stream<IndexEntry> streamIdDescriptions(String basePath) throws IOException {
+        SaveShards.Layout layout = layout(basePath);
+        List<String> paths = new ArrayList<>();
+        for (String path : SaveShards.allPaths(basePath, layout)) {
+            Path indexPath = Paths.get(path + SaveStore.INDEX_EXTENSION);
+            // 尚未写入过的分片没有索引文件
+            if (layout.isSharded() && !Files.exists(indexPath)) {
+                continue;
             }
+            if (!layout.isSharded() && !Files.exists(indexPath)) {
+                throw new NoSuchFileException(indexPath.toString());
+            }
+            paths.add(path);
         }
-        return result;
+        return paths.stream().flatMap(path -> {
+            SaveIndexReader reader;
+            try {
+                reader = new SaveIndexReader(Paths.get(path + SaveStore.INDEX_EXTENSION));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(reader,
+                            Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .map(IndexEntry::of)
+                    .onClose(() -> {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        });
     }
 
+    /**
+     * 按描述前缀查询（使用描述二级索引，不逐条解码描述或读取记录）
+     * @param basePath 基础路径
+     * @param prefix 描述前缀
+     * @return 描述以prefix开头的条目，顺序不定
+     */
+    public static List<IndexEntry> findByDescriptionPrefix(String basePath, String prefix) throws IOException {
+        return findByDescription(basePath, description -> description.startsWith(prefix));
+    }
 
+    /**
+     * 按描述子串查询（使用描述二级索引，不逐条解码描述或读取记录）
+     * @param basePath 基础路径
+     * @param text 要包含的文字，例如"火焰"
+     * @return 描述包含text的条目，顺序不定
+     */
+    public static List<IndexEntry> findByDescriptionContaining(String basePath, String text) throws IOException {
+        return findByDescription(basePath, description -> description.contains(text));
+    }
 
-    // 索引条目内部类
-    private static class IndexEntry {
-        String id;
-        long dataOffset;
-        int dataLength;
-        String description;
+    private static List<IndexEntry> findByDescription(String basePath, Predicate<String> matcher)
+            throws IOException {
+        List<IndexEntry> result = new ArrayList<>();
+        for (String path : SaveShards.allPaths(basePath, layout(basePath))) {
+            SaveStore store = acquire(path);
+            try {
+                for (SaveIndexFile.Entry entry : store.findByDescription(matcher)) {
+                    result.add(IndexEntry.of(entry));
+                }
+            } finally {
+                store.lock.readLock().unlock();
+            }
+        }
+        return result;
+    }
 
-        IndexEntry(String id, long dataOffset, int dataLength, String description) {
-            this.id = id;
-            this.dataOffset = dataOffset;
-            this.dataLength = dataLength;
-            this.description = description;
+    /**
+     * 索引条目
+     * @param id 唯一标识
+     * @param dataOffset 数据文件中的偏移量
+     * @param dataLength 数据长度
+     * @param description 描述
+     */
+    public record IndexEntry(String id, long dataOffset, int dataLength, String description) {
+        static IndexEntry of(SaveIndexFile.Entry entry) {
+            return new IndexEntry(entry.id().toString(), entry.dataOffset(), entry.dataLength(), entry.description());
         }
     }
 
@@ -454,14 +1547,14 @@ public class BinarySecureSaveUtil {
             var ids = BinarySecureSaveUtil.listAllIdDescriptions(savePath);
             System.out.println("当前存档中的所有ID：");
             for (IndexEntry id : ids) {
-                System.out.println(id.description + " -> " + id.id);
-                var effect = (AbstractPersistentEffect) BinarySecureSaveUtil.get(id.id, savePath);
+                System.out.println(id.description() + " -> " + id.id());
+                var effect = (AbstractPersistentEffect) BinarySecureSaveUtil.get(id.id(), savePath);
                 if (effect != null) {
                     System.out.println(effect.showEffectInfo());
                     System.out.println(effect.getId());
                 }
                 // 删除对象
-//                BinarySecureSaveUtil.delete(id.id,savePath);
+//                BinarySecureSaveUtil.delete(id.id(),savePath);
             }
         } catch (Exception e) {
             throw new RuntimeException(e);
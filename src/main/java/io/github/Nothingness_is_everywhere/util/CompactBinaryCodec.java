@@ -0,0 +1,475 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.item.consumable.HealingPotion;
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑二进制编解码器（标识1）
+ * <p>
+ * 只写字段值，不写类描述信息：整数使用变长编码，UUID形式的ID按16字节写入，枚举按名称写入。
+ * 类型通过注册表中的类型编号标识，每层类的字段前都带有结构版本号（见CompactSerializable）。
+ * 嵌套对象的类型未注册时，以内嵌Java序列化数据的形式写入，保证不丢失状态。
+ * <p>
+ * 格式：[格式版本(1字节)] [对象]
+ * <br>对象：[类型标记(变长)] [对象状态]，类型标记0为null，1为内嵌Java序列化数据，其余为注册的类型编号。
+ * <p>
+ * 类型编号0-15保留给内置类型。读取时由注册的解码工厂（通常为类型的解码构造器）创建实例，
+ * 其他类型需由调用方注册后才能使用。
+ */
+public class CompactBinaryCodec implements SaveCodec {
+    public static final int ID = 1;
+    private static final int FORMAT_VERSION = 1;
+    private static final int NULL_TAG = 0;          // null
+    private static final int JAVA_TAG = 1;          // 内嵌Java序列化数据
+    private static final int PLAYER_TYPE = 2;
+    private static final int HEALING_POTION_TYPE = 3;
+    private static final int FIRST_USER_TYPE = 16;  // 调用方可用的最小类型编号
+
+    private final Map<Class<?>, Integer> typeIds = new ConcurrentHashMap<>();
+    private final Map<Integer, Decoder<? extends CompactSerializable>> factories = new ConcurrentHashMap<>();
+    private final JavaSerializationCodec javaCodec = new JavaSerializationCodec();
+
+    /**
+     * 创建编解码器并注册内置类型（玩家、治疗药水）
+     */
+    public CompactBinaryCodec() {
+        registerType(PLAYER_TYPE, Player.class, Player::new);
+        registerType(HEALING_POTION_TYPE, HealingPotion.class, HealingPotion::new);
+    }
+
+    /**
+     * 解码工厂：读取对象状态并创建实例（通常为类型的解码构造器，如Player::new）
+     * @param <T> 类型
+     */
+    @FunctionalInterface
+    public interface Decoder<T extends CompactSerializable> {
+        /**
+         * 读取对象状态（writeState写入的内容）并创建实例
+         * @param in 输入
+         * @return 实例
+         */
+        T decode(Input in) throws IOException;
+    }
+
+    /**
+     * 注册类型
+     * @param typeId 类型编号（不小于16，写入存档后不可更改）
+     * @param type 具体类型（按精确类型匹配，子类需单独注册）
+     * @param factory 解码工厂，读取writeState写入的状态并创建实例
+     * @param <T> 类型
+     */
+    public <T extends CompactSerializable> void register(int typeId, Class<T> type, Decoder<? extends T> factory) {
+        if (typeId < FIRST_USER_TYPE) {
+            throw new IllegalArgumentException("类型编号0-15为内置保留：" + typeId);
+        }
+        registerType(typeId, type, factory);
+    }
+
+    private synchronized <T extends CompactSerializable> void registerType(int typeId, Class<T> type,
+                                                                           Decoder<? extends T> factory) {
+        if (typeIds.containsKey(type)) {
+            throw new IllegalArgumentException("类型已注册：" + type.getName());
+        }
+        if (factories.containsKey(typeId)) {
+            throw new IllegalArgumentException("类型编号已被占用：" + typeId);
+        }
+        factories.put(typeId, factory);
+        typeIds.put(type, typeId);
+    }
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public boolean supports(Object obj) {
+        return obj != null && typeIds.containsKey(obj.getClass());
+    }
+
+    @Override
+    public byte[] encode(Object obj) throws IOException {
+        Output out = new Output(this);
+        out.writeByte(FORMAT_VERSION);
+        out.writeObject(obj);
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] data) throws IOException, ClassNotFoundException {
+        Input in = new Input(this, ByteBuffer.wrap(data));
+        try {
+            int version = in.readByte();
+            if (version > FORMAT_VERSION) {
+                throw new InvalidObjectException("不支持的紧凑格式版本：" + version);
+            }
+            return in.readObjectOrJava();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("紧凑编码数据不完整");
+        }
+    }
+
+    /**
+     * 创建输出（不写格式版本，用于在一段数据中连续写入多个值和对象，如战斗回放）
+     * @return 输出
+     */
+    public Output newOutput() {
+        return new Output(this);
+    }
+
+    /**
+     * 创建读取newOutput所写数据的输入
+     * @param data 数据
+     * @return 输入
+     */
+    public Input newInput(byte[] data) {
+        return new Input(this, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * 紧凑编码输出
+     */
+    public static final class Output {
+        private final CompactBinaryCodec codec;
+        private byte[] buffer = new byte[256];
+        private int size;
+
+        private Output(CompactBinaryCodec codec) {
+            this.codec = codec;
+        }
+
+        public void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        public void writeBoolean(boolean value) {
+            writeByte(value ? 1 : 0);
+        }
+
+        /**
+         * 写入某一层的结构版本号（与Input.readVersion对应）
+         * @param version 版本号（从1开始）
+         */
+        public void writeVersion(int version) {
+            writeUnsignedVarLong(version);
+        }
+
+        /**
+         * 写入变长整数（ZigZag编码，绝对值小的负数同样只占1字节）
+         * @param value 整数
+         */
+        public void writeVarInt(int value) {
+            writeUnsignedVarLong(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        public void writeVarLong(long value) {
+            writeUnsignedVarLong((value << 1) ^ (value >> 63));
+        }
+
+        public void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        public void writeDouble(double value) {
+            writeLong(Double.doubleToRawLongBits(value));
+        }
+
+        /**
+         * 写入字符串（UTF-8，长度前缀，支持null）
+         * @param value 字符串
+         */
+        public void writeString(String value) {
+            if (value == null) {
+                writeUnsignedVarLong(0);
+                return;
+            }
+            // 不含代理对时直接按UTF-8编码到缓冲区，不创建临时字节数组
+            int chars = value.length();
+            long utf8Length = 0;
+            for (int i = 0; i < chars; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    utf8Length++;
+                } else if (c < 0x800) {
+                    utf8Length += 2;
+                } else if (!Character.isSurrogate(c)) {
+                    utf8Length += 3;
+                } else {
+                    utf8Length = -1;
+                    break;
+                }
+            }
+            if (utf8Length < 0) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeUnsignedVarLong(bytes.length + 1L);
+                ensureCapacity(bytes.length);
+                System.arraycopy(bytes, 0, buffer, size, bytes.length);
+                size += bytes.length;
+                return;
+            }
+            writeUnsignedVarLong(utf8Length + 1);
+            ensureCapacity((int) utf8Length);
+            for (int i = 0; i < chars; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer[size++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[size++] = (byte) (0xC0 | c >> 6);
+                    buffer[size++] = (byte) (0x80 | c & 0x3F);
+                } else {
+                    buffer[size++] = (byte) (0xE0 | c >> 12);
+                    buffer[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    buffer[size++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+        }
+
+        /**
+         * 写入枚举（按名称，枚举顺序调整不影响旧数据）
+         * @param value 枚举值
+         */
+        public void writeEnum(Enum<?> value) {
+            writeString(value == null ? null : value.name());
+        }
+
+        /**
+         * 写入ID：标准UUID字符串按16字节写入，其他字符串原样写入
+         * @param id ID
+         */
+        public void writeId(String id) {
+            if (id == null || id.length() != 36 || !writeCanonicalUuid(id)) {
+                writeByte(0);
+                writeString(id);
+            }
+        }
+
+        // 按16字节写入标准形式（小写、带连字符）的UUID，与UUID.toString()的结果相同时才写入，不是时不写入任何内容
+        private boolean writeCanonicalUuid(String id) {
+            long mostSigBits = 0;
+            long leastSigBits = 0;
+            int digits = 0;
+            for (int i = 0; i < 36; i++) {
+                char c = id.charAt(i);
+                if (i == 8 || i == 13 || i == 18 || i == 23) {
+                    if (c != '-') {
+                        return false;
+                    }
+                    continue;
+                }
+                int digit;
+                if (c >= '0' && c <= '9') {
+                    digit = c - '0';
+                } else if (c >= 'a' && c <= 'f') {
+                    digit = c - 'a' + 10;
+                } else {
+                    return false;
+                }
+                if (digits++ < 16) {
+                    mostSigBits = mostSigBits << 4 | digit;
+                } else {
+                    leastSigBits = leastSigBits << 4 | digit;
+                }
+            }
+            writeByte(1);
+            writeLong(mostSigBits);
+            writeLong(leastSigBits);
+            return true;
+        }
+
+        /**
+         * 写入嵌套对象（已注册类型按紧凑格式，其余可序列化对象内嵌Java序列化数据）
+         * @param obj 对象
+         */
+        public void writeObject(Object obj) throws IOException {
+            if (obj == null) {
+                writeUnsignedVarLong(NULL_TAG);
+                return;
+            }
+            Integer typeId = codec.typeIds.get(obj.getClass());
+            if (typeId != null) {
+                writeUnsignedVarLong(typeId);
+                ((CompactSerializable) obj).writeState(this);
+            } else if (obj instanceof Serializable) {
+                byte[] bytes = codec.javaCodec.encode(obj);
+                writeUnsignedVarLong(JAVA_TAG);
+                writeUnsignedVarLong(bytes.length);
+                ensureCapacity(bytes.length);
+                System.arraycopy(bytes, 0, buffer, size, bytes.length);
+                size += bytes.length;
+            } else {
+                throw new NotSerializableException(obj.getClass().getName());
+            }
+        }
+
+        private void writeUnsignedVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, size + extra));
+            }
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    /**
+     * 紧凑编码输入
+     */
+    public static final class Input {
+        private final CompactBinaryCodec codec;
+        private final ByteBuffer buffer;
+
+        private Input(CompactBinaryCodec codec, ByteBuffer buffer) {
+            this.codec = codec;
+            this.buffer = buffer;
+        }
+
+        public int readByte() {
+            return buffer.get() & 0xFF;
+        }
+
+        public boolean readBoolean() {
+            return buffer.get() != 0;
+        }
+
+        public int readVarInt() throws IOException {
+            long raw = readUnsignedVarLong();
+            return (int) (raw >>> 1) ^ -(int) (raw & 1);
+        }
+
+        public long readVarLong() throws IOException {
+            long raw = readUnsignedVarLong();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        public long readLong() {
+            return buffer.getLong();
+        }
+
+        public double readDouble() {
+            return Double.longBitsToDouble(buffer.getLong());
+        }
+
+        public String readString() throws IOException {
+            long length = readUnsignedVarLong();
+            if (length == 0) {
+                return null;
+            }
+            if (length - 1 > buffer.remaining()) {
+                throw new EOFException("字符串长度超出数据范围");
+            }
+            byte[] bytes = new byte[(int) (length - 1)];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * 读取枚举（名称不存在时抛出InvalidObjectException）
+         * @param type 枚举类型
+         * @return 枚举值
+         */
+        public <E extends Enum<E>> E readEnum(Class<E> type) throws IOException {
+            String name = readString();
+            if (name == null) {
+                return null;
+            }
+            try {
+                return Enum.valueOf(type, name);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidObjectException("未知的" + type.getSimpleName() + "：" + name);
+            }
+        }
+
+        public String readId() throws IOException {
+            if (readByte() == 1) {
+                return new UUID(buffer.getLong(), buffer.getLong()).toString();
+            }
+            return readString();
+        }
+
+        /**
+         * 读取某一层的结构版本号
+         * @param supported 当前代码支持的最高版本
+         * @param owner 所属类（用于错误信息）
+         * @return 数据中的版本号
+         */
+        public int readVersion(int supported, Class<?> owner) throws IOException {
+            int version = (int) readUnsignedVarLong();
+            if (version < 1 || version > supported) {
+                throw new InvalidObjectException(owner.getSimpleName() + "结构版本不受支持：" + version);
+            }
+            return version;
+        }
+
+        /**
+         * 读取嵌套对象
+         * @return 对象
+         */
+        public Object readObject() throws IOException {
+            try {
+                return readObjectOrJava();
+            } catch (ClassNotFoundException e) {
+                throw new InvalidObjectException("内嵌对象的类不存在：" + e.getMessage());
+            }
+        }
+
+        private Object readObjectOrJava() throws IOException, ClassNotFoundException {
+            int tag = (int) readUnsignedVarLong();
+            if (tag == NULL_TAG) {
+                return null;
+            }
+            if (tag == JAVA_TAG) {
+                int length = (int) readUnsignedVarLong();
+                if (length > buffer.remaining()) {
+                    throw new EOFException("内嵌数据长度超出数据范围");
+                }
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                return codec.javaCodec.decode(bytes);
+            }
+            Decoder<? extends CompactSerializable> factory = codec.factories.get(tag);
+            if (factory == null) {
+                throw new InvalidObjectException("未注册的类型编号：" + tag);
+            }
+            return factory.decode(this);
+        }
+
+        private long readUnsignedVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new InvalidObjectException("变长整数格式错误");
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+
+/**
+ * 支持紧凑二进制编码的对象
+ * <p>
+ * 每一层类各自写入自己的字段：子类重写时先调用super，再写入本类字段。
+ * 每层字段前写入本层的结构版本号，新增字段时提升版本号，读取时按版本兼容旧数据。
+ * <p>
+ * 读取由解码构造器完成（参数为CompactBinaryCodec.Input）：先调用父类的解码构造器，再按写入顺序读取本类字段，
+ * 唯一标识等不可变字段可以保持final。具体类型通过CompactBinaryCodec.register注册解码构造器。
+ */
+public interface CompactSerializable {
+    /**
+     * 写入对象状态
+     * @param out 输出
+     */
+    void writeState(CompactBinaryCodec.Output out) throws IOException;
+}
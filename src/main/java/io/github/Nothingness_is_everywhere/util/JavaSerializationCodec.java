@@ -0,0 +1,42 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.*;
+
+/**
+ * Java原生序列化编解码器（标识0）
+ * <p>
+ * 支持任意Serializable对象（包括匿名效果类），也是旧格式记录使用的编码方式。
+ */
+public class JavaSerializationCodec implements SaveCodec {
+    public static final int ID = 0;
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public boolean supports(Object obj) {
+        return obj == null || obj instanceof Serializable;
+    }
+
+    // 序列化
+    @Override
+    public byte[] encode(Object obj) throws IOException {
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
+             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(obj);
+            oos.flush();
+            return bos.toByteArray();
+        }
+    }
+
+    // 反序列化
+    @Override
+    public Object decode(byte[] data) throws IOException, ClassNotFoundException {
+        try (ByteArrayInputStream bis = new ByteArrayInputStream(data);
+             ObjectInputStream ois = new ObjectInputStream(bis)) {
+            return ois.readObject();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 只读内存映射的存档文件
+ * <p>
+ * 按1GB分块映射（单个MappedByteBuffer最大2GB），读取时直接切片映射区域，无需系统调用。
+ * 文件增长后，读取超出已映射范围时自动重新映射尾部分块，已完整映射的分块保持不变。
+ * <p>
+ * 注意：映射在GC回收前不会释放，Windows下映射中的文件无法删除或重命名。
+ */
+final class MappedSaveFile {
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT; // 1GB
+
+    private final Path path;
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private volatile long mappedSize;   // 已映射的字节数
+
+    MappedSaveFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * 获取文件指定区域的只读视图
+     * <p>
+     * 区域位于单个分块内时直接返回映射切片，跨分块时（极少见）复制到堆内存。
+     * @param offset 文件偏移量
+     * @param length 区域长度
+     * @return 位置为0、容量为length的缓冲区
+     */
+    ByteBuffer slice(long offset, int length) throws IOException {
+        long end = offset + length;
+        if (end > mappedSize) {
+            remap(end);
+        }
+        MappedByteBuffer[] current = chunks;
+        int chunkIndex = (int) (offset >>> CHUNK_SHIFT);
+        int chunkOffset = (int) (offset & (CHUNK_SIZE - 1));
+        if (chunkOffset + (long) length <= current[chunkIndex].capacity()) {
+            return current[chunkIndex].slice(chunkOffset, length);
+        }
+        byte[] copy = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            MappedByteBuffer chunk = current[chunkIndex++];
+            int n = Math.min(length - copied, chunk.capacity() - chunkOffset);
+            chunk.get(chunkOffset, copy, copied, n);
+            copied += n;
+            chunkOffset = 0;
+        }
+        return ByteBuffer.wrap(copy);
+    }
+
+    /**
+     * 获取当前已映射的字节数
+     * @return 已映射字节数
+     */
+    long mappedSize() {
+        return mappedSize;
+    }
+
+    /**
+     * 映射整个文件（用于顺序加载）
+     * @return 文件大小
+     */
+    long mapAll() throws IOException {
+        remap(0);
+        return mappedSize;
+    }
+
+    // 重新映射到当前文件大小，文件大小仍不足required时抛出EOFException
+    private synchronized void remap(long required) throws IOException {
+        if (required != 0 && required <= mappedSize) {
+            return; // 其他线程已完成重新映射
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < required) {
+                throw new EOFException("读取范围超出文件末尾：" + path);
+            }
+            MappedByteBuffer[] old = chunks;
+            int count = (int) ((fileSize + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+            MappedByteBuffer[] remapped = Arrays.copyOf(old, count);
+            // 只有完整的分块可以复用，最后一个不完整分块需要重新映射
+            int reusable = (int) (mappedSize >>> CHUNK_SHIFT);
+            for (int i = reusable; i < count; i++) {
+                long start = (long) i << CHUNK_SHIFT;
+                remapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, fileSize - start));
+            }
+            chunks = remapped;
+            mappedSize = fileSize;
+        }
+    }
+}
@@ -1,8 +1,47 @@
 package io.github.Nothingness_is_everywhere.util;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
 
+/**
+ * 概率工具类
+ * <p>
+ * 不带随机数参数的方法使用当前线程绑定的随机数（见callWith，战斗期间绑定为该场战斗的效果随机数，
+ * 同一种子的战斗中效果的随机结果也相同）；未绑定时使用ThreadLocalRandom，并行时各线程不竞争共享种子。
+ */
 public class ProbabilityUtils {
-    private static final Random random = new Random();
+    private static final ThreadLocal<RandomGenerator> BOUND = new ThreadLocal<>();
+
+    /**
+     * 获取当前线程使用的随机数
+     * @return 绑定的随机数；未绑定时为ThreadLocalRandom
+     */
+    public static RandomGenerator current() {
+        RandomGenerator random = BOUND.get();
+        return random != null ? random : ThreadLocalRandom.current();
+    }
+
+    /**
+     * 在当前线程绑定指定的随机数后执行任务，结束后恢复原先的绑定
+     * @param random 随机数
+     * @param task 任务
+     * @param <T> 结果类型
+     * @return 任务结果
+     */
+    public static <T> T callWith(RandomGenerator random, Supplier<T> task) {
+        RandomGenerator previous = BOUND.get();
+        BOUND.set(random);
+        try {
+            return task.get();
+        } finally {
+            if (previous != null) {
+                BOUND.set(previous);
+            } else {
+                BOUND.remove();
+            }
+        }
+    }
 
     /**
      * 判断是否触发指定概率的事件
@@ -10,6 +49,16 @@ public class ProbabilityUtils {
      * @return 如果触发返回true，否则返回false
      */
     public static boolean isTriggered(double probability) {
+        return isTriggered(current(), probability);
+    }
+
+    /**
+     * 使用指定的随机数判断是否触发指定概率的事件（并行时各线程使用自己的随机数，不竞争共享种子）
+     * @param random 随机数
+     * @param probability 概率值，范围[0, 100]表示百分比
+     * @return 如果触发返回true，否则返回false
+     */
+    public static boolean isTriggered(RandomGenerator random, double probability) {
         if (probability <= 0) {
             return false;
         }
@@ -27,6 +76,18 @@ public class ProbabilityUtils {
      * @throws IllegalArgumentException 如果min > max
      */
     public static int randomInRange(int min, int max) {
+        return randomInRange(current(), min, max);
+    }
+
+    /**
+     * 使用指定的随机数生成指定范围的随机整数 [min, max]
+     * @param random 随机数
+     * @param min 最小值（包含）
+     * @param max 最大值（包含）
+     * @return 随机整数
+     * @throws IllegalArgumentException 如果min > max
+     */
+    public static int randomInRange(RandomGenerator random, int min, int max) {
         if (min > max) {
             throw new IllegalArgumentException("min不能大于max");
         }
@@ -41,6 +102,18 @@ public class ProbabilityUtils {
      * @throws IllegalArgumentException 如果权重为非正数
      */
     public static <T> T weightedRandomSelect(List<WeightedItem<T>> weightedItems) {
+        return weightedRandomSelect(current(), weightedItems);
+    }
+
+    /**
+     * 使用指定的随机数从带权重的元素列表中随机选择一个元素
+     * @param random 随机数
+     * @param weightedItems 包含元素及其权重的列表，权重需为正数
+     * @param <T> 元素类型
+     * @return 随机选中的元素，如果列表为空则返回null
+     * @throws IllegalArgumentException 如果权重为非正数
+     */
+    public static <T> T weightedRandomSelect(RandomGenerator random, List<WeightedItem<T>> weightedItems) {
         if (weightedItems == null || weightedItems.isEmpty()) {
             return null;
         }
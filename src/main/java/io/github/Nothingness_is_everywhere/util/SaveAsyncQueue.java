@@ -0,0 +1,95 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步存档I/O队列
+ * <p>
+ * 由若干条单线程通道组成，每条通道有独立的有界队列。任务按ID哈希分配到通道，
+ * 同一ID的操作按提交顺序执行（先写后读、先写后删不会乱序），不同ID的操作在各通道间并行。
+ * <p>
+ * 队列已满时不阻塞提交方，返回的Future直接以RejectedExecutionException失败，
+ * 由调用方决定丢弃、合并还是稍后重试。
+ */
+final class SaveAsyncQueue {
+    /**
+     * 异步执行的存档操作
+     */
+    @FunctionalInterface
+    interface IoTask<T> {
+        T run() throws Exception;
+    }
+
+    private final ThreadPoolExecutor[] lanes;
+    private final int capacity;
+
+    /**
+     * @param laneCount 通道数（I/O线程数）
+     * @param capacity 全部通道排队任务数之和的上限
+     */
+    SaveAsyncQueue(int laneCount, int capacity) {
+        lanes = new ThreadPoolExecutor[laneCount];
+        int perLane = Math.max(1, capacity / laneCount);
+        this.capacity = perLane * laneCount;
+        for (int i = 0; i < laneCount; i++) {
+            String name = "save-io-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(perLane), runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * 提交任务（不阻塞）
+     * @param id 操作的ID，决定所在通道
+     * @param task 任务
+     * @return 任务结果；队列已满时以RejectedExecutionException失败
+     */
+    <T> CompletableFuture<T> submit(UUID id, IoTask<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            lanes[SaveShards.shardOf(id, lanes.length)].execute(() -> {
+                try {
+                    future.complete(task.run());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new RejectedExecutionException("异步存档队列已满（" + capacity + "）", e));
+        }
+        return future;
+    }
+
+    /**
+     * 获取排队中和执行中的任务数
+     */
+    int pending() {
+        int pending = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            pending += lane.getQueue().size() + lane.getActiveCount();
+        }
+        return pending;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 停止接收新任务，已提交的任务继续执行完
+     */
+    void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
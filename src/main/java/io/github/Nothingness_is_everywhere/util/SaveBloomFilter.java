@@ -0,0 +1,156 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 存档ID布隆过滤器
+ * <p>
+ * 查询不存在的ID时，绝大多数在这里直接判定为不存在，无需加锁也无需探测内存索引。
+ * 位数组按预计条目数和目标误判率计算，采用双重哈希（h1 + i * h2）生成k个位置。
+ * 位数组使用AtomicLongArray：写入方先置位再发布到索引，读取方无锁读取不会漏判。
+ * <p>
+ * 删除的ID无法从过滤器中移除，只会增加误判；插入数超过预计条目数时由存档重建过滤器。
+ */
+public final class SaveBloomFilter {
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long capacity;
+    private final double targetFpp;
+    private final AtomicLong insertions = new AtomicLong();
+    private final LongAdder negatives = new LongAdder();        // 直接判定为不存在的次数
+    private final LongAdder falsePositives = new LongAdder();   // 判定可能存在但索引中不存在的次数
+
+    /**
+     * 布隆过滤器统计
+     * @param targetFpp 配置的目标误判率
+     * @param estimatedFpp 按当前置位比例估算的误判率
+     * @param negatives 直接判定为不存在的查询次数
+     * @param falsePositives 误判次数（过滤器判定可能存在，索引中不存在）
+     * @param insertions 已插入的ID数
+     * @param bitCount 位数组长度
+     * @param hashCount 哈希函数个数
+     */
+    public record Stats(double targetFpp, double estimatedFpp, long negatives, long falsePositives,
+                        long insertions, long bitCount, int hashCount) {
+        /**
+         * 获取实际观测到的误判率（误判次数 / 不存在ID的查询次数）
+         * @return 误判率，没有查询不存在的ID时为0
+         */
+        public double observedFpp() {
+            long total = negatives + falsePositives;
+            return total == 0 ? 0 : (double) falsePositives / total;
+        }
+
+        /**
+         * 汇总多个过滤器的统计（分片存档），估算误判率按插入数加权
+         * @param parts 各过滤器的统计
+         * @return 汇总结果
+         */
+        static Stats combine(List<Stats> parts) {
+            if (parts.size() == 1) {
+                return parts.get(0);
+            }
+            double weighted = 0;
+            long negatives = 0, falsePositives = 0, insertions = 0, bitCount = 0;
+            int hashCount = 0;
+            for (Stats part : parts) {
+                weighted += part.estimatedFpp() * part.insertions();
+                negatives += part.negatives();
+                falsePositives += part.falsePositives();
+                insertions += part.insertions();
+                bitCount += part.bitCount();
+                hashCount = Math.max(hashCount, part.hashCount());
+            }
+            return new Stats(parts.get(0).targetFpp(), insertions == 0 ? 0 : weighted / insertions,
+                    negatives, falsePositives, insertions, bitCount, hashCount);
+        }
+    }
+
+    /**
+     * @param expectedInsertions 预计条目数
+     * @param fpp 目标误判率（0-1之间）
+     */
+    SaveBloomFilter(long expectedInsertions, double fpp) {
+        capacity = Math.max(expectedInsertions, 1);
+        targetFpp = fpp;
+        // m = -n * ln(p) / (ln2)^2，k = m / n * ln2
+        long m = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (m + 63) >>> 6);
+        bits = new AtomicLongArray(words);
+        bitCount = (long) words << 6;
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+    }
+
+    /**
+     * 加入ID
+     */
+    void add(long msb, long lsb) {
+        long h1 = mix(msb ^ (lsb * 0x9E3779B97F4A7C15L));
+        long h2 = mix(lsb ^ (msb * 0xC2B2AE3D27D4EB4FL)) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+        insertions.incrementAndGet();
+    }
+
+    /**
+     * 判断ID是否可能存在（返回false时一定不存在）
+     */
+    boolean mightContain(long msb, long lsb) {
+        long h1 = mix(msb ^ (lsb * 0x9E3779B97F4A7C15L));
+        long h2 = mix(lsb ^ (msb * 0xC2B2AE3D27D4EB4FL)) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                negatives.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 记录一次误判（mightContain返回true但索引中不存在）
+     */
+    void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * 插入数是否已超过预计条目数（误判率开始明显上升，需要重建）
+     * @return 是否超过
+     */
+    boolean isSaturated() {
+        return insertions.get() > capacity;
+    }
+
+    Stats stats() {
+        long set = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            set += Long.bitCount(bits.get(i));
+        }
+        double estimated = Math.pow((double) set / bitCount, hashCount);
+        return new Stats(targetFpp, estimated, negatives.sum(), falsePositives.sum(),
+                insertions.get(), bitCount, hashCount);
+    }
+
+    // murmur3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
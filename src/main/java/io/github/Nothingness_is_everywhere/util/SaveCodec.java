@@ -0,0 +1,38 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+
+/**
+ * 存档对象编解码器接口
+ * <p>
+ * 负责对象与字节之间的转换（加密之前/解密之后），可通过BinarySecureSaveUtil.setCodec替换。
+ * 编解码器标识会写入记录头，读取时按标识选择对应的编解码器，因此不同编解码器写入的记录可以共存。
+ */
+public interface SaveCodec {
+    /**
+     * 获取编解码器标识（0-15，0为Java序列化）
+     * @return 编解码器标识
+     */
+    int id();
+
+    /**
+     * 判断是否支持编码该对象（不支持时存档回退到Java序列化）
+     * @param obj 待编码对象
+     * @return 是否支持
+     */
+    boolean supports(Object obj);
+
+    /**
+     * 编码对象
+     * @param obj 待编码对象
+     * @return 编码后的字节
+     */
+    byte[] encode(Object obj) throws IOException;
+
+    /**
+     * 解码对象
+     * @param data 编码后的字节
+     * @return 解码得到的对象
+     */
+    Object decode(byte[] data) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,343 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 存档记录压缩（序列化之后、加密之前）
+ * <p>
+ * 使用Deflater压缩明文，可选预置字典：字典从已有记录中训练，收录在多数记录中重复出现的片段
+ * （类名、字段名、枚举名等），小记录也能引用这些片段而不必各自重复一遍。
+ * 压缩后不小于原文的记录按原样保存，记录头中的压缩标志位区分两者。
+ * <p>
+ * 压缩数据格式：[原文长度(int)] [zlib数据]。zlib数据头中带有所用字典的Adler-32校验值，
+ * 解压时据此从已注册的字典中查找，因此重新训练字典后旧记录仍可读取。
+ * <p>
+ * 字典保存在basePath.dict中（按训练顺序排列，最后一个为写入时使用的字典），
+ * Deflater与Inflater按线程复用。
+ */
+public final class SaveCompression {
+    static final int COMPRESSED_FLAG = 0x0010;          // 记录头标志位：明文已压缩
+    static final String DICTIONARY_EXTENSION = ".dict";
+    // 字典长度上限：每条记录压缩前都要载入一遍字典，过长的字典压缩比几乎不再提高，吞吐却明显下降
+    static final int MAX_DICTIONARY_LENGTH = 8 * 1024;
+    private static final int MIN_LENGTH = 32;           // 小于此长度的明文不尝试压缩
+    private static final int DICTIONARY_MAGIC = 0x44494354;
+    private static final int GRAM = 8;                  // 训练时统计的片段最小长度
+
+    // 全部已加载的字典（Adler-32 -> 字典）
+    private static final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private static final LongAdder compressed = new LongAdder();
+    private static final LongAdder stored = new LongAdder();
+    private static final LongAdder rawBytes = new LongAdder();
+    private static final LongAdder compressedBytes = new LongAdder();
+    private static final LongAdder compressNanos = new LongAdder();
+    private static final LongAdder decompressed = new LongAdder();
+    private static final LongAdder decompressedBytes = new LongAdder();
+    private static final LongAdder decompressNanos = new LongAdder();
+
+    private SaveCompression() {
+    }
+
+    /**
+     * 压缩统计（自进程启动或上次清零以来）
+     * @param compressed 压缩后保存的记录数
+     * @param stored 压缩无收益、按原样保存的记录数
+     * @param rawBytes 写入的明文总字节数（含按原样保存的记录）
+     * @param compressedBytes 实际写入的明文字节数（压缩后）
+     * @param compressNanos 压缩耗时
+     * @param decompressed 解压的记录数
+     * @param decompressedBytes 解压得到的字节数
+     * @param decompressNanos 解压耗时
+     */
+    public record Stats(long compressed, long stored, long rawBytes, long compressedBytes, long compressNanos,
+                        long decompressed, long decompressedBytes, long decompressNanos) {
+        /**
+         * 获取压缩比（写入字节数 / 明文字节数）
+         * @return 压缩比，没有写入时为1
+         */
+        public double ratio() {
+            return rawBytes == 0 ? 1 : (double) compressedBytes / rawBytes;
+        }
+
+        /**
+         * 获取压缩吞吐量
+         * @return 明文MB/秒
+         */
+        public double compressMBps() {
+            return compressNanos == 0 ? 0 : rawBytes / 1e6 / (compressNanos / 1e9);
+        }
+
+        /**
+         * 获取解压吞吐量
+         * @return 明文MB/秒
+         */
+        public double decompressMBps() {
+            return decompressNanos == 0 ? 0 : decompressedBytes / 1e6 / (decompressNanos / 1e9);
+        }
+    }
+
+    /**
+     * 压缩明文
+     * @param plain 明文
+     * @param dictionary 预置字典（可为null）
+     * @return 压缩数据，压缩无收益时返回null
+     */
+    static byte[] compress(byte[] plain, byte[] dictionary) {
+        long start = System.nanoTime();
+        rawBytes.add(plain.length);
+        byte[] result = null;
+        if (plain.length >= MIN_LENGTH) {
+            Deflater deflater = DEFLATER.get();
+            deflater.reset();
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(plain);
+            deflater.finish();
+            // 输出超过原文长度即放弃
+            byte[] buffer = new byte[4 + plain.length];
+            ByteBuffer.wrap(buffer).putInt(plain.length);
+            int length = 4;
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            if (deflater.finished() && length < plain.length) {
+                result = Arrays.copyOf(buffer, length);
+            }
+        }
+        compressNanos.add(System.nanoTime() - start);
+        if (result == null) {
+            stored.increment();
+            compressedBytes.add(plain.length);
+        } else {
+            compressed.increment();
+            compressedBytes.add(result.length);
+        }
+        return result;
+    }
+
+    /**
+     * 解压
+     * @param data 压缩数据
+     * @return 明文
+     */
+    static byte[] decompress(byte[] data) throws IOException {
+        long start = System.nanoTime();
+        int length = ByteBuffer.wrap(data).getInt();
+        byte[] plain = new byte[length];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(data, 4, data.length - 4);
+        try {
+            int position = 0;
+            while (!inflater.finished()) {
+                int n = inflater.inflate(plain, position, length - position);
+                position += n;
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        byte[] dictionary = dictionaries.get(inflater.getAdler());
+                        if (dictionary == null) {
+                            throw new InvalidObjectException("缺少压缩字典：" + Integer.toHexString(inflater.getAdler()));
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput() || position == length) {
+                        break;
+                    }
+                }
+            }
+            if (!inflater.finished() || position != length) {
+                throw new InvalidObjectException("压缩数据不完整");
+            }
+        } catch (DataFormatException e) {
+            throw new InvalidObjectException("压缩数据格式错误：" + e.getMessage());
+        }
+        decompressed.increment();
+        decompressedBytes.add(length);
+        decompressNanos.add(System.nanoTime() - start);
+        return plain;
+    }
+
+    /**
+     * 从样本明文中训练字典
+     * <p>
+     * 1. 统计每个8字节片段出现在多少条样本中；
+     * 2. 在每条样本中取出由高频片段连续覆盖的最长区间，按出现次数 × 长度排序；
+     * 3. 依次收录（跳过已被收录内容包含的区间），出现次数最多的放在字典末尾，匹配距离最短。
+     * @param samples 样本明文
+     * @return 字典（不超过8KB），样本中没有重复片段时为空数组
+     */
+    static byte[] train(List<byte[]> samples) {
+        // 1. 片段的文档频率
+        Map<Long, Integer> frequency = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            ByteBuffer buffer = ByteBuffer.wrap(sample);
+            for (int i = 0; i + GRAM <= sample.length; i++) {
+                long gram = buffer.getLong(i);
+                if (seen.add(gram)) {
+                    frequency.merge(gram, 1, Integer::sum);
+                }
+            }
+        }
+        int threshold = Math.max(2, samples.size() / 10);
+
+        // 2. 高频片段覆盖的区间
+        Map<String, Integer> segments = new HashMap<>();
+        for (byte[] sample : samples) {
+            ByteBuffer buffer = ByteBuffer.wrap(sample);
+            int runStart = -1;
+            int runEnd = -1;
+            for (int i = 0; i + GRAM <= sample.length; i++) {
+                if (frequency.getOrDefault(buffer.getLong(i), 0) < threshold) {
+                    continue;
+                }
+                if (i > runEnd) {
+                    addSegment(segments, sample, runStart, runEnd);
+                    runStart = i;
+                }
+                runEnd = i + GRAM;
+            }
+            addSegment(segments, sample, runStart, runEnd);
+        }
+
+        // 3. 按收益收录
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>(segments.entrySet());
+        ranked.sort(Comparator.comparingLong(
+                (Map.Entry<String, Integer> e) -> (long) e.getValue() * e.getKey().length()).reversed());
+        List<Map.Entry<String, Integer>> chosen = new ArrayList<>();
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : ranked) {
+            String segment = entry.getKey();
+            if (content.length() + segment.length() > MAX_DICTIONARY_LENGTH) {
+                continue;
+            }
+            if (content.indexOf(segment) < 0) {
+                chosen.add(entry);
+                content.append(segment);
+            }
+        }
+        chosen.sort(Map.Entry.comparingByValue());
+        StringBuilder dictionary = new StringBuilder(content.length());
+        for (Map.Entry<String, Integer> entry : chosen) {
+            dictionary.append(entry.getKey());
+        }
+        // ISO-8859-1与字节一一对应
+        return dictionary.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void addSegment(Map<String, Integer> segments, byte[] sample, int start, int end) {
+        if (start >= 0) {
+            segments.merge(new String(sample, start, end - start, StandardCharsets.ISO_8859_1), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * 注册字典（解压时按Adler-32查找）
+     */
+    static void register(byte[] dictionary) {
+        dictionaries.put(adler(dictionary), dictionary);
+    }
+
+    /**
+     * 读取并注册存档的全部字典
+     * @param basePath 基础路径
+     * @return 写入时使用的字典（最后一个），没有字典文件时为null
+     */
+    static byte[] loadDictionaries(String basePath) throws IOException {
+        Path path = Paths.get(basePath + DICTIONARY_EXTENSION);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        byte[] current = null;
+        for (byte[] dictionary : readDictionaries(path)) {
+            register(dictionary);
+            current = dictionary;
+        }
+        return current;
+    }
+
+    /**
+     * 追加字典到存档的字典文件（先写临时文件再原子重命名），并注册
+     * @param basePath 基础路径
+     * @param dictionary 新字典
+     */
+    static void saveDictionary(String basePath, byte[] dictionary) throws IOException {
+        Path path = Paths.get(basePath + DICTIONARY_EXTENSION);
+        Path temp = Paths.get(basePath + DICTIONARY_EXTENSION + ".tmp");
+        List<byte[]> all = Files.exists(path) ? readDictionaries(path) : new ArrayList<>();
+        all.add(dictionary);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(DICTIONARY_MAGIC);
+            out.writeInt(all.size());
+            for (byte[] existing : all) {
+                out.writeInt(existing.length);
+                out.write(existing);
+            }
+        }
+        Files.write(temp, bytes.toByteArray());
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        register(dictionary);
+    }
+
+    private static List<byte[]> readDictionaries(Path path) throws IOException {
+        List<byte[]> result = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            if (in.readInt() != DICTIONARY_MAGIC) {
+                throw new IOException("压缩字典文件格式错误：" + path);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] dictionary = new byte[in.readInt()];
+                in.readFully(dictionary);
+                result.add(dictionary);
+            }
+        }
+        return result;
+    }
+
+    private static int adler(byte[] data) {
+        Adler32 adler = new Adler32();
+        adler.update(data);
+        return (int) adler.getValue();
+    }
+
+    static Stats stats() {
+        return new Stats(compressed.sum(), stored.sum(), rawBytes.sum(), compressedBytes.sum(), compressNanos.sum(),
+                decompressed.sum(), decompressedBytes.sum(), decompressNanos.sum());
+    }
+
+    static void resetStats() {
+        for (LongAdder adder : new LongAdder[]{compressed, stored, rawBytes, compressedBytes, compressNanos,
+                decompressed, decompressedBytes, decompressNanos}) {
+            adder.reset();
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * 存档内容去重表（按内容哈希共享数据记录，带引用计数）
+ * <p>
+ * 去重模式下写入的记录按内容哈希（编解码器标识 + 明文的SHA-256）登记；之后写入内容相同的对象时，
+ * 索引条目直接指向已有的记录，数据文件中只追加一条很短的引用记录（见SaveRecords），
+ * 数据文件不依赖索引也能还原出共享记录的每个ID。
+ * <p>
+ * 引用计数即指向该记录的索引条目数（含正在写入的引用）：删除或更新使计数归零后记录才成为死空间，
+ * 计数不小于2的记录不能原地覆盖，整理时共享记录只复制一次（见SaveStore.compact）。
+ * <p>
+ * 内容哈希追加保存在.dedup文件中，整理后重写。该文件只用于查找：打开时丢弃与索引不符的条目，
+ * 从文件加载的条目第一次被引用前还要解密比对，文件过期或丢失只会少去重，不会引用错误的记录。
+ * 该文件同时标记存档用过去重，打开时据此从索引统计共享记录的引用计数。
+ * <p>
+ * 方法均为同步方法。存档在持有索引写锁时调用register、retain、release，锁顺序为先索引锁后本对象。
+ */
+public final class SaveDedup {
+    static final String DEDUP_EXTENSION = ".dedup";
+    private static final int ENTRY_LENGTH = 32 + 8 + 4; // [哈希] [偏移量] [长度]
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Path path;
+    private final Map<Digest, Long> byHash = new HashMap<>();   // 内容哈希 -> 记录偏移量
+    private final Map<Long, Shared> byOffset = new HashMap<>(); // 记录偏移量 -> 引用计数等
+    private long savedBytes;        // 共享节省的字节数：Σ(引用数 - 1) × (记录长度 - 引用记录长度)
+    private FileChannel channel;    // .dedup文件（首次登记时打开）
+
+    /**
+     * 去重统计
+     * @param sharedRecords 被两个及以上ID共享的记录数
+     * @param references 指向这些记录的ID数
+     * @param savedBytes 共享节省的数据文件字节数（已扣除引用记录占用的空间）
+     */
+    public record Stats(long sharedRecords, long references, long savedBytes) {
+        /**
+         * 汇总多个分片的统计
+         * @param parts 各分片的统计
+         * @return 合计
+         */
+        static Stats combine(List<Stats> parts) {
+            long sharedRecords = 0, references = 0, savedBytes = 0;
+            for (Stats part : parts) {
+                sharedRecords += part.sharedRecords;
+                references += part.references;
+                savedBytes += part.savedBytes;
+            }
+            return new Stats(sharedRecords, references, savedBytes);
+        }
+    }
+
+    /**
+     * 按内容哈希找到的记录
+     * @param offset 偏移量
+     * @param length 长度
+     * @param verified 内容是否已核实（从.dedup文件加载的条目首次使用前须比对内容，见confirm）
+     */
+    record Match(long offset, int length, boolean verified) {
+    }
+
+    // SHA-256摘要（作为散列表的键）
+    private record Digest(long a, long b, long c, long d) {
+        static Digest of(byte[] hash) {
+            ByteBuffer buffer = ByteBuffer.wrap(hash);
+            return new Digest(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+        }
+
+        byte[] bytes() {
+            return ByteBuffer.allocate(32).putLong(a).putLong(b).putLong(c).putLong(d).array();
+        }
+    }
+
+    // 被跟踪的记录：登记过内容哈希或被多个ID共享
+    private static final class Shared {
+        final int length;
+        final int referenceLength; // 引用该记录的引用记录长度（按拥有者的描述估算，相同内容的描述通常相同）
+        Digest hash;        // 内容哈希，未知时为null
+        int refs;           // 引用计数
+        boolean verified;   // 内容哈希是否已核实
+
+        Shared(int length, int referenceLength, Digest hash, int refs, boolean verified) {
+            this.length = length;
+            this.referenceLength = referenceLength;
+            this.hash = hash;
+            this.refs = refs;
+            this.verified = verified;
+        }
+
+        // 每多一个引用节省的字节数
+        long saving() {
+            return length - referenceLength;
+        }
+    }
+
+    private SaveDedup(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * 计算内容哈希
+     * @param codecId 编解码器标识
+     * @param plain 序列化后的明文（压缩前）
+     * @return SHA-256
+     */
+    static byte[] contentHash(int codecId, byte[] plain) {
+        MessageDigest digest = DIGEST.get();
+        digest.update((byte) codecId);
+        return digest.digest(plain);
+    }
+
+    /**
+     * 解密一条记录并计算其内容哈希（核实.dedup文件中的条目用）
+     * @param record 完整记录
+     * @return SHA-256，记录无法解码时返回null
+     */
+    static byte[] contentHash(ByteBuffer record) {
+        try {
+            SaveRecords.Payload payload = SaveRecords.decode(record);
+            byte[] plain = (payload.flags() & SaveCompression.COMPRESSED_FLAG) != 0
+                    ? SaveCompression.decompress(payload.data()) : payload.data();
+            return contentHash(payload.codecId(), plain);
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 创建空的去重表（存档第一次以去重模式写入时）
+     * @param basePath 基础路径
+     * @return 去重表
+     */
+    static SaveDedup create(String basePath) throws IOException {
+        mark(basePath);
+        return new SaveDedup(Paths.get(basePath + DEDUP_EXTENSION));
+    }
+
+    /**
+     * 标记存档用过去重（.dedup文件不存在时创建空文件），从数据文件恢复出共享记录时调用
+     * @param basePath 基础路径
+     */
+    static void mark(String basePath) throws IOException {
+        Path path = Paths.get(basePath + DEDUP_EXTENSION);
+        if (!Files.exists(path)) {
+            Files.write(path, new byte[0]);
+        }
+    }
+
+    /**
+     * 加载存档的去重表：从索引统计共享记录的引用计数，再加载与索引相符的内容哈希
+     * @param basePath 基础路径
+     * @param index 内存索引
+     * @param descriptions 描述编码 -> 描述
+     * @return 去重表，存档没有用过去重时返回null
+     */
+    static SaveDedup load(String basePath, SaveIndex index, IntFunction<String> descriptions) throws IOException {
+        Path path = Paths.get(basePath + DEDUP_EXTENSION);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        SaveDedup dedup = new SaveDedup(path);
+        // 1. 文件中的内容哈希（同一偏移量以后写入的为准，末尾不完整的条目忽略）
+        Map<Long, ByteBuffer> hashes = new HashMap<>();
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (file.remaining() >= ENTRY_LENGTH) {
+            ByteBuffer entry = file.slice(file.position(), ENTRY_LENGTH);
+            file.position(file.position() + ENTRY_LENGTH);
+            hashes.put(entry.getLong(32), entry);
+        }
+        // 2. 排序全部偏移量，找出被多个条目指向的记录
+        long[] offsets = new long[index.size()];
+        int[] count = {0};
+        index.forEach((msb, lsb, dataOffset, dataLength, indexPosition) -> offsets[count[0]++] = dataOffset);
+        Arrays.sort(offsets);
+        Map<Long, Integer> refs = new HashMap<>();
+        for (int i = 0, j; i < offsets.length; i = j) {
+            for (j = i + 1; j < offsets.length && offsets[j] == offsets[i]; j++) {
+                // 同一偏移量连续排列
+            }
+            if (j - i > 1) {
+                refs.put(offsets[i], j - i);
+            }
+        }
+        // 3. 按索引中的实际长度建立跟踪表，长度不符的内容哈希丢弃
+        index.forEach((msb, lsb, dataOffset, dataLength, indexPosition) -> {
+            if (dedup.byOffset.containsKey(dataOffset)) {
+                return;
+            }
+            ByteBuffer entry = hashes.get(dataOffset);
+            Digest hash = null;
+            if (entry != null && entry.getInt(40) == dataLength) {
+                byte[] bytes = new byte[32];
+                entry.get(0, bytes);
+                hash = Digest.of(bytes);
+            }
+            int shared = refs.getOrDefault(dataOffset, 1);
+            if (hash != null || shared > 1) {
+                String description = descriptions.apply(index.get(msb, lsb).descCode());
+                Shared tracked = new Shared(dataLength, SaveRecords.referenceLength(description), hash, shared, false);
+                dedup.byOffset.put(dataOffset, tracked);
+                dedup.savedBytes += (shared - 1) * tracked.saving();
+                if (hash != null) {
+                    dedup.byHash.putIfAbsent(hash, dataOffset);
+                }
+            }
+        });
+        return dedup;
+    }
+
+    /**
+     * 是否有该内容的记录
+     * @param hash 内容哈希
+     * @return 是否有
+     */
+    synchronized boolean contains(byte[] hash) {
+        return byHash.containsKey(Digest.of(hash));
+    }
+
+    /**
+     * 按内容哈希查找记录，找到时引用计数加1（新的引用随后发布到索引）
+     * @param hash 内容哈希
+     * @return 记录位置，没有时返回null
+     */
+    synchronized Match share(byte[] hash) {
+        Long offset = byHash.get(Digest.of(hash));
+        if (offset == null) {
+            return null;
+        }
+        Shared shared = byOffset.get(offset);
+        retain(shared);
+        return new Match(offset, shared.length, shared.verified);
+    }
+
+    /**
+     * 核实share返回的未核实记录：内容相符则之后不再核实，否则撤销这次引用并丢弃该内容哈希
+     * @param offset 记录偏移量
+     * @param same 内容是否相符
+     */
+    synchronized void confirm(long offset, boolean same) {
+        Shared shared = byOffset.get(offset);
+        if (shared == null) {
+            return;
+        }
+        if (same) {
+            shared.verified = true;
+            return;
+        }
+        if (shared.hash != null) {
+            byHash.remove(shared.hash, offset);
+            shared.hash = null;
+        }
+        release(offset);
+    }
+
+    /**
+     * 登记新写入的记录（引用计数为1）；并发写入相同内容时只有先登记的记录可被查找到
+     * @param hash 内容哈希
+     * @param offset 偏移量
+     * @param length 长度
+     * @param referenceLength 按该记录的描述计算的引用记录长度
+     */
+    synchronized void register(byte[] hash, long offset, int length, int referenceLength) throws IOException {
+        if (byOffset.containsKey(offset)) {
+            return;
+        }
+        Digest digest = Digest.of(hash);
+        boolean first = byHash.putIfAbsent(digest, offset) == null;
+        // 同一批中后面的相同内容会引用这条记录，即使不可查找也要跟踪引用计数
+        byOffset.put(offset, new Shared(length, referenceLength, first ? digest : null, 1, true));
+        if (!first) {
+            return;
+        }
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_LENGTH).put(hash).putLong(offset).putInt(length).flip();
+        while (entry.hasRemaining()) {
+            channel.write(entry);
+        }
+    }
+
+    /**
+     * 同一批写入中后出现的相同内容引用前面的记录，引用计数加1
+     * @param offset 记录偏移量
+     */
+    synchronized void retain(long offset) {
+        Shared shared = byOffset.get(offset);
+        if (shared != null) {
+            retain(shared);
+        }
+    }
+
+    /**
+     * 索引条目不再指向该记录（删除或更新），引用计数减1，归零时不再跟踪
+     * @param offset 记录偏移量
+     */
+    synchronized void release(long offset) {
+        Shared shared = byOffset.get(offset);
+        if (shared == null) {
+            return;
+        }
+        if (shared.refs > 1) {
+            savedBytes -= shared.saving();
+        }
+        if (--shared.refs <= 0) {
+            byOffset.remove(offset);
+            if (shared.hash != null) {
+                byHash.remove(shared.hash, offset);
+            }
+        }
+    }
+
+    /**
+     * 原地覆盖前调用：记录未被共享时放弃其内容哈希（内容即将改变），被共享时不能覆盖
+     * @param offset 记录偏移量
+     * @return 是否可以覆盖
+     */
+    synchronized boolean claim(long offset) {
+        Shared shared = byOffset.get(offset);
+        if (shared == null) {
+            return true;
+        }
+        if (shared.refs > 1) {
+            return false;
+        }
+        byOffset.remove(offset);
+        if (shared.hash != null) {
+            byHash.remove(shared.hash, offset);
+        }
+        return true;
+    }
+
+    /**
+     * 共享节省的字节数（计算死空间比例时从有效数据中扣除）
+     * @return 字节数
+     */
+    synchronized long savedBytes() {
+        return savedBytes;
+    }
+
+    /**
+     * 获取统计
+     * @return 统计快照
+     */
+    synchronized Stats stats() {
+        long sharedRecords = 0;
+        long references = 0;
+        for (Shared shared : byOffset.values()) {
+            if (shared.refs > 1) {
+                sharedRecords++;
+                references += shared.refs;
+            }
+        }
+        return new Stats(sharedRecords, references, savedBytes);
+    }
+
+    /**
+     * 整理后按记录的新位置重建跟踪表并重写.dedup文件（持有存档写锁，没有并发写入）
+     * @param moved 旧偏移量 -> 新偏移量（整理复制的全部记录）
+     */
+    synchronized void relocate(Map<Long, Long> moved) throws IOException {
+        Map<Long, Shared> old = new HashMap<>(byOffset);
+        byOffset.clear();
+        byHash.clear();
+        ByteBuffer file = ByteBuffer.allocate(old.size() * ENTRY_LENGTH);
+        for (Map.Entry<Long, Shared> entry : old.entrySet()) {
+            Long offset = moved.get(entry.getKey());
+            Shared shared = entry.getValue();
+            if (offset == null) {
+                savedBytes -= Math.max(0, shared.refs - 1) * shared.saving();
+                continue;
+            }
+            byOffset.put(offset, shared);
+            if (shared.hash != null && byHash.putIfAbsent(shared.hash, offset) == null) {
+                file.put(shared.hash.bytes()).putLong(offset).putInt(shared.length);
+            }
+        }
+        close();
+        Path temp = Paths.get(path + ".tmp");
+        Files.write(temp, Arrays.copyOf(file.array(), file.position()));
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 关闭.dedup文件
+     */
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void retain(Shared shared) {
+        if (shared.refs >= 1) {
+            savedBytes += shared.saving();
+        }
+        shared.refs++;
+    }
+}
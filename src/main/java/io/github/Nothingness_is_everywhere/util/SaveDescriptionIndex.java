@@ -0,0 +1,71 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * 描述二级索引（字典编码）
+ * <p>
+ * 存档中不同的描述通常只有几十到几百种（类名、效果名等），每种描述分配一个整数编码，
+ * 内存索引的每个条目只保存编码（见SaveIndex）。按描述查询时先在字典中匹配不同的描述，
+ * 再按编码筛选条目，不需要逐条解码描述或读取记录。
+ * <p>
+ * 编码在存档打开期间只增不减，描述不再被任何条目引用时仍保留在字典中，重新打开存档时重建。
+ */
+final class SaveDescriptionIndex {
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private final List<String> descriptions = new ArrayList<>(); // 编码 -> 描述
+
+    /**
+     * 获取描述的编码，首次出现时分配新编码
+     * @param description 描述
+     * @return 编码
+     */
+    int code(String description) {
+        String key = description == null ? "" : description;
+        Integer code = codes.get(key);
+        if (code != null) {
+            return code;
+        }
+        synchronized (descriptions) {
+            return codes.computeIfAbsent(key, k -> {
+                descriptions.add(k);
+                return descriptions.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * 获取编码对应的描述
+     * @param code 编码
+     * @return 描述
+     */
+    String description(int code) {
+        synchronized (descriptions) {
+            return descriptions.get(code);
+        }
+    }
+
+    /**
+     * 匹配描述
+     * @param matcher 描述条件
+     * @return 满足条件的描述编码
+     */
+    BitSet match(Predicate<String> matcher) {
+        List<String> snapshot;
+        synchronized (descriptions) {
+            snapshot = new ArrayList<>(descriptions);
+        }
+        BitSet matched = new BitSet(snapshot.size());
+        for (int code = 0; code < snapshot.size(); code++) {
+            if (matcher.test(snapshot.get(code))) {
+                matched.set(code);
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,22 @@
+package io.github.Nothingness_is_everywhere.util;
+
+/**
+ * 预写日志的持久化级别
+ * <p>
+ * 仅在启用预写日志（BinarySecureSaveUtil.setWriteAheadLog）时生效。
+ * 日志写入总是按组提交：同一时刻等待中的写入合并为一次追加。
+ */
+public enum SaveDurability {
+    /**
+     * 只写入日志不强制刷盘：进程崩溃可恢复，操作系统崩溃可能丢失最近的写入
+     */
+    NONE,
+    /**
+     * 按批刷盘：每组提交追加一次并force一次，返回时写入已落盘
+     */
+    BATCH,
+    /**
+     * 逐条刷盘：每次写入单独追加并force，不与其他写入合并
+     */
+    WRITE
+}
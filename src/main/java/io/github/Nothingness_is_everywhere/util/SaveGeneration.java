@@ -0,0 +1,145 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存索引的一代及其多版本信息（供快照读取）
+ * <p>
+ * 整理替换内存索引和数据文件时换代，被替换的一代不再被修改。存档对内存索引的每次修改都递增版本号；
+ * 有快照时，修改前把旧的定位结果连同新版本号记入撤销链。快照查找时先查内存索引，
+ * 再取撤销链中晚于快照版本的最早一条，还原出快照版本时的定位结果。
+ * <p>
+ * 快照通过这一代共享的只读通道读取数据文件。这一代被替换或存档关闭后，最后一个快照关闭时才关闭通道，
+ * 已被整理后的新文件替换的旧数据文件到这时才真正释放。
+ */
+final class SaveGeneration {
+    final SaveIndex index;
+    private final Path dataPath;
+    private final Map<UUID, Undo> undo = new ConcurrentHashMap<>(); // ID -> 撤销链（新的在前）
+    private FileChannel reader; // 快照共享的数据文件通道
+    private int pins;           // 引用这一代的快照数
+    private boolean retired;    // 是否已被替换或关闭
+
+    // 撤销链节点：版本号为version的修改之前的定位结果（null表示当时不存在）
+    private record Undo(long version, SaveIndex.Location prior, Undo next) {
+    }
+
+    /**
+     * @param index 这一代的内存索引
+     * @param dataPath 这一代的数据文件
+     */
+    SaveGeneration(SaveIndex index, Path dataPath) {
+        this.index = index;
+        this.dataPath = dataPath;
+    }
+
+    /**
+     * 记录一次修改之前的定位结果（须在修改内存索引之前、持有索引写锁时调用）
+     * @param id 唯一标识
+     * @param version 这次修改的版本号
+     * @param prior 修改前的定位结果，不存在时为null
+     */
+    void record(UUID id, long version, SaveIndex.Location prior) {
+        undo.compute(id, (key, head) -> new Undo(version, prior, head));
+    }
+
+    /**
+     * 还原快照版本时的定位结果
+     * @param id 唯一标识
+     * @param version 快照版本号
+     * @param current 在撤销链之前查到的当前定位结果
+     * @return 快照版本时的定位结果，不存在时为null
+     */
+    SaveIndex.Location restore(UUID id, long version, SaveIndex.Location current) {
+        Undo earliest = null;
+        for (Undo node = undo.get(id); node != null && node.version > version; node = node.next) {
+            earliest = node;
+        }
+        return earliest == null ? current : earliest.prior;
+    }
+
+    /**
+     * 有撤销记录的ID（其中可能有快照之后被删除、内存索引中已没有的ID）
+     * @return ID集合（并发视图）
+     */
+    Set<UUID> changedIds() {
+        return undo.keySet();
+    }
+
+    /**
+     * 丢弃不再被任何快照需要的撤销记录（须持有索引写锁）
+     * @param oldest 仍在使用的最旧快照版本号，没有快照时为Long.MAX_VALUE
+     */
+    void trim(long oldest) {
+        if (oldest == Long.MAX_VALUE) {
+            undo.clear();
+            return;
+        }
+        for (UUID id : undo.keySet()) {
+            undo.computeIfPresent(id, (key, head) -> keepAfter(head, oldest));
+        }
+    }
+
+    // 保留版本号大于oldest的节点（链表按版本号从新到旧排列）
+    private static Undo keepAfter(Undo head, long oldest) {
+        List<Undo> kept = new ArrayList<>();
+        Undo node = head;
+        while (node != null && node.version > oldest) {
+            kept.add(node);
+            node = node.next;
+        }
+        if (node == null) {
+            return head;
+        }
+        Undo rebuilt = null;
+        for (int i = kept.size() - 1; i >= 0; i--) {
+            rebuilt = new Undo(kept.get(i).version, kept.get(i).prior, rebuilt);
+        }
+        return rebuilt;
+    }
+
+    /**
+     * 快照引用这一代，返回共享的数据文件通道
+     * @return 通道，数据文件尚不存在时为null
+     */
+    synchronized FileChannel pin() throws IOException {
+        if (reader == null && Files.exists(dataPath)) {
+            reader = FileChannel.open(dataPath, StandardOpenOption.READ);
+        }
+        pins++;
+        return reader;
+    }
+
+    /**
+     * 快照不再引用这一代
+     */
+    synchronized void unpin() throws IOException {
+        pins--;
+        closeIfUnused();
+    }
+
+    /**
+     * 这一代被替换或存档关闭，之后不再被修改也不再有新快照
+     */
+    synchronized void retire() throws IOException {
+        retired = true;
+        closeIfUnused();
+    }
+
+    private void closeIfUnused() throws IOException {
+        if (pins == 0 && reader != null && retired) {
+            reader.close();
+            reader = null;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * 存档内存索引
+ * <p>
+ * 以UUID的高低两个long为键，记录数据偏移量、数据长度、条目在索引文件中的位置以及描述编码
+ * （见SaveDescriptionIndex）。
+ * 采用开放寻址（线性探测）+ 并行数组存储，避免为每个条目创建对象，
+ * 数十万条记录时内存占用远小于HashMap。
+ * 全零UUID在索引文件中表示“已删除”，因此在此处同时用作空槽标记。
+ * <p>
+ * 本类本身不保证线程安全，由调用方加锁。
+ */
+final class SaveIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mostSigBits;     // UUID高位
+    private long[] leastSigBits;    // UUID低位
+    private long[] dataOffsets;     // 数据文件中的偏移量
+    private int[] dataLengths;      // 数据长度
+    private long[] indexPositions;  // 条目在索引文件中的位置
+    private int[] descCodes;        // 描述编码
+    private int size;               // 有效条目数
+    private long liveBytes;         // 有效条目的数据总长度（用于计算死空间比例）
+    private int mask;               // 容量 - 1（容量为2的幂）
+
+    /**
+     * 索引定位结果
+     * @param dataOffset 数据文件中的偏移量
+     * @param dataLength 数据长度
+     * @param indexPosition 条目在索引文件中的位置
+     * @param descCode 描述编码
+     */
+    record Location(long dataOffset, int dataLength, long indexPosition, int descCode) {
+    }
+
+    /**
+     * 条目遍历回调
+     */
+    interface EntryVisitor {
+        void visit(long msb, long lsb, long dataOffset, int dataLength, long indexPosition) throws IOException;
+    }
+
+    /**
+     * 按描述编码遍历的回调
+     */
+    interface DescribedVisitor {
+        void visit(long msb, long lsb, long dataOffset, int dataLength, int descCode);
+    }
+
+    SaveIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize 预计条目数（用于预分配容量）
+     */
+    SaveIndex(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * 查找条目
+     * @return 定位结果，不存在时返回null
+     */
+    Location get(long msb, long lsb) {
+        int slot = findSlot(msb, lsb);
+        if (slot < 0) {
+            return null;
+        }
+        return location(slot);
+    }
+
+    /**
+     * 插入或覆盖条目
+     * @return 被覆盖的旧条目，没有时返回null
+     */
+    Location put(long msb, long lsb, long dataOffset, int dataLength, long indexPosition, int descCode) {
+        if (msb == 0 && lsb == 0) {
+            throw new IllegalArgumentException("全零UUID为删除标记，不能作为索引键");
+        }
+        int slot = hash(msb, lsb) & mask;
+        while (!isEmpty(slot)) {
+            if (mostSigBits[slot] == msb && leastSigBits[slot] == lsb) {
+                Location old = location(slot);
+                liveBytes += dataLength - dataLengths[slot];
+                dataOffsets[slot] = dataOffset;
+                dataLengths[slot] = dataLength;
+                indexPositions[slot] = indexPosition;
+                descCodes[slot] = descCode;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        mostSigBits[slot] = msb;
+        leastSigBits[slot] = lsb;
+        dataOffsets[slot] = dataOffset;
+        dataLengths[slot] = dataLength;
+        indexPositions[slot] = indexPosition;
+        descCodes[slot] = descCode;
+        liveBytes += dataLength;
+        if (++size > (mask + 1) * 3 / 4) {
+            rehash((mask + 1) << 1);
+        }
+        return null;
+    }
+
+    /**
+     * 删除条目（向后移位删除，不留墓碑）
+     * @return 被删除的条目，不存在时返回null
+     */
+    Location remove(long msb, long lsb) {
+        int slot = findSlot(msb, lsb);
+        if (slot < 0) {
+            return null;
+        }
+        Location old = location(slot);
+        size--;
+        liveBytes -= dataLengths[slot];
+        // 将后续同一探测链上的条目前移，保证查找不中断
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (!isEmpty(next)) {
+            int home = hash(mostSigBits[next], leastSigBits[next]) & mask;
+            // home不在(hole, next]区间内时，条目可以移动到空洞处
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                moveSlot(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        mostSigBits[hole] = 0;
+        leastSigBits[hole] = 0;
+        return old;
+    }
+
+    /**
+     * 获取有效条目数
+     * @return 条目数
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 获取有效条目的数据总长度
+     * @return 字节数
+     */
+    long liveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * 遍历全部条目（遍历期间不能修改本索引）
+     * @param visitor 回调
+     */
+    void forEach(EntryVisitor visitor) throws IOException {
+        for (int slot = 0; slot <= mask; slot++) {
+            if (!isEmpty(slot)) {
+                visitor.visit(mostSigBits[slot], leastSigBits[slot],
+                        dataOffsets[slot], dataLengths[slot], indexPositions[slot]);
+            }
+        }
+    }
+
+    /**
+     * 遍历描述编码在给定集合中的条目（只比较整数编码，不解码描述）
+     * @param codes 描述编码集合
+     * @param visitor 回调
+     */
+    void forEachDescribed(BitSet codes, DescribedVisitor visitor) {
+        for (int slot = 0; slot <= mask; slot++) {
+            if (!isEmpty(slot) && codes.get(descCodes[slot])) {
+                visitor.visit(mostSigBits[slot], leastSigBits[slot], dataOffsets[slot], dataLengths[slot],
+                        descCodes[slot]);
+            }
+        }
+    }
+
+    private Location location(int slot) {
+        return new Location(dataOffsets[slot], dataLengths[slot], indexPositions[slot], descCodes[slot]);
+    }
+
+    private int findSlot(long msb, long lsb) {
+        if (msb == 0 && lsb == 0) {
+            return -1;
+        }
+        int slot = hash(msb, lsb) & mask;
+        while (!isEmpty(slot)) {
+            if (mostSigBits[slot] == msb && leastSigBits[slot] == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean isEmpty(int slot) {
+        return mostSigBits[slot] == 0 && leastSigBits[slot] == 0;
+    }
+
+    private void moveSlot(int from, int to) {
+        mostSigBits[to] = mostSigBits[from];
+        leastSigBits[to] = leastSigBits[from];
+        dataOffsets[to] = dataOffsets[from];
+        dataLengths[to] = dataLengths[from];
+        indexPositions[to] = indexPositions[from];
+        descCodes[to] = descCodes[from];
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldMsb = mostSigBits;
+        long[] oldLsb = leastSigBits;
+        long[] oldOffsets = dataOffsets;
+        int[] oldLengths = dataLengths;
+        long[] oldPositions = indexPositions;
+        int[] oldCodes = descCodes;
+        long bytes = liveBytes;
+        allocate(newCapacity);
+        size = 0;
+        for (int i = 0; i < oldMsb.length; i++) {
+            if (oldMsb[i] != 0 || oldLsb[i] != 0) {
+                put(oldMsb[i], oldLsb[i], oldOffsets[i], oldLengths[i], oldPositions[i], oldCodes[i]);
+            }
+        }
+        liveBytes = bytes;
+    }
+
+    private void allocate(int capacity) {
+        mostSigBits = new long[capacity];
+        leastSigBits = new long[capacity];
+        dataOffsets = new long[capacity];
+        dataLengths = new int[capacity];
+        indexPositions = new long[capacity];
+        descCodes = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // 混合高低位（murmur3 finalizer），UUID随机位分布已较均匀，此处主要防止低位聚集
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ (lsb * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,487 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * 存档索引文件格式（版本2）
+ * <p>
+ * [文件头] [有序段] [字符串表] [无序尾部]
+ * <ul>
+ *     <li>文件头（16字节）：[魔数(int)] [版本(int)] [有序条目数(int)] [字符串表长度(int)]</li>
+ *     <li>有序段：按UUID排序的定长条目（32字节），可二分查找，写成后不再修改：
+ *     [UUID(16字节)] [数据偏移量(long)] [数据长度(int)] [描述在字符串表中的偏移(int)]</li>
+ *     <li>字符串表：[长度(1字节)] [UTF-8描述]，相同描述只保存一次</li>
+ *     <li>无序尾部：运行期间追加的变长条目，按追加顺序生效（后写入的覆盖先写入的）：
+ *     <br>写入：[0xE1] [UUID] [数据偏移量(long)] [数据长度(int)] [描述长度(1字节)] [描述] [CRC32C(int)]
+ *     <br>删除：[0xE2] [UUID] [CRC32C(int)]
+ *     <br>校验和覆盖标记字节之后、校验和之前的部分。崩溃可能在尾部留下空洞或写了一半的条目，
+ *     读取时逐字节跳过标记或校验和不匹配的位置，不影响之后完整的条目。</li>
+ * </ul>
+ * 尾部增长到一定长度后，由存档在独占写锁下与有序段合并成新文件（见SaveStore.mergeIndex）。
+ * <p>
+ * 旧格式（版本1）为插入顺序的88字节定长条目（描述固定占60字节），全零UUID表示已删除；
+ * 打开旧格式存档时整体转换为版本2。
+ */
+final class SaveIndexFile {
+    static final int HEADER_LENGTH = 16;
+    static final int ENTRY_LENGTH = 32;
+    static final int MAX_DESCRIPTION_BYTES = 255;   // 描述最多保存的UTF-8字节数
+    private static final int MAGIC = 0x53494458;    // "SIDX"
+    private static final int VERSION = 2;
+    private static final byte PUT = (byte) 0xE1;
+    private static final byte DELETE = (byte) 0xE2;
+    private static final byte SUPERSEDED = (byte) 0xE0; // 被并发写入乱序覆盖的尾部写入条目
+    private static final int PUT_FIXED_LENGTH = 1 + 16 + 8 + 4 + 1 + 4;
+    private static final int DELETE_LENGTH = 1 + 16 + 4;
+    // 旧格式：UUID(16字节) + 描述(60字节) + 偏移量(8字节) + 数据长度(4字节)
+    private static final int LEGACY_DESC_LENGTH = 60;
+    private static final int LEGACY_ENTRY_LENGTH = 16 + LEGACY_DESC_LENGTH + 8 + 4;
+
+    private static final ThreadLocal<CRC32C> CRC = ThreadLocal.withInitial(CRC32C::new);
+
+    private SaveIndexFile() {
+    }
+
+    /**
+     * 索引条目
+     * @param msb UUID高位
+     * @param lsb UUID低位
+     * @param dataOffset 数据偏移量
+     * @param dataLength 数据长度
+     * @param description 描述（未要求读取描述时为null）
+     */
+    record Entry(long msb, long lsb, long dataOffset, int dataLength, String description) {
+        UUID id() {
+            return new UUID(msb, lsb);
+        }
+    }
+
+    /**
+     * 条目遍历回调
+     */
+    interface Visitor {
+        /**
+         * @param entry 写入条目（删除条目时只有UUID有效）
+         * @param deleted 是否为删除条目
+         * @param position 条目在文件中的位置
+         */
+        void visit(Entry entry, boolean deleted, long position) throws IOException;
+    }
+
+    /**
+     * 按文件顺序遍历全部条目（有序段在前，尾部在后），兼容旧格式
+     * @param file 整个索引文件的内容（位置为0）
+     * @param withDescriptions 是否解码描述
+     * @param visitor 回调
+     */
+    static void scan(ByteBuffer file, boolean withDescriptions, Visitor visitor) throws IOException {
+        if (file.limit() == 0) {
+            return;
+        }
+        if (!isCurrent(file, file.limit())) {
+            scanLegacy(file, withDescriptions, visitor);
+            return;
+        }
+        int count = file.getInt(8);
+        long stringTable = HEADER_LENGTH + (long) count * ENTRY_LENGTH;
+        Map<Integer, String> strings = new HashMap<>(); // 有序段中相同描述只解码一次
+        for (int i = 0; i < count; i++) {
+            int pos = HEADER_LENGTH + i * ENTRY_LENGTH;
+            String description = withDescriptions ? strings.computeIfAbsent(file.getInt(pos + 28),
+                    offset -> readString(file, (int) stringTable + offset)) : null;
+            visitor.visit(new Entry(file.getLong(pos), file.getLong(pos + 8), file.getLong(pos + 16),
+                    file.getInt(pos + 24), description), false, pos);
+        }
+        scanTail(file, (int) (stringTable + file.getInt(12)), withDescriptions, visitor);
+    }
+
+    // 遍历尾部，跳过空洞和不完整的条目
+    static void scanTail(ByteBuffer file, int pos, boolean withDescriptions, Visitor visitor)
+            throws IOException {
+        int limit = file.limit();
+        while (pos < limit) {
+            int length = tailEntryLength(file, pos);
+            if (length < 0) {
+                pos++;
+                continue;
+            }
+            byte marker = file.get(pos);
+            long msb = file.getLong(pos + 1);
+            long lsb = file.getLong(pos + 9);
+            if (marker == DELETE) {
+                visitor.visit(new Entry(msb, lsb, 0, 0, null), true, pos);
+            } else if (marker == PUT) {
+                String description = withDescriptions ? readString(file, pos + 29) : null;
+                visitor.visit(new Entry(msb, lsb, file.getLong(pos + 17), file.getInt(pos + 25), description),
+                        false, pos);
+            }
+            pos += length;
+        }
+    }
+
+    // 校验pos处的尾部条目，返回条目长度，不是完整条目时返回-1
+    private static int tailEntryLength(ByteBuffer file, int pos) {
+        byte marker = file.get(pos);
+        int length;
+        if (marker == DELETE) {
+            length = DELETE_LENGTH;
+        } else if (marker == PUT || marker == SUPERSEDED) {
+            if (pos + 30 > file.limit()) {
+                return -1;
+            }
+            length = PUT_FIXED_LENGTH + (file.get(pos + 29) & 0xFF);
+        } else {
+            return -1;
+        }
+        if (pos + length > file.limit()) {
+            return -1;
+        }
+        CRC32C crc = CRC.get();
+        crc.reset();
+        crc.update(file.slice(pos + 1, length - 5));
+        return (int) crc.getValue() == file.getInt(pos + length - 4) ? length : -1;
+    }
+
+    private static void scanLegacy(ByteBuffer file, boolean withDescriptions, Visitor visitor) throws IOException {
+        byte[] descBytes = new byte[LEGACY_DESC_LENGTH];
+        for (int pos = 0; pos + LEGACY_ENTRY_LENGTH <= file.limit(); pos += LEGACY_ENTRY_LENGTH) {
+            long msb = file.getLong(pos);
+            long lsb = file.getLong(pos + 8);
+            if (msb == 0 && lsb == 0) {
+                continue;
+            }
+            String description = null;
+            if (withDescriptions) {
+                file.get(pos + 16, descBytes);
+                description = new String(descBytes, StandardCharsets.UTF_8).replace("\0", "").trim();
+            }
+            visitor.visit(new Entry(msb, lsb, file.getLong(pos + 16 + LEGACY_DESC_LENGTH),
+                    file.getInt(pos + 16 + LEGACY_DESC_LENGTH + 8), description), false, pos);
+        }
+    }
+
+    /**
+     * 索引文件是否为当前格式（空文件也视为当前格式）
+     * @param path 索引文件
+     */
+    static boolean isCurrent(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            return size == 0 || size >= HEADER_LENGTH && isCurrent(read(channel, 0, HEADER_LENGTH), size);
+        }
+    }
+
+    // 根据文件头判断格式：魔数与版本匹配，且各区域长度不超过文件长度
+    static boolean isCurrent(ByteBuffer header, long size) {
+        if (size < HEADER_LENGTH || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            return false;
+        }
+        int count = header.getInt(8);
+        int stringTableLength = header.getInt(12);
+        return count >= 0 && stringTableLength >= 0
+                && HEADER_LENGTH + (long) count * ENTRY_LENGTH + stringTableLength <= size;
+    }
+
+    /**
+     * 索引文件是否已损坏：版本2的文件头不完整或与文件长度不符（被截断）
+     * @param path 索引文件（不存在时视为未损坏）
+     */
+    static boolean isDamaged(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return false;
+            }
+            if (size < HEADER_LENGTH) {
+                return true;
+            }
+            ByteBuffer header = read(channel, 0, HEADER_LENGTH);
+            return header.getInt(0) == MAGIC && !isCurrent(header, size);
+        }
+    }
+
+    /**
+     * 尽量读取损坏的索引文件中仍然完整的条目（用于从数据文件重建索引）
+     * <p>
+     * 被截断的文件只保留完整的有序条目，字符串表缺失时描述为空串；尾部随字符串表一起丢失。
+     * @param file 整个索引文件的内容
+     * @return 条目（可能包含已被覆盖或删除的条目）
+     */
+    static List<Entry> salvage(ByteBuffer file) throws IOException {
+        int limit = file.limit();
+        if (limit < 4 || file.getInt(0) != MAGIC || isCurrent(file, limit)) {
+            return new ArrayList<>(readLive(file).values());
+        }
+        List<Entry> entries = new ArrayList<>();
+        if (limit < HEADER_LENGTH) {
+            return entries;
+        }
+        long claimed = Math.max(0, file.getInt(8));
+        long stringTable = HEADER_LENGTH + claimed * ENTRY_LENGTH;
+        long complete = Math.min(claimed, (limit - HEADER_LENGTH) / ENTRY_LENGTH);
+        for (int i = 0; i < complete; i++) {
+            int pos = HEADER_LENGTH + i * ENTRY_LENGTH;
+            long descPos = stringTable + file.getInt(pos + 28);
+            String description = "";
+            if (descPos >= stringTable && descPos < limit && descPos + 1 + (file.get((int) descPos) & 0xFF) <= limit) {
+                description = readString(file, (int) descPos);
+            }
+            entries.add(new Entry(file.getLong(pos), file.getLong(pos + 8), file.getLong(pos + 16),
+                    file.getInt(pos + 24), description));
+        }
+        return entries;
+    }
+
+    /**
+     * 有序段的条目数
+     * @param file 整个索引文件的内容（当前格式）
+     */
+    static int sortedCount(ByteBuffer file) {
+        return file.limit() == 0 ? 0 : file.getInt(8);
+    }
+
+    /**
+     * 读取文件中全部生效的条目（应用尾部的覆盖与删除），保持文件中的先后顺序
+     * @param file 整个索引文件的内容
+     * @return UUID -> 条目
+     */
+    static Map<UUID, Entry> readLive(ByteBuffer file) throws IOException {
+        Map<UUID, Entry> live = new LinkedHashMap<>();
+        scan(file, true, (entry, deleted, position) -> {
+            live.remove(entry.id());
+            if (!deleted) {
+                live.put(entry.id(), entry);
+            }
+        });
+        return live;
+    }
+
+    /**
+     * 在有序段中二分查找，再按尾部的覆盖与删除修正（尾部由合并控制在较小长度）
+     * @param file 整个索引文件的内容（当前格式）
+     * @param id 唯一标识
+     * @return 生效的条目（含描述），不存在时返回null
+     */
+    static Entry find(ByteBuffer file, UUID id) throws IOException {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int count = file.getInt(8);
+        int stringTable = HEADER_LENGTH + count * ENTRY_LENGTH;
+        Entry[] found = new Entry[1];
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int pos = HEADER_LENGTH + mid * ENTRY_LENGTH;
+            int cmp = compare(file.getLong(pos), file.getLong(pos + 8), msb, lsb);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                found[0] = new Entry(msb, lsb, file.getLong(pos + 16), file.getInt(pos + 24),
+                        readString(file, stringTable + file.getInt(pos + 28)));
+                break;
+            }
+        }
+        scanTail(file, stringTable + file.getInt(12), true, (entry, deleted, position) -> {
+            if (entry.msb() == msb && entry.lsb() == lsb) {
+                found[0] = deleted ? null : entry;
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * 写出只含有序段的新索引文件（先写临时文件，刷盘后原子替换）
+     * @param path 目标路径
+     * @param entries 条目（按UUID排序后写入，调用返回后列表即为文件中的顺序）
+     */
+    static void write(Path path, List<Entry> entries) throws IOException {
+        entries.sort(Comparator.comparingLong(Entry::msb).thenComparingLong(Entry::lsb));
+        // 字符串表（相同描述只保存一次）
+        Map<String, Integer> offsets = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int stringTableLength = 0;
+        int[] descOffsets = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            String description = entries.get(i).description();
+            Integer offset = offsets.get(description);
+            if (offset == null) {
+                byte[] bytes = descriptionBytes(description);
+                offset = stringTableLength;
+                offsets.put(description, offset);
+                strings.add(bytes);
+                stringTableLength += 1 + bytes.length;
+            }
+            descOffsets[i] = offset;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + entries.size() * ENTRY_LENGTH + stringTableLength);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(entries.size()).putInt(stringTableLength);
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            buffer.putLong(entry.msb()).putLong(entry.lsb()).putLong(entry.dataOffset())
+                    .putInt(entry.dataLength()).putInt(descOffsets[i]);
+        }
+        for (byte[] bytes : strings) {
+            buffer.put((byte) bytes.length).put(bytes);
+        }
+        buffer.flip();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 有序段中第i个条目的位置
+     */
+    static long entryPosition(int i) {
+        return HEADER_LENGTH + (long) i * ENTRY_LENGTH;
+    }
+
+    /**
+     * 空文件的文件头（没有有序条目，尾部紧随其后）
+     */
+    static ByteBuffer emptyHeader() {
+        return ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(VERSION).putInt(0).putInt(0).flip();
+    }
+
+    /**
+     * 尾部写入条目的长度
+     */
+    static int putLength(byte[] descBytes) {
+        return PUT_FIXED_LENGTH + descBytes.length;
+    }
+
+    /**
+     * 尾部删除条目的长度
+     */
+    static int deleteLength() {
+        return DELETE_LENGTH;
+    }
+
+    /**
+     * 编码尾部写入条目
+     */
+    static void putTailPut(ByteBuffer buffer, UUID id, long dataOffset, int dataLength, byte[] descBytes) {
+        int start = buffer.position();
+        buffer.put(PUT).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits())
+                .putLong(dataOffset).putInt(dataLength).put((byte) descBytes.length).put(descBytes);
+        putCrc(buffer, start);
+    }
+
+    /**
+     * 编码尾部删除条目
+     */
+    static void putTailDelete(ByteBuffer buffer, long msb, long lsb) {
+        int start = buffer.position();
+        buffer.put(DELETE).putLong(msb).putLong(lsb);
+        putCrc(buffer, start);
+    }
+
+    private static void putCrc(ByteBuffer buffer, int start) {
+        CRC32C crc = CRC.get();
+        crc.reset();
+        crc.update(buffer.slice(start + 1, buffer.position() - start - 1));
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * 把尾部写入条目标记为失效（标记字节改为SUPERSEDED，校验和不变）
+     * @param channel 索引文件通道
+     * @param position 条目位置
+     */
+    static void markSuperseded(FileChannel channel, long position) throws IOException {
+        ByteBuffer marker = ByteBuffer.wrap(new byte[]{SUPERSEDED});
+        while (marker.hasRemaining()) {
+            channel.write(marker, position);
+        }
+    }
+
+    /**
+     * 描述编码为UTF-8，超过255字节时在字符边界处截断
+     */
+    static byte[] descriptionBytes(String description) {
+        byte[] bytes = (description == null ? "" : description).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= MAX_DESCRIPTION_BYTES) {
+            return bytes;
+        }
+        int end = MAX_DESCRIPTION_BYTES;
+        while (end > 0 && (bytes[end] & 0xC0) == 0x80) {
+            end--;
+        }
+        byte[] truncated = new byte[end];
+        System.arraycopy(bytes, 0, truncated, 0, end);
+        return truncated;
+    }
+
+    /**
+     * 描述在文件中保存的形式（只有超长描述被截断时才重新解码）
+     * @param description 原始描述
+     * @param descBytes descriptionBytes的结果
+     */
+    static String storedDescription(String description, byte[] descBytes) {
+        if (description == null) {
+            return "";
+        }
+        // 截断后至少保留253字节，更短的编码一定未被截断
+        return descBytes.length < MAX_DESCRIPTION_BYTES - 2 ? description : new String(descBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取整个文件
+     */
+    static ByteBuffer readAll(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("索引文件过大：" + size);
+        }
+        return read(channel, 0, (int) size);
+    }
+
+    static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("读取超出索引文件末尾");
+            }
+        }
+        return buffer.flip();
+    }
+
+    static String readString(ByteBuffer file, int pos) {
+        int length = file.get(pos) & 0xFF;
+        byte[] bytes = new byte[length];
+        file.get(pos + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int compare(long msb1, long lsb1, long msb2, long lsb2) {
+        int cmp = Long.compare(msb1, msb2);
+        return cmp != 0 ? cmp : Long.compare(lsb1, lsb2);
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 索引文件的流式读取器
+ * <p>
+ * 按文件中的顺序逐条返回生效的条目（先有序段，后尾部），有序段按大块分批读取，
+ * 同时只在内存中保留一块条目、字符串表和尾部（字符串表中相同描述只保存一次，尾部由合并控制在较小长度），
+ * 适合遍历超大存档。
+ * <p>
+ * 读取的是打开时的文件快照，之后的写入不一定可见；旧格式的文件整体读入后再逐条返回。
+ */
+final class SaveIndexReader implements Iterator<SaveIndexFile.Entry>, Closeable {
+    private static final int CHUNK_ENTRIES = 32 * 1024; // 每次读取的有序条目数（1MB）
+
+    private final FileChannel channel;
+    private final int sortedCount;
+    private final ByteBuffer stringTable;
+    private final Map<Integer, String> strings = new HashMap<>(); // 字符串表偏移 -> 描述
+    private final Set<UUID> overridden = new HashSet<>();         // 在尾部被覆盖或删除的ID
+    private final Iterator<SaveIndexFile.Entry> tail;             // 尾部中生效的条目
+    private final ByteBuffer chunk;
+    private int nextSorted;     // 下一个要读取的有序条目序号
+    private SaveIndexFile.Entry next;
+
+    /**
+     * @param path 索引文件
+     */
+    SaveIndexReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = size >= SaveIndexFile.HEADER_LENGTH
+                    ? SaveIndexFile.read(channel, 0, SaveIndexFile.HEADER_LENGTH) : null;
+            if (header == null || !SaveIndexFile.isCurrent(header, size)) {
+                // 旧格式或空文件
+                sortedCount = 0;
+                stringTable = null;
+                chunk = null;
+                tail = size == 0 ? null : SaveIndexFile.readLive(SaveIndexFile.readAll(channel)).values().iterator();
+                return;
+            }
+            sortedCount = header.getInt(8);
+            long tableStart = SaveIndexFile.entryPosition(sortedCount);
+            long tailStart = tableStart + header.getInt(12);
+            stringTable = SaveIndexFile.read(channel, tableStart, header.getInt(12));
+            ByteBuffer tailBytes = SaveIndexFile.read(channel, tailStart, (int) (size - tailStart));
+            Map<UUID, SaveIndexFile.Entry> live = new LinkedHashMap<>();
+            SaveIndexFile.scanTail(tailBytes, 0, true, (entry, deleted, position) -> {
+                overridden.add(entry.id());
+                live.remove(entry.id());
+                if (!deleted) {
+                    live.put(entry.id(), entry);
+                }
+            });
+            tail = live.values().iterator();
+            chunk = ByteBuffer.allocate(Math.min(sortedCount, CHUNK_ENTRIES) * SaveIndexFile.ENTRY_LENGTH);
+            chunk.limit(0);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public SaveIndexFile.Entry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SaveIndexFile.Entry entry = next;
+        next = null;
+        return entry;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // 读取下一个生效的条目，全部读完时返回null
+    private SaveIndexFile.Entry advance() throws IOException {
+        while (chunk != null && (chunk.hasRemaining() || nextSorted < sortedCount)) {
+            if (!chunk.hasRemaining()) {
+                fill();
+            }
+            long msb = chunk.getLong();
+            long lsb = chunk.getLong();
+            long dataOffset = chunk.getLong();
+            int dataLength = chunk.getInt();
+            int descOffset = chunk.getInt();
+            if (!overridden.contains(new UUID(msb, lsb))) {
+                String description = strings.computeIfAbsent(descOffset,
+                        offset -> SaveIndexFile.readString(stringTable, offset));
+                return new SaveIndexFile.Entry(msb, lsb, dataOffset, dataLength, description);
+            }
+        }
+        return tail != null && tail.hasNext() ? tail.next() : null;
+    }
+
+    // 读取下一块有序条目
+    private void fill() throws IOException {
+        int count = Math.min(CHUNK_ENTRIES, sortedCount - nextSorted);
+        chunk.clear().limit(count * SaveIndexFile.ENTRY_LENGTH);
+        long position = SaveIndexFile.entryPosition(nextSorted);
+        while (chunk.hasRemaining()) {
+            if (channel.read(chunk, position + chunk.position()) < 0) {
+                throw new IOException("读取超出索引文件末尾");
+            }
+        }
+        chunk.flip();
+        nextSorted += count;
+    }
+}
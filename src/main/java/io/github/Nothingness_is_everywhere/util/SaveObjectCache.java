@@ -0,0 +1,151 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 存档对象缓存（LRU）
+ * <p>
+ * 以(存档, ID)为键缓存解码后的对象，同时保留解密后的明文，
+ * 需要可修改副本时直接从明文重新解码，跳过读文件和解密。
+ * <p>
+ * 未命中时的读取在锁外完成，为避免把失效前读到的旧对象放回缓存，
+ * 每次失效都会递增版本号，放入时版本号已变化则丢弃。
+ */
+public final class SaveObjectCache {
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private int capacity;
+
+    /**
+     * 缓存统计
+     * @param hits 命中次数
+     * @param misses 未命中次数
+     * @param evictions 淘汰次数
+     * @param size 当前条目数
+     * @param capacity 容量上限
+     */
+    public record Stats(long hits, long misses, long evictions, int size, int capacity) {
+        /**
+         * 获取命中率
+         * @return 命中率（0-1，无请求时为0）
+         */
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    /**
+     * 缓存键
+     * @param store 存档键（规范化路径）
+     * @param id 唯一标识
+     */
+    record Key(String store, UUID id) {
+    }
+
+    /**
+     * 缓存条目
+     * @param value 解码后的对象（共享实例）
+     * @param codecId 编解码器标识
+     * @param data 明文（用于重新解码出副本）
+     */
+    record Entry(Object value, int codecId, byte[] data) {
+    }
+
+    /**
+     * @param capacity 容量上限（0表示禁用）
+     */
+    SaveObjectCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * 查询条目（记录命中/未命中）
+     * @return 缓存条目，未命中时返回null
+     */
+    synchronized Entry get(Key key) {
+        if (capacity == 0) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        (entry == null ? misses : hits).incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * 获取当前版本号（未命中读取前调用，放入时传回）
+     * @return 版本号
+     */
+    long version() {
+        return version.get();
+    }
+
+    /**
+     * 放入条目（读取期间发生过失效时放弃）
+     * @param readVersion 读取前获取的版本号
+     */
+    synchronized void put(Key key, Entry entry, long readVersion) {
+        if (capacity == 0 || version.get() != readVersion) {
+            return;
+        }
+        entries.put(key, entry);
+        evictOverflow();
+    }
+
+    /**
+     * 使单个条目失效
+     */
+    synchronized void invalidate(Key key) {
+        version.incrementAndGet();
+        entries.remove(key);
+    }
+
+    /**
+     * 使某个存档的全部条目失效
+     * @param store 存档键
+     */
+    synchronized void invalidateStore(String store) {
+        version.incrementAndGet();
+        entries.keySet().removeIf(key -> key.store().equals(store));
+    }
+
+    /**
+     * 设置容量上限（缩小时立即淘汰最久未使用的条目）
+     * @param capacity 容量上限（0表示禁用并清空）
+     */
+    synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        evictOverflow();
+    }
+
+    synchronized int capacity() {
+        return capacity;
+    }
+
+    synchronized Stats stats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), capacity);
+    }
+
+    synchronized void resetStats() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    // 淘汰超出容量的条目（访问顺序最旧的在前）
+    private void evictOverflow() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > capacity && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+}
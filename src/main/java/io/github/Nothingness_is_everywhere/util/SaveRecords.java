@@ -0,0 +1,387 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * 存档记录编解码（加密与完整性校验）
+ * <p>
+ * 新记录格式（AES-GCM，一次加密同时完成认证，无需额外哈希）：
+ * [记录头(int)] [标签] [填充长度(int)] [随机数(12字节)] [密文长度(int)] [密文+认证标签(16字节)] [填充]
+ * <br>记录头最高位为1，低16位为标志位（低4位为编解码器标识，0x10为压缩标志，见SaveCompression；
+ * 0x20表示带标签，0x40表示删除标记，0x80表示带填充长度字段，0x100表示引用记录）。
+ * <br>标签：[UUID(16字节)] [描述长度(1字节)] [UTF-8描述]，明文保存，使数据文件不依赖索引也能还原出
+ * 每条记录属于哪个ID（见SaveRecovery）；早期记录没有标签。删除标记是明文为空的带标签记录。
+ * <br>引用记录表示标签中的ID共享数据文件中另一条内容相同的记录（见SaveDedup），明文为被引用记录的
+ * [偏移量(long)] [长度(int)]。
+ * <br>记录头与标签一起作为附加认证数据参与校验，记录无法被挪用到其他ID。
+ * <br>填充是记录末尾预留的空闲字节，更新后的记录不超过原记录所占空间时可以原地覆盖（见SaveStore.overwrite）；
+ * 填充长度不参与认证，只用于顺序扫描时确定记录的边界，原地覆盖时改写它不需要重新加密。
+ * <p>
+ * 旧记录格式（AES/ECB + SHA-256，只读兼容）：
+ * [哈希长度(int)] [哈希字节] [加密数据长度(int)] [加密数据]
+ * <br>哈希长度恒为正数，据此区分新旧格式；旧记录均为Java序列化。
+ * <p>
+ * Cipher、MessageDigest、SecureRandom均按线程复用，避免每次调用都查找安全提供者。
+ */
+final class SaveRecords {
+    // AES密钥（16字节=128位）
+    private static final byte[] SECRET_KEY_BYTES = "GameSaveKey12345".getBytes(StandardCharsets.UTF_8);
+    private static final SecretKeySpec SECRET_KEY = new SecretKeySpec(SECRET_KEY_BYTES, "AES");
+    private static final String LEGACY_ALGORITHM = "AES";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String GCM_ALGORITHM = "AES/GCM/NoPadding";
+    private static final int GCM_HEADER = 0xA5000000;   // 新格式记录头标记（最高位为1）
+    private static final int NONCE_LENGTH = 12;         // GCM随机数长度
+    private static final int TAG_BITS = 128;            // GCM认证标签长度
+    static final int FLAGS_MASK = 0xFFFF;               // 记录头标志位
+    static final int CODEC_MASK = 0x000F;               // 标志位中的编解码器标识
+    static final int TAGGED_FLAG = 0x0020;              // 带标签（UUID与描述）
+    static final int TOMBSTONE_FLAG = 0x0040;           // 删除标记
+    static final int PADDED_FLAG = 0x0080;              // 带填充长度字段
+    static final int REFERENCE_FLAG = 0x0100;           // 引用记录
+    private static final int KNOWN_FLAGS = CODEC_MASK | SaveCompression.COMPRESSED_FLAG | TAGGED_FLAG
+            | TOMBSTONE_FLAG | PADDED_FLAG | REFERENCE_FLAG;
+    private static final int TAG_FIXED_LENGTH = 16 + 1;
+    static final int MAX_PREFIX_LENGTH = 4 + TAG_FIXED_LENGTH + 255; // 记录头与标签的最大长度
+    private static final int REFERENCE_LENGTH = 8 + 4;  // 引用记录的明文长度
+    private static final int GCM_TAG_LENGTH = TAG_BITS / 8;
+    private static final int LEGACY_HASH_LENGTH = 32;   // SHA-256
+
+    private static final ThreadLocal<Cipher> GCM_CIPHER = ThreadLocal.withInitial(() -> newCipher(GCM_ALGORITHM));
+    private static final ThreadLocal<Cipher> LEGACY_CIPHER = ThreadLocal.withInitial(() -> newCipher(LEGACY_ALGORITHM));
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    private SaveRecords() {
+    }
+
+    /**
+     * 解码结果
+     * @param flags 记录头标志位
+     * @param data 明文
+     */
+    record Payload(int flags, byte[] data) {
+        /**
+         * 获取编码该记录的编解码器标识
+         * @return 编解码器标识
+         */
+        int codecId() {
+            return flags & CODEC_MASK;
+        }
+    }
+
+    /**
+     * 记录标签
+     * @param flags 记录头标志位
+     * @param id 记录所属的ID
+     * @param description 描述
+     */
+    record Tag(int flags, UUID id, String description) {
+        boolean isTombstone() {
+            return (flags & TOMBSTONE_FLAG) != 0;
+        }
+
+        boolean isReference() {
+            return (flags & REFERENCE_FLAG) != 0;
+        }
+    }
+
+    /**
+     * 引用记录的内容：被引用记录在数据文件中的位置
+     * @param offset 偏移量
+     * @param length 长度
+     */
+    record Reference(long offset, int length) {
+    }
+
+    /**
+     * 加密编码一条带标签的记录（新格式）
+     * @param plain 序列化后的明文
+     * @param flags 标志位
+     * @param id 记录所属的ID
+     * @param description 描述（按索引文件的规则截断）
+     * @param slack 末尾预留的填充字节数
+     * @return 完整记录字节
+     */
+    static byte[] encode(byte[] plain, int flags, UUID id, String description, int slack)
+            throws GeneralSecurityException {
+        int header = GCM_HEADER | ((flags | TAGGED_FLAG | PADDED_FLAG) & FLAGS_MASK);
+        byte[] descBytes = SaveIndexFile.descriptionBytes(description);
+        int prefixLength = 4 + TAG_FIXED_LENGTH + descBytes.length;
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.get().nextBytes(nonce);
+        Cipher cipher = GCM_CIPHER.get();
+        cipher.init(Cipher.ENCRYPT_MODE, SECRET_KEY, new GCMParameterSpec(TAG_BITS, nonce));
+        int cipherLength = cipher.getOutputSize(plain.length);
+        ByteBuffer record = ByteBuffer.allocate(prefixLength + 4 + NONCE_LENGTH + 4 + cipherLength + slack);
+        record.putInt(header).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits())
+                .put((byte) descBytes.length).put(descBytes);
+        cipher.updateAAD(record.array(), 0, prefixLength);
+        record.putInt(slack).put(nonce).putInt(cipherLength);
+        cipher.doFinal(ByteBuffer.wrap(plain), record);
+        return record.array();
+    }
+
+    /**
+     * 记录去掉末尾填充后的长度
+     * @param record 完整记录字节
+     * @return 长度，不带填充长度字段的记录为-1（不能改变其占用的空间）
+     */
+    static int contentLength(byte[] record) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        int at = paddingField(buffer);
+        return at < 0 ? -1 : record.length - buffer.getInt(at);
+    }
+
+    /**
+     * 调整记录末尾的填充，使记录正好占满指定长度（不重新加密）
+     * @param record 完整记录字节（须带填充长度字段）
+     * @param slotLength 目标长度，不小于contentLength
+     * @return 调整后的记录字节
+     */
+    static byte[] pad(byte[] record, int slotLength) {
+        int content = contentLength(record);
+        if (content < 0 || slotLength < content) {
+            throw new IllegalArgumentException("记录无法调整到" + slotLength + "字节");
+        }
+        byte[] padded = Arrays.copyOf(record, slotLength);
+        ByteBuffer buffer = ByteBuffer.wrap(padded);
+        buffer.putInt(paddingField(buffer), slotLength - content);
+        return padded;
+    }
+
+    // 填充长度字段的位置（紧跟标签），记录不带该字段时返回-1
+    private static int paddingField(ByteBuffer buffer) {
+        int header = buffer.getInt(0);
+        if (header >= 0 || (header & PADDED_FLAG) == 0) {
+            return -1;
+        }
+        return 4 + TAG_FIXED_LENGTH + (buffer.get(4 + 16) & 0xFF);
+    }
+
+    /**
+     * 编码删除标记
+     * @param id 被删除的ID
+     * @return 完整记录字节
+     */
+    static byte[] tombstone(UUID id) {
+        try {
+            return encode(new byte[0], TOMBSTONE_FLAG, id, "", 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("编码删除标记失败", e);
+        }
+    }
+
+    /**
+     * 编码引用记录
+     * @param id 共享该记录的ID
+     * @param description 描述
+     * @param offset 被引用记录的偏移量
+     * @param length 被引用记录的长度
+     * @return 完整记录字节（长度为referenceLength）
+     */
+    static byte[] reference(UUID id, String description, long offset, int length) {
+        try {
+            byte[] plain = ByteBuffer.allocate(REFERENCE_LENGTH).putLong(offset).putInt(length).array();
+            return encode(plain, REFERENCE_FLAG, id, description, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("编码引用记录失败", e);
+        }
+    }
+
+    /**
+     * 引用记录的长度（只与描述有关，追加前预留空间用）
+     * @param description 描述
+     * @return 字节数
+     */
+    static int referenceLength(String description) {
+        return 4 + TAG_FIXED_LENGTH + SaveIndexFile.descriptionBytes(description).length + 4 + NONCE_LENGTH + 4
+                + REFERENCE_LENGTH + GCM_TAG_LENGTH;
+    }
+
+    /**
+     * 取出引用记录指向的位置
+     * @param payload 引用记录解码后的结果
+     * @return 被引用记录的位置
+     */
+    static Reference reference(Payload payload) {
+        if ((payload.flags() & REFERENCE_FLAG) == 0 || payload.data().length != REFERENCE_LENGTH) {
+            throw new IllegalArgumentException("不是引用记录");
+        }
+        ByteBuffer plain = ByteBuffer.wrap(payload.data());
+        return new Reference(plain.getLong(), plain.getInt());
+    }
+
+    /**
+     * 把记录改为属于另一个ID（重新加密，明文与填充长度不变），用于单独复制共享记录
+     * @param record 完整记录字节（新格式）
+     * @param id 新的ID
+     * @param description 新的描述
+     * @return 完整记录字节
+     */
+    static byte[] retag(byte[] record, UUID id, String description) throws GeneralSecurityException {
+        Payload payload = decode(ByteBuffer.wrap(record));
+        int content = contentLength(record);
+        int slack = content < 0 ? 0 : record.length - content;
+        return encode(payload.data(), payload.flags() & (CODEC_MASK | SaveCompression.COMPRESSED_FLAG), id,
+                description, slack);
+    }
+
+    /**
+     * 解码一条记录（兼容新旧格式），解密并校验完整性
+     * @param record 记录缓冲区（从当前位置开始读取，读取后位于密文末尾，即填充开始处）
+     * @return 标志位与明文
+     * @throws SecurityException 校验失败（数据可能被篡改）
+     */
+    static Payload decode(ByteBuffer record) throws GeneralSecurityException {
+        int start = record.position();
+        int header = record.getInt();
+        if (header >= 0) {
+            return new Payload(0, decodeLegacy(record, header));
+        }
+        if ((header & TAGGED_FLAG) != 0) {
+            record.position(record.position() + TAG_FIXED_LENGTH + (record.get(record.position() + 16) & 0xFF));
+        }
+        ByteBuffer aad = record.slice(start, record.position() - start);
+        if ((header & PADDED_FLAG) != 0) {
+            record.getInt();
+        }
+        byte[] nonce = new byte[NONCE_LENGTH];
+        record.get(nonce);
+        int cipherLength = record.getInt();
+        ByteBuffer cipherText = record.slice(record.position(), cipherLength);
+        record.position(record.position() + cipherLength);
+        Cipher cipher = GCM_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, SECRET_KEY, new GCMParameterSpec(TAG_BITS, nonce));
+        cipher.updateAAD(aad);
+        ByteBuffer plain = ByteBuffer.allocate(cipher.getOutputSize(cipherLength));
+        int plainLength;
+        try {
+            plainLength = cipher.doFinal(cipherText, plain);
+        } catch (AEADBadTagException e) {
+            throw new SecurityException("数据校验失败，可能被篡改", e);
+        }
+        byte[] data = plainLength == plain.capacity() ? plain.array() : Arrays.copyOf(plain.array(), plainLength);
+        return new Payload(header & FLAGS_MASK, data);
+    }
+
+    /**
+     * 读取记录标签（不解密）
+     * @param buffer 缓冲区
+     * @param at 记录起始位置
+     * @return 标签，早期记录没有标签时返回null
+     */
+    static Tag tag(ByteBuffer buffer, int at) {
+        int header = buffer.getInt(at);
+        if (header >= 0 || (header & TAGGED_FLAG) == 0) {
+            return null;
+        }
+        byte[] descBytes = new byte[buffer.get(at + 20) & 0xFF];
+        buffer.get(at + 21, descBytes);
+        return new Tag(header & FLAGS_MASK, new UUID(buffer.getLong(at + 4), buffer.getLong(at + 12)),
+                new String(descBytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 按记录结构推断记录长度（不解密，用于顺序扫描数据文件）
+     * @param buffer 缓冲区（limit为可用字节的末尾）
+     * @param at 候选记录的起始位置
+     * @return 记录长度（可能超出可用字节）；可用字节不足以判断时返回0；不像一条记录时返回-1
+     */
+    static int frameLength(ByteBuffer buffer, int at) {
+        int available = buffer.limit() - at;
+        if (available < 4) {
+            return 0;
+        }
+        int header = buffer.getInt(at);
+        long length;
+        if (header >= 0) {
+            // 旧格式：[哈希长度] [哈希] [加密数据长度] [加密数据（AES分组的整数倍）]
+            if (header != LEGACY_HASH_LENGTH) {
+                return -1;
+            }
+            if (available < 4 + LEGACY_HASH_LENGTH + 4) {
+                return 0;
+            }
+            int encryptedLength = buffer.getInt(at + 4 + LEGACY_HASH_LENGTH);
+            if (encryptedLength <= 0 || encryptedLength % 16 != 0) {
+                return -1;
+            }
+            length = 4L + LEGACY_HASH_LENGTH + 4 + encryptedLength;
+        } else {
+            int flags = header & FLAGS_MASK;
+            if ((header & ~FLAGS_MASK) != GCM_HEADER || (flags & ~KNOWN_FLAGS) != 0
+                    || (flags & (TOMBSTONE_FLAG | TAGGED_FLAG)) == TOMBSTONE_FLAG
+                    || (flags & (REFERENCE_FLAG | TAGGED_FLAG)) == REFERENCE_FLAG
+                    || (flags & (PADDED_FLAG | TAGGED_FLAG)) == PADDED_FLAG) {
+                return -1;
+            }
+            int prefixLength = 4;
+            if ((flags & TAGGED_FLAG) != 0) {
+                if (available < 4 + TAG_FIXED_LENGTH) {
+                    return 0;
+                }
+                prefixLength += TAG_FIXED_LENGTH + (buffer.get(at + 20) & 0xFF);
+            }
+            int padding = 0;
+            if ((flags & PADDED_FLAG) != 0) {
+                if (available < prefixLength + 4) {
+                    return 0;
+                }
+                padding = buffer.getInt(at + prefixLength);
+                if (padding < 0) {
+                    return -1;
+                }
+                prefixLength += 4;
+            }
+            if (available < prefixLength + NONCE_LENGTH + 4) {
+                return 0;
+            }
+            int cipherLength = buffer.getInt(at + prefixLength + NONCE_LENGTH);
+            if (cipherLength < GCM_TAG_LENGTH) {
+                return -1;
+            }
+            length = (long) prefixLength + NONCE_LENGTH + 4 + cipherLength + padding;
+        }
+        return length > Integer.MAX_VALUE ? -1 : (int) length;
+    }
+
+    // 旧格式：AES/ECB解密后校验SHA-256
+    private static byte[] decodeLegacy(ByteBuffer record, int hashLength) throws GeneralSecurityException {
+        byte[] storedHash = new byte[hashLength];
+        record.get(storedHash);
+        byte[] encryptedData = new byte[record.getInt()];
+        record.get(encryptedData);
+        Cipher cipher = LEGACY_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, SECRET_KEY);
+        byte[] decryptedData = cipher.doFinal(encryptedData);
+        if (!MessageDigest.isEqual(storedHash, DIGEST.get().digest(decryptedData))) {
+            throw new SecurityException("数据校验失败，可能被篡改");
+        }
+        return decryptedData;
+    }
+
+    private static Cipher newCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("当前JRE不支持" + transformation, e);
+        }
+    }
+}
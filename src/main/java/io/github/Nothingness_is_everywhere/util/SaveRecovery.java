@@ -0,0 +1,484 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 从数据文件重建索引
+ * <p>
+ * 数据文件中的记录可以自行分界（见SaveRecords），顺序扫描即可还原出每条记录的位置：
+ * <br>1. 按大块顺序读取数据文件并按记录结构切分，切分出的记录交给工作线程并行解密校验；
+ * 遇到不像记录的字节时逐字节向后寻找下一条记录。
+ * <br>2. 校验通过的记录之间的空隙逐字节复查，找回被错误切分跳过的记录，仍无法解析的部分报告为损坏区间。
+ * <br>3. 按数据文件中的先后顺序应用：带标签的记录直接得到所属ID（后写入的覆盖先写入的，删除标记移除ID），
+ * 引用记录使其ID指向前面被引用的记录（见SaveDedup），
+ * 早期没有标签的记录按残存索引中偏移量和长度都吻合的条目确定ID，否则无法归属。
+ * <p>
+ * 存档打开时，索引文件缺失或损坏会自动重建；数据文件末尾有索引尚未记录的记录（写入数据后、
+ * 写入索引前崩溃）时只扫描这一段并补回索引。
+ * <p>
+ * 手动重建时不能有其他进程或线程访问该存档，原索引文件保留为.index.bak。
+ * <p>
+ * 用法：SaveRecovery 基础路径 [线程数]
+ */
+public final class SaveRecovery {
+    private static final int CHUNK_BYTES = 8 * 1024 * 1024;   // 每次读取的数据块大小
+    private static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024; // 单条记录长度上限
+    private static final String BACKUP_EXTENSION = ".bak";
+
+    private SaveRecovery() {
+    }
+
+    /**
+     * 数据文件中的区间
+     * @param start 起始偏移量（含）
+     * @param end 结束偏移量（不含）
+     */
+    public record Range(long start, long end) {
+        public long length() {
+            return end - start;
+        }
+    }
+
+    /**
+     * 重建报告
+     * @param scannedBytes 扫描的字节数
+     * @param records 校验通过的记录数（含删除标记和被覆盖的旧记录）
+     * @param recovered 重建后索引中的条目数
+     * @param unattributed 无法确定所属ID的早期记录数（通常是已删除或被覆盖的旧版本）
+     * @param corrupt 损坏区间
+     * @param nanos 耗时（纳秒）
+     */
+    public record Report(long scannedBytes, int records, int recovered, int unattributed, List<Range> corrupt,
+                         long nanos) {
+        /**
+         * 扫描速度（MB/秒）
+         */
+        public double scanMBps() {
+            return nanos == 0 ? 0 : scannedBytes / 1e6 / (nanos / 1e9);
+        }
+
+        /**
+         * 汇总多个分片的报告
+         * @param parts 各分片的报告
+         * @return 合计
+         */
+        public static Report combine(List<Report> parts) {
+            long scannedBytes = 0;
+            int records = 0;
+            int recovered = 0;
+            int unattributed = 0;
+            List<Range> corrupt = new ArrayList<>();
+            long nanos = 0;
+            for (Report part : parts) {
+                scannedBytes += part.scannedBytes;
+                records += part.records;
+                recovered += part.recovered;
+                unattributed += part.unattributed;
+                corrupt.addAll(part.corrupt);
+                nanos += part.nanos;
+            }
+            return new Report(scannedBytes, records, recovered, unattributed, corrupt, nanos);
+        }
+    }
+
+    /**
+     * 打开存档时自动恢复的报告
+     * @param rebuilt 索引文件缺失或损坏、从数据文件重建时的重建报告（未重建时为null）
+     * @param indexMissing 重建前索引文件是否缺失（否则为损坏）
+     * @param tailRecovered 从数据文件末尾补回的索引条目数（写入数据后、写入索引前崩溃）
+     */
+    public record OpenReport(Report rebuilt, boolean indexMissing, int tailRecovered) {
+        /**
+         * 未进行任何恢复
+         */
+        public static final OpenReport NONE = new OpenReport(null, false, 0);
+
+        /**
+         * 是否进行了恢复
+         */
+        public boolean isRecovered() {
+            return rebuilt != null || tailRecovered > 0;
+        }
+
+        /**
+         * 汇总多个分片的报告
+         * @param parts 各分片的报告
+         * @return 合计（任一分片重建了索引时，重建报告为这些分片的合计）
+         */
+        public static OpenReport combine(List<OpenReport> parts) {
+            List<Report> rebuilt = new ArrayList<>();
+            boolean indexMissing = false;
+            int tailRecovered = 0;
+            for (OpenReport part : parts) {
+                if (part.rebuilt != null) {
+                    rebuilt.add(part.rebuilt);
+                }
+                indexMissing |= part.indexMissing;
+                tailRecovered += part.tailRecovered;
+            }
+            return new OpenReport(rebuilt.isEmpty() ? null : Report.combine(rebuilt), indexMissing, tailRecovered);
+        }
+    }
+
+    /**
+     * 数据文件中校验通过的记录
+     * @param offset 偏移量
+     * @param length 长度
+     * @param tag 标签，早期记录为null
+     */
+    record Frame(long offset, int length, SaveRecords.Tag tag) {
+        long end() {
+            return offset + length;
+        }
+    }
+
+    /**
+     * 扫描结果
+     * @param frames 校验通过的记录（按偏移量排序）
+     * @param corrupt 损坏区间
+     */
+    record ScanResult(List<Frame> frames, List<Range> corrupt) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("用法：SaveRecovery 基础路径 [线程数]");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : defaultThreads();
+        Report report = rebuild(args[0], threads);
+        System.out.printf("记录：%d  恢复条目：%d  无法归属：%d  扫描：%.1fMB（%.0fMB/秒）%n", report.records(),
+                report.recovered(), report.unattributed(), report.scannedBytes() / 1e6, report.scanMBps());
+        for (Range range : report.corrupt()) {
+            System.out.printf("损坏区间：[%d, %d)，%d字节%n", range.start(), range.end(), range.length());
+        }
+    }
+
+    /**
+     * 重建存档（未分片或已分片）的全部索引文件
+     * @param basePath 基础路径
+     * @param threads 校验线程数
+     * @return 重建报告（分片存档为各分片合计）
+     */
+    public static Report rebuild(String basePath, int threads) throws IOException {
+        SaveShards.Layout layout = BinarySecureSaveUtil.layout(basePath);
+        BinarySecureSaveUtil.close(basePath);
+        List<Report> parts = new ArrayList<>();
+        for (String path : SaveShards.allPaths(basePath, layout)) {
+            if (Files.exists(Paths.get(path + SaveStore.DATA_EXTENSION))) {
+                parts.add(rebuildStore(path, threads));
+            }
+        }
+        return Report.combine(parts);
+    }
+
+    /**
+     * 重建单个（子）存档的索引文件
+     * @param basePath 子存档路径
+     * @param threads 校验线程数
+     * @return 重建报告
+     */
+    static Report rebuildStore(String basePath, int threads) throws IOException {
+        long start = System.nanoTime();
+        Path indexPath = Paths.get(basePath + SaveStore.INDEX_EXTENSION);
+        // 残存索引：只用于确定早期无标签记录的ID
+        Map<Long, SaveIndexFile.Entry> survivors = new HashMap<>();
+        if (Files.exists(indexPath)) {
+            ByteBuffer file;
+            try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+                file = SaveIndexFile.readAll(channel);
+            }
+            for (SaveIndexFile.Entry entry : SaveIndexFile.salvage(file)) {
+                survivors.put(entry.dataOffset(), entry);
+            }
+        }
+
+        ScanResult scan;
+        long size;
+        Map<UUID, SaveIndexFile.Entry> live = new LinkedHashMap<>();
+        int unattributed = 0;
+        int references = 0;
+        try (FileChannel data = FileChannel.open(Paths.get(basePath + SaveStore.DATA_EXTENSION),
+                StandardOpenOption.READ)) {
+            size = data.size();
+            scan = scan(data, 0, size, threads);
+            Map<Long, Frame> records = new HashMap<>(); // 可被引用的记录（偏移量 -> 记录）
+            for (Frame frame : scan.frames()) {
+                SaveRecords.Tag tag = frame.tag();
+                if (tag == null) {
+                    records.put(frame.offset(), frame);
+                    SaveIndexFile.Entry survivor = survivors.get(frame.offset());
+                    if (survivor == null || survivor.dataLength() != frame.length()) {
+                        unattributed++;
+                        continue;
+                    }
+                    live.remove(survivor.id());
+                    live.put(survivor.id(), survivor);
+                } else if (tag.isReference()) {
+                    // 引用记录只能引用前面校验通过的记录
+                    SaveRecords.Reference reference = reference(data, frame);
+                    Frame referenced = reference == null ? null : records.get(reference.offset());
+                    if (referenced == null || referenced.length() != reference.length()) {
+                        unattributed++;
+                        continue;
+                    }
+                    live.remove(tag.id());
+                    live.put(tag.id(), new SaveIndexFile.Entry(tag.id().getMostSignificantBits(),
+                            tag.id().getLeastSignificantBits(), referenced.offset(), referenced.length(),
+                            tag.description()));
+                    references++;
+                } else {
+                    live.remove(tag.id());
+                    if (!tag.isTombstone()) {
+                        records.put(frame.offset(), frame);
+                        live.put(tag.id(), new SaveIndexFile.Entry(tag.id().getMostSignificantBits(),
+                                tag.id().getLeastSignificantBits(), frame.offset(), frame.length(),
+                                tag.description()));
+                    }
+                }
+            }
+        }
+
+        if (Files.exists(indexPath)) {
+            Files.copy(indexPath, Paths.get(indexPath + BACKUP_EXTENSION), StandardCopyOption.REPLACE_EXISTING);
+        }
+        SaveIndexFile.write(indexPath, new ArrayList<>(live.values()));
+        if (references > 0) {
+            SaveDedup.mark(basePath);
+        }
+        return new Report(size, scan.frames().size(), live.size(), unattributed, scan.corrupt(),
+                System.nanoTime() - start);
+    }
+
+    /**
+     * 扫描数据文件的一段，返回校验通过的记录与损坏区间
+     * @param data 数据文件通道
+     * @param from 起始偏移量（应为记录边界）
+     * @param to 结束偏移量
+     * @param threads 校验线程数
+     */
+    static ScanResult scan(FileChannel data, long from, long to, int threads) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        // 1. 顺序切分，并行校验
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "save-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Batch previous = null;
+            long position = from;
+            while (position < to) {
+                ByteBuffer chunk = read(data, position, (int) Math.min(CHUNK_BYTES, to - position));
+                List<Frame> candidates = new ArrayList<>();
+                int at = 0;
+                while (at < chunk.limit()) {
+                    int length = frameLength(chunk, at);
+                    if (length < 0) {
+                        at++;
+                        continue;
+                    }
+                    if (length > 0 && at + length <= chunk.limit()) {
+                        candidates.add(new Frame(position + at, length, SaveRecords.tag(chunk, at)));
+                        at += length;
+                        continue;
+                    }
+                    long needed = length > 0 ? length : chunk.limit() - at + 1L;
+                    if (position + at + needed > to) {
+                        at = chunk.limit(); // 文件末尾写了一半的记录，留给空隙复查
+                    } else if (at == 0) {
+                        // 单条记录超过数据块大小，按记录长度重新读取
+                        chunk = read(data, position, (int) Math.min(Math.max(needed, 2L * chunk.limit()), to - position));
+                        continue;
+                    }
+                    break;  // 从这条记录开始读取下一块
+                }
+                // 提交这一块后等待上一块校验完成，同时最多持有两块数据
+                Batch batch = submit(pool, threads, chunk, position, candidates);
+                if (previous != null) {
+                    previous.collect(frames);
+                }
+                previous = batch;
+                position += at;
+            }
+            if (previous != null) {
+                previous.collect(frames);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // 2. 逐字节复查校验通过的记录之间的空隙
+        List<Frame> result = new ArrayList<>(frames.size());
+        List<Range> corrupt = new ArrayList<>();
+        long covered = from;
+        for (Frame frame : frames) {
+            if (frame.offset() > covered) {
+                rescan(data, covered, frame.offset(), result, corrupt);
+            }
+            result.add(frame);
+            covered = frame.end();
+        }
+        if (covered < to) {
+            rescan(data, covered, to, result, corrupt);
+        }
+        return new ScanResult(result, corrupt);
+    }
+
+    /**
+     * 读取引用记录指向的位置
+     * @param data 数据文件通道
+     * @param frame 校验通过的引用记录
+     * @return 被引用记录的位置，无法解码时返回null
+     */
+    static SaveRecords.Reference reference(FileChannel data, Frame frame) throws IOException {
+        try {
+            return SaveRecords.reference(SaveRecords.decode(read(data, frame.offset(), frame.length())));
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // 一块数据中的候选记录及其校验任务
+    private record Batch(List<Frame> candidates, List<Future<boolean[]>> futures) {
+        // 等待校验完成，校验通过的记录按顺序加入frames
+        void collect(List<Frame> frames) throws IOException {
+            int next = 0;
+            for (Future<boolean[]> future : futures) {
+                boolean[] valid;
+                try {
+                    valid = future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("重建索引被中断", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("校验记录失败", e.getCause());
+                }
+                for (boolean ok : valid) {
+                    Frame frame = candidates.get(next++);
+                    if (ok) {
+                        frames.add(frame);
+                    }
+                }
+            }
+        }
+    }
+
+    // 把一块中的候选记录分给各线程校验
+    private static Batch submit(ExecutorService pool, int threads, ByteBuffer chunk, long position,
+                                List<Frame> candidates) {
+        List<Future<boolean[]>> futures = new ArrayList<>(threads);
+        int per = Math.max(1, (candidates.size() + threads - 1) / threads);
+        for (int begin = 0; begin < candidates.size(); begin += per) {
+            List<Frame> part = candidates.subList(begin, Math.min(candidates.size(), begin + per));
+            futures.add(pool.submit(() -> {
+                boolean[] valid = new boolean[part.size()];
+                for (int i = 0; i < part.size(); i++) {
+                    Frame frame = part.get(i);
+                    valid[i] = verify(chunk, (int) (frame.offset() - position), frame.length());
+                }
+                return valid;
+            }));
+        }
+        return new Batch(candidates, futures);
+    }
+
+    // 按记录结构推断记录长度，超过上限的视为不像记录（避免损坏的长度字段导致读取超大数据块）
+    static int frameLength(ByteBuffer buffer, int at) {
+        int length = SaveRecords.frameLength(buffer, at);
+        return length > MAX_FRAME_LENGTH ? -1 : length;
+    }
+
+    // 在空隙中逐字节寻找能通过校验的记录，其余部分记为损坏区间
+    private static void rescan(FileChannel data, long start, long end, List<Frame> frames, List<Range> corrupt)
+            throws IOException {
+        long badStart = -1;
+        long position = start;
+        while (position < end) {
+            ByteBuffer window = read(data, position, (int) Math.min(CHUNK_BYTES, end - position));
+            int at = 0;
+            boolean refill = false;
+            while (at < window.limit()) {
+                int length = frameLength(window, at);
+                if (length == 0 && at > 0 && position + window.limit() < end) {
+                    refill = true; // 记录头跨越窗口边界，从这里读取下一个窗口
+                    break;
+                }
+                if (length > 0 && position + at + length <= end) {
+                    if (at + length > window.limit()) {
+                        refill = at > 0;
+                        if (refill) {
+                            break;
+                        }
+                        window = read(data, position, length);
+                    }
+                    if (verify(window, at, length)) {
+                        if (badStart >= 0) {
+                            corrupt.add(new Range(badStart, position + at));
+                            badStart = -1;
+                        }
+                        frames.add(new Frame(position + at, length, SaveRecords.tag(window, at)));
+                        at += length;
+                        continue;
+                    }
+                }
+                if (badStart < 0) {
+                    badStart = position + at;
+                }
+                at++;
+            }
+            position += refill ? at : window.limit();
+        }
+        if (badStart >= 0) {
+            corrupt.add(new Range(badStart, end));
+        }
+    }
+
+    // 解密校验一条记录；填充长度不参与认证，还要求填充全为0，避免损坏的填充长度吞掉后面的记录
+    static boolean verify(ByteBuffer buffer, int at, int length) {
+        try {
+            ByteBuffer record = buffer.slice(at, length);
+            SaveRecords.decode(record);
+            while (record.hasRemaining()) {
+                if (record.get() != 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("读取超出数据文件末尾");
+            }
+        }
+        return buffer.flip();
+    }
+
+    static int defaultThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+}
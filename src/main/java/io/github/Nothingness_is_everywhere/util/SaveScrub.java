@@ -0,0 +1,407 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 存档完整性检查
+ * <p>
+ * 在快照上检查，不阻塞读写和整理（见SaveSnapshot）：
+ * <br>1. 快照时的全部有效条目按数据偏移量排序后交给ForkJoin线程池逐段拆分，每个工作线程顺序读取自己负责的记录，
+ * 解密并校验认证标签（覆盖记录内容及其ID、描述）。
+ * <br>2. 同时只解析记录头顺序遍历数据文件，找出最后一条记录仍有效、索引中却没有的ID。
+ * <p>
+ * 报告三类问题：
+ * <br>损坏：记录不能通过解密校验（数据被改动或损坏），或填充不全为0；
+ * <br>悬空：条目指向数据文件末尾之外、长度不符的位置，或指向删除标记、引用记录、属于其他ID的记录
+ * （用过去重的存档中条目本来就可以指向其他ID的共享记录）；
+ * <br>孤立：数据文件中某ID的最后一条记录有效，索引中却没有该ID（索引丢失了条目，重建索引可以找回）。
+ * <p>
+ * 孤立的候选最后在持有存档读锁和这些ID的分段锁时复查当前索引与之后追加的记录，检查期间的写入和删除不会被误报；
+ * 检查期间整理切换了文件时，候选记录已随整理丢弃，不再报告。
+ * <p>
+ * 用法：SaveScrub 基础路径 [线程数]（发现问题时退出码为1，可用于定时任务）
+ */
+public final class SaveScrub {
+    private static final int CHUNK_BYTES = 8 * 1024 * 1024; // 遍历数据文件时每次读取的大小
+    private static final int LEAF_ENTRIES = 256;            // 工作任务不再拆分的条目数
+    private static final int MAX_SPAN_BYTES = 4 * 1024 * 1024; // 工作任务一次读取的最大区间
+
+    private SaveScrub() {
+    }
+
+    /**
+     * 有问题的条目或记录
+     * @param id 唯一标识
+     * @param offset 数据偏移量
+     * @param length 记录长度
+     * @param reason 原因
+     */
+    public record Problem(UUID id, long offset, int length, String reason) {
+    }
+
+    /**
+     * 检查报告
+     * @param entries 检查的条目数
+     * @param verifiedBytes 解密校验的字节数
+     * @param scannedBytes 遍历的数据文件字节数
+     * @param corrupt 损坏的条目
+     * @param dangling 悬空的条目
+     * @param orphaned 孤立的记录
+     * @param nanos 耗时（纳秒）
+     */
+    public record Report(long entries, long verifiedBytes, long scannedBytes, List<Problem> corrupt,
+                         List<Problem> dangling, List<Problem> orphaned, long nanos) {
+        /**
+         * 是否没有发现问题
+         */
+        public boolean isClean() {
+            return corrupt.isEmpty() && dangling.isEmpty() && orphaned.isEmpty();
+        }
+
+        /**
+         * 校验速度（MB/秒）
+         */
+        public double verifyMBps() {
+            return nanos == 0 ? 0 : verifiedBytes / 1e6 / (nanos / 1e9);
+        }
+
+        /**
+         * 汇总多个分片的报告
+         * @param parts 各分片的报告
+         * @return 合计
+         */
+        public static Report combine(List<Report> parts) {
+            long entries = 0;
+            long verifiedBytes = 0;
+            long scannedBytes = 0;
+            List<Problem> corrupt = new ArrayList<>();
+            List<Problem> dangling = new ArrayList<>();
+            List<Problem> orphaned = new ArrayList<>();
+            long nanos = 0;
+            for (Report part : parts) {
+                entries += part.entries;
+                verifiedBytes += part.verifiedBytes;
+                scannedBytes += part.scannedBytes;
+                corrupt.addAll(part.corrupt);
+                dangling.addAll(part.dangling);
+                orphaned.addAll(part.orphaned);
+                nanos += part.nanos;
+            }
+            return new Report(entries, verifiedBytes, scannedBytes, corrupt, dangling, orphaned, nanos);
+        }
+    }
+
+    // 数据文件中某ID最后一条带标签的记录
+    private record Last(long offset, int length, boolean live) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("用法：SaveScrub 基础路径 [线程数]");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : SaveRecovery.defaultThreads();
+        Report report;
+        SaveRecovery.OpenReport recovery;
+        try {
+            recovery = BinarySecureSaveUtil.getRecoveryReport(args[0]);
+            report = BinarySecureSaveUtil.scrub(args[0], threads);
+        } finally {
+            BinarySecureSaveUtil.close(args[0]);
+        }
+        if (recovery.rebuilt() != null) {
+            System.out.printf("打开时索引文件%s，已从数据文件重建：恢复%d条，无法归属%d条，损坏区间%d个%n",
+                    recovery.indexMissing() ? "缺失" : "损坏", recovery.rebuilt().recovered(),
+                    recovery.rebuilt().unattributed(), recovery.rebuilt().corrupt().size());
+        }
+        if (recovery.tailRecovered() > 0) {
+            System.out.printf("打开时从数据文件末尾补回%d条索引%n", recovery.tailRecovered());
+        }
+        System.out.printf("条目：%d  校验：%.1fMB（%.0fMB/秒）  遍历：%.1fMB  损坏：%d  悬空：%d  孤立：%d%n",
+                report.entries(), report.verifiedBytes() / 1e6, report.verifyMBps(), report.scannedBytes() / 1e6,
+                report.corrupt().size(), report.dangling().size(), report.orphaned().size());
+        print("损坏", report.corrupt());
+        print("悬空", report.dangling());
+        print("孤立", report.orphaned());
+        if (!report.isClean()) {
+            System.exit(1);
+        }
+    }
+
+    private static void print(String label, List<Problem> problems) {
+        for (Problem problem : problems) {
+            System.out.printf("%s：%s  [%d, %d)  %s%n", label, problem.id(), problem.offset(),
+                    problem.offset() + problem.length(), problem.reason());
+        }
+    }
+
+    /**
+     * 检查单个（子）存档
+     * @param store 存档（调用方不持有其锁）
+     * @param snapshot 该存档的快照（由调用方关闭）
+     * @param pool 工作线程池
+     * @return 检查报告
+     */
+    static Report scrubStore(SaveStore store, SaveStore.Snapshot snapshot, ForkJoinPool pool) throws IOException {
+        long start = System.nanoTime();
+        List<SaveStore.LiveEntry> entries = snapshot.entries();
+        entries.sort(Comparator.comparingLong(entry -> entry.location().dataOffset()));
+        FileChannel data = snapshot.data();
+        long end = data == null ? 0 : snapshot.dataEnd();
+        Future<Map<UUID, Last>> walk = pool.submit(() -> latestRecords(data, 0, end));
+        Partial checked;
+        try {
+            checked = pool.invoke(new Check(snapshot, entries, 0, entries.size(), end, store.deduplicated()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Map<UUID, Last> latest;
+        try {
+            latest = walk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("完整性检查被中断", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException cause ? cause : new IOException("遍历数据文件失败", e.getCause());
+        }
+
+        // 最后一条记录有效、快照索引中没有，且能通过校验的ID为孤立候选
+        Set<UUID> indexed = new HashSet<>(entries.size() * 2);
+        for (SaveStore.LiveEntry entry : entries) {
+            indexed.add(entry.id());
+        }
+        Map<UUID, Last> candidates = new HashMap<>();
+        for (Map.Entry<UUID, Last> entry : latest.entrySet()) {
+            Last last = entry.getValue();
+            if (last.live() && !indexed.contains(entry.getKey())
+                    && SaveRecovery.verify(SaveRecovery.read(data, last.offset(), last.length()), 0, last.length())) {
+                candidates.put(entry.getKey(), last);
+            }
+        }
+        List<Problem> orphaned = confirm(store, snapshot, candidates);
+        return new Report(entries.size(), checked.bytes, end, checked.corrupt, checked.dangling, orphaned,
+                System.nanoTime() - start);
+    }
+
+    // 复查孤立候选：持有存档读锁（整理不能切换文件）和候选ID的分段锁（这些ID没有进行中的写入或删除），
+    // 当前索引中已有的ID是检查期间写入的；再从候选记录之后遍历到当前末尾，最后一条变为删除标记的ID是检查期间删除的
+    private static List<Problem> confirm(SaveStore store, SaveStore.Snapshot snapshot, Map<UUID, Last> candidates)
+            throws IOException {
+        List<Problem> orphaned = new ArrayList<>();
+        if (candidates.isEmpty()) {
+            return orphaned;
+        }
+        store.lock.readLock().lock();
+        try {
+            if (store.isClosed()) {
+                // 存档已关闭，没有写入可对照
+                candidates.forEach((id, last) -> orphaned.add(orphan(id, last)));
+                return orphaned;
+            }
+            if (!snapshot.isCurrent()) {
+                return orphaned;
+            }
+            boolean[] stripes = store.lockStripes(candidates.keySet().toArray(new UUID[0]));
+            try {
+                long from = Long.MAX_VALUE;
+                for (Last last : candidates.values()) {
+                    from = Math.min(from, last.offset() + last.length());
+                }
+                Map<UUID, Last> later;
+                try (FileChannel data = FileChannel.open(Paths.get(store.basePath + SaveStore.DATA_EXTENSION),
+                        StandardOpenOption.READ)) {
+                    later = latestRecords(data, from, store.dataFileSize());
+                }
+                for (Map.Entry<UUID, Last> entry : candidates.entrySet()) {
+                    UUID id = entry.getKey();
+                    Last last = later.getOrDefault(id, entry.getValue());
+                    if (last.offset() < entry.getValue().offset()) {
+                        last = entry.getValue();
+                    }
+                    if (last.live() && store.find(id) == null) {
+                        orphaned.add(orphan(id, last));
+                    }
+                }
+            } finally {
+                store.unlockStripes(stripes);
+            }
+        } finally {
+            store.lock.readLock().unlock();
+        }
+        orphaned.sort(Comparator.comparingLong(Problem::offset));
+        return orphaned;
+    }
+
+    private static Problem orphan(UUID id, Last last) {
+        return new Problem(id, last.offset(), last.length(), "索引中没有该ID");
+    }
+
+    // 只解析记录头顺序遍历数据文件的一段，返回每个ID最后一条带标签的记录（不像记录的字节逐字节跳过）；
+    // 其他ID的追加可能已预留位置但还未写入，只遍历到文件的实际末尾
+    private static Map<UUID, Last> latestRecords(FileChannel data, long from, long to) throws IOException {
+        Map<UUID, Last> latest = new HashMap<>();
+        long end = data == null ? 0 : Math.min(to, data.size());
+        long position = from;
+        while (position < end) {
+            ByteBuffer chunk = SaveRecovery.read(data, position, (int) Math.min(CHUNK_BYTES, end - position));
+            long next = position + chunk.limit();
+            int at = 0;
+            while (at < chunk.limit()) {
+                int length = SaveRecovery.frameLength(chunk, at);
+                if (length == 0) {
+                    // 记录头跨越数据块边界时从这里重新读取；已到末尾时是写了一半的记录
+                    if (at > 0 && next < end) {
+                        next = position + at;
+                    }
+                    break;
+                }
+                if (length < 0 || position + at + length > end) {
+                    at++;
+                    continue;
+                }
+                SaveRecords.Tag tag = SaveRecords.tag(chunk, at);
+                if (tag != null) {
+                    latest.put(tag.id(), new Last(position + at, length, !tag.isTombstone()));
+                }
+                at += length;
+                if (at > chunk.limit()) {
+                    next = position + at; // 记录跨越数据块，从其后继续
+                    break;
+                }
+            }
+            position = next;
+        }
+        return latest;
+    }
+
+    // 一段条目的检查结果
+    private static final class Partial {
+        long bytes;
+        final List<Problem> corrupt = new ArrayList<>();
+        final List<Problem> dangling = new ArrayList<>();
+
+        Partial append(Partial next) {
+            bytes += next.bytes;
+            corrupt.addAll(next.corrupt);
+            dangling.addAll(next.dangling);
+            return this;
+        }
+    }
+
+    // 一次读入的数据区间
+    private record Span(long start, ByteBuffer bytes) {
+    }
+
+    // 检查[from, to)之间的条目：超过LEAF_ENTRIES时对半拆分，左半交给其他线程窃取
+    private static final class Check extends RecursiveTask<Partial> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final SaveStore.Snapshot snapshot;
+        private final List<SaveStore.LiveEntry> entries;
+        private final int from;
+        private final int to;
+        private final long dataEnd;
+        private final boolean deduplicated;
+
+        Check(SaveStore.Snapshot snapshot, List<SaveStore.LiveEntry> entries, int from, int to, long dataEnd,
+              boolean deduplicated) {
+            this.snapshot = snapshot;
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+            this.dataEnd = dataEnd;
+            this.deduplicated = deduplicated;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= LEAF_ENTRIES) {
+                Partial result = new Partial();
+                try {
+                    Span span = readSpan();
+                    for (int i = from; i < to; i++) {
+                        check(entries.get(i), span, result);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            Check left = new Check(snapshot, entries, from, middle, dataEnd, deduplicated);
+            left.fork();
+            Partial right = new Check(snapshot, entries, middle, to, dataEnd, deduplicated).compute();
+            return left.join().append(right);
+        }
+
+        // 条目已按偏移量排序：整段记录不太大时一次读入，避免逐条读取；超出数据文件末尾的条目不读
+        private Span readSpan() throws IOException {
+            long first = Long.MAX_VALUE;
+            long last = 0;
+            for (int i = from; i < to; i++) {
+                SaveIndex.Location location = entries.get(i).location();
+                long end = location.dataOffset() + location.dataLength();
+                if (location.dataOffset() >= 0 && location.dataLength() > 0 && end <= dataEnd) {
+                    first = Math.min(first, location.dataOffset());
+                    last = Math.max(last, end);
+                }
+            }
+            if (first >= last || last - first > MAX_SPAN_BYTES) {
+                return null;
+            }
+            return new Span(first, SaveRecovery.read(snapshot.data(), first, (int) (last - first)));
+        }
+
+        private void check(SaveStore.LiveEntry entry, Span span, Partial result) throws IOException {
+            UUID id = entry.id();
+            SaveIndex.Location location = entry.location();
+            long offset = location.dataOffset();
+            int length = location.dataLength();
+            if (offset < 0 || length <= 0 || offset + length > dataEnd) {
+                result.dangling.add(new Problem(id, offset, length, "超出数据文件末尾"));
+                return;
+            }
+            ByteBuffer record = span != null ? span.bytes().slice((int) (offset - span.start()), length)
+                    : snapshot.read(location);
+            result.bytes += length;
+            if (SaveRecovery.frameLength(record, 0) != length) {
+                result.dangling.add(new Problem(id, offset, length, "该位置不是长度相符的记录"));
+                return;
+            }
+            if (!SaveRecovery.verify(record, 0, length)) {
+                result.corrupt.add(new Problem(id, offset, length, "解密校验失败"));
+                return;
+            }
+            SaveRecords.Tag tag = SaveRecords.tag(record, 0);
+            if (tag == null) {
+                return;
+            }
+            if (tag.isTombstone()) {
+                result.dangling.add(new Problem(id, offset, length, "指向删除标记"));
+            } else if (tag.isReference()) {
+                result.dangling.add(new Problem(id, offset, length, "指向引用记录"));
+            } else if (!tag.id().equals(id) && !deduplicated) {
+                result.dangling.add(new Problem(id, offset, length, "记录属于其他ID：" + tag.id()));
+            }
+        }
+    }
+}
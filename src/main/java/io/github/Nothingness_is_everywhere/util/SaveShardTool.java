@@ -0,0 +1,137 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 分片存档离线重新分片工具
+ * <p>
+ * 把存档（未分片或已分片）中的全部有效记录按新的分片数重新分布：
+ * 先写入新一代子存档并刷盘，再原子替换分片清单，最后删除旧文件。
+ * 记录以加密后的原始字节复制，不经过解密和反序列化。
+ * <p>
+ * 运行期间不能有其他进程或线程访问该存档。
+ * <p>
+ * 用法：SaveShardTool 基础路径 新分片数
+ */
+public final class SaveShardTool {
+    private static final int BATCH_SIZE = 1024; // 每个分片每次追加的记录数
+
+    private SaveShardTool() {
+    }
+
+    /**
+     * 重新分片
+     * @param basePath 基础路径
+     * @param shardCount 新的分片数
+     * @return 迁移的记录数
+     */
+    public static int reshard(String basePath, int shardCount) throws IOException {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("分片数至少为1：" + shardCount);
+        }
+        SaveShards.Layout oldLayout = BinarySecureSaveUtil.layout(basePath);
+        BinarySecureSaveUtil.close(basePath);
+        SaveShards.Layout newLayout = new SaveShards.Layout(shardCount,
+                oldLayout.isSharded() ? oldLayout.generation() + 1 : 0);
+        List<String> newPaths = SaveShards.allPaths(basePath, newLayout);
+        // 清理上次中断留下的同代文件
+        for (String path : newPaths) {
+            deleteStoreFiles(path);
+        }
+
+        // 1. 复制到新一代子存档
+        int moved = 0;
+        List<SaveStore> targets = new ArrayList<>(shardCount);
+        try {
+            for (String path : newPaths) {
+                targets.add(SaveStore.open(path, false));
+            }
+            for (String sourcePath : SaveShards.allPaths(basePath, oldLayout)) {
+                moved += copy(sourcePath, targets);
+            }
+            for (SaveStore target : targets) {
+                target.force();
+            }
+        } finally {
+            for (SaveStore target : targets) {
+                target.close();
+            }
+        }
+
+        // 2. 切换清单，删除旧文件
+        SaveShards.writeManifest(basePath, newLayout);
+        for (String path : SaveShards.allPaths(basePath, oldLayout)) {
+            deleteStoreFiles(path);
+        }
+        return moved;
+    }
+
+    // 把一个（子）存档的有效记录按ID分配到目标分片
+    private static int copy(String sourcePath, List<SaveStore> targets) throws IOException {
+        int shardCount = targets.size();
+        List<List<UUID>> ids = new ArrayList<>(shardCount);
+        List<List<byte[]>> records = new ArrayList<>(shardCount);
+        List<List<String>> descriptions = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            ids.add(new ArrayList<>());
+            records.add(new ArrayList<>());
+            descriptions.add(new ArrayList<>());
+        }
+        int[] moved = {0};
+        SaveStore source = SaveStore.open(sourcePath, false);
+        try {
+            source.forEachRecord((id, description, record) -> {
+                int shard = SaveShards.shardOf(id, shardCount);
+                ids.get(shard).add(id);
+                records.get(shard).add(record);
+                descriptions.get(shard).add(description);
+                if (ids.get(shard).size() >= BATCH_SIZE) {
+                    flush(targets.get(shard), ids.get(shard), records.get(shard), descriptions.get(shard));
+                }
+                moved[0]++;
+            });
+            for (int i = 0; i < shardCount; i++) {
+                flush(targets.get(i), ids.get(i), records.get(i), descriptions.get(i));
+            }
+        } finally {
+            source.close();
+        }
+        return moved[0];
+    }
+
+    private static void flush(SaveStore target, List<UUID> ids, List<byte[]> records,
+                              List<String> descriptions) throws IOException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        target.append(ids.toArray(new UUID[0]), records.toArray(new byte[0][]),
+                descriptions.toArray(new String[0]), null);
+        ids.clear();
+        records.clear();
+        descriptions.clear();
+    }
+
+    private static void deleteStoreFiles(String path) throws IOException {
+        for (String extension : new String[]{SaveStore.DATA_EXTENSION, SaveStore.INDEX_EXTENSION,
+                SaveStore.WAL_EXTENSION, SaveDedup.DEDUP_EXTENSION}) {
+            Files.deleteIfExists(Paths.get(path + extension));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("用法：SaveShardTool 基础路径 新分片数");
+            return;
+        }
+        int before = BinarySecureSaveUtil.getShardCount(args[0]);
+        long start = System.nanoTime();
+        int moved = reshard(args[0], Integer.parseInt(args[1]));
+        System.out.printf("重新分片完成：%d条记录，%d -> %s个分片，耗时%.1f秒%n",
+                moved, before, args[1], (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * 分片存档布局
+ * <p>
+ * 分片存档由清单文件（basePath.shards）描述，记录按UUID哈希分布到N个子存档，
+ * 每个子存档是独立的.index/.data文件对（各自拥有锁、内存索引和日志）。
+ * 子存档路径带有代数：重新分片时先写入新一代子存档，再原子替换清单，最后删除旧一代文件。
+ */
+final class SaveShards {
+    static final String MANIFEST_EXTENSION = ".shards";
+    private static final String COUNT_KEY = "count";
+    private static final String GENERATION_KEY = "generation";
+
+    /**
+     * 未分片的存档
+     */
+    static final Layout UNSHARDED = new Layout(0, 0);
+
+    private SaveShards() {
+    }
+
+    /**
+     * 分片布局
+     * @param count 分片数（0表示未分片）
+     * @param generation 代数
+     */
+    record Layout(int count, int generation) {
+        boolean isSharded() {
+            return count > 0;
+        }
+    }
+
+    /**
+     * 计算ID所在的分片（与内存索引的哈希相互独立，避免分片内聚集）
+     * @param id 唯一标识
+     * @param count 分片数
+     * @return 分片序号
+     */
+    static int shardOf(UUID id, int count) {
+        long h = id.getLeastSignificantBits() ^ (id.getMostSignificantBits() * 0xC2B2AE3D27D4EB4FL);
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 32;
+        return (int) Long.remainderUnsigned(h, count);
+    }
+
+    /**
+     * 获取子存档的基础路径
+     * @param basePath 分片存档的基础路径
+     * @param layout 布局
+     * @param shard 分片序号
+     * @return 子存档基础路径
+     */
+    static String shardPath(String basePath, Layout layout, int shard) {
+        return String.format("%s.shard-%d-%d", basePath, layout.generation(), shard);
+    }
+
+    /**
+     * 获取全部子存档的基础路径（未分片时只有basePath本身）
+     */
+    static List<String> allPaths(String basePath, Layout layout) {
+        List<String> paths = new ArrayList<>();
+        if (!layout.isSharded()) {
+            paths.add(basePath);
+            return paths;
+        }
+        for (int i = 0; i < layout.count(); i++) {
+            paths.add(shardPath(basePath, layout, i));
+        }
+        return paths;
+    }
+
+    /**
+     * 读取清单
+     * @param basePath 基础路径
+     * @return 布局，没有清单时返回UNSHARDED
+     */
+    static Layout readManifest(String basePath) throws IOException {
+        Path path = Paths.get(basePath + MANIFEST_EXTENSION);
+        if (!Files.exists(path)) {
+            return UNSHARDED;
+        }
+        Properties properties = new Properties();
+        try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        try {
+            return new Layout(Integer.parseInt(properties.getProperty(COUNT_KEY)),
+                    Integer.parseInt(properties.getProperty(GENERATION_KEY)));
+        } catch (NumberFormatException e) {
+            throw new IOException("分片清单格式错误：" + path, e);
+        }
+    }
+
+    /**
+     * 原子写入清单（先写临时文件再重命名）
+     * @param basePath 基础路径
+     * @param layout 布局
+     */
+    static void writeManifest(String basePath, Layout layout) throws IOException {
+        Path path = Paths.get(basePath + MANIFEST_EXTENSION);
+        Path temp = Paths.get(basePath + MANIFEST_EXTENSION + ".tmp");
+        Properties properties = new Properties();
+        properties.setProperty(COUNT_KEY, Integer.toString(layout.count()));
+        properties.setProperty(GENERATION_KEY, Integer.toString(layout.generation()));
+        try (var writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "save shards");
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
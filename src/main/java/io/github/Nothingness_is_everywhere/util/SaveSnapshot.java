@@ -0,0 +1,150 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 存档快照（多版本读取）
+ * <p>
+ * 打开时固定存档内存索引的版本号和数据文件末尾，之后读到的始终是打开时的内容：
+ * 读取不持有存档锁，不被写入、检查点、索引合并或整理阻塞，之后的增删改对快照不可见。
+ * 返回的对象都是独立解码的副本，不经过对象缓存。
+ * <p>
+ * 快照期间该存档的更新不原地覆盖而是追加，整理替换下的旧数据文件要等快照关闭后才释放，
+ * 因此快照应尽快关闭（try-with-resources）。
+ * <p>
+ * 分片存档的快照由各分片的快照组成，各分片分别一致。
+ */
+public final class SaveSnapshot implements AutoCloseable {
+    private final String basePath;
+    private final SaveShards.Layout layout;
+    private final Map<String, SaveStore.Snapshot> parts; // （子）存档路径 -> 快照
+    private volatile boolean closed;
+
+    SaveSnapshot(String basePath, SaveShards.Layout layout, Map<String, SaveStore.Snapshot> parts) {
+        this.basePath = basePath;
+        this.layout = layout;
+        this.parts = parts;
+    }
+
+    /**
+     * 获取快照的版本号（分片存档为各分片版本号之和），存档每次增删改都递增
+     * @return 版本号
+     */
+    public long version() {
+        long version = 0;
+        for (SaveStore.Snapshot part : parts.values()) {
+            version += part.version();
+        }
+        return version;
+    }
+
+    /**
+     * 获取快照时数据文件的末尾（分片存档为各分片之和），快照可见的记录都在此之前
+     * @return 字节数
+     */
+    public long dataEnd() {
+        long end = 0;
+        for (SaveStore.Snapshot part : parts.values()) {
+            end += part.dataEnd();
+        }
+        return end;
+    }
+
+    /**
+     * 根据ID查询快照时的对象
+     * @param id 唯一标识
+     * @return 解密并校验后的对象（独立副本），快照时不存在则返回null
+     */
+    public Object get(String id) throws Exception {
+        UUID uuid = BinarySecureSaveUtil.parseId(id);
+        if (uuid == null) {
+            return null;
+        }
+        SaveStore.Snapshot part = partOf(uuid);
+        SaveIndex.Location entry = part.find(uuid);
+        return entry == null ? null : BinarySecureSaveUtil.decodeRecord(part.read(entry));
+    }
+
+    /**
+     * 批量查询快照时的对象（按数据偏移量顺序读取）
+     * @param ids 唯一标识集合
+     * @return ID -> 对象（保持传入顺序，不存在的ID不包含在结果中）
+     */
+    public Map<String, Object> getAll(Collection<String> ids) throws Exception {
+        List<String> foundIds = new ArrayList<>(ids.size());
+        List<SaveStore.Snapshot> foundParts = new ArrayList<>(ids.size());
+        List<SaveIndex.Location> found = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            UUID uuid = BinarySecureSaveUtil.parseId(id);
+            if (uuid == null) {
+                continue;
+            }
+            SaveStore.Snapshot part = partOf(uuid);
+            SaveIndex.Location entry = part.find(uuid);
+            if (entry != null) {
+                foundIds.add(id);
+                foundParts.add(part);
+                found.add(entry);
+            }
+        }
+        Integer[] order = new Integer[found.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> found.get(i).dataOffset()));
+        Object[] values = new Object[found.size()];
+        for (int i : order) {
+            values[i] = BinarySecureSaveUtil.decodeRecord(foundParts.get(i).read(found.get(i)));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            result.put(foundIds.get(i), values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 关闭快照，释放它固定的版本
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        IOException failure = null;
+        for (SaveStore.Snapshot part : parts.values()) {
+            try {
+                part.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 各（子）存档的快照
+     * @return 快照集合（按分片顺序）
+     */
+    Collection<SaveStore.Snapshot> parts() {
+        return parts.values();
+    }
+
+    // 按ID找到所在（子）存档的快照
+    private SaveStore.Snapshot partOf(UUID uuid) {
+        if (closed) {
+            throw new IllegalStateException("快照已关闭：" + basePath);
+        }
+        String path = layout.isSharded()
+                ? SaveShards.shardPath(basePath, layout, SaveShards.shardOf(uuid, layout.count())) : basePath;
+        return parts.get(path);
+    }
+}
@@ -0,0 +1,1567 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+/**
+ * 单个存档（一对.index/.data文件）的运行时状态
+ * <p>
+ * 由BinarySecureSaveUtil按basePath注册，每个存档拥有独立的锁，不同存档之间互不阻塞。
+ * 同一存档内：
+ * <ul>
+ *     <li>普通读写持有存档读锁（共享），整理、关闭等替换文件的操作持有写锁（独占）</li>
+ *     <li>追加先原子预留文件区域，再并行定位写入；读取使用定位读，读写互不阻塞</li>
+ *     <li>同一ID的更新与删除通过分段锁串行化</li>
+ *     <li>更新后的记录放得下时原地覆盖原记录（见overwrite），读取方与覆盖重叠时重新读取</li>
+ *     <li>快照（见openSnapshot）固定内存索引的一代和版本号，之后不经过存档锁读取；有快照时不原地覆盖</li>
+ *     <li>去重模式下内容相同的记录共享同一条数据，引用计数由SaveDedup随内存索引一起维护</li>
+ *     <li>内存索引由StampedLock保护，查找优先使用乐观读</li>
+ *     <li>查找前先经过布隆过滤器，不存在的ID无需加锁即可返回</li>
+ * </ul>
+ * 启用预写日志时，追加和删除先写入.wal（见SaveWal），打开存档时重放残留日志；
+ * 日志超过阈值、整理或关闭时执行检查点：.data/.index强制刷盘后清空日志。
+ * <p>
+ * 索引文件格式见SaveIndexFile：追加和删除写入无序尾部，尾部过长时合并成新的有序段；
+ * 旧格式的索引文件在打开时转换。
+ * <p>
+ * 删除时在数据文件中同样追加删除标记，数据文件可以独立重建索引：打开时索引文件缺失或损坏，
+ * 或数据文件末尾有索引中没有的记录，由SaveRecovery扫描数据文件恢复。
+ */
+final class SaveStore {
+    static final String INDEX_EXTENSION = ".index";
+    static final String DATA_EXTENSION = ".data";
+    static final String WAL_EXTENSION = ".wal";
+    private static final int STRIPE_COUNT = 64; // 分段锁数量（2的幂）
+    private static final long CHECKPOINT_BYTES = 16L * 1024 * 1024; // 日志超过该长度时执行检查点
+    private static final String COMPACT_SUFFIX = ".compact";        // 整理中的新文件后缀
+    private static final long MIN_BLOOM_CAPACITY = 1024;            // 布隆过滤器最小预计条目数
+    private static final int MIN_MERGE_TAIL = 4096;                 // 索引尾部至少达到该条目数才合并
+
+    // 布隆过滤器目标误判率（对之后打开或重建的过滤器生效）
+    static volatile double bloomFpp = 0.01;
+    // 更新统计（全部存档合计）
+    private static final LongAdder inPlaceUpdates = new LongAdder();
+    private static final LongAdder appendedUpdates = new LongAdder();
+    private static final LongAdder inPlaceBytes = new LongAdder();
+
+    final String basePath;      // 基础路径（不含扩展名）
+    // 存档级读写锁：普通读写共享读锁，结构性操作独占写锁
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPE_COUNT];
+    private final StampedLock indexLock = new StampedLock();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final AtomicLong dataEnd = new AtomicLong();    // 数据文件下一个追加位置
+    private final AtomicLong indexEnd = new AtomicLong();   // 索引文件下一个追加位置
+    private final AtomicInteger tailEntries = new AtomicInteger(); // 索引文件尾部的条目数
+    private final AtomicLong overwritesStarted = new AtomicLong();  // 已开始的原地覆盖次数
+    private final AtomicLong overwritesFinished = new AtomicLong(); // 已完成的原地覆盖次数
+    private final AtomicInteger overwritesInFlight = new AtomicInteger(); // 正在决定或进行的原地覆盖数
+    private final AtomicInteger overwriteBlockers = new AtomicInteger(); // 已打开（含正在打开）的快照数与去重时进行中的整理数
+    private volatile SaveGeneration generation;             // 内存索引的当前一代（与index同时替换）
+    private long version;                                   // 内存索引版本号（持有索引写锁时修改）
+    private final TreeMap<Long, Integer> pinnedVersions = new TreeMap<>(); // 快照版本号 -> 快照数（持有索引写锁时访问）
+    private volatile int sortedEntries;                     // 索引文件有序段的条目数
+    private SaveIndex index;                                // 内存索引（仅在写锁下整体替换）
+    private final SaveDescriptionIndex descriptionIndex = new SaveDescriptionIndex(); // 描述字典
+    private volatile SaveBloomFilter bloom;                 // ID布隆过滤器（与内存索引同步更新）
+    private volatile FileChannel dataChannel;               // 数据文件通道（按需打开）
+    private volatile FileChannel indexChannel;              // 索引文件通道（按需打开）
+    private volatile MappedSaveFile mappedData;             // 数据文件映射（映射模式下按需创建）
+    private volatile SaveWal wal;                           // 预写日志（首次使用或重放时打开）
+    private volatile SaveDedup dedup;                       // 去重表（存档用过去重时才有）
+    private volatile boolean closed;
+    private SaveRecovery.OpenReport recoveryReport = SaveRecovery.OpenReport.NONE; // 打开时的自动恢复
+
+    private SaveStore(String basePath) {
+        this.basePath = basePath;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 打开存档并加载内存索引
+     * @param basePath 基础路径
+     * @param mapped 是否通过内存映射加载索引
+     * @return 存档
+     */
+    static SaveStore open(String basePath, boolean mapped) throws IOException {
+        SaveStore store = new SaveStore(basePath);
+        store.recoverCompaction();
+        store.recoverIndex();
+        store.recoverDataTail(store.loadIndex(mapped));
+        store.dedup = SaveDedup.load(basePath, store.index, store.descriptionIndex::description);
+        store.replayLog();
+        store.generation = new SaveGeneration(store.index, Paths.get(basePath + DATA_EXTENSION));
+        return store;
+    }
+
+    /**
+     * 获取打开存档时自动恢复的报告
+     * @return 报告（未进行恢复时为OpenReport.NONE）
+     */
+    SaveRecovery.OpenReport recoveryReport() {
+        return recoveryReport;
+    }
+
+    /**
+     * 更新统计
+     * @param inPlace 原地覆盖的更新次数
+     * @param appended 追加新副本的更新次数
+     * @param inPlaceBytes 原地覆盖的字节数（即少追加到数据文件、之后也不需要整理回收的字节数）
+     */
+    public record UpdateStats(long inPlace, long appended, long inPlaceBytes) {
+        /**
+         * 原地覆盖的比例
+         */
+        public double inPlaceRatio() {
+            long total = inPlace + appended;
+            return total == 0 ? 0 : (double) inPlace / total;
+        }
+    }
+
+    static UpdateStats updateStats() {
+        return new UpdateStats(inPlaceUpdates.sum(), appendedUpdates.sum(), inPlaceBytes.sum());
+    }
+
+    static void resetUpdateStats() {
+        inPlaceUpdates.reset();
+        appendedUpdates.reset();
+        inPlaceBytes.reset();
+    }
+
+    /**
+     * 存档是否已关闭（关闭后需重新打开）
+     * @return 是否已关闭
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 查找条目（先经过布隆过滤器，再查内存索引）
+     * @param id 唯一标识
+     * @return 定位结果，不存在时返回null
+     */
+    SaveIndex.Location find(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        SaveBloomFilter filter = bloom;
+        if (!filter.mightContain(msb, lsb)) {
+            return null;
+        }
+        SaveIndex.Location location = lookup(index, msb, lsb);
+        if (location == null) {
+            filter.recordFalsePositive();
+        }
+        return location;
+    }
+
+    // 查找内存索引（乐观读，与写入冲突时退化为悲观读）
+    private SaveIndex.Location lookup(SaveIndex target, long msb, long lsb) {
+        long stamp = indexLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                SaveIndex.Location location = target.get(msb, lsb);
+                if (indexLock.validate(stamp)) {
+                    return location;
+                }
+            } catch (RuntimeException e) {
+                // 与扩容并发时可能读到不一致的数组，改用悲观读
+            }
+        }
+        stamp = indexLock.readLock();
+        try {
+            return target.get(msb, lsb);
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    // 修改内存索引中的一个ID之前调用（须持有索引写锁）：递增版本号，有快照时记录修改前的定位结果
+    private void beforeIndexChange(UUID id) {
+        version++;
+        if (!pinnedVersions.isEmpty()) {
+            generation.record(id, version, index.get(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+        }
+    }
+
+    /**
+     * 获取布隆过滤器统计
+     * @return 统计快照
+     */
+    SaveBloomFilter.Stats bloomStats() {
+        return bloom.stats();
+    }
+
+    /**
+     * 获取有效条目数
+     * @return 条目数
+     */
+    int size() {
+        long stamp = indexLock.readLock();
+        try {
+            return index.size();
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 追加一批记录并发布到内存索引
+     * @param ids 唯一标识
+     * @param records 编码后的记录
+     * @param descriptions 描述
+     * @param durability 预写日志持久化级别（null表示不写日志）
+     */
+    void append(UUID[] ids, byte[][] records, String[] descriptions, SaveDurability durability) throws IOException {
+        append(ids, records, descriptions, null, durability);
+    }
+
+    /**
+     * 追加一批记录并发布到内存索引
+     * <p>
+     * 数据区和索引区通过原子递增预留，写入不持有任何互斥锁；
+     * 两个文件都写完后才发布到内存索引，读取方不会看到写了一半的记录。
+     * 同一ID已存在时，旧索引条目被标记删除。
+     * <p>
+     * 给出内容哈希时按内容去重：存档中（或同一批中前面）已有相同内容的记录时，
+     * 数据文件中只追加引用记录，索引条目指向已有的记录。预写日志中仍记下完整记录，重放时不去重。
+     * @param ids 唯一标识
+     * @param records 编码后的记录
+     * @param descriptions 描述
+     * @param hashes 内容哈希（null或其中为null的不去重）
+     * @param durability 预写日志持久化级别（null表示不写日志）
+     */
+    void append(UUID[] ids, byte[][] records, String[] descriptions, byte[][] hashes, SaveDurability durability)
+            throws IOException {
+        if (durability != null) {
+            wal().log(SaveWal.encodePuts(ids, records, descriptions), durability);
+        }
+        int count = ids.length;
+        hashes = worthSharing(records, descriptions, hashes);
+        SaveDedup table = dedupFor(hashes);
+        // 1. 查找可共享的记录：matches为存档中已有的记录，firstCopy为同一批中前面相同内容的下标
+        SaveDedup.Match[] matches = new SaveDedup.Match[count];
+        int[] firstCopy = new int[count];
+        Arrays.fill(firstCopy, -1);
+        if (table != null) {
+            Map<ByteBuffer, Integer> seen = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                if (hashes[i] != null && (matches[i] = share(table, hashes[i])) == null) {
+                    Integer first = seen.putIfAbsent(ByteBuffer.wrap(hashes[i]), i);
+                    firstCopy[i] = first == null ? -1 : first;
+                }
+            }
+        }
+        int totalLength = 0;
+        int indexLength = 0;
+        byte[][] descBytes = new byte[count][];
+        int[] descCodes = new int[count];
+        for (int i = 0; i < count; i++) {
+            boolean shared = matches[i] != null || firstCopy[i] >= 0;
+            totalLength += shared ? SaveRecords.referenceLength(descriptions[i]) : records[i].length;
+            descBytes[i] = SaveIndexFile.descriptionBytes(descriptions[i]);
+            descCodes[i] = descriptionIndex.code(SaveIndexFile.storedDescription(descriptions[i], descBytes[i]));
+            indexLength += SaveIndexFile.putLength(descBytes[i]);
+        }
+        ensureChannels();
+        long dataStart = dataEnd.getAndAdd(totalLength);
+        long indexStart = indexEnd.getAndAdd(indexLength);
+
+        // 2. 拼接整批数据与索引尾部条目（共享的条目指向被引用的记录）
+        ByteBuffer dataBatch = ByteBuffer.allocate(totalLength);
+        ByteBuffer indexBatch = ByteBuffer.allocate(indexLength);
+        long[] dataOffsets = new long[count];
+        int[] dataLengths = new int[count];
+        long[] indexPositions = new long[count];
+        for (int i = 0; i < count; i++) {
+            long recordOffset = dataStart + dataBatch.position();
+            indexPositions[i] = indexStart + indexBatch.position();
+            if (matches[i] != null || firstCopy[i] >= 0) {
+                dataOffsets[i] = matches[i] != null ? matches[i].offset() : dataOffsets[firstCopy[i]];
+                dataLengths[i] = matches[i] != null ? matches[i].length() : dataLengths[firstCopy[i]];
+                dataBatch.put(SaveRecords.reference(ids[i], descriptions[i], dataOffsets[i], dataLengths[i]));
+            } else {
+                dataOffsets[i] = recordOffset;
+                dataLengths[i] = records[i].length;
+                dataBatch.put(records[i]);
+            }
+            SaveIndexFile.putTailPut(indexBatch, ids[i], dataOffsets[i], dataLengths[i], descBytes[i]);
+        }
+
+        // 3. 先写数据，再写索引
+        writeFully(dataChannel, dataBatch.flip(), dataStart);
+        writeFully(indexChannel, indexBatch.flip(), indexStart);
+
+        // 4. 发布到内存索引
+        for (int i = 0; i < count; i++) {
+            SaveIndex.Location old;
+            long stamp = indexLock.writeLock();
+            try {
+                // 先加入布隆过滤器再发布，无锁查询的读取方不会漏判已发布的记录
+                bloom.add(ids[i].getMostSignificantBits(), ids[i].getLeastSignificantBits());
+                beforeIndexChange(ids[i]);
+                old = index.put(ids[i].getMostSignificantBits(), ids[i].getLeastSignificantBits(),
+                        dataOffsets[i], dataLengths[i], indexPositions[i], descCodes[i]);
+                SaveDedup current = dedup;
+                if (current != null) {
+                    // share已为新条目计数；同一批中的引用在此计数，新内容在此登记
+                    if (firstCopy[i] >= 0) {
+                        current.retain(dataOffsets[i]);
+                    } else if (matches[i] == null && hashes != null && hashes[i] != null) {
+                        current.register(hashes[i], dataOffsets[i], dataLengths[i],
+                                SaveRecords.referenceLength(descriptions[i]));
+                    }
+                    if (old != null && (matches[i] != null || old.dataOffset() != dataOffsets[i])) {
+                        current.release(old.dataOffset());
+                    }
+                }
+                if (bloom.isSaturated()) {
+                    bloom = buildBloom(index);
+                }
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+            // 尾部按位置先后生效；并发写入同一ID时若旧条目位于更后面，需使其失效，重新加载时才与内存一致
+            if (old != null && old.indexPosition() > indexPositions[i]) {
+                SaveIndexFile.markSuperseded(indexChannel, old.indexPosition());
+            }
+        }
+        tailEntries.addAndGet(count);
+    }
+
+    // 按内容哈希查找可共享的记录（引用计数已加1）；从.dedup文件加载的条目第一次使用前解密比对内容
+    private SaveDedup.Match share(SaveDedup table, byte[] hash) {
+        SaveDedup.Match match = table.share(hash);
+        if (match == null || match.verified()) {
+            return match;
+        }
+        boolean same;
+        try {
+            same = Arrays.equals(hash, SaveDedup.contentHash(read(new SaveIndex.Location(match.offset(),
+                    match.length(), 0, 0), false)));
+        } catch (IOException e) {
+            same = false;
+        }
+        table.confirm(match.offset(), same);
+        return same ? match : null;
+    }
+
+    // 不比引用记录长的记录共享没有收益，不参与去重（去掉其内容哈希）
+    private static byte[][] worthSharing(byte[][] records, String[] descriptions, byte[][] hashes) {
+        if (hashes == null) {
+            return null;
+        }
+        byte[][] kept = hashes.clone();
+        for (int i = 0; i < kept.length; i++) {
+            if (kept[i] != null && !worthSharing(records[i], descriptions[i])) {
+                kept[i] = null;
+            }
+        }
+        return kept;
+    }
+
+    private static boolean worthSharing(byte[] record, String description) {
+        return record.length > SaveRecords.referenceLength(description);
+    }
+
+    // 写入带有内容哈希时使用的去重表（存档第一次去重时创建），没有内容哈希时返回null
+    private SaveDedup dedupFor(byte[][] hashes) throws IOException {
+        if (hashes == null || Arrays.stream(hashes).allMatch(Objects::isNull)) {
+            return null;
+        }
+        SaveDedup current = dedup;
+        if (current == null) {
+            synchronized (this) {
+                current = dedup;
+                if (current == null) {
+                    current = SaveDedup.create(basePath);
+                    dedup = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 获取去重统计
+     * @return 统计快照，存档没有用过去重时全为0
+     */
+    SaveDedup.Stats dedupStats() {
+        SaveDedup current = dedup;
+        return current == null ? new SaveDedup.Stats(0, 0, 0) : current.stats();
+    }
+
+    /**
+     * 存档是否用过去重（用过时索引条目可能指向属于其他ID的共享记录）
+     */
+    boolean deduplicated() {
+        return dedup != null;
+    }
+
+    /**
+     * 更新已存在的记录：已有相同内容的记录时共享它，放得下时原地覆盖，否则追加新副本，
+     * 调用方须持有该ID的分段锁
+     * @param id 唯一标识
+     * @param record 编码后的记录
+     * @param description 描述
+     * @param hash 内容哈希（null表示不去重）
+     * @param inPlace 是否允许原地覆盖
+     * @param durability 预写日志持久化级别（null表示不写日志）
+     * @return 是否存在该ID（不存在时不写入）
+     */
+    boolean update(UUID id, byte[] record, String description, byte[] hash, boolean inPlace,
+                   SaveDurability durability) throws IOException {
+        SaveIndex.Location location = find(id);
+        if (location == null) {
+            return false;
+        }
+        if (hash != null && !worthSharing(record, description)) {
+            hash = null;
+        }
+        SaveDedup current = dedup;
+        boolean shareable = hash != null && current != null && current.contains(hash);
+        if (inPlace && !shareable && overwrite(id, location, record, description, hash, durability)) {
+            inPlaceUpdates.increment();
+            inPlaceBytes.add(location.dataLength());
+        } else {
+            append(new UUID[]{id}, new byte[][]{record}, new String[]{description},
+                    hash == null ? null : new byte[][]{hash}, durability);
+            appendedUpdates.increment();
+        }
+        return true;
+    }
+
+    /**
+     * 读取前记下原地覆盖的进度，与overwrittenSince配合判断读取期间是否有原地覆盖
+     * @return 进度标记
+     */
+    long overwriteMark() {
+        return overwritesFinished.get();
+    }
+
+    /**
+     * 自overwriteMark以来是否有原地覆盖开始过（或标记时仍在进行），此时读到的记录可能不完整
+     * @param mark overwriteMark的返回值
+     * @return 是否有
+     */
+    boolean overwrittenSince(long mark) {
+        return overwritesStarted.get() != mark;
+    }
+
+    // 原地覆盖：新记录（去掉填充后）不超过原记录占用的空间时，补足填充后写回原位置，
+    // 再在索引尾部追加同一位置的条目（描述可能变化；整理据此发现记录被覆盖过）。
+    // 覆盖不是原子的，崩溃时该记录可能新旧都不完整，启用预写日志时由重放恢复。
+    // 有快照或去重存档正在整理时不覆盖：快照看到的记录必须保持不变（与openSnapshot配合，见其中的说明），
+    // 整理对共享记录只复制一次；被多个ID共享的记录也不覆盖。
+    private boolean overwrite(UUID id, SaveIndex.Location location, byte[] record, String description, byte[] hash,
+                              SaveDurability durability) throws IOException {
+        int content = SaveRecords.contentLength(record);
+        if (content < 0 || content > location.dataLength()) {
+            return false;
+        }
+        overwritesInFlight.incrementAndGet();
+        try {
+            SaveDedup current = dedup;
+            return overwriteBlockers.get() == 0 && (current == null || current.claim(location.dataOffset()))
+                    && overwriteSlot(id, location, record, description, hash, durability);
+        } finally {
+            overwritesInFlight.decrementAndGet();
+        }
+    }
+
+    private boolean overwriteSlot(UUID id, SaveIndex.Location location, byte[] record, String description,
+                                  byte[] hash, SaveDurability durability) throws IOException {
+        byte[] slot = SaveRecords.pad(record, location.dataLength());
+        if (durability != null) {
+            wal().log(SaveWal.encodePuts(new UUID[]{id}, new byte[][]{slot}, new String[]{description}), durability);
+        }
+        byte[] descBytes = SaveIndexFile.descriptionBytes(description);
+        int descCode = descriptionIndex.code(SaveIndexFile.storedDescription(description, descBytes));
+        ByteBuffer entry = ByteBuffer.allocate(SaveIndexFile.putLength(descBytes));
+        SaveIndexFile.putTailPut(entry, id, location.dataOffset(), location.dataLength(), descBytes);
+        ensureChannels();
+        overwritesStarted.incrementAndGet();
+        try {
+            writeFully(dataChannel, ByteBuffer.wrap(slot), location.dataOffset());
+        } finally {
+            overwritesFinished.incrementAndGet();
+        }
+        long position = indexEnd.getAndAdd(entry.position());
+        writeFully(indexChannel, entry.flip(), position);
+        SaveIndex.Location old;
+        long stamp = indexLock.writeLock();
+        try {
+            beforeIndexChange(id);
+            old = index.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), location.dataOffset(),
+                    location.dataLength(), position, descCode);
+            SaveDedup current = dedup;
+            if (current != null && hash != null) {
+                current.register(hash, location.dataOffset(), location.dataLength(),
+                        SaveRecords.referenceLength(description));
+            }
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+        if (old != null && old.indexPosition() > position) {
+            SaveIndexFile.markSuperseded(indexChannel, old.indexPosition());
+        }
+        tailEntries.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 存档快照：固定内存索引的一代和版本号，之后的读取不经过存档锁，也不受写入和整理影响
+     * <p>
+     * 快照期间数据文件中已有的字节不会改变：追加只写在末尾，原地覆盖在有快照时改为追加，
+     * 整理写入新文件后替换，旧文件由快照共享的通道保持可读，直到引用它的快照全部关闭。
+     */
+    final class Snapshot implements Closeable {
+        private final SaveGeneration pinned;
+        private final long pinnedVersion;
+        private final long pinnedDataEnd;
+        private final FileChannel data;
+        private boolean released;
+
+        private Snapshot(SaveGeneration pinned, long pinnedVersion, long pinnedDataEnd, FileChannel data) {
+            this.pinned = pinned;
+            this.pinnedVersion = pinnedVersion;
+            this.pinnedDataEnd = pinnedDataEnd;
+            this.data = data;
+        }
+
+        /**
+         * 快照的版本号（存档每次修改内存索引递增）
+         */
+        long version() {
+            return pinnedVersion;
+        }
+
+        /**
+         * 快照时数据文件的末尾，快照可见的记录都在此之前
+         */
+        long dataEnd() {
+            return pinnedDataEnd;
+        }
+
+        /**
+         * 查找快照版本时的条目
+         * @param id 唯一标识
+         * @return 定位结果，快照时不存在则返回null
+         */
+        SaveIndex.Location find(UUID id) {
+            // 先查内存索引再查撤销链：修改前先记撤销链，两者之间发生的修改也能被还原
+            SaveIndex.Location current = lookup(pinned.index, id.getMostSignificantBits(), id.getLeastSignificantBits());
+            return pinned.restore(id, pinnedVersion, current);
+        }
+
+        /**
+         * 读取整条记录
+         * @param entry find的定位结果
+         * @return 位置为0的记录缓冲区
+         */
+        ByteBuffer read(SaveIndex.Location entry) throws IOException {
+            ByteBuffer record = ByteBuffer.allocate(entry.dataLength());
+            readFully(data, record, entry.dataOffset());
+            return record.flip();
+        }
+
+        /**
+         * 取出快照版本时的全部条目：持有索引读锁遍历这一代的内存索引，再补上快照之后被删除的ID
+         * @return ID与定位结果（无序）
+         */
+        List<LiveEntry> entries() throws IOException {
+            List<LiveEntry> entries = new ArrayList<>();
+            long stamp = indexLock.readLock();
+            try {
+                SaveIndex current = pinned.index;
+                current.forEach((msb, lsb, dataOffset, dataLength, indexPosition) -> {
+                    UUID id = new UUID(msb, lsb);
+                    SaveIndex.Location entry = pinned.restore(id, pinnedVersion,
+                            new SaveIndex.Location(dataOffset, dataLength, indexPosition, 0));
+                    if (entry != null) {
+                        entries.add(new LiveEntry(id, entry));
+                    }
+                });
+                for (UUID id : pinned.changedIds()) {
+                    if (lookup(current, id.getMostSignificantBits(), id.getLeastSignificantBits()) == null) {
+                        SaveIndex.Location entry = pinned.restore(id, pinnedVersion, null);
+                        if (entry != null) {
+                            entries.add(new LiveEntry(id, entry));
+                        }
+                    }
+                }
+            } finally {
+                indexLock.unlockRead(stamp);
+            }
+            return entries;
+        }
+
+        /**
+         * 快照固定的一代是否仍是存档当前的一代（之后没有整理切换过文件）
+         */
+        boolean isCurrent() {
+            return pinned == generation;
+        }
+
+        /**
+         * 快照共享的数据文件通道
+         * @return 通道，快照时数据文件尚不存在则为null
+         */
+        FileChannel data() {
+            return data;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(this);
+        }
+    }
+
+    /**
+     * 快照中的一个条目
+     * @param id 唯一标识
+     * @param location 快照版本时的定位结果
+     */
+    record LiveEntry(UUID id, SaveIndex.Location location) {
+    }
+
+    /**
+     * 打开快照，调用方须持有存档读锁（只在固定版本时短暂持有，之后的读取不需要）
+     * @return 快照，用完须关闭
+     */
+    Snapshot openSnapshot() throws IOException {
+        blockOverwrites();
+        try {
+            SaveGeneration pinned;
+            long pinnedVersion;
+            long stamp = indexLock.writeLock();
+            try {
+                pinned = generation;
+                pinnedVersion = version;
+                pinnedVersions.merge(pinnedVersion, 1, Integer::sum);
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+            return new Snapshot(pinned, pinnedVersion, dataFileSize(), pinned.pin());
+        } catch (IOException | RuntimeException e) {
+            overwriteBlockers.decrementAndGet();
+            throw e;
+        }
+    }
+
+    // 阻止之后的原地覆盖并等待进行中的覆盖结束：先登记再等待，覆盖方先登记自己再检查登记数，
+    // 两边至少有一方能看到对方，之后开始的覆盖都会改为追加。用完须将overwriteBlockers减1
+    private void blockOverwrites() {
+        overwriteBlockers.incrementAndGet();
+        while (overwritesInFlight.get() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    // 关闭快照：不再需要的撤销记录随之丢弃，旧的一代在没有快照引用后释放
+    private void release(Snapshot snapshot) throws IOException {
+        long stamp = indexLock.writeLock();
+        try {
+            pinnedVersions.computeIfPresent(snapshot.pinnedVersion, (v, count) -> count == 1 ? null : count - 1);
+            generation.trim(pinnedVersions.isEmpty() ? Long.MAX_VALUE : pinnedVersions.firstKey());
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+        overwriteBlockers.decrementAndGet();
+        snapshot.pinned.unpin();
+    }
+
+    /**
+     * 批量删除条目（从内存索引移除，在数据文件和索引文件中追加删除标记）
+     * @param ids 唯一标识
+     * @param durability 预写日志持久化级别（null表示不写日志）
+     * @return 与ids一一对应的被删除条目，不存在的为null
+     */
+    SaveIndex.Location[] remove(UUID[] ids, SaveDurability durability) throws IOException {
+        if (durability != null) {
+            wal().log(SaveWal.encodeDeletes(ids), durability);
+        }
+        SaveIndex.Location[] removed = new SaveIndex.Location[ids.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            long stamp = indexLock.writeLock();
+            try {
+                beforeIndexChange(ids[i]);
+                removed[i] = index.remove(ids[i].getMostSignificantBits(), ids[i].getLeastSignificantBits());
+                SaveDedup current = dedup;
+                if (current != null && removed[i] != null) {
+                    current.release(removed[i].dataOffset());
+                }
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+            if (removed[i] != null) {
+                count++;
+            }
+        }
+        // 在数据文件中追加删除标记，在索引文件尾部追加删除条目
+        if (count > 0) {
+            ensureChannels();
+            byte[][] markers = new byte[count][];
+            int markerLength = 0;
+            for (int i = 0, j = 0; i < ids.length; i++) {
+                if (removed[i] != null) {
+                    markers[j] = SaveRecords.tombstone(ids[i]);
+                    markerLength += markers[j++].length;
+                }
+            }
+            ByteBuffer markerBatch = ByteBuffer.allocate(markerLength);
+            for (byte[] marker : markers) {
+                markerBatch.put(marker);
+            }
+            writeFully(dataChannel, markerBatch.flip(), dataEnd.getAndAdd(markerLength));
+            ByteBuffer tombstones = ByteBuffer.allocate(count * SaveIndexFile.deleteLength());
+            for (int i = 0; i < ids.length; i++) {
+                if (removed[i] != null) {
+                    SaveIndexFile.putTailDelete(tombstones, ids[i].getMostSignificantBits(),
+                            ids[i].getLeastSignificantBits());
+                }
+            }
+            writeFully(indexChannel, tombstones.flip(), indexEnd.getAndAdd(tombstones.limit()));
+            tailEntries.addAndGet(count);
+        }
+        return removed;
+    }
+
+    /**
+     * 是否需要执行检查点（日志超过阈值）
+     * @return 是否需要
+     */
+    boolean needsCheckpoint() {
+        SaveWal current = wal;
+        return current != null && current.size() >= CHECKPOINT_BYTES;
+    }
+
+    /**
+     * 检查点：.data/.index强制刷盘后清空日志，需持有写锁
+     */
+    void checkpoint() throws IOException {
+        SaveWal current = wal;
+        if (current == null) {
+            return;
+        }
+        force();
+        current.truncate();
+    }
+
+    /**
+     * 是否需要合并索引文件（尾部条目数超过阈值且不少于有序段的四分之一）
+     * @return 是否需要
+     */
+    boolean needsIndexMerge() {
+        int tail = tailEntries.get();
+        return tail >= MIN_MERGE_TAIL && tail >= sortedEntries / 4;
+    }
+
+    /**
+     * 合并索引文件：把尾部与有序段合并成新的有序段，需持有写锁
+     * <p>
+     * 整理会重写整个索引文件，正在整理时跳过本次合并。
+     */
+    void mergeIndex() throws IOException {
+        if (!compactionLock.tryLock()) {
+            return;
+        }
+        try {
+            Path path = Paths.get(basePath + INDEX_EXTENSION);
+            if (!Files.exists(path)) {
+                return;
+            }
+            // 新索引引用的数据先落盘
+            force();
+            ByteBuffer file;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                file = SaveIndexFile.readAll(channel);
+            }
+            List<SaveIndexFile.Entry> entries = new ArrayList<>(SaveIndexFile.readLive(file).values());
+            closeChannels();
+            SaveIndexFile.write(path, entries);
+            // 条目在文件中的位置已变化
+            long stamp = indexLock.writeLock();
+            try {
+                for (int i = 0; i < entries.size(); i++) {
+                    SaveIndexFile.Entry entry = entries.get(i);
+                    index.put(entry.msb(), entry.lsb(), entry.dataOffset(), entry.dataLength(),
+                            SaveIndexFile.entryPosition(i), descriptionIndex.code(entry.description()));
+                }
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+            sortedEntries = entries.size();
+            tailEntries.set(0);
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * 按描述查询条目（先匹配描述字典，再按编码筛选内存索引）
+     * @param matcher 描述条件
+     * @return 满足条件的条目（含描述），顺序不定
+     */
+    List<SaveIndexFile.Entry> findByDescription(Predicate<String> matcher) {
+        BitSet codes = descriptionIndex.match(matcher);
+        List<SaveIndexFile.Entry> result = new ArrayList<>();
+        if (codes.isEmpty()) {
+            return result;
+        }
+        long stamp = indexLock.readLock();
+        try {
+            index.forEachDescribed(codes, (msb, lsb, dataOffset, dataLength, descCode) ->
+                    result.add(new SaveIndexFile.Entry(msb, lsb, dataOffset, dataLength,
+                            descriptionIndex.description(descCode))));
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+        return result;
+    }
+
+    /**
+     * 读取整条记录
+     * @param entry 索引定位结果
+     * @param mapped 是否从内存映射读取
+     * @return 位置为0的记录缓冲区
+     */
+    ByteBuffer read(SaveIndex.Location entry, boolean mapped) throws IOException {
+        if (mapped) {
+            // 复制到堆内再解密：原地覆盖可能与读取重叠，而GCM的认证与解密会分别读取输入，
+            // 直接解密映射内存可能通过认证却解出被改写的明文
+            ByteBuffer record = ByteBuffer.allocate(entry.dataLength());
+            return record.put(mappedData().slice(entry.dataOffset(), entry.dataLength())).flip();
+        }
+        ensureChannels();
+        ByteBuffer record = ByteBuffer.allocate(entry.dataLength());
+        while (record.hasRemaining()) {
+            if (dataChannel.read(record, entry.dataOffset() + record.position()) < 0) {
+                throw new EOFException("记录超出数据文件末尾：" + basePath + DATA_EXTENSION);
+            }
+        }
+        return record.flip();
+    }
+
+    /**
+     * 锁定ID对应的分段锁（按分段序号升序加锁，避免死锁）
+     * @param ids 唯一标识
+     * @return 已加锁的分段，用于unlockStripes
+     */
+    boolean[] lockStripes(UUID... ids) {
+        boolean[] locked = new boolean[STRIPE_COUNT];
+        for (UUID id : ids) {
+            locked[stripeOf(id)] = true;
+        }
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            if (locked[i]) {
+                stripes[i].lock();
+            }
+        }
+        return locked;
+    }
+
+    /**
+     * 释放lockStripes获取的分段锁
+     * @param locked lockStripes的返回值
+     */
+    void unlockStripes(boolean[] locked) {
+        for (int i = STRIPE_COUNT - 1; i >= 0; i--) {
+            if (locked[i]) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * 获取死空间比例（已删除和被更新覆盖的记录占数据文件的比例）
+     * @return 0-1之间的比例，数据文件为空时为0
+     */
+    double deadSpaceRatio() throws IOException {
+        long fileSize = dataFileSize();
+        if (fileSize == 0) {
+            return 0;
+        }
+        long live;
+        long stamp = indexLock.readLock();
+        try {
+            live = index.liveBytes();
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+        // 共享的记录在索引中按引用数重复计算了长度（节省的字节数已扣除引用记录）
+        SaveDedup current = dedup;
+        if (current != null) {
+            live -= current.savedBytes();
+        }
+        return Math.max(0, 1 - (double) live / fileSize);
+    }
+
+    /**
+     * 获取数据文件长度（含已预留的追加区域）
+     * @return 字节数
+     */
+    long dataFileSize() throws IOException {
+        if (dataChannel != null) {
+            return dataEnd.get();
+        }
+        Path path = Paths.get(basePath + DATA_EXTENSION);
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    /**
+     * 是否正在整理
+     * @return 是否正在整理
+     */
+    boolean isCompacting() {
+        return compactionLock.isLocked();
+    }
+
+    /**
+     * 在线整理（清除已删除和被覆盖的数据，减少碎片），调用方不能持有存档锁
+     * <p>
+     * 1. 读取旧索引文件，按数据偏移量顺序复制仍在内存索引中生效的记录：相邻记录合并后用transferTo
+     * 在文件之间直接传输，记录字节不经过堆内存；再把复制的条目写成新索引文件的有序段。
+     * 这一步不持有存档锁，读写照常进行。
+     * <br>2. 短暂持有写锁：补复制整理期间新增或更新的记录，在新索引尾部追加这些记录和整理期间删除的记录，
+     * 然后原子重命名新文件并替换内存索引，读取方从下一次读取起看到新文件。
+     * <p>
+     * 同一存档同时只有一个整理在进行，后来者等待前一个完成。
+     * <p>
+     * 用过去重的存档整理期间不原地覆盖，共享的记录只复制一次，引用它的条目都指向新位置；
+     * 条目与记录标签中的ID不同时在新数据文件中重新写入引用记录。
+     * @return 是否完成（存档在整理期间被关闭时返回false）
+     */
+    boolean compact() throws IOException {
+        compactionLock.lock();
+        Path oldDataPath = Paths.get(basePath + DATA_EXTENSION);
+        Path oldIndexPath = Paths.get(basePath + INDEX_EXTENSION);
+        Path newDataPath = Paths.get(basePath + COMPACT_SUFFIX + DATA_EXTENSION);
+        Path newIndexPath = Paths.get(basePath + COMPACT_SUFFIX + INDEX_EXTENSION);
+        boolean blocking = false;
+        try {
+            if (closed) {
+                return false;
+            }
+            if (!Files.exists(oldDataPath) || !Files.exists(oldIndexPath)) {
+                return true;
+            }
+            if (dedup != null) {
+                blockOverwrites();
+                blocking = true;
+            }
+            boolean writeLocked = false;
+            try {
+                SaveIndex copied;
+                List<SaveIndexFile.Entry> entries;
+                Map<Long, Long> moved = new HashMap<>();      // 去重时：记录的旧偏移量 -> 新偏移量
+                int tail;
+                try (FileChannel source = FileChannel.open(oldDataPath, StandardOpenOption.READ);
+                     FileChannel sourceIndex = FileChannel.open(oldIndexPath, StandardOpenOption.READ);
+                     FileChannel target = FileChannel.open(newDataPath, StandardOpenOption.CREATE,
+                             StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    int expected = size();
+                    copied = new SaveIndex(expected);             // 记录在新文件中的位置
+                    SaveIndex sources = new SaveIndex(expected);  // 复制时记录在旧文件中的位置（提交时校验）
+                    Set<UUID> owners = new LinkedHashSet<>();     // 去重时：被其他ID引用的记录的标签ID
+
+                    // 1. 复制有效记录并写出新索引的有序段（不持有存档锁）
+                    entries = copyLive(source, sourceIndex, target, sources, blocking ? moved : null, owners);
+                    SaveIndexFile.write(newIndexPath, entries);
+                    for (int i = 0; i < entries.size(); i++) {
+                        SaveIndexFile.Entry entry = entries.get(i);
+                        copied.put(entry.msb(), entry.lsb(), entry.dataOffset(), entry.dataLength(),
+                                SaveIndexFile.entryPosition(i), descriptionIndex.code(entry.description()));
+                    }
+
+                    // 2. 补齐整理期间的变更（持有写锁直到切换完成）
+                    lock.writeLock().lock();
+                    writeLocked = true;
+                    if (closed) {
+                        return false;
+                    }
+                    try (FileChannel targetIndex = FileChannel.open(newIndexPath, StandardOpenOption.WRITE)) {
+                        tail = catchUp(source, target, targetIndex, copied, sources, moved, owners);
+                        if (wal != null) {
+                            target.force(true);
+                            targetIndex.force(true);
+                        }
+                    }
+                }
+
+                // 3. 旧文件和新文件的通道都已关闭，切换文件
+                closeChannels();
+                // 先替换数据文件再替换索引文件，两次重命名之间崩溃时由recoverCompaction完成后者
+                Files.move(newDataPath, oldDataPath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                Files.move(newIndexPath, oldIndexPath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                // 旧映射直接丢弃，新数据文件按需重新映射；旧的一代在没有快照引用后释放
+                index = copied;
+                SaveGeneration retired = generation;
+                generation = new SaveGeneration(copied, oldDataPath);
+                retired.retire();
+                bloom = buildBloom(copied);
+                if (dedup != null) {
+                    dedup.relocate(moved);
+                }
+                mappedData = null;
+                sortedEntries = entries.size();
+                tailEntries.set(tail);
+                // 日志中的操作都已包含在新文件中
+                if (wal != null) {
+                    wal.truncate();
+                }
+                return true;
+            } finally {
+                if (writeLocked) {
+                    lock.writeLock().unlock();
+                }
+            }
+        } finally {
+            if (blocking) {
+                overwriteBlockers.decrementAndGet();
+            }
+            try {
+                Files.deleteIfExists(newDataPath);
+                Files.deleteIfExists(newIndexPath);
+            } finally {
+                compactionLock.unlock();
+            }
+        }
+    }
+
+    // 按数据偏移量顺序复制旧索引文件中仍然生效的记录，返回它们在新文件中的条目。
+    // 去重时（moved不为null）共享的记录只复制一次并记下新旧偏移量；条目与记录标签中的ID不同时，
+    // 在新文件末尾追加该条目的引用记录，标签中的ID记入owners（由catchUp决定是否追加删除标记）
+    private List<SaveIndexFile.Entry> copyLive(FileChannel source, FileChannel sourceIndex, FileChannel target,
+                                               SaveIndex sources, Map<Long, Long> moved, Set<UUID> owners)
+            throws IOException {
+        // 尾部末尾正在写入的条目校验不通过会被跳过，由catchUp补齐
+        List<SaveIndexFile.Entry> candidates =
+                new ArrayList<>(SaveIndexFile.readLive(SaveIndexFile.readAll(sourceIndex)).values());
+        candidates.sort(Comparator.comparingLong(SaveIndexFile.Entry::dataOffset));
+        List<SaveIndexFile.Entry> entries = new ArrayList<>(candidates.size());
+        List<byte[]> references = new ArrayList<>();
+        long copiedData = 0;    // 新数据文件已写入的长度
+        long runStart = -1;     // 待传输的连续数据区间
+        long runEnd = -1;
+        for (SaveIndexFile.Entry candidate : candidates) {
+            // 只复制当前生效的记录（跳过复制期间被覆盖或删除的记录）
+            SaveIndex.Location live = find(candidate.id());
+            if (live == null || live.dataOffset() != candidate.dataOffset()) {
+                continue;
+            }
+            Long copiedAt = moved == null ? null : moved.get(live.dataOffset());
+            long newOffset;
+            if (copiedAt != null) {
+                newOffset = copiedAt;
+            } else {
+                if (live.dataOffset() != runEnd) {
+                    transfer(source, runStart, runEnd - runStart, target);
+                    copiedData += runEnd - runStart;
+                    runStart = live.dataOffset();
+                }
+                runEnd = live.dataOffset() + live.dataLength();
+                newOffset = copiedData + (live.dataOffset() - runStart);
+                if (moved != null) {
+                    moved.put(live.dataOffset(), newOffset);
+                }
+            }
+            entries.add(new SaveIndexFile.Entry(candidate.msb(), candidate.lsb(), newOffset, live.dataLength(),
+                    candidate.description()));
+            sources.put(candidate.msb(), candidate.lsb(), live.dataOffset(), live.dataLength(),
+                    live.indexPosition(), live.descCode());
+            if (moved != null) {
+                UUID owner = ownerOf(source, live.dataOffset(), live.dataLength());
+                if (owner != null && !owner.equals(candidate.id())) {
+                    references.add(SaveRecords.reference(candidate.id(), candidate.description(), newOffset,
+                            live.dataLength()));
+                    owners.add(owner);
+                }
+            }
+        }
+        transfer(source, runStart, runEnd - runStart, target);
+        for (byte[] reference : references) {
+            writeFully(target, ByteBuffer.wrap(reference), target.size());
+        }
+        return entries;
+    }
+
+    // 补复制整理期间新增或更新的记录，并删除整理期间删除的记录（持有写锁，无并发写入），返回追加的尾部条目数
+    private int catchUp(FileChannel source, FileChannel target, FileChannel targetIndex, SaveIndex copied,
+                        SaveIndex sources, Map<Long, Long> moved, Set<UUID> owners) throws IOException {
+        boolean dedupe = dedup != null;
+        int[] tail = {0};
+        index.forEach((msb, lsb, dataOffset, dataLength, indexPosition) -> {
+            // 原地覆盖不改变数据偏移量，但会在索引尾部写入新条目，按索引位置一并判断
+            SaveIndex.Location from = sources.get(msb, lsb);
+            if (from != null && from.dataOffset() == dataOffset && from.indexPosition() == indexPosition) {
+                return;
+            }
+            UUID id = new UUID(msb, lsb);
+            Long copiedAt = dedupe ? moved.get(dataOffset) : null;
+            long newOffset;
+            if (copiedAt != null) {
+                newOffset = copiedAt;
+            } else {
+                newOffset = target.size();
+                transfer(source, dataOffset, dataLength, target);
+                if (dedupe) {
+                    moved.put(dataOffset, newOffset);
+                }
+            }
+            int descCode = index.get(msb, lsb).descCode();
+            String description = descriptionIndex.description(descCode);
+            if (dedupe) {
+                UUID owner = ownerOf(source, dataOffset, dataLength);
+                if (owner != null && !owner.equals(id)) {
+                    writeFully(target, ByteBuffer.wrap(SaveRecords.reference(id, description, newOffset, dataLength)),
+                            target.size());
+                    owners.add(owner);
+                }
+            }
+            byte[] descBytes = SaveIndexFile.descriptionBytes(description);
+            ByteBuffer entry = ByteBuffer.allocate(SaveIndexFile.putLength(descBytes));
+            SaveIndexFile.putTailPut(entry, id, newOffset, dataLength, descBytes);
+            long newPosition = targetIndex.size();
+            writeFully(targetIndex, entry.flip(), newPosition);
+            copied.put(msb, lsb, newOffset, dataLength, newPosition, descCode);
+            tail[0]++;
+        });
+        List<long[]> deleted = new ArrayList<>();
+        copied.forEach((msb, lsb, dataOffset, dataLength, indexPosition) -> {
+            if (index.get(msb, lsb) == null) {
+                deleted.add(new long[]{msb, lsb});
+            }
+        });
+        for (long[] removed : deleted) {
+            copied.remove(removed[0], removed[1]);
+            // 新数据文件中已复制过该记录，同样追加删除标记，保证从数据文件重建时不会复活
+            ByteBuffer marker = ByteBuffer.wrap(SaveRecords.tombstone(new UUID(removed[0], removed[1])));
+            writeFully(target, marker, target.size());
+            ByteBuffer entry = ByteBuffer.allocate(SaveIndexFile.deleteLength());
+            SaveIndexFile.putTailDelete(entry, removed[0], removed[1]);
+            writeFully(targetIndex, entry.flip(), targetIndex.size());
+            tail[0]++;
+        }
+        // 共享记录标签中的ID已被删除时同样追加删除标记，否则从新数据文件重建时会随共享记录复活
+        for (UUID owner : owners) {
+            if (index.get(owner.getMostSignificantBits(), owner.getLeastSignificantBits()) == null) {
+                writeFully(target, ByteBuffer.wrap(SaveRecords.tombstone(owner)), target.size());
+            }
+        }
+        return tail[0];
+    }
+
+    // 读取记录标签中的ID（整理时判断条目是否引用了其他ID的记录），早期记录没有标签时返回null
+    private static UUID ownerOf(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(Math.min(length, SaveRecords.MAX_PREFIX_LENGTH));
+        readFully(channel, head, offset);
+        SaveRecords.Tag tag = SaveRecords.tag(head.flip(), 0);
+        return tag == null ? null : tag.id();
+    }
+
+    /**
+     * 记录遍历回调
+     */
+    interface RecordVisitor {
+        void visit(UUID id, String description, byte[] record) throws IOException;
+    }
+
+    /**
+     * 按索引文件顺序遍历全部有效记录（跳过已删除和被覆盖的条目），用于离线迁移与字典训练；
+     * 去重共享的记录对每个ID重新加密为属于该ID的独立副本
+     * @param visitor 回调
+     */
+    void forEachRecord(RecordVisitor visitor) throws IOException {
+        Path path = Paths.get(basePath + INDEX_EXTENSION);
+        if (!Files.exists(path)) {
+            return;
+        }
+        ByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            file = SaveIndexFile.readAll(channel);
+        }
+        SaveIndexFile.scan(file, true, (entry, deleted, position) -> {
+            if (deleted) {
+                return;
+            }
+            SaveIndex.Location live = find(entry.id());
+            if (live == null || live.indexPosition() != position) {
+                return;
+            }
+            ByteBuffer record = read(live, false);
+            byte[] bytes = new byte[record.remaining()];
+            record.get(bytes);
+            SaveRecords.Tag tag = SaveRecords.tag(ByteBuffer.wrap(bytes), 0);
+            if (tag != null && !tag.id().equals(entry.id())) {
+                try {
+                    bytes = SaveRecords.retag(bytes, entry.id(), entry.description());
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("共享记录重新加密失败：" + entry.id(), e);
+                }
+            }
+            visitor.visit(entry.id(), entry.description(), bytes);
+        });
+    }
+
+    /**
+     * 强制刷盘.data/.index
+     */
+    void force() throws IOException {
+        FileChannel data = dataChannel;
+        FileChannel idx = indexChannel;
+        if (data != null) {
+            data.force(false);
+        }
+        if (idx != null) {
+            idx.force(false);
+        }
+    }
+
+    /**
+     * 关闭存档（释放文件通道），需持有写锁
+     */
+    void close() throws IOException {
+        closed = true;
+        try {
+            checkpoint();
+        } finally {
+            if (generation != null) {
+                generation.retire();
+            }
+            if (dedup != null) {
+                dedup.close();
+            }
+            closeChannels();
+            mappedData = null;
+            SaveWal current = wal;
+            wal = null;
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+
+    // 处理上次整理的残留文件：新数据文件已替换而索引未替换时完成替换，否则丢弃
+    private void recoverCompaction() throws IOException {
+        Path newDataPath = Paths.get(basePath + COMPACT_SUFFIX + DATA_EXTENSION);
+        Path newIndexPath = Paths.get(basePath + COMPACT_SUFFIX + INDEX_EXTENSION);
+        if (Files.exists(newIndexPath) && !Files.exists(newDataPath)) {
+            Files.move(newIndexPath, Paths.get(basePath + INDEX_EXTENSION), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.deleteIfExists(newDataPath);
+        Files.deleteIfExists(newIndexPath);
+        // 写了一半的索引文件（SaveIndexFile.write的临时文件）
+        Files.deleteIfExists(Paths.get(newIndexPath + ".tmp"));
+        Files.deleteIfExists(Paths.get(basePath + INDEX_EXTENSION + ".tmp"));
+    }
+
+    // 获取预写日志（首次调用时打开）
+    private SaveWal wal() throws IOException {
+        SaveWal current = wal;
+        if (current == null) {
+            synchronized (this) {
+                current = wal;
+                if (current == null) {
+                    current = new SaveWal(Paths.get(basePath + WAL_EXTENSION));
+                    wal = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // 重放残留日志（上次未执行检查点就退出），完成后执行检查点
+    // 已经写入.data的记录会被再追加一次，旧副本标记删除，由整理回收
+    private void replayLog() throws IOException {
+        Path walPath = Paths.get(basePath + WAL_EXTENSION);
+        if (!Files.exists(walPath) || Files.size(walPath) == 0) {
+            return;
+        }
+        for (SaveWal.Entry entry : wal().readAll()) {
+            UUID[] ids = {entry.id()};
+            if (entry.op() == SaveWal.OP_PUT) {
+                append(ids, new byte[][]{entry.record()}, new String[]{entry.description()}, null);
+            } else if (entry.op() == SaveWal.OP_DELETE) {
+                remove(ids, null);
+            }
+        }
+        checkpoint();
+    }
+
+    // 获取数据文件的内存映射（首次调用时创建）
+    private MappedSaveFile mappedData() {
+        MappedSaveFile mapped = mappedData;
+        if (mapped == null) {
+            synchronized (this) {
+                mapped = mappedData;
+                if (mapped == null) {
+                    mapped = new MappedSaveFile(Paths.get(basePath + DATA_EXTENSION));
+                    mappedData = mapped;
+                }
+            }
+        }
+        return mapped;
+    }
+
+    // 按需打开文件通道（读取不存在的存档时不会创建文件）
+    private void ensureChannels() throws IOException {
+        if (indexChannel != null) {
+            return;
+        }
+        synchronized (this) {
+            if (indexChannel != null) {
+                return;
+            }
+            dataChannel = FileChannel.open(Paths.get(basePath + DATA_EXTENSION),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileChannel channel = FileChannel.open(Paths.get(basePath + INDEX_EXTENSION),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            dataEnd.set(dataChannel.size());
+            // 新索引文件先写文件头；末尾若有不完整的尾部条目，读取时会被跳过，直接在其后追加
+            long indexSize = channel.size();
+            if (indexSize == 0) {
+                indexSize = writeFully(channel, SaveIndexFile.emptyHeader(), 0);
+            }
+            indexEnd.set(indexSize);
+            indexChannel = channel;
+        }
+    }
+
+    private synchronized void closeChannels() throws IOException {
+        FileChannel data = dataChannel;
+        FileChannel idx = indexChannel;
+        dataChannel = null;
+        indexChannel = null;
+        try {
+            if (data != null) {
+                data.close();
+            }
+        } finally {
+            if (idx != null) {
+                idx.close();
+            }
+        }
+    }
+
+    // 加载索引文件构建内存索引（旧格式先转换），返回索引文件记录过的数据末尾
+    private long loadIndex(boolean mapped) throws IOException {
+        Path path = Paths.get(basePath + INDEX_EXTENSION);
+        index = new SaveIndex();
+        long[] indexedEnd = {0};
+        if (Files.exists(path) && Files.size(path) > 0) {
+            if (!SaveIndexFile.isCurrent(path)) {
+                convertLegacyIndex(path);
+            }
+            ByteBuffer file;
+            if (mapped) {
+                MappedSaveFile mappedIndex = new MappedSaveFile(path);
+                file = mappedIndex.slice(0, (int) mappedIndex.mapAll());
+            } else {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    file = SaveIndexFile.readAll(channel);
+                }
+            }
+            int sorted = SaveIndexFile.sortedCount(file);
+            SaveIndex loaded = new SaveIndex(sorted);
+            int[] tail = {0};
+            SaveIndexFile.scan(file, true, (entry, deleted, position) -> {
+                if (deleted) {
+                    loaded.remove(entry.msb(), entry.lsb());
+                } else {
+                    loaded.put(entry.msb(), entry.lsb(), entry.dataOffset(), entry.dataLength(), position,
+                            descriptionIndex.code(entry.description()));
+                    indexedEnd[0] = Math.max(indexedEnd[0], entry.dataOffset() + entry.dataLength());
+                }
+                tail[0]++;
+            });
+            index = loaded;
+            sortedEntries = sorted;
+            tailEntries.set(tail[0] - sorted);
+        }
+        bloom = buildBloom(index);
+        return indexedEnd[0];
+    }
+
+    // 索引文件缺失、为空或损坏，而数据文件中有记录时，从数据文件重建索引
+    private void recoverIndex() throws IOException {
+        Path dataPath = Paths.get(basePath + DATA_EXTENSION);
+        Path indexPath = Paths.get(basePath + INDEX_EXTENSION);
+        if (!Files.exists(dataPath) || Files.size(dataPath) == 0) {
+            return;
+        }
+        boolean missing = !Files.exists(indexPath) || Files.size(indexPath) == 0;
+        if (missing || SaveIndexFile.isDamaged(indexPath)) {
+            recoveryReport = new SaveRecovery.OpenReport(
+                    SaveRecovery.rebuildStore(basePath, SaveRecovery.defaultThreads()), missing, 0);
+        }
+    }
+
+    // 数据文件末尾有索引中没有的记录（写入数据后、写入索引前崩溃）时补回索引，只扫描这一段
+    private void recoverDataTail(long indexedEnd) throws IOException {
+        Path dataPath = Paths.get(basePath + DATA_EXTENSION);
+        if (!Files.exists(dataPath) || Files.size(dataPath) <= indexedEnd) {
+            return;
+        }
+        int recovered = 0;
+        boolean references = false;
+        try (FileChannel data = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            SaveRecovery.ScanResult scan = SaveRecovery.scan(data, indexedEnd, data.size(),
+                    SaveRecovery.defaultThreads());
+            // 这一段按先后顺序得出每个ID的最终状态，只补写与内存索引不一致的条目
+            // （最后一条记录之后的删除标记每次打开都会被扫描到，已经生效的不再重复写入）
+            Map<UUID, SaveRecovery.Frame> latest = new LinkedHashMap<>();
+            for (SaveRecovery.Frame frame : scan.frames()) {
+                if (frame.tag() != null) {
+                    latest.remove(frame.tag().id());
+                    latest.put(frame.tag().id(), frame);
+                }
+            }
+            for (SaveRecovery.Frame frame : latest.values()) {
+                SaveRecords.Tag tag = frame.tag();
+                long msb = tag.id().getMostSignificantBits();
+                long lsb = tag.id().getLeastSignificantBits();
+                SaveIndex.Location current = index.get(msb, lsb);
+                // 引用记录的条目指向被引用的记录
+                long offset = frame.offset();
+                int length = frame.length();
+                if (tag.isReference()) {
+                    SaveRecords.Reference reference = SaveRecovery.reference(data, frame);
+                    if (reference == null) {
+                        continue;
+                    }
+                    offset = reference.offset();
+                    length = reference.length();
+                    references = true;
+                }
+                ByteBuffer entry;
+                if (tag.isTombstone()) {
+                    if (current == null) {
+                        continue;
+                    }
+                    entry = ByteBuffer.allocate(SaveIndexFile.deleteLength());
+                    SaveIndexFile.putTailDelete(entry, msb, lsb);
+                } else {
+                    if (current != null && current.dataOffset() == offset) {
+                        continue;
+                    }
+                    byte[] descBytes = SaveIndexFile.descriptionBytes(tag.description());
+                    entry = ByteBuffer.allocate(SaveIndexFile.putLength(descBytes));
+                    SaveIndexFile.putTailPut(entry, tag.id(), offset, length, descBytes);
+                }
+                ensureChannels();
+                long position = indexEnd.getAndAdd(entry.position());
+                writeFully(indexChannel, entry.flip(), position);
+                if (tag.isTombstone()) {
+                    index.remove(msb, lsb);
+                } else {
+                    index.put(msb, lsb, offset, length, position, descriptionIndex.code(tag.description()));
+                }
+                tailEntries.incrementAndGet();
+                recovered++;
+            }
+        }
+        if (references) {
+            SaveDedup.mark(basePath);
+        }
+        if (recovered > 0) {
+            bloom = buildBloom(index);
+            recoveryReport = new SaveRecovery.OpenReport(recoveryReport.rebuilt(), recoveryReport.indexMissing(),
+                    recovered);
+        }
+    }
+
+    // 旧格式（88字节定长条目）的索引文件整体转换为当前格式（写临时文件后原子替换）
+    private static void convertLegacyIndex(Path path) throws IOException {
+        ByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            file = SaveIndexFile.readAll(channel);
+        }
+        SaveIndexFile.write(path, new ArrayList<>(SaveIndexFile.readLive(file).values()));
+    }
+
+    // 按索引构建布隆过滤器（预留一倍余量，插入数超过后再次重建）
+    private static SaveBloomFilter buildBloom(SaveIndex source) throws IOException {
+        SaveBloomFilter filter = new SaveBloomFilter(Math.max(source.size() * 2L, MIN_BLOOM_CAPACITY), bloomFpp);
+        source.forEach((msb, lsb, dataOffset, dataLength, indexPosition) -> filter.add(msb, lsb));
+        return filter;
+    }
+
+    private int stripeOf(UUID id) {
+        long h = id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+        return (int) (h ^ (h >>> 32)) & (STRIPE_COUNT - 1);
+    }
+
+    // 定位写入整个缓冲区，返回写入结束的位置
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("读取超出文件末尾");
+            }
+        }
+    }
+
+    // 文件之间直接传输（追加到目标文件末尾）
+    private static void transfer(FileChannel source, long position, long count, FileChannel target) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        target.position(target.size());
+        while (count > 0) {
+            long transferred = source.transferTo(position, count, target);
+            if (transferred <= 0) {
+                throw new EOFException("记录超出数据文件末尾");
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+}
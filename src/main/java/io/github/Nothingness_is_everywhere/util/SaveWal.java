@@ -0,0 +1,273 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * 存档预写日志（.wal）
+ * <p>
+ * 写入.data/.index之前先把操作追加到日志，崩溃后打开存档时重放日志即可恢复一致的索引。
+ * 日志条目格式：[长度(int)] [CRC32C(int)] [操作(byte)] [UUID(16字节)] [描述长度(short)] [描述] [记录]
+ * <br>长度与校验和覆盖操作及之后的部分，重放时遇到不完整或校验失败的条目即停止（崩溃时写了一半）。
+ * <p>
+ * 组提交：写入方先把条目放入队列，再竞争提交锁；拿到锁的写入方把队列中全部条目一次追加，
+ * 按持久化级别force一次，其余写入方发现自己的条目已提交后直接返回。
+ * 检查点（强制刷盘.data/.index后清空日志）由存档在独占写锁下执行。
+ */
+final class SaveWal {
+    static final byte OP_PUT = 1;
+    static final byte OP_DELETE = 2;
+    private static final int HEADER_LENGTH = 8;     // 长度 + 校验和
+    private static final int FIXED_BODY_LENGTH = 1 + 16 + 2;
+
+    // 组提交等待窗口（纳秒）：提交前稍作等待，让更多写入加入同一组
+    static volatile long commitWindowNanos = 0;
+
+    private final FileChannel channel;
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private List<ByteBuffer> queue = new ArrayList<>();
+    private long enqueued;      // 已入队的条目组序号
+    private long committed;     // 已提交的条目组序号（仅在提交锁下修改）
+    private long size;          // 日志文件长度（仅在提交锁下修改）
+    private IOException failure; // 提交失败后日志不再可信，后续写入全部失败
+
+    /**
+     * 重放时读到的日志条目
+     * @param op 操作
+     * @param id 唯一标识
+     * @param description 描述（删除操作为空字符串）
+     * @param record 编码后的记录（删除操作为空数组）
+     */
+    record Entry(byte op, UUID id, String description, byte[] record) {
+    }
+
+    SaveWal(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = channel.size();
+    }
+
+    /**
+     * 编码一批写入条目
+     */
+    static ByteBuffer encodePuts(UUID[] ids, byte[][] records, String[] descriptions) {
+        byte[][] descBytes = new byte[ids.length][];
+        int total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            // 与索引文件按相同规则截断描述
+            descBytes[i] = SaveIndexFile.descriptionBytes(descriptions[i]);
+            total += HEADER_LENGTH + FIXED_BODY_LENGTH + descBytes[i].length + records[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (int i = 0; i < ids.length; i++) {
+            putEntry(buffer, OP_PUT, ids[i], descBytes[i], records[i]);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * 编码一批删除条目
+     */
+    static ByteBuffer encodeDeletes(UUID[] ids) {
+        ByteBuffer buffer = ByteBuffer.allocate(ids.length * (HEADER_LENGTH + FIXED_BODY_LENGTH));
+        for (UUID id : ids) {
+            putEntry(buffer, OP_DELETE, id, new byte[0], new byte[0]);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * 追加条目并按持久化级别等待提交完成
+     * @param entries encodePuts/encodeDeletes的结果
+     * @param durability 持久化级别
+     */
+    void log(ByteBuffer entries, SaveDurability durability) throws IOException {
+        if (durability == SaveDurability.WRITE) {
+            // 逐条刷盘：不参与合并，独自追加并force
+            commitLock.lock();
+            try {
+                checkFailure();
+                size += write(entries, size);
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            } finally {
+                commitLock.unlock();
+            }
+            return;
+        }
+
+        long sequence;
+        queueLock.lock();
+        try {
+            queue.add(entries);
+            sequence = ++enqueued;
+        } finally {
+            queueLock.unlock();
+        }
+
+        commitLock.lock();
+        try {
+            if (committed >= sequence) {
+                return; // 已由其他写入方一并提交
+            }
+            checkFailure();
+            if (commitWindowNanos > 0) {
+                LockSupport.parkNanos(commitWindowNanos);
+            }
+            List<ByteBuffer> batch;
+            long last;
+            queueLock.lock();
+            try {
+                batch = queue;
+                last = enqueued;
+                queue = new ArrayList<>();
+            } finally {
+                queueLock.unlock();
+            }
+            size += write(merge(batch), size);
+            if (durability == SaveDurability.BATCH) {
+                channel.force(false);
+            }
+            committed = last;
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * 日志文件当前长度
+     * @return 字节数
+     */
+    long size() {
+        commitLock.lock();
+        try {
+            return size;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * 读取全部完整条目（遇到不完整或校验失败的条目即停止）
+     * @return 按写入顺序排列的条目
+     */
+    List<Entry> readAll() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long fileLength = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        long pos = 0;
+        while (pos + HEADER_LENGTH <= fileLength) {
+            header.clear();
+            readFully(header, pos);
+            int length = header.getInt(0);
+            int checksum = header.getInt(4);
+            if (length < FIXED_BODY_LENGTH || pos + HEADER_LENGTH + length > fileLength) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(body, pos + HEADER_LENGTH);
+            CRC32C crc = new CRC32C();
+            crc.update(body.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            body.flip();
+            byte op = body.get();
+            UUID id = new UUID(body.getLong(), body.getLong());
+            byte[] desc = new byte[body.getShort() & 0xFFFF];
+            body.get(desc);
+            byte[] record = new byte[body.remaining()];
+            body.get(record);
+            entries.add(new Entry(op, id, new String(desc, StandardCharsets.UTF_8), record));
+            pos += HEADER_LENGTH + length;
+        }
+        return entries;
+    }
+
+    /**
+     * 清空日志（调用方需保证日志中的操作已全部落盘且没有并发写入）
+     */
+    void truncate() throws IOException {
+        commitLock.lock();
+        try {
+            channel.truncate(0);
+            channel.force(true);
+            size = 0;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    private static void putEntry(ByteBuffer buffer, byte op, UUID id, byte[] desc, byte[] record) {
+        int start = buffer.position();
+        int length = FIXED_BODY_LENGTH + desc.length + record.length;
+        buffer.putInt(length);
+        buffer.putInt(0); // 校验和占位
+        buffer.put(op);
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+        buffer.putShort((short) desc.length);
+        buffer.put(desc);
+        buffer.put(record);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), start + HEADER_LENGTH, length);
+        buffer.putInt(start + 4, (int) crc.getValue());
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("预写日志此前写入失败，请重新打开存档", failure);
+        }
+    }
+
+    // 合并一组条目，整组只追加一次
+    private static ByteBuffer merge(List<ByteBuffer> batch) {
+        if (batch.size() == 1) {
+            return batch.get(0);
+        }
+        int total = 0;
+        for (ByteBuffer buffer : batch) {
+            total += buffer.remaining();
+        }
+        ByteBuffer merged = ByteBuffer.allocate(total);
+        for (ByteBuffer buffer : batch) {
+            merged.put(buffer);
+        }
+        return merged.flip();
+    }
+
+    private long write(ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("日志读取越界");
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.Nothingness_is_everywhere.benchmark;
+
+import io.github.Nothingness_is_everywhere.entity.battle.Battle;
+import io.github.Nothingness_is_everywhere.entity.battle.BattleEventSink;
+import io.github.Nothingness_is_everywhere.entity.battle.BattleRecorder;
+import io.github.Nothingness_is_everywhere.entity.battle.TeamTemplate;
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 战斗回放记录开销基准
+ * <p>
+ * 由队伍模板创建3对3的成员，不输出任何内容，对比不记录与记录时每场战斗的耗时（包括由模板创建成员）。
+ * 两种方式按相同的种子成组交替进行（每组先后顺序轮换），逐组计算耗时比值后取中位数，
+ * 以抵消JIT编译、GC和CPU频率变化带来的波动。
+ * 战斗结束后由记录器取得回放数据（toByteArray）的耗时单独统计。
+ * <p>
+ * 用法：BattleReplayBenchmark [组数] [每组战斗场数]
+ */
+public class BattleReplayBenchmark {
+    private static final int MAX_ROUNDS = 100;
+
+    private static TeamTemplate heroes;
+    private static TeamTemplate wolves;
+    private static long sink;
+    private static long replayBytes;
+
+    public static void main(String[] args) {
+        int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int battles = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        List<LifeTrait> teamA = new ArrayList<>();
+        List<LifeTrait> teamB = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Player hero = new Player("英雄" + i, "主角", 0, 0, 0);
+            hero.setStrength(7);
+            hero.setCritRate(20);
+            teamA.add(hero);
+            teamB.add(new Player("狼" + i, "怪物", 1, 1, 0));
+        }
+        heroes = TeamTemplate.of(teamA);
+        wolves = TeamTemplate.of(teamB);
+        BattleRecorder[] recorders = new BattleRecorder[battles];
+
+        // 预热
+        for (int i = 0; i < 20; i++) {
+            run(false, battles, 0);
+            run(true, battles, 0);
+            export(recorders, 0);
+        }
+        double[] ratios = new double[blocks];
+        long plainNanos = 0;
+        long recordedNanos = 0;
+        long exportNanos = 0;
+        replayBytes = 0;
+        for (int block = 0; block < blocks; block++) {
+            long seed = (long) block * battles;
+            long plain;
+            long recorded;
+            if ((block & 1) == 0) {
+                plain = run(false, battles, seed);
+                recorded = run(true, battles, seed);
+            } else {
+                recorded = run(true, battles, seed);
+                plain = run(false, battles, seed);
+            }
+            ratios[block] = (double) recorded / plain;
+            plainNanos += plain;
+            recordedNanos += recorded;
+            exportNanos += export(recorders, seed);
+        }
+        Arrays.sort(ratios);
+        System.out.printf("组数：%d  每组：%d场  回放数据：%d字节/场  (%d)%n",
+                blocks, battles, replayBytes / ((long) blocks * battles), sink & 1);
+        System.out.printf("不记录：%.2f us/场  记录：%.2f us/场%n",
+                plainNanos / 1e3 / blocks / battles, recordedNanos / 1e3 / blocks / battles);
+        System.out.printf("记录开销：中位数 %.1f%%  (P25 %.1f%%，P75 %.1f%%)%n",
+                (ratios[blocks / 2] - 1) * 100, (ratios[blocks / 4] - 1) * 100, (ratios[blocks * 3 / 4] - 1) * 100);
+        System.out.printf("取得回放数据：%.2f us/场%n", exportNanos / 1e3 / blocks / battles);
+    }
+
+    // 进行一组战斗，返回耗时（纳秒）
+    private static long run(boolean isRecorded, int battles, long seed) {
+        long start = System.nanoTime();
+        for (int i = 0; i < battles; i++) {
+            Battle battle = newBattle(seed + i);
+            if (isRecorded) {
+                BattleRecorder recorder = new BattleRecorder(heroes, wolves);
+                battle.setRecorder(recorder);
+                battle.startBattle();
+                sink += recorder.isFinished() ? 1 : 0;
+            } else {
+                battle.startBattle();
+                sink += battle.getCurrentRound();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // 记录一组战斗（不计时）后逐场取得回放数据，返回取得回放数据的耗时（纳秒）
+    private static long export(BattleRecorder[] recorders, long seed) {
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = new BattleRecorder(heroes, wolves);
+            Battle battle = newBattle(seed + i);
+            battle.setRecorder(recorders[i]);
+            battle.startBattle();
+        }
+        long start = System.nanoTime();
+        for (BattleRecorder recorder : recorders) {
+            replayBytes += recorder.toByteArray().length;
+        }
+        long nanos = System.nanoTime() - start;
+        Arrays.fill(recorders, null);
+        return nanos;
+    }
+
+    private static Battle newBattle(long seed) {
+        Battle battle = new Battle(heroes.get(), wolves.get(), seed);
+        battle.setEventSink(BattleEventSink.NONE);
+        battle.setMaxRounds(MAX_ROUNDS);
+        return battle;
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.Nothingness_is_everywhere.benchmark;
+
+import io.github.Nothingness_is_everywhere.entity.base.BaseEntity;
+import io.github.Nothingness_is_everywhere.entity.base.ElementType;
+import io.github.Nothingness_is_everywhere.entity.item.consumable.HealingPotion;
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import io.github.Nothingness_is_everywhere.entity.nonEntities.persistent.AbstractPersistentEffect;
+import io.github.Nothingness_is_everywhere.util.CompactBinaryCodec;
+import io.github.Nothingness_is_everywhere.util.JavaSerializationCodec;
+import io.github.Nothingness_is_everywhere.util.SaveCodec;
+
+import java.io.IOException;
+import java.io.Serial;
+
+/**
+ * 存档编解码基准
+ * <p>
+ * 对比Java序列化与紧凑二进制编码在玩家（含效果和物品栏）和单个效果上的
+ * 编码大小、编码耗时和解码耗时。
+ * <p>
+ * 用法：SaveCodecBenchmark [迭代次数]
+ */
+public class SaveCodecBenchmark {
+    private static final int BURN_TYPE = 16;
+
+    /**
+     * 基准用的燃烧效果（已注册到紧凑编解码器）
+     */
+    public static class BurnEffect extends AbstractPersistentEffect {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public BurnEffect() {
+            super("燃烧", "每回合造成火焰伤害", 3, ElementType.FIRE);
+        }
+
+        public BurnEffect(CompactBinaryCodec.Input in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        public boolean isAddedSuccessfully(BaseEntity target) {
+            return true;
+        }
+
+        @Override
+        public void increaseLevel() {
+        }
+
+        @Override
+        public void decreaseLevel() {
+        }
+
+        @Override
+        public boolean trigger(BaseEntity target) {
+            return isActive();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        CompactBinaryCodec compact = new CompactBinaryCodec();
+        compact.register(BURN_TYPE, BurnEffect.class, BurnEffect::new);
+        SaveCodec[] codecs = {new JavaSerializationCodec(), compact};
+
+        Player player = new Player("英雄", "主角", 12, -4, 0);
+        player.setIsInformation(false);
+        for (int i = 0; i < 3; i++) {
+            BurnEffect effect = new BurnEffect();
+            effect.setLevel(i + 1);
+            player.addEffect(effect);
+        }
+        player.addToInventory(new HealingPotion(30), 5);
+        BurnEffect effect = new BurnEffect();
+        effect.setLevel(3);
+
+        System.out.printf("迭代次数：%d%n", iterations);
+        bench("玩家", player, codecs, iterations);
+        bench("效果", effect, codecs, iterations);
+    }
+
+    private static void bench(String label, Object obj, SaveCodec[] codecs, int iterations) throws Exception {
+        for (SaveCodec codec : codecs) {
+            byte[] encoded = codec.encode(obj);
+            // 预热
+            for (int i = 0; i < iterations / 10; i++) {
+                codec.decode(codec.encode(obj));
+            }
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += codec.encode(obj).length;
+            }
+            double encodeNanos = (System.nanoTime() - start) / (double) iterations;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += codec.decode(encoded).hashCode() & 1;
+            }
+            double decodeNanos = (System.nanoTime() - start) / (double) iterations;
+            System.out.printf("%s  %-24s 大小：%5d字节  编码：%8.0f ns/次  解码：%8.0f ns/次  (%d)%n",
+                    label, codec.getClass().getSimpleName(), encoded.length, encodeNanos, decodeNanos, sink & 1);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.Nothingness_is_everywhere.benchmark;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import io.github.Nothingness_is_everywhere.util.BinarySecureSaveUtil;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 存档并发吞吐基准
+ * <p>
+ * 两个存档各预置一批记录，线程数从1递增到CPU核数，每个线程交替访问两个存档，
+ * 按90%读取、10%追加的比例持续操作，输出各线程数下的吞吐量和相对单线程的加速比。
+ * <p>
+ * 指定分片数时两个存档均创建为分片存档，用于对比分片前后的扩展性。
+ * <p>
+ * 用法：SaveConcurrencyBenchmark [每轮秒数] [分片数]
+ */
+public class SaveConcurrencyBenchmark {
+    private static final int PRELOAD = 2000;       // 每个存档预置记录数
+    private static final int WRITE_PERCENT = 10;   // 追加操作占比
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int shards = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int cores = Runtime.getRuntime().availableProcessors();
+        // 关闭对象缓存，测量存档本身的读写吞吐
+        BinarySecureSaveUtil.setCacheCapacity(0);
+        Path dir = Files.createTempDirectory("save-bench");
+        String[] basePaths = {dir.resolve("effects").toString(), dir.resolve("players").toString()};
+        List<List<String>> ids = new ArrayList<>();
+        for (String basePath : basePaths) {
+            if (shards > 1) {
+                BinarySecureSaveUtil.createSharded(basePath, shards);
+            }
+            ids.add(preload(basePath));
+        }
+
+        System.out.printf("CPU核数：%d，每轮%d秒，读写比例%d:%d，分片数：%d%n",
+                cores, seconds, 100 - WRITE_PERCENT, WRITE_PERCENT, shards);
+        // 预热
+        run(basePaths, ids, cores, 1);
+        double baseline = 0;
+        for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(threads * 2, cores) : cores + 1) {
+            double opsPerSecond = run(basePaths, ids, threads, seconds);
+            if (threads == 1) {
+                baseline = opsPerSecond;
+            }
+            System.out.printf("线程数：%2d  吞吐量：%10.0f ops/s  加速比：%.2fx%n",
+                    threads, opsPerSecond, opsPerSecond / baseline);
+        }
+        for (String basePath : basePaths) {
+            BinarySecureSaveUtil.close(basePath);
+        }
+    }
+
+    private static List<String> preload(String basePath) throws Exception {
+        Map<String, Object> batch = new LinkedHashMap<>();
+        for (int i = 0; i < PRELOAD; i++) {
+            batch.put(UUID.randomUUID().toString(), new Player("单位" + i, "基准测试", i, 0, 0));
+        }
+        BinarySecureSaveUtil.addAll(batch, basePath);
+        return new ArrayList<>(batch.keySet());
+    }
+
+    // 以指定线程数持续压测，返回每秒操作数
+    private static double run(String[] basePaths, List<List<String>> ids, int threads, int seconds)
+            throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Player template = new Player("新单位", "基准测试", 0, 0, 0);
+                try {
+                    long n = 0;
+                    while (System.nanoTime() < deadline) {
+                        int store = (int) ((worker + n) & 1);
+                        if (random.nextInt(100) < WRITE_PERCENT) {
+                            BinarySecureSaveUtil.add(template, basePaths[store]);
+                        } else {
+                            List<String> storeIds = ids.get(store);
+                            BinarySecureSaveUtil.get(storeIds.get(random.nextInt(storeIds.size())), basePaths[store]);
+                        }
+                        n++;
+                    }
+                    ops.add(n);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    done.countDown();
+                }
+            }, "save-bench-" + t).start();
+        }
+        done.await();
+        return ops.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+}
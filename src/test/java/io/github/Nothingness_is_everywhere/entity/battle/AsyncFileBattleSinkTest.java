@@ -0,0 +1,156 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 异步文件接收器：事件按发布顺序写入，缓冲区已满时发布方等待而不丢弃事件，flush和close写完已发布的全部事件
+ */
+class AsyncFileBattleSinkTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void eventsAreWrittenInPublishOrder() throws Exception {
+        Path file = directory.resolve("battle.log");
+        List<BattleEvent> events = new ArrayList<>();
+        try (AsyncFileBattleSink sink = new AsyncFileBattleSink(file.toString(), 4)) {
+            for (long seed = 0; seed < 5; seed++) {
+                Battle battle = new Battle(List.of(member("H1", 6), member("H2", 6)),
+                        List.of(member("W1", 1), member("W2", 1), member("W3", 1)), seed);
+                battle.setEventSink(event -> {
+                    events.add(event);
+                    sink.publish(event);
+                });
+                battle.startBattle();
+            }
+        }
+        assertTrue(events.size() > 100);
+        assertEquals(render(events), read(file));
+    }
+
+    @Test
+    void fullRingBlocksPublisherWithoutDropping() throws Exception {
+        Path file = directory.resolve("battle.log");
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<BattleEvent> events = new ArrayList<>();
+        events.add(new BattleEvent.Death(new SlowPlayer(rendering, release)));
+        for (int round = 1; round <= 1000; round++) {
+            events.add(new BattleEvent.RoundStart(round));
+        }
+        ExecutorService publisher = Executors.newSingleThreadExecutor();
+        try (AsyncFileBattleSink sink = new AsyncFileBattleSink(file.toString(), 2)) {
+            sink.publish(events.get(0));
+            assertTrue(rendering.await(10, TimeUnit.SECONDS));
+            // 后台线程停在第一个事件上，发布两个事件后缓冲区已满
+            sink.publish(events.get(1));
+            sink.publish(events.get(2));
+            Future<?> rest = publisher.submit(() -> {
+                for (BattleEvent event : events.subList(3, events.size())) {
+                    sink.publish(event);
+                }
+            });
+            Thread.sleep(200);
+            assertFalse(rest.isDone());
+            assertEquals(0, sink.written());
+
+            release.countDown();
+            rest.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            publisher.shutdown();
+        }
+        assertEquals(render(events), read(file));
+    }
+
+    @Test
+    void flushAndCloseWriteEverythingPublished() throws Exception {
+        Path file = directory.resolve("battle.log");
+        List<BattleEvent> events = new ArrayList<>();
+        AsyncFileBattleSink sink = new AsyncFileBattleSink(file.toString(), 8);
+        for (int round = 0; round < 500; round++) {
+            events.add(new BattleEvent.RoundStart(round));
+            sink.publish(events.get(round));
+        }
+        sink.flush();
+        assertEquals(500, sink.written());
+        assertEquals(render(events), read(file));
+        sink.flush();
+
+        for (int round = 500; round < 600; round++) {
+            events.add(new BattleEvent.RoundStart(round));
+            sink.publish(events.get(round));
+        }
+        sink.close();
+        assertEquals(600, sink.written());
+        assertEquals(render(events), read(file));
+        assertThrows(IllegalStateException.class, () -> sink.publish(new BattleEvent.RoundStart(600)));
+        sink.flush();
+        sink.close();
+    }
+
+    private static String render(List<BattleEvent> events) {
+        StringBuilder text = new StringBuilder();
+        for (BattleEvent event : events) {
+            text.append(ConsoleBattleRenderer.render(event));
+        }
+        return text.toString();
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static LifeTrait member(String name, int strength) {
+        Player member = new Player(name, "", 0, 0, 0);
+        member.setStrength(strength);
+        return member;
+    }
+
+    // 后台线程渲染时取名称会停住，直到release
+    static class SlowPlayer extends Player {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient CountDownLatch rendering;
+        private final transient CountDownLatch release;
+
+        SlowPlayer(CountDownLatch rendering, CountDownLatch release) {
+            super("slow", "", 0, 0, 0);
+            this.rendering = rendering;
+            this.release = release;
+        }
+
+        @Override
+        public String getName() {
+            rendering.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.getName();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.base.BaseEntity;
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import io.github.Nothingness_is_everywhere.entity.nonEntities.persistent.AbstractPersistentEffect;
+import io.github.Nothingness_is_everywhere.util.ProbabilityUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 同一种子的战斗过程完全相同（攻击判定与效果中的随机数都来自战斗种子），与线程无关
+ */
+class BattleDeterminismTest {
+
+    @Test
+    void sameSeedGivesSameBattle() {
+        assertEquals(play(11), play(11));
+        assertNotEquals(play(11), play(12));
+    }
+
+    @Test
+    void sameSeedGivesSameRecording() throws Exception {
+        // 成员ID每次新建时随机生成，只比较战斗过程
+        BattleReplay first = BattleReplay.of(record(7));
+        BattleReplay second = BattleReplay.of(record(7));
+        assertEquals(first.getOutcome(), second.getOutcome());
+        assertEquals(first.getRounds(), second.getRounds());
+        assertArrayEquals(first.getFinalHealth(), second.getFinalHealth());
+        for (int round = 1; round <= first.getRounds(); round++) {
+            assertEquals(first.getActions(round), second.getActions(round));
+        }
+        assertEquals(-1, first.verify());
+    }
+
+    @Test
+    void battlesOnManyThreadsMatchSequentialOnes() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> logs = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                long seed = i % 4;
+                logs.add(pool.submit(() -> play(seed)));
+            }
+            for (int i = 0; i < logs.size(); i++) {
+                assertEquals(play(i % 4), logs.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        // 战斗结束后效果随机数不再绑定到战斗
+        assertSame(ThreadLocalRandom.current(), ProbabilityUtils.current());
+    }
+
+    @Test
+    void simulationDoesNotDependOnParallelism() {
+        TeamTemplate heroes = TeamTemplate.of(List.of(hero("H", 11, 30)));
+        TeamTemplate wolves = TeamTemplate.of(List.of(new Player("W", "", 0, 0, 0), new Player("V", "", 0, 0, 0)));
+        BattleSimulator.Report expected = simulate(heroes, wolves, 1);
+        for (int threads : new int[]{2, 4}) {
+            BattleSimulator.Report report = simulate(heroes, wolves, threads);
+            assertEquals(expected.teamAWins(), report.teamAWins());
+            assertEquals(expected.teamBWins(), report.teamBWins());
+            assertEquals(expected.draws(), report.draws());
+            assertArrayEquals(expected.rounds(), report.rounds());
+            assertArrayEquals(expected.damageDealt(), report.damageDealt());
+        }
+    }
+
+    private static BattleSimulator.Report simulate(TeamTemplate teamA, TeamTemplate teamB, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return BattleSimulator.simulate(teamA, teamB, 2000, 50, 42, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // 进行一场带持续效果的战斗，返回完整的战斗记录
+    private static String play(long seed) {
+        StringBuilder log = new StringBuilder();
+        BattleEventSink sink = event -> log.append(ConsoleBattleRenderer.render(event));
+        Battle battle = newBattle(seed);
+        battle.setEventSink(sink);
+        battle.startBattle();
+        return log.toString();
+    }
+
+    private static byte[] record(long seed) {
+        Battle battle = newBattle(seed);
+        battle.setEventSink(BattleEventSink.NONE);
+        BattleRecorder recorder = new BattleRecorder();
+        battle.setRecorder(recorder);
+        battle.startBattle();
+        return recorder.toByteArray();
+    }
+
+    private static Battle newBattle(long seed) {
+        Player hero = hero("H", 11, 30);
+        Player wolf = new Player("W", "", 0, 0, 0);
+        hero.setEventSink(BattleEventSink.NONE);
+        wolf.setEventSink(BattleEventSink.NONE);
+        hero.addEffect(new Burn());
+        wolf.addEffect(new Burn());
+        return new Battle(List.of(hero), List.of(wolf, new Player("V", "", 0, 0, 0)), seed);
+    }
+
+    private static Player hero(String name, int strength, int critRate) {
+        Player hero = new Player(name, "", 0, 0, 0);
+        hero.setStrength(strength);
+        hero.setCritRate(critRate);
+        return hero;
+    }
+
+    // 每回合有一半概率造成1~9点伤害（随机数来自ProbabilityUtils）
+    static class Burn extends AbstractPersistentEffect {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        Burn() {
+            super("burn", "", -1);
+        }
+
+        @Override
+        public boolean isAddedSuccessfully(BaseEntity target) {
+            return true;
+        }
+
+        @Override
+        public void increaseLevel() {
+        }
+
+        @Override
+        public void decreaseLevel() {
+        }
+
+        @Override
+        public boolean trigger(BaseEntity target) {
+            if (ProbabilityUtils.isTriggered(50)) {
+                ((LifeTrait) target).damage(ProbabilityUtils.randomInRange(1, 9));
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.item.consumable.HealingPotion;
+import io.github.Nothingness_is_everywhere.entity.life.AbstractLife;
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import io.github.Nothingness_is_everywhere.util.CompactBinaryCodec;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 由队伍模板记录的回放与逐个编码成员时相同，战斗开始前被改变的成员按改变后的状态记录
+ */
+class BattleRecorderTest {
+    private static final TeamTemplate HEROES = TeamTemplate.of(List.of(hero("H1"), hero("H2")));
+    private static final TeamTemplate WOLVES = TeamTemplate.of(List.of(wolf("W1"), wolf("W2"), wolf("W3")));
+
+    @Test
+    void templateMembersAreRecordedAsEncoded() throws Exception {
+        for (long seed = 0; seed < 20; seed++) {
+            byte[] recorded = record(new BattleRecorder(HEROES, WOLVES), seed);
+            assertArrayEquals(record(new BattleRecorder(), seed), recorded);
+            assertEquals(-1, BattleReplay.of(recorded).verify());
+        }
+    }
+
+    @Test
+    void membersChangedAfterGetAreRecordedInCurrentState() throws Exception {
+        List<Consumer<AbstractLife>> changes = List.of(
+                member -> member.setHealth(member.getHealth() / 2),
+                member -> member.setStrength(30),
+                member -> member.addEffect(new BattleDeterminismTest.Burn()),
+                member -> ((Player) member).addToInventory(new HealingPotion(10), 1));
+        for (Consumer<AbstractLife> change : changes) {
+            Battle battle = new Battle(HEROES.get(), WOLVES.get(), 3);
+            battle.setEventSink(BattleEventSink.NONE);
+            for (LifeTrait member : battle.getTeamA()) {
+                change.accept((AbstractLife) member);
+            }
+            byte[] expected = encode(battle.getTeamA());
+            assertFalse(Arrays.equals(encode(HEROES.get()), expected));
+
+            BattleReplay replay = BattleReplay.of(record(battle, new BattleRecorder(HEROES, WOLVES)));
+            assertArrayEquals(expected, encode(replay.newBattle().getTeamA()));
+            assertEquals(-1, replay.verify());
+        }
+    }
+
+    @Test
+    void effectChangedAfterGetIsRecordedInCurrentState() throws Exception {
+        Player template = hero("H1");
+        template.addEffect(new BattleDeterminismTest.Burn());
+        TeamTemplate heroes = TeamTemplate.of(List.of(template));
+        Consumer<AbstractLife> change = member -> member.getActiveEffects().get(0).setDuration(2);
+
+        LifeTrait member = heroes.get().get(0);
+        assertFalse(((Player) member).isModified());
+        change.accept((AbstractLife) member);
+        assertTrue(((Player) member).isModified());
+
+        Battle first = new Battle(heroes.get(), WOLVES.get(), 5);
+        Battle second = new Battle(heroes.get(), WOLVES.get(), 5);
+        change.accept((AbstractLife) first.getTeamA().get(0));
+        change.accept((AbstractLife) second.getTeamA().get(0));
+        assertArrayEquals(record(second, new BattleRecorder()), record(first, new BattleRecorder(heroes, WOLVES)));
+    }
+
+    @Test
+    void membersNotFromTemplateAreEncoded() throws Exception {
+        Battle battle = new Battle(List.of(hero("X"), hero("Y")), WOLVES.get(), 9);
+        byte[] recorded = record(battle, new BattleRecorder(HEROES, WOLVES));
+        BattleReplay replay = BattleReplay.of(recorded);
+        assertEquals(List.of("X", "Y", "W1", "W2", "W3"), replay.getCombatants());
+        assertEquals(-1, replay.verify());
+    }
+
+    @Test
+    void eachCallReturnsSeparateData() {
+        Battle battle = new Battle(HEROES.get(), WOLVES.get(), 1);
+        battle.setEventSink(BattleEventSink.NONE);
+        BattleRecorder recorder = new BattleRecorder(HEROES, WOLVES);
+        battle.setRecorder(recorder);
+        battle.startBattle();
+        byte[] first = recorder.toByteArray();
+        byte[] expected = first.clone();
+        first[0] = 0;
+        byte[] second = recorder.toByteArray();
+        assertNotSame(first, second);
+        assertArrayEquals(expected, second);
+    }
+
+    // 由模板创建成员进行战斗，返回回放数据
+    private static byte[] record(BattleRecorder recorder, long seed) {
+        return record(new Battle(HEROES.get(), WOLVES.get(), seed), recorder);
+    }
+
+    private static byte[] record(Battle battle, BattleRecorder recorder) {
+        battle.setEventSink(BattleEventSink.NONE);
+        battle.setRecorder(recorder);
+        battle.startBattle();
+        return recorder.toByteArray();
+    }
+
+    // 成员当前状态的编码数据（与回放中的成员初始状态格式相同）
+    private static byte[] encode(List<LifeTrait> team) throws IOException {
+        CompactBinaryCodec.Output out = BattleRecorder.CODEC.newOutput();
+        for (LifeTrait member : team) {
+            out.writeObject(member);
+        }
+        return out.toByteArray();
+    }
+
+    private static Player hero(String name) {
+        Player hero = new Player(name, "", 0, 0, 0);
+        hero.setStrength(6);
+        hero.setCritRate(25);
+        hero.setIsInformation(false);
+        return hero;
+    }
+
+    private static Player wolf(String name) {
+        Player wolf = new Player(name, "", 1, 1, 0);
+        wolf.setIsInformation(false);
+        return wolf;
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 战斗模拟：胜负平局数和回合数分布都合计为战斗场数，同一种子的报告与线程数无关，模拟期间不输出任何内容
+ */
+class BattleSimulatorTest {
+    private static final int BATTLES = 5000; // 超过单个工作任务的场数，会拆分到多个任务
+    private static final TeamTemplate HEROES = TeamTemplate.of(List.of(member("H1", 6, 25), member("H2", 5, 10)));
+    private static final TeamTemplate WOLVES = TeamTemplate.of(
+            List.of(member("W1", 3, 0), member("W2", 3, 0), member("W3", 3, 0)));
+
+    @Test
+    void countsAndHistogramSumToBattles() {
+        BattleSimulator.Report report = simulate(100, 1, new ForkJoinPool(4));
+        assertEquals(BATTLES, report.battles());
+        assertEquals(BATTLES, report.teamAWins() + report.teamBWins() + report.draws());
+        assertEquals(BATTLES, Arrays.stream(report.rounds()).sum());
+        assertEquals(101, report.rounds().length);
+        assertEquals(1, report.teamAWinRate() + report.teamBWinRate() + report.drawRate(), 1e-9);
+        assertEquals(List.of("H1", "H2", "W1", "W2", "W3"), report.combatants());
+        assertTrue(report.roundQuantile(0.1) <= report.roundQuantile(0.5));
+        assertTrue(report.roundQuantile(0.5) <= report.roundQuantile(1));
+        assertTrue(report.averageRounds() >= report.roundQuantile(0));
+        assertTrue(report.averageRounds() <= report.roundQuantile(1));
+        for (int i = 0; i < report.combatants().size(); i++) {
+            assertTrue(report.averageDamage(i) > 0, report.combatants().get(i));
+        }
+        assertTrue(report.battlesPerSecond() > 0);
+    }
+
+    @Test
+    void maxRoundsEndsInDraw() {
+        BattleSimulator.Report report = simulate(1, 2, ForkJoinPool.commonPool());
+        assertEquals(BATTLES, report.draws() + report.teamAWins() + report.teamBWins());
+        assertTrue(report.draws() > 0);
+        assertEquals(2, report.rounds().length);
+        assertEquals(BATTLES, report.rounds()[0] + report.rounds()[1]);
+        assertEquals(report.draws(), report.rounds()[1]);
+    }
+
+    @Test
+    void sameSeedGivesSameReportOnAnyPool() {
+        BattleSimulator.Report single = simulate(100, 7, new ForkJoinPool(1));
+        BattleSimulator.Report parallel = simulate(100, 7, new ForkJoinPool(4));
+        assertEquals(single.teamAWins(), parallel.teamAWins());
+        assertEquals(single.teamBWins(), parallel.teamBWins());
+        assertEquals(single.draws(), parallel.draws());
+        assertArrayEquals(single.rounds(), parallel.rounds());
+        assertArrayEquals(single.damageDealt(), parallel.damageDealt());
+        BattleSimulator.Report other = simulate(100, 8, new ForkJoinPool(1));
+        assertTrue(!Arrays.equals(single.rounds(), other.rounds()) || single.teamAWins() != other.teamAWins());
+    }
+
+    @Test
+    void simulationPrintsNothing() {
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try {
+            simulate(100, 3, new ForkJoinPool(2));
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals(0, captured.size());
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        assertThrows(IllegalArgumentException.class,
+                () -> BattleSimulator.simulate(HEROES, WOLVES, -1, 10, 0, pool));
+        assertThrows(IllegalArgumentException.class,
+                () -> BattleSimulator.simulate(HEROES, WOLVES, 10, 0, 0, pool));
+        BattleSimulator.Report empty = BattleSimulator.simulate(HEROES, WOLVES, 0, 10, 0, pool);
+        assertEquals(0, empty.battles());
+        assertEquals(0, empty.teamAWinRate(), 0);
+        assertEquals(0, empty.averageDamage(0), 0);
+    }
+
+    private static BattleSimulator.Report simulate(int maxRounds, long seed, ForkJoinPool pool) {
+        try {
+            return BattleSimulator.simulate(HEROES, WOLVES, BATTLES, maxRounds, seed, pool);
+        } finally {
+            if (pool != ForkJoinPool.commonPool()) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static Player member(String name, int strength, int critRate) {
+        Player member = new Player(name, "", 0, 0, 0);
+        member.setStrength(strength);
+        member.setCritRate(critRate);
+        member.setIsInformation(false);
+        return member;
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 战斗成员按列表位置占用位置（slot）：同一对象不能重复参战，ID相同的不同对象各占一个位置，
+ * 战斗、回放记录与模拟统计的位置数一致
+ */
+class BattleSlotTest {
+
+    @Test
+    void repeatedMemberIsRejected() {
+        Player soldier = soldier("士兵", 5);
+        Player other = soldier("士兵", 5);
+        assertThrows(IllegalArgumentException.class,
+                () -> new Battle(List.of(soldier, other, soldier), List.of(soldier("兽人", 3)), 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new Battle(List.of(soldier, other), List.of(soldier("兽人", 3), soldier), 1));
+    }
+
+    @Test
+    void copiesWithSameIdKeepOwnSlots() throws Exception {
+        // 同一模板复制出的成员ID与名称都相同，但仍是不同的成员
+        TeamTemplate knights = TeamTemplate.of(List.of(soldier("骑士", 4)));
+        TeamTemplate orcs = TeamTemplate.of(List.of(soldier("兽人", 6), soldier("兽人", 2)));
+        List<LifeTrait> teamA = new ArrayList<>(knights.get());
+        teamA.addAll(knights.get());
+        teamA.addAll(knights.get());
+        List<LifeTrait> teamB = orcs.get();
+        Battle battle = new Battle(teamA, teamB, 3);
+        battle.setEventSink(BattleEventSink.NONE);
+        BattleRecorder recorder = new BattleRecorder();
+        battle.setRecorder(recorder);
+        battle.startBattle();
+
+        assertEquals(5, battle.getDamageDealt().length);
+        BattleReplay replay = recorder.toReplay();
+        assertEquals(3, replay.getTeamASize());
+        assertEquals(5, replay.getCombatants().size());
+        assertEquals(5, replay.getFinalHealth().length);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(teamA.get(i).getHealth(), replay.getFinalHealth()[i]);
+        }
+        for (int round = 1; round <= replay.getRounds(); round++) {
+            for (BattleReplay.Action action : replay.getActions(round)) {
+                assertTrue(action.attacker() >= 0 && action.attacker() < 5);
+                assertTrue(action.target() >= 0 && action.target() < 5);
+            }
+        }
+        assertEquals(-1, replay.verify());
+    }
+
+    @Test
+    void turnOrderListsEachAliveMemberOnce() {
+        List<LifeTrait> teamA = List.of(soldier("甲", 3), soldier("乙", 9), soldier("丙", 3));
+        List<LifeTrait> teamB = List.of(soldier("丁", 7), soldier("戊", 1));
+        List<List<LifeTrait>> orders = new ArrayList<>();
+        Battle battle = new Battle(teamA, teamB, 5);
+        battle.setEventSink(event -> {
+            if (event instanceof BattleEvent.TurnOrder turnOrder) {
+                orders.add(List.copyOf(turnOrder.order()));
+            }
+        });
+        battle.startBattle();
+
+        assertFalse(orders.isEmpty());
+        List<LifeTrait> first = orders.get(0);
+        assertEquals(5, first.size());
+        assertEquals(List.of(teamA.get(1), teamB.get(0), teamA.get(0), teamA.get(2), teamB.get(1)), first);
+        for (List<LifeTrait> order : orders) {
+            Map<LifeTrait, Boolean> seen = new IdentityHashMap<>();
+            for (int i = 0; i < order.size(); i++) {
+                assertNull(seen.put(order.get(i), true));
+                if (i > 0) {
+                    assertTrue(order.get(i - 1).getSpeed() >= order.get(i).getSpeed());
+                }
+            }
+        }
+    }
+
+    @Test
+    void simulationCountsDamagePerSlot() {
+        TeamTemplate knights = TeamTemplate.of(List.of(soldier("骑士", 4), soldier("骑士", 4)));
+        TeamTemplate orcs = TeamTemplate.of(List.of(soldier("兽人", 6)));
+        BattleSimulator.Report report = BattleSimulator.simulate(knights, orcs, 200, 50, 9, ForkJoinPool.commonPool());
+        assertEquals(3, report.combatants().size());
+        assertEquals(3, report.damageDealt().length);
+        assertTrue(report.damageDealt()[0] > 0 && report.damageDealt()[1] > 0);
+    }
+
+    private static Player soldier(String name, int speed) {
+        Player soldier = new Player(name, "士兵", 0, 0, 0);
+        soldier.setSpeed(speed);
+        return soldier;
+    }
+}
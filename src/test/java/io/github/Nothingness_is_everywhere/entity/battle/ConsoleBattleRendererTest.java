@@ -0,0 +1,66 @@
+package io.github.Nothingness_is_everywhere.entity.battle;
+
+import io.github.Nothingness_is_everywhere.entity.life.LifeTrait;
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 控制台渲染器输出的文字与原先战斗、生命实体和药水中直接输出的文字相同
+ */
+class ConsoleBattleRendererTest {
+    private static final String N = System.lineSeparator();
+
+    private final LifeTrait hero = new Player("勇者", "", 0, 0, 0);
+    private final LifeTrait wolf = new Player("野狼", "", 0, 0, 0);
+    private final LifeTrait slime = new Player("史莱姆", "", 0, 0, 0);
+
+    @Test
+    void battleTextMatchesOriginalOutput() {
+        assertRendered("===== 战斗开始 =====" + N + "队伍A参战成员：[勇者]" + N + "队伍B参战成员：[野狼、史莱姆]" + N,
+                new BattleEvent.BattleStart(List.of(hero), List.of(wolf, slime)));
+        assertRendered("\n===== 第0回合（偷袭） =====" + N, new BattleEvent.RoundStart(0));
+        assertRendered(N + "===== 第3回合 =====\n\n===== 持续效果触发 =====" + N, new BattleEvent.RoundStart(3));
+        assertRendered("\n出手顺序：勇者 -> 野狼 -> 史莱姆" + N, new BattleEvent.TurnOrder(List.of(hero, wolf, slime)));
+        assertRendered("[暴击！] ", new BattleEvent.Critical(hero, wolf));
+        assertRendered("勇者攻击了野狼，造成15点伤害！" + N, new BattleEvent.Attack(hero, wolf, 15, true));
+        assertRendered("\n===== 战斗结束 =====" + N + "队伍A获胜！" + N + "存活成员：" + N + "队伍A：[勇者]" + N + "队伍B：[]" + N,
+                new BattleEvent.BattleEnd(Battle.Outcome.TEAM_A, List.of(hero), List.of()));
+        assertRendered("\n===== 战斗结束 =====" + N + "队伍B获胜！" + N + "存活成员：" + N + "队伍A：[]" + N + "队伍B：[野狼、史莱姆]" + N,
+                new BattleEvent.BattleEnd(Battle.Outcome.TEAM_B, List.of(), List.of(wolf, slime)));
+    }
+
+    @Test
+    void lifeTextMatchesOriginalOutput() {
+        assertRendered("野狼受到15点伤害，剩余生命值：5" + N, new BattleEvent.Damage(wolf, 15, 5));
+        assertRendered("野狼已死亡" + N, new BattleEvent.Death(wolf));
+        assertRendered("勇者恢复了4点生命值，当前生命值：90" + N, new BattleEvent.Heal(hero, 4, 90, null));
+        assertRendered("勇者通过使用了治疗药水恢复了20点生命值，剩余生命值：100" + N,
+                new BattleEvent.Heal(hero, 20, 100, "治疗药水"));
+        assertRendered("勇者获得了效果：Lv2【燃烧】" + N, new BattleEvent.EffectApplied(hero, "燃烧", 2));
+        assertRendered("勇者的效果【燃烧】叠加一层，当前层数：3，持续时间：4" + N,
+                new BattleEvent.EffectStacked(hero, "燃烧", 3, 4));
+        assertRendered("勇者未能成功获得效果：Lv1【中毒】" + N, new BattleEvent.EffectResisted(hero, "中毒", 1));
+        assertRendered("勇者失去了效果：Lv2【燃烧】" + N, new BattleEvent.EffectExpired(hero, "燃烧", 2));
+    }
+
+    @Test
+    void printsToGivenStream() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConsoleBattleRenderer renderer =
+                new ConsoleBattleRenderer(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        renderer.publish(new BattleEvent.Critical(hero, wolf));
+        renderer.publish(new BattleEvent.Attack(hero, wolf, 15, true));
+        assertEquals("[暴击！] 勇者攻击了野狼，造成15点伤害！" + N, bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    private static void assertRendered(String expected, BattleEvent event) {
+        assertEquals(expected, ConsoleBattleRenderer.render(event));
+    }
+}
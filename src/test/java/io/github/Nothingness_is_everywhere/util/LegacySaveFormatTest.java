@@ -0,0 +1,157 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 旧版本存档（88字节定长索引条目 + AES/ECB记录）打开时转换索引，转换前后的数据均可读取
+ */
+class LegacySaveFormatTest {
+    private static final int LEGACY_DESC_LENGTH = 60;
+    private static final int LEGACY_ENTRY_LENGTH = 16 + LEGACY_DESC_LENGTH + 8 + 4; // 88字节
+    private static final int COUNT = 20;
+
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final List<String> ids = new ArrayList<>();
+
+    @AfterEach
+    void close() throws IOException {
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void legacyIndexIsConvertedOnOpen() throws Exception {
+        writeLegacySave();
+        Path indexPath = Paths.get(basePath + SaveStore.INDEX_EXTENSION);
+        assertFalse(SaveIndexFile.isCurrent(indexPath));
+
+        assertLegacyContent();
+        assertTrue(SaveIndexFile.isCurrent(indexPath));
+        assertEquals(expectedDescriptions(), descriptions());
+
+        // 转换后的索引再次打开，并继续写入
+        BinarySecureSaveUtil.close(basePath);
+        assertLegacyContent();
+        String added = BinarySecureSaveUtil.add(new Player("新玩家", "新存档", 0, 0, 0), basePath);
+        assertTrue(BinarySecureSaveUtil.update(ids.get(3), new Player("覆盖", "新存档", 3, 0, 0), basePath));
+        BinarySecureSaveUtil.close(basePath);
+
+        assertEquals("新玩家", ((Player) BinarySecureSaveUtil.get(added, basePath)).getName());
+        assertEquals("覆盖", ((Player) BinarySecureSaveUtil.get(ids.get(3), basePath)).getName());
+        assertEquals("old5", ((Player) BinarySecureSaveUtil.get(ids.get(5), basePath)).getName());
+    }
+
+    @Test
+    void legacyRecordsSurviveCompaction() throws Exception {
+        writeLegacySave();
+        BinarySecureSaveUtil.defrag(basePath);
+        BinarySecureSaveUtil.close(basePath);
+        assertLegacyContent();
+        assertEquals(expectedDescriptions(), descriptions());
+    }
+
+    // 第0个删除，第1个更新过一次（旧条目清零后追加新条目），其余保持原样
+    private void assertLegacyContent() throws Exception {
+        assertNull(BinarySecureSaveUtil.get(ids.get(0), basePath));
+        assertEquals("old1-v2", ((Player) BinarySecureSaveUtil.get(ids.get(1), basePath)).getName());
+        for (int i = 2; i < COUNT; i++) {
+            Player player = (Player) BinarySecureSaveUtil.get(ids.get(i), basePath);
+            assertEquals("old" + i, player.getName());
+            assertEquals(i, player.getX());
+        }
+    }
+
+    // 旧格式索引中的描述（截断为60字节）
+    private Map<String, String> expectedDescriptions() {
+        Map<String, String> expected = new TreeMap<>();
+        for (int i = 1; i < COUNT; i++) {
+            byte[] descBytes = description(i).getBytes(StandardCharsets.UTF_8);
+            expected.put(ids.get(i), new String(descBytes, 0, Math.min(descBytes.length, LEGACY_DESC_LENGTH),
+                    StandardCharsets.UTF_8));
+        }
+        return expected;
+    }
+
+    private Map<String, String> descriptions() throws IOException {
+        return BinarySecureSaveUtil.listAllIdDescriptions(basePath).stream()
+                .collect(Collectors.toMap(BinarySecureSaveUtil.IndexEntry::id,
+                        BinarySecureSaveUtil.IndexEntry::description, (a, b) -> a, TreeMap::new));
+    }
+
+    // 描述足够长，超过旧格式的60字节后被截断
+    private static String description(int i) {
+        return i % 4 == 0 ? "一段很长的旧存档描述，超过旧格式索引条目中描述字段的六十字节上限" + i : "旧存档" + i;
+    }
+
+    // 按旧版本BinarySecureSaveUtil的方式写出存档：数据文件依次追加记录，索引文件为88字节定长条目
+    private void writeLegacySave() throws Exception {
+        basePath = directory.resolve("legacy").toString();
+        try (RandomAccessFile data = new RandomAccessFile(basePath + SaveStore.DATA_EXTENSION, "rw");
+             RandomAccessFile index = new RandomAccessFile(basePath + SaveStore.INDEX_EXTENSION, "rw")) {
+            for (int i = 0; i < COUNT; i++) {
+                ids.add(UUID.randomUUID().toString());
+                append(data, index, ids.get(i), new Player("old" + i, description(i), i, 0, 0));
+            }
+            // 删除：条目的UUID清零
+            clearEntry(index, 0);
+            // 更新：先删除旧条目，再追加新记录
+            clearEntry(index, 1);
+            append(data, index, ids.get(1), new Player("old1-v2", description(1), 1, 0, 0));
+        }
+        assertTrue(Files.size(Paths.get(basePath + SaveStore.INDEX_EXTENSION)) % LEGACY_ENTRY_LENGTH == 0);
+    }
+
+    private static void append(RandomAccessFile data, RandomAccessFile index, String id, Player player)
+            throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(player);
+        }
+        byte[] record = SaveRecordsTest.legacyRecord(bytes.toByteArray());
+        long offset = data.length();
+        data.seek(offset);
+        data.write(record);
+
+        UUID uuid = UUID.fromString(id);
+        byte[] descBytes = player.getDescription().getBytes(StandardCharsets.UTF_8);
+        byte[] descFixed = new byte[LEGACY_DESC_LENGTH];
+        System.arraycopy(descBytes, 0, descFixed, 0, Math.min(descBytes.length, LEGACY_DESC_LENGTH));
+        index.seek(index.length());
+        index.writeLong(uuid.getMostSignificantBits());
+        index.writeLong(uuid.getLeastSignificantBits());
+        index.write(descFixed);
+        index.writeLong(offset);
+        index.writeInt(record.length);
+    }
+
+    private static void clearEntry(RandomAccessFile index, int entry) throws IOException {
+        index.seek((long) entry * LEGACY_ENTRY_LENGTH);
+        index.writeLong(0);
+        index.writeLong(0);
+    }
+}
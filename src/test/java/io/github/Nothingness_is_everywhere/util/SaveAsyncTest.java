@@ -0,0 +1,131 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 异步接口：同一ID的操作按提交顺序执行，提交时的对象快照不受之后修改影响，通道已满时立即以RejectedExecutionException失败
+ */
+class SaveAsyncTest {
+    @TempDir
+    Path directory;
+
+    private String basePath;
+
+    @BeforeEach
+    void setUp() {
+        basePath = directory.resolve("save").toString();
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void sameIdOperationsRunInSubmitOrder() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ids.add(BinarySecureSaveUtil.add(new Player("p" + i, "", i, 0, 0), basePath));
+        }
+        List<List<CompletableFuture<?>>> futures = new ArrayList<>();
+        for (String id : ids) {
+            Player player = new Player("a", "", 0, 0, 0);
+            List<CompletableFuture<?>> chain = new ArrayList<>();
+            chain.add(BinarySecureSaveUtil.updateAsync(id, player, basePath));
+            player.setName("b"); // 提交后的修改不影响已提交的更新
+            chain.add(BinarySecureSaveUtil.getAsync(id, basePath, true));
+            chain.add(BinarySecureSaveUtil.updateAsync(id, player, basePath));
+            chain.add(BinarySecureSaveUtil.getAsync(id, basePath, true));
+            chain.add(BinarySecureSaveUtil.deleteAsync(id, basePath));
+            chain.add(BinarySecureSaveUtil.getAsync(id, basePath));
+            chain.add(BinarySecureSaveUtil.deleteAsync(id, basePath));
+            futures.add(chain);
+        }
+        for (List<CompletableFuture<?>> chain : futures) {
+            assertEquals(true, chain.get(0).get(10, TimeUnit.SECONDS));
+            assertEquals("a", ((Player) chain.get(1).get()).getName());
+            assertEquals(true, chain.get(2).get());
+            assertEquals("b", ((Player) chain.get(3).get()).getName());
+            assertEquals(true, chain.get(4).get());
+            assertNull(chain.get(5).get());
+            assertEquals(false, chain.get(6).get());
+        }
+
+        String added = BinarySecureSaveUtil.addAsync(new Player("new", "", 0, 0, 0), basePath)
+                .get(10, TimeUnit.SECONDS);
+        assertEquals("new", ((Player) BinarySecureSaveUtil.getAsync(added, basePath).get()).getName());
+        assertEquals(false, BinarySecureSaveUtil.updateAsync("不是ID", new Player("x", "", 0, 0, 0), basePath).get());
+        assertNull(BinarySecureSaveUtil.getAsync("不是ID", basePath).get());
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> BinarySecureSaveUtil.addAsync(new Object(), basePath).get());
+        assertInstanceOf(IllegalArgumentException.class, error.getCause());
+        BinarySecureSaveUtil.close(basePath);
+        assertEquals(List.of(added), BinarySecureSaveUtil.listAllIdDescriptions(basePath).stream()
+                .map(BinarySecureSaveUtil.IndexEntry::id).toList());
+    }
+
+    @Test
+    void fullLaneRejectsWithoutBlocking() throws Exception {
+        SaveAsyncQueue queue = new SaveAsyncQueue(1, 2);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            UUID id = UUID.randomUUID();
+            CompletableFuture<String> blocked = queue.submit(id, () -> {
+                running.countDown();
+                release.await();
+                return "blocked";
+            });
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+            List<CompletableFuture<Integer>> queued = new ArrayList<>();
+            for (int i = 0; i < queue.capacity(); i++) {
+                int value = i;
+                queued.add(queue.submit(UUID.randomUUID(), () -> value));
+            }
+            assertEquals(3, queue.pending());
+
+            CompletableFuture<Integer> rejected = queue.submit(id, () -> -1);
+            assertTrue(rejected.isCompletedExceptionally());
+            ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+            assertInstanceOf(RejectedExecutionException.class, error.getCause());
+            assertFalse(blocked.isDone());
+
+            release.countDown();
+            assertEquals("blocked", blocked.get(10, TimeUnit.SECONDS));
+            for (int i = 0; i < queued.size(); i++) {
+                assertEquals(i, (int) queued.get(i).get(10, TimeUnit.SECONDS));
+            }
+            CompletableFuture<Object> failed = queue.submit(id, () -> {
+                throw new IOException("写入失败");
+            });
+            error = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, error.getCause());
+        } finally {
+            release.countDown();
+            queue.shutdown();
+        }
+        assertThrows(IllegalArgumentException.class, () -> BinarySecureSaveUtil.setAsyncQueueCapacity(0));
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 批量接口：addAll整批连续追加，getAll按传入顺序返回且忽略重复、无效和不存在的ID，deleteAll只计实际删除的记录
+ */
+class SaveBatchTest {
+    private static final int COUNT = 100;
+
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final Map<String, Player> players = new LinkedHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        basePath = directory.resolve("save").toString();
+        for (int i = 0; i < COUNT; i++) {
+            players.put(UUID.randomUUID().toString(), new Player("p" + i, "d" + i, i, 0, 0));
+        }
+    }
+
+    @AfterEach
+    void reset() throws IOException {
+        BinarySecureSaveUtil.setCacheCapacity(1024);
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void addAllAppendsBatchInOrder() throws Exception {
+        BinarySecureSaveUtil.addAll(Map.of(), basePath);
+        assertFalse(Files.exists(Paths.get(basePath + SaveStore.DATA_EXTENSION)));
+        String first = BinarySecureSaveUtil.add(new Player("first", "", 0, 0, 0), basePath);
+        long size = Files.size(Paths.get(basePath + SaveStore.DATA_EXTENSION));
+
+        BinarySecureSaveUtil.addAll(players, basePath);
+        List<BinarySecureSaveUtil.IndexEntry> entries = BinarySecureSaveUtil.listAllIdDescriptions(basePath);
+        assertEquals(first, entries.get(0).id());
+        List<String> ids = new ArrayList<>();
+        long offset = size;
+        for (BinarySecureSaveUtil.IndexEntry entry : entries.subList(1, entries.size())) {
+            ids.add(entry.id());
+            assertEquals(offset, entry.dataOffset());
+            assertEquals(players.get(entry.id()).getDescription(), entry.description());
+            offset += entry.dataLength();
+        }
+        assertEquals(new ArrayList<>(players.keySet()), ids);
+        assertEquals(offset, Files.size(Paths.get(basePath + SaveStore.DATA_EXTENSION)));
+    }
+
+    @Test
+    void getAllKeepsRequestedOrder() throws Exception {
+        BinarySecureSaveUtil.addAll(players, basePath);
+        List<String> requested = new ArrayList<>(players.keySet());
+        Collections.shuffle(requested, new Random(3));
+        requested.add(0, UUID.randomUUID().toString()); // 不存在的ID
+        requested.add(7, "不是ID");
+        requested.add(requested.get(20));               // 重复的ID只返回一次
+        List<String> order = new ArrayList<>(requested.subList(0, requested.size() - 1));
+        order.remove(7);
+        order.remove(0);
+
+        for (int cache : new int[]{0, 1024}) {
+            BinarySecureSaveUtil.setCacheCapacity(cache);
+            for (int pass = 0; pass < 2; pass++) { // 第二次命中缓存
+                assertResult(order, BinarySecureSaveUtil.getAll(requested, basePath));
+            }
+            BinarySecureSaveUtil.close(basePath);
+            assertResult(order, BinarySecureSaveUtil.getAll(requested, basePath));
+        }
+        assertTrue(BinarySecureSaveUtil.getAll(List.of(), basePath).isEmpty());
+    }
+
+    @Test
+    void deleteAllCountsOnlyLiveRecords() throws Exception {
+        BinarySecureSaveUtil.addAll(players, basePath);
+        List<String> ids = new ArrayList<>(players.keySet());
+        List<String> deleted = new ArrayList<>();
+        for (int i = 0; i < COUNT; i += 3) {
+            deleted.add(ids.get(i));
+        }
+        List<String> request = new ArrayList<>(deleted);
+        request.add(deleted.get(0));
+        request.add(UUID.randomUUID().toString());
+        request.add("不是ID");
+
+        assertEquals(deleted.size(), BinarySecureSaveUtil.deleteAll(request, basePath));
+        assertEquals(0, BinarySecureSaveUtil.deleteAll(deleted, basePath));
+        List<String> kept = new ArrayList<>(ids);
+        kept.removeAll(deleted);
+        assertResult(kept, BinarySecureSaveUtil.getAll(ids, basePath));
+        BinarySecureSaveUtil.close(basePath);
+        assertResult(kept, BinarySecureSaveUtil.getAll(ids, basePath));
+        assertEquals(kept.size(), BinarySecureSaveUtil.listAllIdDescriptions(basePath).size());
+    }
+
+    private void assertResult(List<String> order, Map<String, Object> found) {
+        assertEquals(order, new ArrayList<>(found.keySet()));
+        for (Map.Entry<String, Object> entry : found.entrySet()) {
+            assertEquals(players.get(entry.getKey()).getName(), ((Player) entry.getValue()).getName());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 布隆过滤器：扩容重建、重新打开和整理后都没有漏判，不存在的ID按配置的误判率被直接拒绝
+ */
+class SaveBloomTest {
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final List<String> ids = new ArrayList<>();
+    private final Random random = new Random(11);
+
+    @BeforeEach
+    void setUp() {
+        basePath = directory.resolve("save").toString();
+    }
+
+    @AfterEach
+    void reset() throws IOException {
+        BinarySecureSaveUtil.setBloomFalsePositiveRate(0.01);
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void filterHasNoFalseNegatives() {
+        SaveBloomFilter filter = new SaveBloomFilter(1000, 0.01);
+        List<UUID> added = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            UUID id = randomId();
+            added.add(id);
+            filter.add(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        }
+        for (UUID id : added) {
+            assertTrue(filter.mightContain(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+        }
+        int positives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            UUID id = randomId();
+            if (filter.mightContain(id.getMostSignificantBits(), id.getLeastSignificantBits())) {
+                positives++;
+            }
+        }
+        assertTrue(positives < 2000, "误判" + positives);
+        SaveBloomFilter.Stats stats = filter.stats();
+        assertEquals(1000, stats.insertions());
+        assertTrue(stats.estimatedFpp() > 0.005 && stats.estimatedFpp() < 0.02, "估算误判率" + stats.estimatedFpp());
+        assertEquals(100_000 - positives, stats.negatives());
+        assertFalse(filter.isSaturated());
+        filter.add(0, 0);
+        assertTrue(filter.isSaturated());
+    }
+
+    @Test
+    void growthReopenAndDefragKeepEveryId() throws Exception {
+        // 初始过滤器预计1024个条目，逐批写入直到多次重建
+        long initialBits = -1;
+        for (int batch = 0; batch < 6; batch++) {
+            Map<String, Object> players = new LinkedHashMap<>();
+            for (int i = 0; i < 500; i++) {
+                String id = randomId().toString();
+                ids.add(id);
+                players.put(id, new Player("p" + ids.size(), "", 0, 0, 0));
+            }
+            BinarySecureSaveUtil.addAll(players, basePath);
+            ids.add(BinarySecureSaveUtil.add(new Player("p" + ids.size(), "", 0, 0, 0), basePath));
+            if (initialBits < 0) {
+                initialBits = BinarySecureSaveUtil.getBloomStats(basePath).bitCount();
+            }
+            assertAllFound();
+        }
+        SaveBloomFilter.Stats grown = BinarySecureSaveUtil.getBloomStats(basePath);
+        assertTrue(grown.bitCount() > initialBits);
+        assertTrue(grown.insertions() >= ids.size());
+
+        BinarySecureSaveUtil.close(basePath);
+        assertAllFound();
+        assertEquals(ids.size(), BinarySecureSaveUtil.getBloomStats(basePath).insertions());
+        assertMissesRejected();
+
+        for (int i = 0; i < ids.size(); i += 2) {
+            assertTrue(BinarySecureSaveUtil.delete(ids.get(i), basePath));
+        }
+        BinarySecureSaveUtil.defrag(basePath);
+        assertEquals(ids.size() / 2, BinarySecureSaveUtil.getBloomStats(basePath).insertions());
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 2 == 0) {
+                assertNull(BinarySecureSaveUtil.get(ids.get(i), basePath), ids.get(i));
+            } else {
+                assertNotNull(BinarySecureSaveUtil.get(ids.get(i), basePath), ids.get(i));
+            }
+        }
+    }
+
+    @Test
+    void falsePositiveRateIsConfigurable() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            ids.add(BinarySecureSaveUtil.add(new Player("p" + i, "", 0, 0, 0), basePath));
+        }
+        SaveBloomFilter.Stats before = BinarySecureSaveUtil.getBloomStats(basePath);
+        assertEquals(0.01, before.targetFpp(), 0);
+
+        BinarySecureSaveUtil.setBloomFalsePositiveRate(0.0001);
+        BinarySecureSaveUtil.close(basePath);
+        SaveBloomFilter.Stats after = BinarySecureSaveUtil.getBloomStats(basePath);
+        assertEquals(0.0001, after.targetFpp(), 0);
+        assertTrue(after.bitCount() > before.bitCount());
+        assertTrue(after.hashCount() > before.hashCount());
+        assertAllFound();
+        assertThrows(IllegalArgumentException.class, () -> BinarySecureSaveUtil.setBloomFalsePositiveRate(0));
+        assertThrows(IllegalArgumentException.class, () -> BinarySecureSaveUtil.setBloomFalsePositiveRate(1));
+    }
+
+    private void assertAllFound() throws Exception {
+        for (String id : ids) {
+            assertNotNull(BinarySecureSaveUtil.get(id, basePath), id);
+        }
+    }
+
+    // 查询不存在的ID：全部返回null，过滤器直接拒绝的比例符合误判率
+    private void assertMissesRejected() throws Exception {
+        SaveBloomFilter.Stats before = BinarySecureSaveUtil.getBloomStats(basePath);
+        for (int i = 0; i < 2000; i++) {
+            assertNull(BinarySecureSaveUtil.get(randomId().toString(), basePath));
+        }
+        SaveBloomFilter.Stats after = BinarySecureSaveUtil.getBloomStats(basePath);
+        long negatives = after.negatives() - before.negatives();
+        long falsePositives = after.falsePositives() - before.falsePositives();
+        assertEquals(2000, negatives + falsePositives);
+        assertTrue(falsePositives < 100, "误判" + falsePositives);
+    }
+
+    private UUID randomId() {
+        return new UUID(random.nextLong(), random.nextLong());
+    }
+}
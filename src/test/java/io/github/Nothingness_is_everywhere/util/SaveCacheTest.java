@@ -0,0 +1,157 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对象缓存：按最久未使用淘汰，更新、删除和整理使条目失效，副本与缓存实例互不影响，
+ * 失效前读到的旧对象不会被放回缓存
+ */
+class SaveCacheTest {
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final List<String> ids = new ArrayList<>();
+
+    @BeforeEach
+    void writeSave() throws Exception {
+        basePath = directory.resolve("save").toString();
+        for (int i = 0; i < 10; i++) {
+            ids.add(BinarySecureSaveUtil.add(new Player("p" + i, "", i, 0, 0), basePath));
+        }
+        BinarySecureSaveUtil.close(basePath);
+        BinarySecureSaveUtil.resetCacheStats();
+    }
+
+    @AfterEach
+    void reset() throws IOException {
+        BinarySecureSaveUtil.setCacheCapacity(1024);
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() throws Exception {
+        BinarySecureSaveUtil.setCacheCapacity(3);
+        Object first = BinarySecureSaveUtil.get(ids.get(0), basePath);
+        BinarySecureSaveUtil.get(ids.get(1), basePath);
+        BinarySecureSaveUtil.get(ids.get(2), basePath);
+        assertSame(first, BinarySecureSaveUtil.get(ids.get(0), basePath)); // 0变为最近使用
+        BinarySecureSaveUtil.get(ids.get(3), basePath);                    // 淘汰1
+        assertStats(1, 4, 1, 3);
+
+        assertSame(first, BinarySecureSaveUtil.get(ids.get(0), basePath));
+        BinarySecureSaveUtil.get(ids.get(1), basePath);
+        assertStats(2, 5, 2, 3);
+
+        BinarySecureSaveUtil.setCacheCapacity(1);
+        assertStats(2, 5, 4, 1);
+        BinarySecureSaveUtil.setCacheCapacity(0);
+        assertStats(2, 5, 5, 0);
+        assertNotSame(BinarySecureSaveUtil.get(ids.get(1), basePath), BinarySecureSaveUtil.get(ids.get(1), basePath));
+        assertStats(2, 5, 5, 0);
+    }
+
+    @Test
+    void updateDeleteAndDefragInvalidate() throws Exception {
+        for (String id : ids) {
+            BinarySecureSaveUtil.get(id, basePath);
+        }
+        assertEquals(10, BinarySecureSaveUtil.getCacheStats().size());
+
+        assertTrue(BinarySecureSaveUtil.update(ids.get(0), new Player("u0", "", 0, 0, 0), basePath));
+        assertEquals("u0", name(ids.get(0)));
+        String longName = "u1" + "x".repeat(300); // 放不下，追加新副本
+        assertTrue(BinarySecureSaveUtil.update(ids.get(1), new Player(longName, "", 0, 0, 0), basePath));
+        assertEquals(longName, name(ids.get(1)));
+        assertTrue(BinarySecureSaveUtil.delete(ids.get(2), basePath));
+        assertNull(BinarySecureSaveUtil.get(ids.get(2), basePath));
+        assertEquals(1, BinarySecureSaveUtil.deleteAll(List.of(ids.get(3)), basePath));
+        assertNull(BinarySecureSaveUtil.getAll(List.of(ids.get(3)), basePath).get(ids.get(3)));
+
+        BinarySecureSaveUtil.defrag(basePath);
+        assertEquals(0, BinarySecureSaveUtil.getCacheStats().size());
+        BinarySecureSaveUtil.resetCacheStats();
+        assertEquals("u0", name(ids.get(0)));
+        assertEquals(longName, name(ids.get(1)));
+        assertEquals("p4", name(ids.get(4)));
+        assertStats(0, 3, 0, 3);
+    }
+
+    @Test
+    void copiesAreIsolatedFromCache() throws Exception {
+        Player shared = (Player) BinarySecureSaveUtil.get(ids.get(0), basePath);
+        Player copy = (Player) BinarySecureSaveUtil.get(ids.get(0), basePath, true);
+        assertNotSame(shared, copy);
+        copy.setName("changed");
+        copy.setStrength(99);
+        Player again = (Player) BinarySecureSaveUtil.get(ids.get(0), basePath);
+        assertSame(shared, again);
+        assertEquals("p0", again.getName());
+        assertEquals(shared.getStrength(), again.getStrength());
+
+        // 未命中时返回的副本也不是放入缓存的实例
+        Map<String, Object> copies = BinarySecureSaveUtil.getAll(ids.subList(0, 5), basePath, true);
+        Map<String, Object> cached = BinarySecureSaveUtil.getAll(ids.subList(0, 5), basePath);
+        for (String id : ids.subList(0, 5)) {
+            assertNotSame(cached.get(id), copies.get(id));
+            ((Player) copies.get(id)).setName("changed");
+            assertEquals(((Player) cached.get(id)).getName(), name(id));
+        }
+        assertEquals("p4", name(ids.get(4)));
+    }
+
+    @Test
+    void readBeforeInvalidationIsNotCached() {
+        SaveObjectCache cache = new SaveObjectCache(10);
+        SaveObjectCache.Key key = new SaveObjectCache.Key("store", UUID.randomUUID());
+        SaveObjectCache.Key other = new SaveObjectCache.Key("other", UUID.randomUUID());
+        SaveObjectCache.Entry stale = new SaveObjectCache.Entry("旧", 0, new byte[0]);
+
+        long version = cache.version();
+        cache.invalidate(key);
+        cache.put(key, stale, version);
+        assertNull(cache.get(key));
+
+        version = cache.version();
+        cache.invalidateStore("other");
+        cache.put(key, stale, version);
+        assertNull(cache.get(key));
+
+        version = cache.version();
+        cache.put(key, stale, version);
+        cache.put(other, stale, version);
+        assertSame(stale, cache.get(key));
+        cache.invalidateStore("store");
+        assertNull(cache.get(key));
+        assertSame(stale, cache.get(other));
+    }
+
+    private void assertStats(long hits, long misses, long evictions, int size) {
+        SaveObjectCache.Stats stats = BinarySecureSaveUtil.getCacheStats();
+        assertEquals(hits, stats.hits());
+        assertEquals(misses, stats.misses());
+        assertEquals(evictions, stats.evictions());
+        assertEquals(size, stats.size());
+    }
+
+    private String name(String id) throws Exception {
+        return ((Player) BinarySecureSaveUtil.get(id, basePath)).getName();
+    }
+}
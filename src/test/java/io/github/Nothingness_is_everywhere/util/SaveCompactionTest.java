@@ -0,0 +1,254 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 在线整理：复制期间的并发写入与删除不丢失，切换文件时崩溃可恢复，
+ * 后台整理失败时记录原因并停止自动整理，直到显式整理成功
+ */
+class SaveCompactionTest {
+    private static final int COUNT = 2000;
+
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, String> expected = new ConcurrentHashMap<>(); // ID -> 名称（已删除的不在其中）
+
+    @BeforeEach
+    void writeSave() throws Exception {
+        BinarySecureSaveUtil.setAutoCompactionThreshold(0);
+        basePath = directory.resolve("save").toString();
+        for (int i = 0; i < COUNT; i++) {
+            add("p" + i);
+        }
+    }
+
+    @AfterEach
+    void reset() throws IOException {
+        BinarySecureSaveUtil.setAutoCompactionThreshold(0.5);
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void deadSpaceRatioFollowsDeletesAndDefrag() throws Exception {
+        assertEquals(0, BinarySecureSaveUtil.getDeadSpaceRatio(basePath), 1e-9);
+        for (int i = 0; i < COUNT; i += 2) {
+            delete(ids.get(i));
+        }
+        double half = BinarySecureSaveUtil.getDeadSpaceRatio(basePath);
+        assertTrue(half >= 0.5 && half < 0.7, String.valueOf(half)); // 另含删除标记
+        for (int i = 1; i < COUNT; i += 4) {
+            delete(ids.get(i));
+        }
+        double ratio = BinarySecureSaveUtil.getDeadSpaceRatio(basePath);
+        assertTrue(ratio > half);
+
+        // 整理后数据文件缩小的比例即整理前的死空间比例
+        long size = Files.size(dataPath(""));
+        BinarySecureSaveUtil.defrag(basePath);
+        assertEquals(0, BinarySecureSaveUtil.getDeadSpaceRatio(basePath), 1e-9);
+        assertEquals(ratio, 1 - (double) Files.size(dataPath("")) / size, 0.01);
+        assertContent();
+    }
+
+    @Test
+    void writesDuringCopyAreKept() throws Exception {
+        for (int i = 0; i < COUNT; i += 2) {
+            delete(ids.get(i));
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < 3; w++) {
+                int writer = w;
+                writers.add(pool.submit(() -> {
+                    // 每个线程只改动自己的记录：奇数位置中按线程分组，交替更新和删除
+                    for (int i = 1 + 2 * writer, round = 0; !done.get() || round < 50; i += 6, round++) {
+                        if (i >= COUNT) {
+                            i = 1 + 2 * writer;
+                        }
+                        String id = ids.get(i);
+                        if (expected.containsKey(id) && round % 3 == 0) {
+                            delete(id);
+                        } else if (expected.containsKey(id)) {
+                            update(id, "u" + writer + "-" + round);
+                        }
+                        if (round % 2 == 0) {
+                            String name = "n" + writer + "-" + round;
+                            expected.put(BinarySecureSaveUtil.add(new Player(name, "", 0, 0, 0), basePath), name);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (int i = 0; i < 3; i++) {
+                BinarySecureSaveUtil.defrag(basePath);
+            }
+            done.set(true);
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertAllContent();
+        BinarySecureSaveUtil.close(basePath);
+        assertAllContent();
+        BinarySecureSaveUtil.defrag(basePath);
+        assertAllContent();
+    }
+
+    @Test
+    void crashBetweenRenamesIsCompletedOnOpen() throws Exception {
+        for (int i = 0; i < COUNT; i += 3) {
+            delete(ids.get(i));
+        }
+        BinarySecureSaveUtil.close(basePath);
+        byte[] oldIndex = Files.readAllBytes(indexPath(""));
+        BinarySecureSaveUtil.defrag(basePath);
+        BinarySecureSaveUtil.close(basePath);
+
+        // 数据文件已替换，索引文件还是旧的，新索引文件留在.compact.index
+        Files.copy(indexPath(""), indexPath(".compact"));
+        Files.write(indexPath(""), oldIndex);
+        assertContent();
+        assertFalse(Files.exists(indexPath(".compact")));
+        BinarySecureSaveUtil.close(basePath);
+        assertContent();
+    }
+
+    @Test
+    void crashBeforeRenamesDiscardsNewFiles() throws Exception {
+        for (int i = 0; i < COUNT; i += 3) {
+            delete(ids.get(i));
+        }
+        BinarySecureSaveUtil.close(basePath);
+        byte[] oldData = Files.readAllBytes(dataPath(""));
+        byte[] oldIndex = Files.readAllBytes(indexPath(""));
+        BinarySecureSaveUtil.defrag(basePath);
+        BinarySecureSaveUtil.close(basePath);
+
+        // 新文件都已写好，还没有重命名
+        Files.move(dataPath(""), dataPath(".compact"));
+        Files.move(indexPath(""), indexPath(".compact"));
+        Files.write(dataPath(""), oldData);
+        Files.write(indexPath(""), oldIndex);
+        assertContent();
+        assertFalse(Files.exists(dataPath(".compact")));
+        assertFalse(Files.exists(indexPath(".compact")));
+        assertEquals(oldData.length, Files.size(dataPath("")));
+    }
+
+    @Test
+    void failedBackgroundCompactionBacksOffUntilDefrag() throws Exception {
+        // 数据文件需不小于1MB才会自动整理
+        while (Files.size(dataPath("")) < 1024 * 1024) {
+            add("q" + ids.size());
+        }
+        // 整理的新数据文件位置被非空目录占用，整理失败
+        Path blocker = dataPath(".compact");
+        Files.createDirectory(blocker);
+        Files.createFile(blocker.resolve("x"));
+        int next = 0;
+        while (BinarySecureSaveUtil.getDeadSpaceRatio(basePath) < 0.55) {
+            delete(ids.get(next));
+            next += 2;
+        }
+        // 开启自动整理后的下一次写入提交后台整理
+        BinarySecureSaveUtil.setAutoCompactionThreshold(0.5);
+        delete(ids.get(next));
+        next += 2;
+        for (long deadline = System.currentTimeMillis() + 10_000;
+             BinarySecureSaveUtil.getCompactionFailure(basePath) == null; Thread.sleep(10)) {
+            assertTrue(System.currentTimeMillis() < deadline, "后台整理未执行");
+        }
+        assertTrue(BinarySecureSaveUtil.getCompactionFailure(basePath) instanceof IOException);
+        assertTrue(BinarySecureSaveUtil.getDeadSpaceRatio(basePath) >= 0.5);
+
+        // 障碍移除后继续写入也不再自动整理
+        Files.delete(blocker.resolve("x"));
+        Files.delete(blocker);
+        for (int i = 0; i < 20; i++) {
+            delete(ids.get(next));
+            next += 2;
+        }
+        Thread.sleep(500);
+        assertNotNull(BinarySecureSaveUtil.getCompactionFailure(basePath));
+        assertTrue(BinarySecureSaveUtil.getDeadSpaceRatio(basePath) >= 0.5);
+
+        // 显式整理成功后清除失败记录，自动整理恢复
+        BinarySecureSaveUtil.defrag(basePath);
+        assertNull(BinarySecureSaveUtil.getCompactionFailure(basePath));
+        assertEquals(0, BinarySecureSaveUtil.getDeadSpaceRatio(basePath), 1e-9);
+        assertContent();
+        BinarySecureSaveUtil.close(basePath);
+        assertNull(BinarySecureSaveUtil.getCompactionFailure(basePath));
+    }
+
+    private void add(String name) throws Exception {
+        String id = BinarySecureSaveUtil.add(new Player(name, "", 0, 0, 0), basePath);
+        ids.add(id);
+        expected.put(id, name);
+    }
+
+    private void update(String id, String name) throws Exception {
+        assertTrue(BinarySecureSaveUtil.update(id, new Player(name, "", 0, 0, 0), basePath));
+        expected.put(id, name);
+    }
+
+    private void delete(String id) throws Exception {
+        assertTrue(BinarySecureSaveUtil.delete(id, basePath));
+        expected.remove(id);
+    }
+
+    private void assertContent() throws Exception {
+        for (String id : ids) {
+            Player player = (Player) BinarySecureSaveUtil.get(id, basePath);
+            assertEquals(expected.get(id), player == null ? null : player.getName(), id);
+        }
+    }
+
+    // 包括并发写入新增的记录，且存档中没有多余的记录
+    private void assertAllContent() throws Exception {
+        assertContent();
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            Player player = (Player) BinarySecureSaveUtil.get(entry.getKey(), basePath);
+            assertEquals(entry.getValue(), player.getName());
+        }
+        assertEquals(expected.size(), BinarySecureSaveUtil.listAllIdDescriptions(basePath).size());
+    }
+
+    private Path dataPath(String suffix) {
+        return Paths.get(basePath + suffix + SaveStore.DATA_EXTENSION);
+    }
+
+    private Path indexPath(String suffix) {
+        return Paths.get(basePath + suffix + SaveStore.INDEX_EXTENSION);
+    }
+}
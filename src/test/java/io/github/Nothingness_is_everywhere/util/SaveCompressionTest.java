@@ -0,0 +1,128 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 记录压缩：压缩与未压缩的记录混合存在，重新训练字典后用旧字典压缩的记录仍可读取，缺少字典时拒绝解压
+ */
+class SaveCompressionTest {
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final Map<String, String> expected = new HashMap<>(); // ID -> 名称
+    private int compressedRecords;
+
+    @BeforeEach
+    void setUp() {
+        basePath = directory.resolve("save").toString();
+        BinarySecureSaveUtil.setCacheCapacity(0);
+        BinarySecureSaveUtil.resetCompressionStats();
+    }
+
+    @AfterEach
+    void reset() throws IOException {
+        BinarySecureSaveUtil.setCompression(false);
+        BinarySecureSaveUtil.setCacheCapacity(1024);
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void mixedRecordsStayReadableAcrossRetraining() throws Exception {
+        addPlayers("plain", 20);
+        assertEquals(0, BinarySecureSaveUtil.getCompressionStats().compressed());
+
+        BinarySecureSaveUtil.setCompression(true);
+        addPlayers("nodict", 20);
+        assertTrue(BinarySecureSaveUtil.trainCompressionDictionary(basePath) > 0);
+        addPlayers("dict1", 20);
+        long dictionaryFile = Files.size(Paths.get(basePath + SaveCompression.DICTIONARY_EXTENSION));
+        assertTrue(BinarySecureSaveUtil.trainCompressionDictionary(basePath) > 0);
+        assertTrue(Files.size(Paths.get(basePath + SaveCompression.DICTIONARY_EXTENSION)) > dictionaryFile);
+        addPlayers("dict2", 20);
+        // 更新未压缩的旧记录
+        String plain = expected.keySet().stream().filter(id -> expected.get(id).startsWith("plain"))
+                .findFirst().orElseThrow();
+        assertTrue(BinarySecureSaveUtil.update(plain, new Player(name("updated", 0), "", 0, 0, 0), basePath));
+        expected.put(plain, name("updated", 0));
+        compressedRecords++;
+
+        SaveCompression.Stats written = BinarySecureSaveUtil.getCompressionStats();
+        assertEquals(compressedRecords, written.compressed());
+        assertTrue(written.ratio() < 0.5, "压缩比" + written.ratio());
+
+        BinarySecureSaveUtil.resetCompressionStats();
+        assertContent();
+        // 单条读取和批量读取各解压一遍，未压缩的记录不经过解压
+        assertEquals(2L * compressedRecords, BinarySecureSaveUtil.getCompressionStats().decompressed());
+        BinarySecureSaveUtil.close(basePath);
+        assertContent();
+        BinarySecureSaveUtil.defrag(basePath);
+        assertContent();
+        assertEquals(0, BinarySecureSaveUtil.getCompressionStats().compressed()); // 整理只复制记录，不重新压缩
+    }
+
+    @Test
+    void recordWithUnknownDictionaryIsRejected() throws Exception {
+        byte[] plain = name("sample", 1).getBytes(StandardCharsets.UTF_8);
+        byte[] dictionary = new byte[256];
+        new Random(5).nextBytes(dictionary);
+        System.arraycopy(plain, 0, dictionary, 0, 64);
+        byte[] packed = SaveCompression.compress(plain, dictionary);
+        assertTrue(packed.length < plain.length);
+        assertThrows(InvalidObjectException.class, () -> SaveCompression.decompress(packed));
+
+        SaveCompression.register(dictionary);
+        assertArrayEquals(plain, SaveCompression.decompress(packed));
+        assertArrayEquals(plain, SaveCompression.decompress(SaveCompression.compress(plain, null)));
+        assertNull(SaveCompression.compress(new byte[16], null)); // 过短，不压缩
+    }
+
+    private void addPlayers(String prefix, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            String name = name(prefix, i);
+            expected.put(BinarySecureSaveUtil.add(new Player(name, "", i, 0, 0), basePath), name);
+        }
+        if (BinarySecureSaveUtil.isCompression()) {
+            compressedRecords += count;
+        }
+    }
+
+    private void assertContent() throws Exception {
+        List<String> ids = new ArrayList<>(expected.keySet());
+        for (String id : ids) {
+            assertEquals(expected.get(id), ((Player) BinarySecureSaveUtil.get(id, basePath)).getName(), id);
+        }
+        Map<String, Object> all = BinarySecureSaveUtil.getAll(ids, basePath);
+        for (String id : ids) {
+            assertEquals(expected.get(id), ((Player) all.get(id)).getName(), id);
+        }
+    }
+
+    // 名称足够长且重复，保证压缩有收益
+    private static String name(String prefix, int i) {
+        return (prefix + "-" + i + "-").repeat(20);
+    }
+}
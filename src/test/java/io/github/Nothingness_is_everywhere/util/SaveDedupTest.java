@@ -0,0 +1,193 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 内容去重：引用计数随删除和更新释放，共享在整理和重新打开后保持，
+ * 过期的.dedup文件不会使新记录引用错误的记录，重新分片后每个ID都有独立的记录
+ */
+class SaveDedupTest {
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final Player shared = new Player("共享", "模板", 3, 0, 0); // 同一对象多次写入，内容相同
+
+    @BeforeEach
+    void setUp() {
+        basePath = directory.resolve("save").toString();
+        BinarySecureSaveUtil.setDeduplication(true);
+        BinarySecureSaveUtil.setAutoCompactionThreshold(0);
+    }
+
+    @AfterEach
+    void reset() throws IOException {
+        BinarySecureSaveUtil.setDeduplication(false);
+        BinarySecureSaveUtil.setAutoCompactionThreshold(0.5);
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void referencesAreReleasedOnDeleteAndUpdate() throws Exception {
+        List<String> ids = addShared(3);
+        String other = BinarySecureSaveUtil.add(new Player("其他", "", 1, 0, 0), basePath);
+        assertStats(1, 3);
+        assertEquals(0, BinarySecureSaveUtil.getDeadSpaceRatio(basePath), 1e-9);
+
+        assertTrue(BinarySecureSaveUtil.delete(ids.get(0), basePath));
+        assertStats(1, 2);
+        assertTrue(BinarySecureSaveUtil.update(ids.get(1), new Player("改变", "", 1, 0, 0), basePath));
+        assertStats(0, 0);
+        assertEquals("共享", name(ids.get(2)));
+        assertEquals("改变", name(ids.get(1)));
+
+        // 被共享的记录不原地覆盖；最后一个引用释放后记录才成为死空间
+        double ratio = BinarySecureSaveUtil.getDeadSpaceRatio(basePath);
+        assertTrue(BinarySecureSaveUtil.delete(ids.get(2), basePath));
+        assertTrue(BinarySecureSaveUtil.getDeadSpaceRatio(basePath) > ratio);
+        BinarySecureSaveUtil.defrag(basePath);
+        assertNull(BinarySecureSaveUtil.get(ids.get(0), basePath));
+        assertEquals("改变", name(ids.get(1)));
+        assertNull(BinarySecureSaveUtil.get(ids.get(2), basePath));
+        assertEquals("其他", name(other));
+    }
+
+    @Test
+    void sharingSurvivesDefragAndReopen() throws Exception {
+        List<String> ids = addShared(5);
+        List<String> others = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            others.add(BinarySecureSaveUtil.add(new Player("p" + i, "", i, 0, 0), basePath));
+        }
+        for (int i = 0; i < 20; i += 2) {
+            assertTrue(BinarySecureSaveUtil.delete(others.get(i), basePath));
+        }
+        SaveDedup.Stats before = BinarySecureSaveUtil.getDedupStats(basePath);
+        assertEquals(1, before.sharedRecords());
+        assertEquals(5, before.references());
+
+        BinarySecureSaveUtil.defrag(basePath);
+        assertEquals(before, BinarySecureSaveUtil.getDedupStats(basePath));
+        assertContent(ids, others);
+        BinarySecureSaveUtil.close(basePath);
+        assertEquals(before, BinarySecureSaveUtil.getDedupStats(basePath));
+        assertContent(ids, others);
+
+        // 重新打开后继续共享与释放
+        ids.addAll(addShared(1));
+        assertStats(1, 6);
+        assertTrue(BinarySecureSaveUtil.delete(ids.get(0), basePath));
+        assertStats(1, 5);
+        BinarySecureSaveUtil.close(basePath);
+        assertStats(1, 5);
+        assertNull(BinarySecureSaveUtil.get(ids.remove(0), basePath));
+        assertContent(ids, others);
+    }
+
+    @Test
+    void staleSidecarNeverAliasesWrongRecord() throws Exception {
+        // 长度相同、内容不同的两条记录
+        String first = BinarySecureSaveUtil.add(shared, basePath);
+        String second = BinarySecureSaveUtil.add(new Player("不同", "模板", 3, 0, 0), basePath);
+        BinarySecureSaveUtil.IndexEntry replaced = entry(first);
+        BinarySecureSaveUtil.close(basePath);
+        Path sidecar = Paths.get(basePath + SaveDedup.DEDUP_EXTENSION);
+        byte[] stale = Files.readAllBytes(sidecar);
+
+        // 删除并整理后，第二条记录移到第一条原来的位置
+        assertTrue(BinarySecureSaveUtil.delete(first, basePath));
+        BinarySecureSaveUtil.defrag(basePath);
+        assertEquals(replaced.dataOffset(), entry(second).dataOffset());
+        assertEquals(replaced.dataLength(), entry(second).dataLength());
+        BinarySecureSaveUtil.close(basePath);
+        Files.write(sidecar, stale);
+
+        String again = BinarySecureSaveUtil.add(shared, basePath);
+        assertEquals("共享", name(again));
+        assertEquals("不同", name(second));
+        assertStats(0, 0);
+        BinarySecureSaveUtil.close(basePath);
+        assertEquals("共享", name(again));
+        assertEquals("不同", name(second));
+        assertTrue(BinarySecureSaveUtil.scrub(basePath, 1).isClean());
+    }
+
+    @Test
+    void reshardGivesEachIdItsOwnRecord() throws Exception {
+        List<String> ids = addShared(8);
+        String other = BinarySecureSaveUtil.add(new Player("其他", "", 1, 0, 0), basePath);
+        assertStats(1, 8);
+
+        assertEquals(9, SaveShardTool.reshard(basePath, 3));
+        assertStats(0, 0);
+        for (String id : ids) {
+            assertEquals("共享", name(id));
+        }
+        assertTrue(BinarySecureSaveUtil.delete(ids.get(0), basePath));
+        assertNull(BinarySecureSaveUtil.get(ids.get(0), basePath));
+        for (String id : ids.subList(1, ids.size())) {
+            assertEquals("共享", name(id));
+        }
+        assertEquals("其他", name(other));
+        assertTrue(BinarySecureSaveUtil.scrub(basePath, 1).isClean());
+
+        // 记录标签都属于各自的ID，从数据文件重建索引也能还原每个ID
+        SaveRecovery.Report report = SaveRecovery.rebuild(basePath, 1);
+        assertTrue(report.corrupt().isEmpty());
+        assertEquals(8, report.recovered());
+        for (String id : ids.subList(1, ids.size())) {
+            assertEquals("共享", name(id));
+        }
+    }
+
+    private List<String> addShared(int count) throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(BinarySecureSaveUtil.add(shared, basePath));
+        }
+        return ids;
+    }
+
+    private void assertStats(long sharedRecords, long references) throws IOException {
+        SaveDedup.Stats stats = BinarySecureSaveUtil.getDedupStats(basePath);
+        assertEquals(sharedRecords, stats.sharedRecords());
+        assertEquals(references, stats.references());
+    }
+
+    private void assertContent(List<String> ids, List<String> others) throws Exception {
+        for (String id : ids) {
+            assertEquals("共享", name(id));
+        }
+        for (int i = 0; i < others.size(); i++) {
+            if (i % 2 == 0) {
+                assertNull(BinarySecureSaveUtil.get(others.get(i), basePath));
+            } else {
+                assertEquals("p" + i, name(others.get(i)));
+            }
+        }
+    }
+
+    private BinarySecureSaveUtil.IndexEntry entry(String id) throws IOException {
+        return BinarySecureSaveUtil.listAllIdDescriptions(basePath).stream()
+                .filter(entry -> entry.id().equals(id)).findFirst().orElseThrow();
+    }
+
+    private String name(String id) throws Exception {
+        return ((Player) BinarySecureSaveUtil.get(id, basePath)).getName();
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * SaveIndex的向后移位删除：同一探测链上的条目删除后，其余条目仍能查到
+ */
+class SaveIndexTest {
+    private static final int CAPACITY = 16; // 默认构造的容量（不超过12个条目时不扩容）
+
+    @Test
+    void removeKeepsCollidingChainReachable() throws Exception {
+        // 8个键落在同一个初始槽位，形成一条连续的探测链
+        List<long[]> keys = keysWithHome(3, 8, new Random(1));
+        for (int removed = 0; removed < keys.size(); removed++) {
+            SaveIndex index = fill(keys);
+            long[] key = keys.get(removed);
+            assertNotNull(index.remove(key[0], key[1]));
+            assertNull(index.get(key[0], key[1]));
+            assertEquals(keys.size() - 1, index.size());
+            for (int i = 0; i < keys.size(); i++) {
+                if (i != removed) {
+                    assertEquals(i, index.get(keys.get(i)[0], keys.get(i)[1]).dataOffset(), "删除第" + removed + "个后");
+                }
+            }
+        }
+    }
+
+    @Test
+    void removeShiftsChainWrappingAroundTableEnd() throws Exception {
+        // 初始槽位在末尾，探测链绕回表头；再混入初始槽位在表头的键
+        Random random = new Random(2);
+        List<long[]> keys = new ArrayList<>(keysWithHome(CAPACITY - 1, 4, random));
+        keys.addAll(keysWithHome(0, 3, random));
+        SaveIndex index = fill(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i, index.remove(keys.get(i)[0], keys.get(i)[1]).dataOffset());
+            for (int j = i + 1; j < keys.size(); j++) {
+                assertEquals(j, index.get(keys.get(j)[0], keys.get(j)[1]).dataOffset());
+            }
+        }
+        assertEquals(0, index.size());
+        assertEquals(0, index.liveBytes());
+    }
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        Random random = new Random(3);
+        List<long[]> pool = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            pool.add(new long[]{random.nextLong() | 1, random.nextLong()});
+        }
+        SaveIndex index = new SaveIndex();
+        Map<Integer, Integer> expected = new HashMap<>(); // 键在pool中的位置 -> 数据长度
+        for (int step = 0; step < 20000; step++) {
+            int k = random.nextInt(pool.size());
+            long[] key = pool.get(k);
+            if (random.nextInt(3) == 0) {
+                SaveIndex.Location old = index.remove(key[0], key[1]);
+                Integer length = expected.remove(k);
+                assertEquals(length, old == null ? null : old.dataLength());
+            } else {
+                int length = random.nextInt(1000);
+                index.put(key[0], key[1], k, length, k * 100L, 0);
+                expected.put(k, length);
+            }
+            assertEquals(expected.size(), index.size());
+        }
+        long liveBytes = 0;
+        for (int k = 0; k < pool.size(); k++) {
+            SaveIndex.Location location = index.get(pool.get(k)[0], pool.get(k)[1]);
+            Integer length = expected.get(k);
+            assertEquals(length, location == null ? null : location.dataLength());
+            liveBytes += length == null ? 0 : length;
+        }
+        assertEquals(liveBytes, index.liveBytes());
+    }
+
+    @Test
+    void zeroKeyIsRejected() {
+        SaveIndex index = new SaveIndex();
+        assertThrows(IllegalArgumentException.class, () -> index.put(0, 0, 0, 1, 0, 0));
+        assertNull(index.get(0, 0));
+        assertNull(index.remove(0, 0));
+    }
+
+    private static SaveIndex fill(List<long[]> keys) {
+        SaveIndex index = new SaveIndex();
+        for (int i = 0; i < keys.size(); i++) {
+            index.put(keys.get(i)[0], keys.get(i)[1], i, 10, i * 100L, 0);
+        }
+        return index;
+    }
+
+    // 随机生成初始槽位（哈希值按默认容量取模）为home的键
+    private static List<long[]> keysWithHome(int home, int count, Random random) throws Exception {
+        Method hash = SaveIndex.class.getDeclaredMethod("hash", long.class, long.class);
+        hash.setAccessible(true);
+        List<long[]> keys = new ArrayList<>();
+        while (keys.size() < count) {
+            long msb = random.nextLong();
+            long lsb = random.nextLong();
+            if (((int) hash.invoke(null, msb, lsb) & (CAPACITY - 1)) == home) {
+                keys.add(new long[]{msb, lsb});
+            }
+        }
+        return keys;
+    }
+}
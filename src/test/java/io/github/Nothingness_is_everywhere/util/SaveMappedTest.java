@@ -0,0 +1,118 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 内存映射模式：文件增长后读取超出已映射范围时重新映射，映射读取与普通读取的结果相同
+ */
+class SaveMappedTest {
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, String> expected = new HashMap<>(); // ID -> 名称（已删除的不在其中）
+
+    @BeforeEach
+    void setUp() {
+        basePath = directory.resolve("save").toString();
+        BinarySecureSaveUtil.setMemoryMapped(true);
+        BinarySecureSaveUtil.setCacheCapacity(0);
+    }
+
+    @AfterEach
+    void reset() throws IOException {
+        BinarySecureSaveUtil.setMemoryMapped(false);
+        BinarySecureSaveUtil.setCacheCapacity(1024);
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void sliceRemapsAfterFileGrows() throws Exception {
+        Path file = directory.resolve("grow.bin");
+        Files.write(file, new byte[]{1, 2, 3, 4});
+        MappedSaveFile mapped = new MappedSaveFile(file);
+        assertEquals(4, mapped.mapAll());
+        assertEquals(3, mapped.slice(2, 1).get(0));
+
+        Files.write(file, new byte[]{5, 6, 7}, StandardOpenOption.APPEND);
+        assertEquals(4, mapped.mappedSize());
+        ByteBuffer grown = mapped.slice(3, 4);
+        assertEquals(7, mapped.mappedSize());
+        assertEquals(4, grown.capacity());
+        assertEquals(ByteBuffer.wrap(new byte[]{4, 5, 6, 7}), grown);
+        assertThrows(EOFException.class, () -> mapped.slice(5, 10));
+    }
+
+    @Test
+    void recordsWrittenAfterMappingAreReadable() throws Exception {
+        addPlayers(0, 20);
+        assertContent();
+
+        // 每轮追加后立即读取新记录（超出上次映射的范围）
+        for (int round = 0; round < 5; round++) {
+            addPlayers(ids.size(), 30);
+            assertContent();
+            assertTrue(BinarySecureSaveUtil.update(ids.get(round), new Player("u" + round, "", 0, 0, 0), basePath));
+            expected.put(ids.get(round), "u" + round);
+            String longName = "long" + round + "x".repeat(300);
+            assertTrue(BinarySecureSaveUtil.update(ids.get(round + 10), new Player(longName, "", 0, 0, 0), basePath));
+            expected.put(ids.get(round + 10), longName);
+            assertTrue(BinarySecureSaveUtil.delete(ids.get(round + 20), basePath));
+            expected.remove(ids.get(round + 20));
+            assertContent();
+        }
+
+        // 整理替换数据文件后重新映射新文件
+        BinarySecureSaveUtil.defrag(basePath);
+        assertContent();
+        addPlayers(ids.size(), 10);
+        assertContent();
+
+        // 重新打开时通过映射加载索引，结果与普通读取相同
+        BinarySecureSaveUtil.close(basePath);
+        assertContent();
+        BinarySecureSaveUtil.close(basePath);
+        BinarySecureSaveUtil.setMemoryMapped(false);
+        assertContent();
+    }
+
+    private void addPlayers(int first, int count) throws Exception {
+        for (int i = first; i < first + count; i++) {
+            String id = BinarySecureSaveUtil.add(new Player("p" + i, "", i, 0, 0), basePath);
+            ids.add(id);
+            expected.put(id, "p" + i);
+        }
+    }
+
+    private void assertContent() throws Exception {
+        for (String id : ids) {
+            Player player = (Player) BinarySecureSaveUtil.get(id, basePath);
+            if (expected.containsKey(id)) {
+                assertEquals(expected.get(id), player.getName(), id);
+            } else {
+                assertNull(player, id);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * SaveRecords：新格式（AES-GCM）记录的编解码与旧格式（AES/ECB + SHA-256）记录的只读兼容
+ */
+class SaveRecordsTest {
+    private static final byte[] PLAIN = "旧版本存档中的Java序列化数据".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void legacyRecordDecodes() throws Exception {
+        byte[] record = legacyRecord(PLAIN);
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        SaveRecords.Payload payload = SaveRecords.decode(buffer);
+        assertEquals(0, payload.flags());
+        assertArrayEquals(PLAIN, payload.data());
+        assertEquals(record.length, buffer.position());
+        assertEquals(record.length, SaveRecords.frameLength(ByteBuffer.wrap(record), 0));
+        assertNull(SaveRecords.tag(ByteBuffer.wrap(record), 0));
+    }
+
+    @Test
+    void tamperedLegacyRecordIsRejected() throws Exception {
+        byte[] record = legacyRecord(PLAIN);
+        record[4] ^= 1; // 哈希的第一个字节
+        assertThrows(SecurityException.class, () -> SaveRecords.decode(ByteBuffer.wrap(record)));
+    }
+
+    @Test
+    void taggedRecordRoundTrips() throws Exception {
+        UUID id = UUID.randomUUID();
+        byte[] record = SaveRecords.encode(PLAIN, 0, id, "描述", 8);
+        assertEquals(record.length, SaveRecords.frameLength(ByteBuffer.wrap(record), 0));
+        SaveRecords.Tag tag = SaveRecords.tag(ByteBuffer.wrap(record), 0);
+        assertEquals(id, tag.id());
+        assertEquals("描述", tag.description());
+        assertArrayEquals(PLAIN, SaveRecords.decode(ByteBuffer.wrap(record)).data());
+
+        record[record.length - 8 - 1] ^= 1; // 认证标签的最后一个字节（填充之前）
+        assertThrows(SecurityException.class, () -> SaveRecords.decode(ByteBuffer.wrap(record)));
+    }
+
+    // 按旧版本BinarySecureSaveUtil的方式写出一条记录：[哈希长度] [SHA-256] [加密数据长度] [AES/ECB加密数据]
+    static byte[] legacyRecord(byte[] plain) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(plain);
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE,
+                new SecretKeySpec("GameSaveKey12345".getBytes(StandardCharsets.UTF_8), "AES"));
+        byte[] encrypted = cipher.doFinal(plain);
+        return ByteBuffer.allocate(4 + hash.length + 4 + encrypted.length)
+                .putInt(hash.length).put(hash)
+                .putInt(encrypted.length).put(encrypted)
+                .array();
+    }
+}
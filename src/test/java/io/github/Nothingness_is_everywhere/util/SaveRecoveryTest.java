@@ -0,0 +1,190 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 从数据文件重建索引：索引文件缺失、被截断或缺少尾部时自动重建，数据文件中间损坏时报告损坏区间
+ */
+class SaveRecoveryTest {
+    private static final int COUNT = 300;
+
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, String> expected = new HashMap<>(); // ID -> 名称（已删除的不在其中）
+
+    @BeforeEach
+    void writeSave() throws Exception {
+        basePath = directory.resolve("save").toString();
+        for (int i = 0; i < COUNT; i++) {
+            String id = BinarySecureSaveUtil.add(new Player("p" + i, "描述" + i % 7, i, 0, 0), basePath);
+            ids.add(id);
+            expected.put(id, "p" + i);
+        }
+        for (int i = 0; i < COUNT; i += 5) {
+            assertTrue(BinarySecureSaveUtil.delete(ids.get(i), basePath));
+            expected.remove(ids.get(i));
+        }
+        for (int i = 1; i < COUNT; i += 7) {
+            if (i % 5 == 0) {
+                assertFalse(BinarySecureSaveUtil.update(ids.get(i), new Player("u" + i, "更新", i, 0, 0), basePath));
+                continue;
+            }
+            assertTrue(BinarySecureSaveUtil.update(ids.get(i), new Player("u" + i, "更新", i, 0, 0), basePath));
+            expected.put(ids.get(i), "u" + i);
+        }
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void missingIndexIsRebuiltOnOpen() throws Exception {
+        Files.delete(indexPath());
+        PrintStream err = System.err;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(output));
+        try {
+            assertContent();
+        } finally {
+            System.setErr(err);
+        }
+        assertEquals(0, output.size());
+        assertEquals(expected.size(), BinarySecureSaveUtil.listAllIdDescriptions(basePath).size());
+
+        SaveRecovery.OpenReport report = BinarySecureSaveUtil.getRecoveryReport(basePath);
+        assertTrue(report.isRecovered());
+        assertTrue(report.indexMissing());
+        assertEquals(expected.size(), report.rebuilt().recovered());
+        BinarySecureSaveUtil.close(basePath);
+        assertFalse(BinarySecureSaveUtil.getRecoveryReport(basePath).isRecovered());
+    }
+
+    @Test
+    void truncatedIndexIsRebuiltOnOpen() throws Exception {
+        truncate(indexPath(), Files.size(indexPath()) / 2);
+        assertContent();
+        assertEquals(expected.size(), BinarySecureSaveUtil.listAllIdDescriptions(basePath).size());
+        // 截断在条目中间时丢弃不完整的条目，其余条目由数据文件末尾补回
+        assertTrue(BinarySecureSaveUtil.getRecoveryReport(basePath).isRecovered());
+    }
+
+    @Test
+    void missingIndexTailIsRecoveredFromData() throws Exception {
+        // 数据已写入、索引尚未写入时崩溃：索引文件停在之前的长度
+        long indexSize = Files.size(indexPath());
+        for (int i = 0; i < 20; i++) {
+            String id = BinarySecureSaveUtil.add(new Player("new" + i, "新增", i, 0, 0), basePath);
+            ids.add(id);
+            expected.put(id, "new" + i);
+        }
+        assertTrue(BinarySecureSaveUtil.delete(ids.get(3), basePath));
+        expected.remove(ids.get(3));
+        assertTrue(BinarySecureSaveUtil.update(ids.get(2), new Player("again", "更新", 2, 0, 0), basePath));
+        expected.put(ids.get(2), "again");
+        BinarySecureSaveUtil.close(basePath);
+        truncate(indexPath(), indexSize);
+
+        assertContent();
+        SaveRecovery.OpenReport report = BinarySecureSaveUtil.getRecoveryReport(basePath);
+        assertNull(report.rebuilt());
+        assertEquals(21, report.tailRecovered()); // 20条新增和1个删除（更新原地覆盖，索引条目不变）
+        BinarySecureSaveUtil.close(basePath);
+        // 补回尾部后的索引再次打开不再变化
+        long rebuiltSize = Files.size(indexPath());
+        assertContent();
+        assertEquals(SaveRecovery.OpenReport.NONE, BinarySecureSaveUtil.getRecoveryReport(basePath));
+        BinarySecureSaveUtil.close(basePath);
+        assertEquals(rebuiltSize, Files.size(indexPath()));
+    }
+
+    @Test
+    void corruptRangeIsReported() throws Exception {
+        Map<String, BinarySecureSaveUtil.IndexEntry> entries = new HashMap<>();
+        for (BinarySecureSaveUtil.IndexEntry entry : BinarySecureSaveUtil.listAllIdDescriptions(basePath)) {
+            entries.put(entry.id(), entry);
+        }
+        BinarySecureSaveUtil.close(basePath);
+        Path dataPath = Paths.get(basePath + SaveStore.DATA_EXTENSION);
+        long damageStart = Files.size(dataPath) / 2;
+        long damageEnd = damageStart + 300;
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[(int) (damageEnd - damageStart)]), damageStart);
+        }
+
+        SaveRecovery.Report report = SaveRecovery.rebuild(basePath, 2);
+        assertFalse(report.corrupt().isEmpty());
+        for (SaveRecovery.Range range : report.corrupt()) {
+            // 损坏区间覆盖被破坏的字节，且不包含未被破坏的有效记录
+            assertTrue(range.start() < damageEnd && range.end() > damageStart, "损坏区间：" + range);
+            for (BinarySecureSaveUtil.IndexEntry entry : entries.values()) {
+                if (!overlaps(entry, damageStart, damageEnd)) {
+                    assertFalse(overlaps(entry, range.start(), range.end()), "损坏区间：" + range);
+                }
+            }
+        }
+        assertTrue(Files.exists(Paths.get(indexPath() + ".bak")));
+
+        // 未被破坏的记录全部恢复
+        int damaged = 0;
+        for (Map.Entry<String, String> e : expected.entrySet()) {
+            if (overlaps(entries.get(e.getKey()), damageStart, damageEnd)) {
+                damaged++;
+                continue;
+            }
+            assertEquals(e.getValue(), ((Player) BinarySecureSaveUtil.get(e.getKey(), basePath)).getName());
+        }
+        assertTrue(damaged > 0);
+        assertTrue(report.recovered() >= expected.size() - damaged);
+    }
+
+    private void assertContent() throws Exception {
+        for (String id : ids) {
+            Player player = (Player) BinarySecureSaveUtil.get(id, basePath);
+            String name = expected.get(id);
+            assertEquals(name, player == null ? null : player.getName(), id);
+        }
+    }
+
+    private Path indexPath() {
+        return Paths.get(basePath + SaveStore.INDEX_EXTENSION);
+    }
+
+    private static boolean overlaps(BinarySecureSaveUtil.IndexEntry entry, long start, long end) {
+        return entry.dataOffset() < end && entry.dataOffset() + entry.dataLength() > start;
+    }
+
+    private static void truncate(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+}
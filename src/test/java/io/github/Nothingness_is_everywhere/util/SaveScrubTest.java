@@ -0,0 +1,165 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 完整性检查：损坏的记录、悬空的条目和孤立的记录各自被发现，检查期间的并发写入和删除不被误报为孤立
+ */
+class SaveScrubTest {
+    private static final int COUNT = 100;
+
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final List<UUID> ids = new ArrayList<>();
+
+    @BeforeEach
+    void writeSave() throws Exception {
+        basePath = directory.resolve("save").toString();
+        for (int i = 0; i < COUNT; i++) {
+            ids.add(UUID.fromString(BinarySecureSaveUtil.add(new Player("p" + i, "", i, 0, 0), basePath)));
+        }
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void cleanSaveHasNoProblems() throws Exception {
+        SaveScrub.Report report = BinarySecureSaveUtil.scrub(basePath, 2);
+        assertTrue(report.isClean());
+        assertEquals(COUNT, report.entries());
+        assertEquals(Files.size(dataPath()), report.scannedBytes());
+        assertEquals(report.scannedBytes(), report.verifiedBytes());
+    }
+
+    @Test
+    void damagedSaveIsReported() throws Exception {
+        UUID tombstoned = ids.get(COUNT - 1);
+        long tombstoneOffset = Files.size(dataPath());
+        assertTrue(BinarySecureSaveUtil.delete(tombstoned.toString(), basePath));
+        BinarySecureSaveUtil.close(basePath);
+        Map<UUID, SaveIndexFile.Entry> entries;
+        try (FileChannel channel = FileChannel.open(indexPath(), StandardOpenOption.READ)) {
+            entries = SaveIndexFile.readLive(SaveIndexFile.readAll(channel));
+        }
+
+        // 损坏：记录中间的一个字节被改动
+        UUID corrupt = ids.get(10);
+        SaveIndexFile.Entry damaged = entries.get(corrupt);
+        try (FileChannel channel = FileChannel.open(dataPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long at = damaged.dataOffset() + damaged.dataLength() / 2;
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, at);
+            one.put(0, (byte) (one.get(0) ^ 0x40));
+            channel.write(one.flip(), at);
+        }
+        // 悬空：指向其他ID的记录、不是记录开头的位置、删除标记和数据文件末尾之外
+        UUID otherId = ids.get(20);
+        UUID misaligned = ids.get(30);
+        UUID toTombstone = ids.get(40);
+        UUID pastEnd = ids.get(50);
+        SaveIndexFile.Entry other = entries.get(ids.get(21));
+        entries.put(otherId, moved(entries.get(otherId), other.dataOffset(), other.dataLength()));
+        SaveIndexFile.Entry entry = entries.get(misaligned);
+        entries.put(misaligned, moved(entry, entry.dataOffset() + 1, entry.dataLength()));
+        entries.put(toTombstone, moved(entries.get(toTombstone), tombstoneOffset,
+                (int) (Files.size(dataPath()) - tombstoneOffset)));
+        entries.put(pastEnd, moved(entries.get(pastEnd), Files.size(dataPath()) + 100, 50));
+        // 孤立：索引丢失了条目
+        UUID orphan = ids.get(60);
+        entries.remove(orphan);
+        SaveIndexFile.write(indexPath(), new ArrayList<>(entries.values()));
+
+        SaveScrub.Report report = BinarySecureSaveUtil.scrub(basePath, 2);
+        assertEquals(Set.of(corrupt), idsOf(report.corrupt()));
+        assertEquals(Set.of(otherId, misaligned, toTombstone, pastEnd), idsOf(report.dangling()));
+        assertEquals(Set.of(orphan), idsOf(report.orphaned()));
+        SaveScrub.Problem found = report.orphaned().get(0);
+        assertEquals(entries.get(ids.get(61)).dataOffset(), found.offset() + found.length());
+        assertEquals(COUNT - 2, report.entries());
+    }
+
+    @Test
+    void concurrentWritesAreNotOrphans() throws Exception {
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < 2; w++) {
+                int writer = w;
+                writers.add(pool.submit(() -> {
+                    List<String> added = new ArrayList<>();
+                    for (int round = 0; !done.get(); round++) {
+                        added.add(BinarySecureSaveUtil.add(new Player("w" + writer + "-" + round, "", 0, 0, 0),
+                                basePath));
+                        if (round % 3 == 0) {
+                            assertTrue(BinarySecureSaveUtil.delete(added.remove(0), basePath));
+                        }
+                        if (round % 5 == 0 && !added.isEmpty()) {
+                            assertTrue(BinarySecureSaveUtil.update(added.get(added.size() - 1),
+                                    new Player("u" + round, "", 0, 0, 0), basePath));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (int i = 0; i < 20; i++) {
+                SaveScrub.Report report = BinarySecureSaveUtil.scrub(basePath, 2);
+                assertTrue(report.isClean(), report.toString());
+            }
+            done.set(true);
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            done.set(true);
+            pool.shutdown();
+        }
+        assertTrue(BinarySecureSaveUtil.scrub(basePath, 2).isClean());
+    }
+
+    private static SaveIndexFile.Entry moved(SaveIndexFile.Entry entry, long dataOffset, int dataLength) {
+        return new SaveIndexFile.Entry(entry.msb(), entry.lsb(), dataOffset, dataLength, entry.description());
+    }
+
+    private static Set<UUID> idsOf(List<SaveScrub.Problem> problems) {
+        return problems.stream().map(SaveScrub.Problem::id).collect(Collectors.toSet());
+    }
+
+    private Path dataPath() {
+        return Paths.get(basePath + SaveStore.DATA_EXTENSION);
+    }
+
+    private Path indexPath() {
+        return Paths.get(basePath + SaveStore.INDEX_EXTENSION);
+    }
+}
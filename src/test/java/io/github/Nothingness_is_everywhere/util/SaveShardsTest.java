@@ -0,0 +1,187 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分片存档：记录按ID路由到子存档，批量查询按传入顺序返回，
+ * 重新分片（未分片到N、N到M）保留全部记录并原子切换清单的代数
+ */
+class SaveShardsTest {
+    private static final int COUNT = 200;
+
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, String> expected = new HashMap<>(); // ID -> 名称（已删除的不在其中）
+
+    @BeforeEach
+    void setUp() {
+        basePath = directory.resolve("save").toString();
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void recordsAreRoutedByIdHash() throws Exception {
+        BinarySecureSaveUtil.createSharded(basePath, 4);
+        assertEquals(4, BinarySecureSaveUtil.getShardCount(basePath));
+        assertThrows(IllegalStateException.class, () -> BinarySecureSaveUtil.createSharded(basePath, 2));
+        write();
+        BinarySecureSaveUtil.close(basePath);
+
+        SaveShards.Layout layout = SaveShards.readManifest(basePath);
+        assertEquals(new SaveShards.Layout(4, 0), layout);
+        assertFalse(Files.exists(Paths.get(basePath + SaveStore.DATA_EXTENSION)));
+        Set<String> listed = new HashSet<>();
+        for (int shard = 0; shard < 4; shard++) {
+            String path = SaveShards.shardPath(basePath, layout, shard);
+            List<BinarySecureSaveUtil.IndexEntry> entries = BinarySecureSaveUtil.listAllIdDescriptions(path);
+            assertFalse(entries.isEmpty());
+            for (BinarySecureSaveUtil.IndexEntry entry : entries) {
+                assertEquals(shard, SaveShards.shardOf(UUID.fromString(entry.id()), 4));
+                assertTrue(listed.add(entry.id()));
+            }
+            BinarySecureSaveUtil.close(path);
+        }
+        assertEquals(expected.keySet(), listed);
+        assertEquals(expected.size(), BinarySecureSaveUtil.listAllIdDescriptions(basePath).size());
+        assertContent();
+    }
+
+    @Test
+    void getAllKeepsRequestedOrderAcrossShards() throws Exception {
+        BinarySecureSaveUtil.createSharded(basePath, 3);
+        write();
+        List<String> requested = new ArrayList<>(ids);
+        Collections.shuffle(requested, new Random(7));
+        requested.add(2, UUID.randomUUID().toString()); // 不存在的ID
+        requested.add(5, "不是ID");
+
+        for (boolean reopened : new boolean[]{false, true}) {
+            if (reopened) {
+                BinarySecureSaveUtil.close(basePath);
+            }
+            Map<String, Object> found = BinarySecureSaveUtil.getAll(requested, basePath);
+            List<String> order = new ArrayList<>();
+            for (String id : requested) {
+                if (expected.containsKey(id)) {
+                    order.add(id);
+                }
+            }
+            assertEquals(order, new ArrayList<>(found.keySet()));
+            for (Map.Entry<String, Object> entry : found.entrySet()) {
+                assertEquals(expected.get(entry.getKey()), ((Player) entry.getValue()).getName());
+            }
+        }
+    }
+
+    @Test
+    void reshardKeepsEveryRecordAndSwapsGeneration() throws Exception {
+        write();
+        BinarySecureSaveUtil.close(basePath);
+        assertEquals(1, BinarySecureSaveUtil.getShardCount(basePath));
+
+        // 未分片 -> 4：第0代
+        assertEquals(expected.size(), SaveShardTool.reshard(basePath, 4));
+        assertEquals(new SaveShards.Layout(4, 0), SaveShards.readManifest(basePath));
+        assertFalse(Files.exists(Paths.get(basePath + SaveStore.DATA_EXTENSION)));
+        assertFalse(Files.exists(Paths.get(basePath + SaveStore.INDEX_EXTENSION)));
+        assertEquals(4, BinarySecureSaveUtil.getShardCount(basePath));
+        assertContent();
+        change();
+
+        // 4 -> 3：第1代，上次中断留下的同代文件被清除，旧一代文件被删除
+        SaveShards.Layout next = new SaveShards.Layout(3, 1);
+        Files.write(Paths.get(SaveShards.shardPath(basePath, next, 0) + SaveStore.DATA_EXTENSION), new byte[100]);
+        assertContent();
+        assertEquals(expected.size(), SaveShardTool.reshard(basePath, 3));
+        assertEquals(next, SaveShards.readManifest(basePath));
+        for (String path : SaveShards.allPaths(basePath, new SaveShards.Layout(4, 0))) {
+            assertFalse(Files.exists(Paths.get(path + SaveStore.DATA_EXTENSION)));
+            assertFalse(Files.exists(Paths.get(path + SaveStore.INDEX_EXTENSION)));
+        }
+        assertEquals(3, BinarySecureSaveUtil.getShardCount(basePath));
+        assertContent();
+        change();
+
+        // 3 -> 1：仍是分片存档（只有一个分片）
+        assertEquals(expected.size(), SaveShardTool.reshard(basePath, 1));
+        assertEquals(new SaveShards.Layout(1, 2), SaveShards.readManifest(basePath));
+        assertContent();
+        BinarySecureSaveUtil.close(basePath);
+        assertContent();
+    }
+
+    // 写入记录，删除和更新其中一部分
+    private void write() throws Exception {
+        for (int i = 0; i < COUNT; i++) {
+            String id = BinarySecureSaveUtil.add(new Player("p" + i, "", i, 0, 0), basePath);
+            ids.add(id);
+            expected.put(id, "p" + i);
+        }
+        for (int i = 0; i < COUNT; i += 10) {
+            assertTrue(BinarySecureSaveUtil.delete(ids.get(i), basePath));
+            expected.remove(ids.get(i));
+        }
+        for (int i = 1; i < COUNT; i += 10) {
+            assertTrue(BinarySecureSaveUtil.update(ids.get(i), new Player("u" + i, "", i, 0, 0), basePath));
+            expected.put(ids.get(i), "u" + i);
+        }
+    }
+
+    // 重新分片后继续增删改
+    private void change() throws Exception {
+        String id = BinarySecureSaveUtil.add(new Player("n" + ids.size(), "", 0, 0, 0), basePath);
+        expected.put(id, "n" + ids.size());
+        ids.add(id);
+        for (int i = 2; i < ids.size(); i += 37) {
+            if (expected.remove(ids.get(i)) != null) {
+                assertTrue(BinarySecureSaveUtil.delete(ids.get(i), basePath));
+            }
+        }
+        assertTrue(BinarySecureSaveUtil.update(ids.get(3), new Player("c" + ids.size(), "", 0, 0, 0), basePath));
+        expected.put(ids.get(3), "c" + ids.size());
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    private void assertContent() throws Exception {
+        for (String id : ids) {
+            Player player = (Player) BinarySecureSaveUtil.get(id, basePath);
+            if (expected.containsKey(id)) {
+                assertEquals(expected.get(id), player.getName(), id);
+            } else {
+                assertNull(player, id);
+            }
+        }
+        assertEquals(expected.size(), BinarySecureSaveUtil.listAllIdDescriptions(basePath).size());
+    }
+}
@@ -0,0 +1,153 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 存档快照：打开后的更新、删除、新增和整理对快照不可见，快照期间更新改为追加，
+ * 整理替换下的旧数据文件在最后一个引用它的快照关闭时释放
+ */
+class SaveSnapshotTest {
+    private static final int COUNT = 50;
+
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final List<String> ids = new ArrayList<>();
+
+    @BeforeEach
+    void writeSave() throws Exception {
+        basePath = directory.resolve("save").toString();
+        for (int i = 0; i < COUNT; i++) {
+            ids.add(BinarySecureSaveUtil.add(new Player("p" + i, "", i, 0, 0), basePath));
+        }
+        BinarySecureSaveUtil.resetUpdateStats();
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void changesAfterOpenAreInvisible() throws Exception {
+        String added;
+        try (SaveSnapshot snapshot = BinarySecureSaveUtil.openSnapshot(basePath)) {
+            long version = snapshot.version();
+            for (int i = 0; i < COUNT; i += 2) {
+                assertTrue(BinarySecureSaveUtil.update(ids.get(i), new Player("u" + i, "", i, 0, 0), basePath));
+            }
+            for (int i = 1; i < COUNT; i += 4) {
+                assertTrue(BinarySecureSaveUtil.delete(ids.get(i), basePath));
+            }
+            added = BinarySecureSaveUtil.add(new Player("new", "", 0, 0, 0), basePath);
+
+            assertEquals(version, snapshot.version());
+            assertSnapshot(snapshot);
+            assertNull(snapshot.get(added));
+            assertFalse(snapshot.getAll(List.of(added)).containsKey(added));
+            // 放得下的更新在快照期间也改为追加
+            assertEquals(0, BinarySecureSaveUtil.getUpdateStats().inPlace());
+            assertEquals(COUNT / 2, BinarySecureSaveUtil.getUpdateStats().appended());
+        }
+        assertEquals("u0", name(ids.get(0)));
+        assertNull(BinarySecureSaveUtil.get(ids.get(1), basePath));
+        assertEquals("new", name(added));
+
+        // 快照关闭后恢复原地覆盖
+        assertTrue(BinarySecureSaveUtil.update(ids.get(0), new Player("v0", "", 0, 0, 0), basePath));
+        assertEquals(1, BinarySecureSaveUtil.getUpdateStats().inPlace());
+    }
+
+    @Test
+    void defragDoesNotAffectSnapshot() throws Exception {
+        try (SaveSnapshot snapshot = BinarySecureSaveUtil.openSnapshot(basePath)) {
+            for (int i = 0; i < COUNT; i += 3) {
+                assertTrue(BinarySecureSaveUtil.delete(ids.get(i), basePath));
+            }
+            for (int i = 1; i < COUNT; i += 3) {
+                assertTrue(BinarySecureSaveUtil.update(ids.get(i), new Player("u" + i, "", i, 0, 0), basePath));
+            }
+            BinarySecureSaveUtil.defrag(basePath);
+            assertSnapshot(snapshot);
+            // 整理后再次修改
+            assertTrue(BinarySecureSaveUtil.delete(ids.get(2), basePath));
+            BinarySecureSaveUtil.defrag(basePath);
+            assertSnapshot(snapshot);
+        }
+        assertNull(BinarySecureSaveUtil.get(ids.get(0), basePath));
+        assertEquals("u1", name(ids.get(1)));
+        assertNull(BinarySecureSaveUtil.get(ids.get(2), basePath));
+    }
+
+    @Test
+    void oldDataFileIsReleasedWhenLastSnapshotCloses() throws Exception {
+        SaveSnapshot first = BinarySecureSaveUtil.openSnapshot(basePath);
+        SaveSnapshot second = BinarySecureSaveUtil.openSnapshot(basePath);
+        FileChannel old = data(first);
+        assertSame(old, data(second));
+        assertTrue(BinarySecureSaveUtil.delete(ids.get(0), basePath));
+        BinarySecureSaveUtil.defrag(basePath);
+
+        second.close();
+        assertTrue(old.isOpen());
+        assertSnapshot(first);
+        first.close();
+        assertFalse(old.isOpen());
+        assertThrows(IllegalStateException.class, () -> first.get(ids.get(1)));
+
+        // 当前一代的通道在快照关闭后保持打开，供之后的快照使用
+        SaveSnapshot current = BinarySecureSaveUtil.openSnapshot(basePath);
+        FileChannel channel = data(current);
+        current.close();
+        assertTrue(channel.isOpen());
+        try (SaveSnapshot next = BinarySecureSaveUtil.openSnapshot(basePath)) {
+            assertSame(channel, data(next));
+            assertNull(next.get(ids.get(0)));
+            assertEquals("p1", ((Player) next.get(ids.get(1))).getName());
+        }
+        BinarySecureSaveUtil.close(basePath);
+        assertFalse(channel.isOpen());
+    }
+
+    // 快照中的内容与打开快照时相同
+    private void assertSnapshot(SaveSnapshot snapshot) throws Exception {
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals("p" + i, ((Player) snapshot.get(ids.get(i))).getName());
+        }
+        Map<String, Object> all = snapshot.getAll(ids);
+        assertEquals(ids, new ArrayList<>(all.keySet()));
+        Map<String, String> names = new LinkedHashMap<>();
+        all.forEach((id, player) -> names.put(id, ((Player) player).getName()));
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals("p" + i, names.get(ids.get(i)));
+        }
+    }
+
+    private String name(String id) throws Exception {
+        return ((Player) BinarySecureSaveUtil.get(id, basePath)).getName();
+    }
+
+    private static FileChannel data(SaveSnapshot snapshot) {
+        return snapshot.parts().iterator().next().data();
+    }
+}
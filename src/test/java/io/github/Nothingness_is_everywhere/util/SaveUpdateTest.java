@@ -0,0 +1,206 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 原地更新：放得下时覆盖原记录且数据文件不增长，放不下或关闭原地更新时追加新副本，
+ * 覆盖期间的读取不会读到不完整的记录，恢复扫描拒绝填充不全为0的记录
+ */
+class SaveUpdateTest {
+    @TempDir
+    Path directory;
+
+    private String basePath;
+
+    @BeforeEach
+    void setUp() {
+        basePath = directory.resolve("save").toString();
+        BinarySecureSaveUtil.resetUpdateStats();
+    }
+
+    @AfterEach
+    void reset() throws IOException {
+        BinarySecureSaveUtil.setUpdateSlack(0.25);
+        BinarySecureSaveUtil.setInPlaceUpdate(true);
+        BinarySecureSaveUtil.setCacheCapacity(1024);
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void updateThatFitsOverwritesWithoutGrowth() throws Exception {
+        String id = BinarySecureSaveUtil.add(new Player("before", "", 1, 0, 0), basePath);
+        BinarySecureSaveUtil.add(new Player("next", "", 1, 0, 0), basePath);
+        long size = dataSize();
+        long offset = entry(id).dataOffset();
+
+        assertTrue(BinarySecureSaveUtil.update(id, new Player("after!", "", 2, 0, 0), basePath));
+        assertEquals(size, dataSize());
+        assertEquals(offset, entry(id).dataOffset());
+        assertEquals(1, BinarySecureSaveUtil.getUpdateStats().inPlace());
+        assertEquals(0, BinarySecureSaveUtil.getUpdateStats().appended());
+        assertEquals("after!", name(id));
+        BinarySecureSaveUtil.close(basePath);
+        assertEquals("after!", name(id));
+        assertEquals("next", name(BinarySecureSaveUtil.listAllIdDescriptions(basePath).stream()
+                .filter(entry -> !entry.id().equals(id)).findFirst().orElseThrow().id()));
+    }
+
+    @Test
+    void updateThatDoesNotFitIsAppended() throws Exception {
+        String id = BinarySecureSaveUtil.add(new Player("p", "", 1, 0, 0), basePath);
+        long size = dataSize();
+        long offset = entry(id).dataOffset();
+
+        String longName = "p".repeat(500);
+        assertTrue(BinarySecureSaveUtil.update(id, new Player(longName, "", 1, 0, 0), basePath));
+        assertTrue(dataSize() > size);
+        assertTrue(entry(id).dataOffset() >= size);
+        assertFalse(entry(id).dataOffset() == offset);
+        assertEquals(0, BinarySecureSaveUtil.getUpdateStats().inPlace());
+        assertEquals(1, BinarySecureSaveUtil.getUpdateStats().appended());
+        BinarySecureSaveUtil.close(basePath);
+        assertEquals(longName, name(id));
+    }
+
+    @Test
+    void slackDecidesWhetherLongerRecordFits() throws Exception {
+        // 名称多出的字节不超过预留的填充时原地覆盖
+        String padded = BinarySecureSaveUtil.add(new Player("x".repeat(100), "", 1, 0, 0), basePath);
+        BinarySecureSaveUtil.setUpdateSlack(0);
+        String exact = BinarySecureSaveUtil.add(new Player("x".repeat(100), "", 1, 0, 0), basePath);
+        long paddedOffset = entry(padded).dataOffset();
+        long exactOffset = entry(exact).dataOffset();
+
+        assertTrue(BinarySecureSaveUtil.update(padded, new Player("y".repeat(110), "", 1, 0, 0), basePath));
+        assertTrue(BinarySecureSaveUtil.update(exact, new Player("y".repeat(110), "", 1, 0, 0), basePath));
+        assertEquals(paddedOffset, entry(padded).dataOffset());
+        assertTrue(entry(exact).dataOffset() > exactOffset);
+        assertEquals(1, BinarySecureSaveUtil.getUpdateStats().inPlace());
+        assertEquals(1, BinarySecureSaveUtil.getUpdateStats().appended());
+
+        // 不预留填充时，长度不变的更新仍可原地覆盖
+        long size = dataSize();
+        assertTrue(BinarySecureSaveUtil.update(exact, new Player("z".repeat(110), "", 1, 0, 0), basePath));
+        assertEquals(size, dataSize());
+        assertEquals("y".repeat(110), name(padded));
+        assertEquals("z".repeat(110), name(exact));
+        assertThrows(IllegalArgumentException.class, () -> BinarySecureSaveUtil.setUpdateSlack(1.5));
+    }
+
+    @Test
+    void inPlaceUpdateCanBeDisabled() throws Exception {
+        String id = BinarySecureSaveUtil.add(new Player("before", "", 1, 0, 0), basePath);
+        BinarySecureSaveUtil.setInPlaceUpdate(false);
+        long size = dataSize();
+        long offset = entry(id).dataOffset();
+
+        assertTrue(BinarySecureSaveUtil.update(id, new Player("after", "", 1, 0, 0), basePath));
+        assertTrue(dataSize() > size);
+        assertTrue(entry(id).dataOffset() > offset);
+        assertEquals(0, BinarySecureSaveUtil.getUpdateStats().inPlace());
+        assertEquals(1, BinarySecureSaveUtil.getUpdateStats().appended());
+        assertEquals("after", name(id));
+    }
+
+    @Test
+    void concurrentReadersNeverSeeTornRecord() throws Exception {
+        BinarySecureSaveUtil.setCacheCapacity(0);
+        String[] names = {"a".repeat(200), "b".repeat(200)};
+        String id = BinarySecureSaveUtil.add(new Player(names[0], "", 1, 0, 0), basePath);
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < 2; r++) {
+                readers.add(pool.submit(() -> {
+                    int reads = 0;
+                    while (!done.get() || reads < 100) {
+                        String name = name(id);
+                        assertTrue(names[0].equals(name) || names[1].equals(name), name);
+                        reads++;
+                    }
+                    return reads;
+                }));
+            }
+            for (int i = 1; i <= 500; i++) {
+                assertTrue(BinarySecureSaveUtil.update(id, new Player(names[i & 1], "", 1, 0, 0), basePath));
+            }
+            done.set(true);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get() >= 100);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(500, BinarySecureSaveUtil.getUpdateStats().inPlace());
+        assertEquals(names[0], name(id));
+    }
+
+    @Test
+    void recoveryRejectsNonZeroPadding() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(BinarySecureSaveUtil.add(new Player("p" + i, "", i, 0, 0), basePath));
+        }
+        BinarySecureSaveUtil.IndexEntry damaged = entry(ids.get(2));
+        BinarySecureSaveUtil.close(basePath);
+        // 填充长度不参与认证，改动填充内容不影响解密
+        try (FileChannel channel = FileChannel.open(Paths.get(basePath + SaveStore.DATA_EXTENSION),
+                StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1}), damaged.dataOffset() + damaged.dataLength() - 1);
+        }
+
+        SaveRecovery.Report report = SaveRecovery.rebuild(basePath, 1);
+        assertEquals(1, report.corrupt().size());
+        SaveRecovery.Range range = report.corrupt().get(0);
+        assertEquals(damaged.dataOffset(), range.start());
+        assertEquals(damaged.dataOffset() + damaged.dataLength(), range.end());
+        assertNull(BinarySecureSaveUtil.get(ids.get(2), basePath));
+        for (int i = 0; i < ids.size(); i++) {
+            if (i != 2) {
+                assertEquals("p" + i, name(ids.get(i)));
+            }
+        }
+    }
+
+    private String name(String id) throws Exception {
+        return ((Player) BinarySecureSaveUtil.get(id, basePath)).getName();
+    }
+
+    private BinarySecureSaveUtil.IndexEntry entry(String id) throws IOException {
+        for (BinarySecureSaveUtil.IndexEntry entry : BinarySecureSaveUtil.listAllIdDescriptions(basePath)) {
+            if (entry.id().equals(id)) {
+                return entry;
+            }
+        }
+        throw new AssertionError("索引中没有" + id);
+    }
+
+    private long dataSize() throws IOException {
+        return Files.size(Paths.get(basePath + SaveStore.DATA_EXTENSION));
+    }
+}
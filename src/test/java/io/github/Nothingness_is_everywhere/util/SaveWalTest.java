@@ -0,0 +1,219 @@
+package io.github.Nothingness_is_everywhere.util;
+
+import io.github.Nothingness_is_everywhere.entity.life.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 预写日志：崩溃后（.data/.index停在写入之前）打开存档时重放日志，
+ * 不完整或损坏的条目及其之后的条目被忽略，检查点后日志清空
+ */
+class SaveWalTest {
+    private static final int COUNT = 10;
+
+    @TempDir
+    Path directory;
+
+    private String basePath;
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, String> expected = new HashMap<>(); // ID -> 名称（已删除的为null）
+    private Map<Path, byte[]> beforeCrash; // 启用日志前的.data/.index
+
+    @BeforeEach
+    void writeSave() throws Exception {
+        basePath = directory.resolve("save").toString();
+        for (int i = 0; i < COUNT; i++) {
+            add("p" + i);
+        }
+        BinarySecureSaveUtil.close(basePath);
+        beforeCrash = copyFiles(basePath);
+        BinarySecureSaveUtil.setWriteAheadLog(true);
+    }
+
+    @AfterEach
+    void reset() throws IOException {
+        BinarySecureSaveUtil.setWriteAheadLog(false);
+        BinarySecureSaveUtil.setDurability(SaveDurability.BATCH);
+        BinarySecureSaveUtil.setGroupCommitWindow(0);
+        BinarySecureSaveUtil.close(basePath);
+    }
+
+    @Test
+    void appendsAndDeletesAreReplayed() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            add("new" + i);
+        }
+        for (int i = 0; i < COUNT; i += 3) {
+            delete(ids.get(i));
+        }
+        delete(ids.get(COUNT + 1)); // 删除日志中刚追加的记录
+        crash(basePath, Files.readAllBytes(walPath(basePath)));
+
+        assertContent();
+        // 重放后执行检查点
+        assertEquals(0, Files.size(walPath(basePath)));
+        BinarySecureSaveUtil.close(basePath);
+        assertContent();
+    }
+
+    @Test
+    void tornTailIsIgnored() throws Exception {
+        add("kept");
+        int committed = Files.readAllBytes(walPath(basePath)).length;
+        String lost = BinarySecureSaveUtil.add(new Player("lost", "", 0, 0, 0), basePath);
+        byte[] wal = Files.readAllBytes(walPath(basePath));
+        // 最后一条只写了一半
+        crash(basePath, Arrays.copyOf(wal, committed + (wal.length - committed) / 2));
+
+        assertContent();
+        assertNull(BinarySecureSaveUtil.get(lost, basePath));
+        assertEquals(0, Files.size(walPath(basePath)));
+    }
+
+    @Test
+    void replayStopsAtCorruptEntry() throws Exception {
+        add("kept");
+        int committed = Files.readAllBytes(walPath(basePath)).length;
+        String corrupt = BinarySecureSaveUtil.add(new Player("corrupt", "", 0, 0, 0), basePath);
+        String after = BinarySecureSaveUtil.add(new Player("after", "", 0, 0, 0), basePath);
+        byte[] wal = Files.readAllBytes(walPath(basePath));
+        wal[committed + 20] ^= 1; // 第二条的UUID
+        crash(basePath, wal);
+
+        assertContent();
+        assertNull(BinarySecureSaveUtil.get(corrupt, basePath));
+        assertNull(BinarySecureSaveUtil.get(after, basePath));
+    }
+
+    @Test
+    void checkpointTruncatesLog() throws Exception {
+        add("a");
+        assertTrue(Files.size(walPath(basePath)) > 0);
+        BinarySecureSaveUtil.defrag(basePath);
+        assertEquals(0, Files.size(walPath(basePath)));
+        assertContent();
+
+        add("b");
+        delete(ids.get(0));
+        assertTrue(Files.size(walPath(basePath)) > 0);
+        BinarySecureSaveUtil.close(basePath);
+        assertEquals(0, Files.size(walPath(basePath)));
+        assertContent();
+    }
+
+    @Test
+    void everyDurabilityReplaysConcurrentWrites() throws Exception {
+        BinarySecureSaveUtil.setGroupCommitWindow(100);
+        for (SaveDurability durability : SaveDurability.values()) {
+            BinarySecureSaveUtil.setDurability(durability);
+            String base = directory.resolve(durability.name()).toString();
+            BinarySecureSaveUtil.setWriteAheadLog(false);
+            String first = BinarySecureSaveUtil.add(new Player("first", "", 0, 0, 0), base);
+            BinarySecureSaveUtil.close(base);
+            Map<Path, byte[]> files = copyFiles(base);
+            BinarySecureSaveUtil.setWriteAheadLog(true);
+
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            List<Future<String>> added = new ArrayList<>();
+            try {
+                for (int i = 0; i < 40; i++) {
+                    String name = durability + "-" + i;
+                    added.add(pool.submit(() -> BinarySecureSaveUtil.add(new Player(name, "", 0, 0, 0), base)));
+                }
+                for (Future<String> future : added) {
+                    future.get();
+                }
+            } finally {
+                pool.shutdown();
+            }
+            assertTrue(BinarySecureSaveUtil.delete(first, base));
+            byte[] wal = Files.readAllBytes(walPath(base));
+            BinarySecureSaveUtil.close(base);
+            restore(base, files);
+            Files.write(walPath(base), wal);
+
+            for (int i = 0; i < added.size(); i++) {
+                Player player = (Player) BinarySecureSaveUtil.get(added.get(i).get(), base);
+                assertEquals(durability + "-" + i, player.getName());
+            }
+            assertNull(BinarySecureSaveUtil.get(first, base));
+            BinarySecureSaveUtil.close(base);
+        }
+    }
+
+    private void add(String name) throws Exception {
+        String id = BinarySecureSaveUtil.add(new Player(name, "", 0, 0, 0), basePath);
+        ids.add(id);
+        expected.put(id, name);
+    }
+
+    private void delete(String id) throws Exception {
+        assertTrue(BinarySecureSaveUtil.delete(id, basePath));
+        expected.put(id, null);
+    }
+
+    // 模拟崩溃：.data/.index停在启用日志之前，日志保留给定的内容
+    private void crash(String base, byte[] wal) throws IOException {
+        BinarySecureSaveUtil.close(base);
+        restore(base, beforeCrash);
+        Files.write(walPath(base), wal);
+    }
+
+    private void assertContent() throws Exception {
+        for (String id : ids) {
+            Player player = (Player) BinarySecureSaveUtil.get(id, basePath);
+            assertEquals(expected.get(id), player == null ? null : player.getName(), id);
+        }
+    }
+
+    private Path walPath(String base) {
+        return Paths.get(base + SaveStore.WAL_EXTENSION);
+    }
+
+    // 复制存档的全部文件（日志除外）
+    private Map<Path, byte[]> copyFiles(String base) throws IOException {
+        Map<Path, byte[]> files = new HashMap<>();
+        for (Path path : files(base)) {
+            if (!path.equals(walPath(base))) {
+                files.put(path, Files.readAllBytes(path));
+            }
+        }
+        return files;
+    }
+
+    private void restore(String base, Map<Path, byte[]> files) throws IOException {
+        for (Path path : files(base)) {
+            Files.delete(path);
+        }
+        for (Map.Entry<Path, byte[]> file : files.entrySet()) {
+            Files.write(file.getKey(), file.getValue());
+        }
+    }
+
+    private List<Path> files(String base) throws IOException {
+        String prefix = Paths.get(base).getFileName() + ".";
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().startsWith(prefix)).toList();
+        }
+    }
+}